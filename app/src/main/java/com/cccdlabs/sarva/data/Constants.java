@@ -50,4 +50,21 @@ final public class Constants {
      * Default volume setting for search tone.
      */
     public static final int SEARCH_TONE_VOLUME      = 10;
+
+    /**
+     * Maximum volume setting for search tone, at full scale.
+     */
+    public static final int SEARCH_TONE_MAX_VOLUME  = 10;
+
+    /**
+     * Maximum number of decoded Nearby messages to cache, one per partner device in range.
+     */
+    public static final int MESSAGE_CACHE_SIZE      = 64;
+
+    /**
+     * True to publish Nearby message content in the compact binary form, which builds before it
+     * cannot decode. Kept false, publishing the legacy JSON form, until every device in the
+     * fleet runs a build that decodes the binary form.
+     */
+    public static final boolean PUBLISH_BINARY_MESSAGES = false;
 }
@@ -0,0 +1,255 @@
+package com.cccdlabs.sarva.data.audio;
+
+/**
+ * Generates the 16-bit mono PCM search tone of a transceiver: beeps whose pitch rises and whose
+ * cadence quickens as the target gets closer, silent while the distance to the target is not
+ * known.
+ * <p>
+ * One cycle of a sine wave is computed once into a wavetable and each sample read from it by a
+ * fixed point phase accumulator, with each beep faded in and out over a few milliseconds so it
+ * does not click. The distance and volume may be set from any thread and take effect from the
+ * next buffer filled, so within one buffer period. Filling a buffer allocates nothing and needs
+ * no Android classes, the {@link SearchTonePlayer} streaming the buffers to the audio output.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class SearchToneGenerator {
+
+    /**
+     * Default sample rate in Hz.
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 22050;
+
+    /**
+     * Distance in meters at or below which the tone is highest and fastest.
+     */
+    public static final double MIN_DISTANCE = 0.5;
+
+    /**
+     * Distance in meters at or above which the tone is lowest and slowest.
+     */
+    public static final double MAX_DISTANCE = 30;
+
+    /**
+     * Pitch in Hz at {@link #MIN_DISTANCE}.
+     */
+    public static final double MAX_FREQUENCY = 1760;
+
+    /**
+     * Pitch in Hz at {@link #MAX_DISTANCE}.
+     */
+    public static final double MIN_FREQUENCY = 440;
+
+    /**
+     * Beep period in milliseconds at {@link #MIN_DISTANCE}.
+     */
+    public static final int MIN_PERIOD_MS = 120;
+
+    /**
+     * Beep period in milliseconds at {@link #MAX_DISTANCE}.
+     */
+    public static final int MAX_PERIOD_MS = 1200;
+
+    /**
+     * Fraction of each beep period the tone sounds.
+     */
+    public static final double DUTY_CYCLE = 0.5;
+
+    /**
+     * Milliseconds each beep fades in and out over.
+     */
+    public static final int RAMP_MS = 4;
+
+    /**
+     * Wavetable size, a power of two indexed by the top bits of the phase.
+     */
+    private static final int TABLE_BITS = 11;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    /**
+     * One cycle of a full scale sine wave, shared by all generators.
+     */
+    private static final short[] SINE_TABLE = new short[TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            SINE_TABLE[i] = (short) Math.round(Math.sin(2 * Math.PI * i / TABLE_SIZE) * Short.MAX_VALUE);
+        }
+    }
+
+    private final int sampleRate;
+    private final int rampSamples;
+
+    /**
+     * Distance in meters and volume from 0 to 1, set from any thread, NaN distance silent.
+     */
+    private volatile double distance = Double.NaN;
+    private volatile float volume = 1;
+
+    /**
+     * Phase of the wavetable in fixed point, the whole 32 bits one cycle, and its increment per
+     * sample.
+     */
+    private int phase;
+    private int phaseIncrement;
+
+    /**
+     * Position in samples within the current beep period, the period and the samples sounding.
+     */
+    private int position;
+    private int periodSamples;
+    private int beepSamples;
+
+    /**
+     * Distance the pitch and cadence were last computed for.
+     */
+    private double tunedDistance = Double.NaN;
+
+    /**
+     * Constructor with the {@link #DEFAULT_SAMPLE_RATE}.
+     */
+    public SearchToneGenerator() {
+        this(DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    public SearchToneGenerator(int sampleRate) {
+        if (sampleRate < 2 * MAX_FREQUENCY) {
+            throw new IllegalArgumentException("Parameter sampleRate must be at least " + (int) (2 * MAX_FREQUENCY));
+        }
+
+        this.sampleRate = sampleRate;
+        rampSamples = Math.max(1, sampleRate * RAMP_MS / 1000);
+    }
+
+    /**
+     * Returns the pitch of the tone at a distance.
+     *
+     * @param distance  The distance in meters
+     * @return          The pitch in Hz, falling evenly in octaves from {@link #MAX_FREQUENCY}
+     *                  to {@link #MIN_FREQUENCY} over the logarithm of the distance
+     */
+    public static double getFrequency(double distance) {
+        double proximity = getProximity(distance);
+        return MIN_FREQUENCY * Math.pow(MAX_FREQUENCY / MIN_FREQUENCY, proximity);
+    }
+
+    /**
+     * Returns the beep period of the tone at a distance.
+     *
+     * @param distance  The distance in meters
+     * @return          The period in milliseconds, from {@link #MIN_PERIOD_MS} to
+     *                  {@link #MAX_PERIOD_MS} over the logarithm of the distance
+     */
+    public static int getPeriodMs(double distance) {
+        double proximity = getProximity(distance);
+        return (int) Math.round(MAX_PERIOD_MS - proximity * (MAX_PERIOD_MS - MIN_PERIOD_MS));
+    }
+
+    /**
+     * Sets the distance to the target, taking effect from the next buffer filled.
+     *
+     * @param distance The distance in meters, NaN if not known for silence
+     */
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Sets the volume, taking effect from the next buffer filled.
+     *
+     * @param volume The volume from 0 for silence to 1 for full scale
+     */
+    public void setVolume(float volume) {
+        this.volume = Math.max(0, Math.min(1, volume));
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Fills a buffer with the next samples of the tone. Not thread safe, buffers must be filled
+     * from a single thread at a time.
+     *
+     * @param buffer    The buffer
+     * @param offset    The index of the first sample
+     * @param length    The number of samples
+     */
+    public void fill(short[] buffer, int offset, int length) {
+        double distance = this.distance;
+        int gain = Math.round(volume * 0x8000);
+        if (Double.isNaN(distance) || gain == 0) {
+            for (int i = offset; i < offset + length; i++) {
+                buffer[i] = 0;
+            }
+            // next beep starts from the top when the target is known again
+            tunedDistance = Double.NaN;
+            position = 0;
+            phase = 0;
+            return;
+        }
+
+        if (distance != tunedDistance) {
+            tune(distance);
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            if (position < beepSamples) {
+                int sample = SINE_TABLE[phase >>> (32 - TABLE_BITS)] * gain >> 15;
+                int fade = Math.min(position, beepSamples - 1 - position);
+                if (fade < rampSamples) {
+                    sample = sample * fade / rampSamples;
+                }
+                buffer[i] = (short) sample;
+                phase += phaseIncrement;
+            } else {
+                buffer[i] = 0;
+            }
+
+            if (++position >= periodSamples) {
+                position = 0;
+                phase = 0;
+            }
+        }
+    }
+
+    /**
+     * Sets the pitch and cadence for a distance, keeping the position in the beep period so a
+     * change does not cut a beep short.
+     *
+     * @param distance The distance in meters
+     */
+    private void tune(double distance) {
+        tunedDistance = distance;
+        phaseIncrement = (int) Math.round(getFrequency(distance) * 4294967296.0 / sampleRate);
+        periodSamples = Math.max(1, (int) ((long) getPeriodMs(distance) * sampleRate / 1000));
+        beepSamples = (int) (periodSamples * DUTY_CYCLE);
+        if (position >= periodSamples) {
+            position = 0;
+            phase = 0;
+        }
+    }
+
+    /**
+     * Returns the proximity of a distance from 0 at {@link #MAX_DISTANCE} to 1 at
+     * {@link #MIN_DISTANCE}, over its logarithm as the change of a meter matters more near.
+     */
+    private static double getProximity(double distance) {
+        double clamped = Math.max(MIN_DISTANCE, Math.min(MAX_DISTANCE, distance));
+        return Math.log(MAX_DISTANCE / clamped) / Math.log(MAX_DISTANCE / MIN_DISTANCE);
+    }
+}
@@ -0,0 +1,195 @@
+package com.cccdlabs.sarva.data.audio;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.Constants;
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.settings.GeneralSettings;
+
+import java.util.List;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import timber.log.Timber;
+
+/**
+ * Plays the search tone of a {@link SearchToneGenerator} through a streaming {@link AudioTrack}
+ * with a small buffer, so a change of distance is heard within a few tens of milliseconds. The
+ * buffers are filled and written on a dedicated thread, reusing a single buffer.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class SearchTonePlayer {
+
+    /**
+     * Milliseconds of audio in each buffer written, if above the minimum of the device.
+     */
+    public static final int BUFFER_MS = 20;
+
+    private final SearchToneGenerator generator;
+
+    /**
+     * Object to use for serializing start and stop.
+     */
+    private final Object lock = new Object();
+
+    private AudioTrack audioTrack;
+    private Thread writer;
+    private volatile boolean isPlaying;
+
+    /**
+     * Constructor.
+     *
+     * @param generator The SearchToneGenerator
+     */
+    public SearchTonePlayer(@NonNull SearchToneGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Starts playing the tone, silent until a distance is set. Does nothing if playing.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (isPlaying) {
+                return;
+            }
+
+            int sampleRate = generator.getSampleRate();
+            int minBytes = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            final int samples = Math.max(minBytes / 2, sampleRate * BUFFER_MS / 1000);
+            audioTrack = new AudioTrack(
+                    new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build(),
+                    new AudioFormat.Builder()
+                            .setSampleRate(sampleRate)
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                            .build(),
+                    Math.max(minBytes, samples * 2),
+                    AudioTrack.MODE_STREAM,
+                    AudioManager.AUDIO_SESSION_ID_GENERATE);
+            if (audioTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+                Timber.e("Search tone AudioTrack not initialized");
+                audioTrack.release();
+                audioTrack = null;
+                return;
+            }
+
+            final AudioTrack track = audioTrack;
+            isPlaying = true;
+            track.play();
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    write(track, new short[samples]);
+                }
+            }, "search-tone-writer");
+            writer.setDaemon(true);
+            writer.setPriority(Thread.MAX_PRIORITY);
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops playing the tone and releases the audio output. Does nothing if not playing.
+     */
+    public void stop() {
+        Thread stopped;
+        AudioTrack track;
+        synchronized (lock) {
+            if (! isPlaying) {
+                return;
+            }
+            isPlaying = false;
+            stopped = writer;
+            track = audioTrack;
+            writer = null;
+            audioTrack = null;
+        }
+
+        // silenced at once, the stop waking the writer if blocked
+        track.pause();
+        track.flush();
+        track.stop();
+        try {
+            stopped.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        track.release();
+    }
+
+    public boolean isPlaying() {
+        return isPlaying;
+    }
+
+    /**
+     * Sets the distance to the target.
+     *
+     * @param distance The distance in meters, NaN if not known for silence
+     */
+    public void setDistance(double distance) {
+        generator.setDistance(distance);
+    }
+
+    /**
+     * Sets the volume from the search volume setting, from 0 to
+     * {@link Constants#SEARCH_TONE_MAX_VOLUME}.
+     *
+     * @param settings The GeneralSettings
+     */
+    public void setVolume(@NonNull GeneralSettings settings) {
+        generator.setVolume((float) settings.getVolume() / Constants.SEARCH_TONE_MAX_VOLUME);
+    }
+
+    /**
+     * Follows the distance to the nearest partner of a search triage, silent while there is
+     * none, until disposed.
+     *
+     * @param triage    The Flowable of the nearest partners, nearest first
+     * @return          The Disposable to stop following
+     */
+    @NonNull
+    public Disposable follow(@NonNull Flowable<List<Partner>> triage) {
+        return triage.subscribe(new Consumer<List<Partner>>() {
+            @Override
+            public void accept(List<Partner> partners) throws Exception {
+                setDistance(partners.isEmpty() ? Double.NaN : partners.get(0).getDistance());
+            }
+        }, new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                Timber.e(throwable, "Search triage error");
+                setDistance(Double.NaN);
+            }
+        });
+    }
+
+    /**
+     * Fills and writes buffers until stopped, the write blocking while the track is full.
+     *
+     * @param track     The AudioTrack
+     * @param buffer    The buffer reused for every write
+     */
+    private void write(AudioTrack track, short[] buffer) {
+        while (isPlaying) {
+            generator.fill(buffer, 0, buffer.length);
+            int written = track.write(buffer, 0, buffer.length);
+            if (written < 0) {
+                Timber.e("Search tone write failed [" + written + "]");
+                return;
+            }
+        }
+    }
+}
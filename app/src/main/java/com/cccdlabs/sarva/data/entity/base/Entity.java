@@ -25,6 +25,7 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
 
 import java.io.Serializable;
@@ -33,6 +34,9 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import timber.log.Timber;
 
@@ -51,6 +55,38 @@ import timber.log.Timber;
 @androidx.room.Entity
 abstract public class Entity implements Serializable {
 
+    /**
+     * Flag bit of a serializing {@link Gson} configured to include the <code>id</code> field.
+     */
+    private static final int GSON_SERIALIZED_ID = 0x01;
+
+    /**
+     * Flag bit of a serializing {@link Gson} configured for pretty print.
+     */
+    private static final int GSON_PRETTY_PRINT = 0x02;
+
+    /**
+     * Flag bit of a serializing {@link Gson} configured to serialize <code>null</code> values.
+     */
+    private static final int GSON_SERIALIZE_NULLS = 0x04;
+
+    /**
+     * Number of serializing {@link Gson} configurations per Entity subclass.
+     */
+    private static final int GSON_CONFIGURATIONS = 8;
+
+    /**
+     * Deserializing {@link Gson}, created once as Gson is immutable and thread safe.
+     */
+    private static final Gson GSON = createGson();
+
+    /**
+     * Serializing {@link Gson} objects per Entity subclass, indexed by configuration flag bits
+     * and created on first use by {@link #toJson()}.
+     */
+    private static final ConcurrentMap<Class<?>, AtomicReferenceArray<Gson>> SERIALIZERS =
+            new ConcurrentHashMap<>();
+
     /**
      * The entity ID, annotated to designate this as the primary key field in the
      * {@link androidx.room.Room} database.
@@ -574,6 +610,7 @@ abstract public class Entity implements Serializable {
     /**
      * Returns a {@link Gson} object configured additionally with the DateDeserializer,
      * BooleanDeserializer and ByteArrayDeserializer to parse JSON into their respective types.
+     * The same Gson object is returned on each call.
      *
      * @return  The Gson object
      * @see     Gson
@@ -582,6 +619,17 @@ abstract public class Entity implements Serializable {
      * @see     Entity.ByteArrayDeserializer
      */
     public static Gson getGson() {
+        return GSON;
+    }
+
+    /**
+     * Creates the deserializing {@link Gson} object returned by {@link #getGson()}. Entity
+     * subclasses annotated with {@link com.google.gson.annotations.JsonAdapter} are parsed with
+     * their streaming {@link TypeAdapter} instead of reflection.
+     *
+     * @return The Gson object
+     */
+    private static Gson createGson() {
         GsonBuilder builder = new GsonBuilder();
 
         // Convert SQL YYYY-MM-DD( HH:mm:ss) strings to Date objects
@@ -661,10 +709,43 @@ abstract public class Entity implements Serializable {
      * <li>boolean -> 0 or 1</li>
      * <li>byte[] -> base64 encoded String</li>
      * </ul>
+     * The configured Gson is created once per Entity subclass and combination of the id,
+     * pretty print and serialize <code>null</code> flags, then reused. The overridable
+     * configuration methods above must therefore depend only on the subclass and these flags.
      *
      * @return The resulting JSON string of this Entity
      */
     public String toJson() {
+        int flags = (mHasSerializedId ? GSON_SERIALIZED_ID : 0)
+                | (mUsePrettyPrint ? GSON_PRETTY_PRINT : 0)
+                | (mUseSerializeNulls ? GSON_SERIALIZE_NULLS : 0);
+
+        AtomicReferenceArray<Gson> serializers = SERIALIZERS.get(getClass());
+        if (serializers == null) {
+            serializers = new AtomicReferenceArray<>(GSON_CONFIGURATIONS);
+            AtomicReferenceArray<Gson> existing = SERIALIZERS.putIfAbsent(getClass(), serializers);
+            if (existing != null) {
+                serializers = existing;
+            }
+        }
+
+        Gson gson = serializers.get(flags);
+        if (gson == null) {
+            // Racing threads create equivalent Gson objects, keep the first one set
+            serializers.compareAndSet(flags, null, createSerializer());
+            gson = serializers.get(flags);
+        }
+
+        return gson.toJson(this);
+    }
+
+    /**
+     * Creates a serializing {@link Gson} object for this Entity subclass from the current
+     * flags and the overridable configuration methods.
+     *
+     * @return The Gson object
+     */
+    private Gson createSerializer() {
         GsonBuilder builder = new GsonBuilder();
 
         if (mUsePrettyPrint) {
@@ -701,13 +782,17 @@ abstract public class Entity implements Serializable {
         // Convert byte arrays to string
         builder.registerTypeAdapter(byte[].class, new ByteArraySerializer());
 
+        TypeAdapter<? extends Entity> typeAdapter = this.getTypeAdapter(mHasSerializedId);
+        if (typeAdapter != null) {
+            builder.registerTypeAdapter(this.getClass(), typeAdapter);
+        }
+
         JsonSerializer<? extends Entity> serializer = this.getSerializer();
         if (serializer != null) {
             builder.registerTypeAdapter(this.getClass(), serializer);
         }
 
-        Gson gson = builder.create();
-        return gson.toJson(this);
+        return builder.create();
     }
 
     /**
@@ -811,6 +896,19 @@ abstract public class Entity implements Serializable {
         return null;
     }
 
+    /**
+     * Returns a streaming {@link TypeAdapter} to write the subclassed Entity as JSON without
+     * reflection. A TypeAdapter writes its own keys so the exclusion strategies and field
+     * naming are not applied, it must leave out the <code>id</code> field unless
+     * <code>hasSerializedId</code> is true.
+     *
+     * @param hasSerializedId   True if the <code>id</code> field is to be serialized
+     * @return                  The TypeAdapter or null to serialize by reflection
+     */
+    protected TypeAdapter<? extends Entity> getTypeAdapter(boolean hasSerializedId) {
+        return null;
+    }
+
     /**
      * Returns a custom {@link JsonSerializer} for the subclassed Entity.
      *
@@ -1,5 +1,7 @@
 package com.cccdlabs.sarva.data.entity.partners;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
 import androidx.room.ColumnInfo;
@@ -12,7 +14,8 @@ import static com.cccdlabs.sarva.data.entity.partners.PartnerEntity.TABLE_NAME;
 /**
  * POJO object representing a user connecting to this device for pairing and search functions.
  * Used for the {@link androidx.room.Room} database and for serialization with
- * {@link com.google.gson.Gson}. {@link Entity} annotation designates this as a Room entity.
+ * {@link com.google.gson.Gson}. {@link Entity} annotation designates this as a Room entity and
+ * {@link JsonAdapter} annotation parses JSON with the streaming {@link PartnerEntityTypeAdapter}.
  *
  * @author Johnny Spence
  * @version 1.0.0
@@ -22,6 +25,7 @@ import static com.cccdlabs.sarva.data.entity.partners.PartnerEntity.TABLE_NAME;
                 @Index(value = "uuid", unique = true)
         }
 )
+@JsonAdapter(PartnerEntityTypeAdapter.class)
 public class PartnerEntity extends com.cccdlabs.sarva.data.entity.base.Entity {
 
     /**
@@ -82,6 +86,13 @@ public class PartnerEntity extends com.cccdlabs.sarva.data.entity.base.Entity {
     @Ignore
     private transient int txPower;
 
+    /**
+     * Extra data field to store the smoothed Bluetooth BLE RSSI value of a user in search mode.
+     * Not a database field or serialized for data transfer.
+     */
+    @Ignore
+    private transient double filteredRssi;
+
 
     /**
      * Returns the database table name used by this object.
@@ -93,6 +104,17 @@ public class PartnerEntity extends com.cccdlabs.sarva.data.entity.base.Entity {
         return TABLE_NAME;
     }
 
+    /**
+     * Returns the streaming {@link PartnerEntityTypeAdapter} to write this object as JSON.
+     *
+     * @param hasSerializedId   True if the <code>id</code> field is to be serialized
+     * @return                  The PartnerEntityTypeAdapter
+     */
+    @Override
+    protected TypeAdapter<? extends com.cccdlabs.sarva.data.entity.base.Entity> getTypeAdapter(boolean hasSerializedId) {
+        return new PartnerEntityTypeAdapter(hasSerializedId);
+    }
+
     /**
      * Returns the name of the user connected to this device.
      *
@@ -236,4 +258,24 @@ public class PartnerEntity extends com.cccdlabs.sarva.data.entity.base.Entity {
     public void setTxPower(int txPower) {
         this.txPower = txPower;
     }
+
+    /**
+     * Returns the Bluetooth BLE RSSI value of a user connected to this device smoothed over the
+     * readings received, or the raw RSSI if not smoothed.
+     *
+     * @return The filtered RSSI value
+     */
+    public double getFilteredRssi() {
+        return filteredRssi;
+    }
+
+    /**
+     * Sets the Bluetooth BLE RSSI value of a user connected to this device smoothed over the
+     * readings received.
+     *
+     * @param filteredRssi The filtered RSSI value
+     */
+    public void setFilteredRssi(double filteredRssi) {
+        this.filteredRssi = filteredRssi;
+    }
 }
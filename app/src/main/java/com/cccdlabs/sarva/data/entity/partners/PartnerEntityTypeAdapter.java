@@ -0,0 +1,158 @@
+package com.cccdlabs.sarva.data.entity.partners;
+
+import com.cccdlabs.sarva.data.utils.DateUtils;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+
+import timber.log.Timber;
+
+/**
+ * Streaming {@link TypeAdapter} reading and writing a {@link PartnerEntity} as JSON without
+ * reflection. Keys, order and value formats are the same as the reflective
+ * {@link com.google.gson.Gson} configuration of
+ * {@link com.cccdlabs.sarva.data.entity.base.Entity}:
+ * <ul>
+ * <li>Date -> String formatted "yyyy-mm-dd" or "yyyy-mm-dd hh:mm:ss"</li>
+ * <li>boolean -> 0 or 1, either 0/1 or true/false read</li>
+ * </ul>
+ * Unknown keys are skipped when reading.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerEntityTypeAdapter extends TypeAdapter<PartnerEntity> {
+
+    /**
+     * True to write the <code>id</code> field.
+     */
+    private final boolean hasSerializedId;
+
+    /**
+     * Constructor, the <code>id</code> field is not written. Used by the
+     * {@link com.google.gson.annotations.JsonAdapter} annotation of {@link PartnerEntity}.
+     */
+    public PartnerEntityTypeAdapter() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param hasSerializedId True to write the <code>id</code> field
+     */
+    public PartnerEntityTypeAdapter(boolean hasSerializedId) {
+        this.hasSerializedId = hasSerializedId;
+    }
+
+    /**
+     * Writes a {@link PartnerEntity} as a JSON object. Null values are written or left out per
+     * the {@link JsonWriter} serialize nulls setting.
+     *
+     * @param out           The JsonWriter
+     * @param entity        The PartnerEntity
+     * @throws IOException  if the JsonWriter fails to write
+     */
+    @Override
+    public void write(JsonWriter out, PartnerEntity entity) throws IOException {
+        if (entity == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("username").value(entity.getUsername());
+        out.name("device_name").value(entity.getDeviceName());
+        out.name("is_active").value(entity.isActive() ? 1 : 0);
+        if (hasSerializedId) {
+            out.name("id").value(entity.getId());
+        }
+        out.name("uuid").value(entity.getUuid());
+        out.name("created_at").value(DateUtils.dateToSqlString(entity.getCreatedAt()));
+        out.name("updated_at").value(DateUtils.dateToSqlString(entity.getUpdatedAt()));
+        out.endObject();
+    }
+
+    /**
+     * Reads a {@link PartnerEntity} from a JSON object.
+     *
+     * @param in            The JsonReader
+     * @return              The PartnerEntity or null if JSON null
+     * @throws IOException  if the JsonReader fails to read or the JSON is malformed
+     * @throws JsonSyntaxException if the UUID is invalid
+     */
+    @Override
+    public PartnerEntity read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        PartnerEntity entity = new PartnerEntity();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "id":
+                    entity.setId(in.nextInt());
+                    break;
+                case "uuid":
+                    try {
+                        entity.setUuid(in.nextString());
+                    } catch (IllegalArgumentException e) {
+                        throw new JsonSyntaxException(e);
+                    }
+                    break;
+                case "created_at":
+                    entity.setCreatedAt(readDate(in));
+                    break;
+                case "updated_at":
+                    entity.setUpdatedAt(readDate(in));
+                    break;
+                case "username":
+                    entity.setUsername(in.nextString());
+                    break;
+                case "device_name":
+                    entity.setDeviceName(in.nextString());
+                    break;
+                case "is_active":
+                    entity.setActive(readBoolean(in));
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return entity;
+    }
+
+    private static Date readDate(JsonReader in) throws IOException {
+        String dateStr = in.nextString();
+        try {
+            return DateUtils.sqlStringToDate(dateStr);
+        } catch (ParseException e) {
+            Timber.e(e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean readBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.BOOLEAN) {
+            return in.nextBoolean();
+        }
+        return in.nextInt() > 0;
+    }
+}
@@ -45,6 +45,7 @@ public class PartnerMapper extends EntityMapper<PartnerEntity, Partner> {
         entity.setDistance(domainModel.getDistance());
         entity.setAccuracy(domainModel.getAccuracy());
         entity.setRssi(domainModel.getRssi());
+        entity.setFilteredRssi(domainModel.getFilteredRssi());
         entity.setTxPower(domainModel.getTxPower());
         return entity;
 
@@ -91,6 +92,7 @@ public class PartnerMapper extends EntityMapper<PartnerEntity, Partner> {
         model.setDistance(entity.getDistance());
         model.setAccuracy(entity.getAccuracy());
         model.setRssi(entity.getRssi());
+        model.setFilteredRssi(entity.getFilteredRssi());
         model.setTxPower(entity.getTxPower());
         return model;
     }
@@ -0,0 +1,260 @@
+package com.cccdlabs.sarva.data.p2p.distance;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RawRes;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Table of the BLE signal calibration of device models, keyed by device name as returned by
+ * {@link com.cccdlabs.sarva.data.p2p.nearby.utils.NearbyUtils#getDeviceName()}, brand and model,
+ * matched regardless of case. Devices not in the table use the default calibration.
+ * <p>
+ * The table is read from JSON of the form:
+ * <pre>
+ * {
+ *   "default": {"path_loss_exponent": 2.0},
+ *   "devices": {
+ *     "samsung SM-G950F": {"measured_power": -62, "path_loss_exponent": 2.2}
+ *   }
+ * }
+ * </pre>
+ * where <code>measured_power</code> is the RSSI in dBm at 1 meter from the device, if omitted
+ * the TX power the device reports, and <code>path_loss_exponent</code> how fast its signal
+ * weakens with distance, 2 in free space and higher indoors. Tables read from a raw resource
+ * are cached in memory for the life of the process.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class DeviceCalibrationTable {
+
+    /**
+     * Immutable BLE signal calibration of a device model.
+     */
+    public static class Calibration {
+
+        private final double measuredPower;
+        private final double pathLossExponent;
+
+        /**
+         * Constructor.
+         *
+         * @param measuredPower     The RSSI in dBm at 1 meter, NaN to use the TX power reported
+         * @param pathLossExponent  The path loss exponent, must be greater than zero
+         */
+        public Calibration(double measuredPower, double pathLossExponent) {
+            if (!(pathLossExponent > 0)) {
+                throw new IllegalArgumentException("Parameter pathLossExponent must be greater than zero");
+            }
+
+            this.measuredPower = measuredPower;
+            this.pathLossExponent = pathLossExponent;
+        }
+
+        /**
+         * Returns the RSSI in dBm at 1 meter from the device.
+         *
+         * @return The measured power, NaN to use the TX power the device reports
+         */
+        public double getMeasuredPower() {
+            return measuredPower;
+        }
+
+        /**
+         * Returns how fast the signal of the device weakens with distance.
+         *
+         * @return The path loss exponent
+         */
+        public double getPathLossExponent() {
+            return pathLossExponent;
+        }
+
+        @Override
+        public String toString() {
+            return "Calibration[measuredPower: " + measuredPower + ", pathLossExponent: "
+                    + pathLossExponent + "]";
+        }
+    }
+
+    /**
+     * Default path loss exponent, that of free space.
+     */
+    public static final double DEFAULT_PATH_LOSS_EXPONENT = 2.0;
+
+    /**
+     * Table with only the default calibration, using the TX power reported in free space.
+     */
+    public static final DeviceCalibrationTable DEFAULT = new DeviceCalibrationTable(
+            new Calibration(Double.NaN, DEFAULT_PATH_LOSS_EXPONENT),
+            new HashMap<String, Calibration>());
+
+    /**
+     * Tables read from raw resources by resource id.
+     */
+    private static final Map<Integer, DeviceCalibrationTable> resourceTables = new HashMap<>();
+
+    /**
+     * Calibration of devices not in the table.
+     */
+    private final Calibration defaultCalibration;
+
+    /**
+     * Calibrations by lower case device name.
+     */
+    private final Map<String, Calibration> calibrations;
+
+    /**
+     * Constructor.
+     *
+     * @param defaultCalibration    Calibration of devices not in the table
+     * @param calibrations          Calibrations by lower case device name
+     */
+    private DeviceCalibrationTable(Calibration defaultCalibration,
+            Map<String, Calibration> calibrations) {
+        this.defaultCalibration = defaultCalibration;
+        this.calibrations = calibrations;
+    }
+
+    /**
+     * Returns the table read from a raw JSON resource, read once and cached. If the resource
+     * cannot be read, the error is logged and the {@link #DEFAULT} table returned so distances
+     * are still estimated.
+     *
+     * @param context   The Android context
+     * @param resId     The raw resource id
+     * @return          The DeviceCalibrationTable
+     */
+    @NonNull
+    public static DeviceCalibrationTable fromResource(@NonNull Context context, @RawRes int resId) {
+        synchronized (resourceTables) {
+            DeviceCalibrationTable table = resourceTables.get(resId);
+            if (table != null) {
+                return table;
+            }
+
+            try {
+                Reader reader = new InputStreamReader(
+                        context.getResources().openRawResource(resId), Charset.forName("UTF-8"));
+                try {
+                    table = read(reader);
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException | JsonParseException | IllegalArgumentException e) {
+                Timber.e(e, "Device calibration resource [" + resId + "] not read");
+                table = DEFAULT;
+            }
+            resourceTables.put(resId, table);
+            return table;
+        }
+    }
+
+    /**
+     * Reads a table from JSON.
+     *
+     * @param reader    The JSON Reader, not closed
+     * @return          The DeviceCalibrationTable
+     * @throws          IOException if the JSON cannot be read
+     * @throws          IllegalArgumentException if a calibration is invalid
+     */
+    @NonNull
+    public static DeviceCalibrationTable read(@NonNull Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        Calibration defaultCalibration = DEFAULT.defaultCalibration;
+        Map<String, Calibration> calibrations = new HashMap<>();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "default":
+                    defaultCalibration = readCalibration(in);
+                    break;
+                case "devices":
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String deviceName = in.nextName().toLowerCase(Locale.US);
+                        calibrations.put(deviceName, readCalibration(in));
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return new DeviceCalibrationTable(defaultCalibration, calibrations);
+    }
+
+    /**
+     * Returns the calibration of a device model.
+     *
+     * @param deviceName    The device brand and model, null if not known
+     * @return              The Calibration, the default if the device is not in the table
+     */
+    @NonNull
+    public Calibration get(String deviceName) {
+        if (deviceName == null || calibrations.isEmpty()) {
+            return defaultCalibration;
+        }
+
+        Calibration calibration = calibrations.get(deviceName.toLowerCase(Locale.US));
+        return calibration == null ? defaultCalibration : calibration;
+    }
+
+    /**
+     * Returns the calibration of devices not in the table.
+     *
+     * @return The default Calibration
+     */
+    @NonNull
+    public Calibration getDefault() {
+        return defaultCalibration;
+    }
+
+    /**
+     * Returns the number of device models in the table.
+     *
+     * @return The number of device models
+     */
+    public int size() {
+        return calibrations.size();
+    }
+
+    private static Calibration readCalibration(JsonReader in) throws IOException {
+        double measuredPower = Double.NaN;
+        double pathLossExponent = DEFAULT_PATH_LOSS_EXPONENT;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "measured_power":
+                    measuredPower = in.nextDouble();
+                    break;
+                case "path_loss_exponent":
+                    pathLossExponent = in.nextDouble();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return new Calibration(measuredPower, pathLossExponent);
+    }
+}
@@ -0,0 +1,87 @@
+package com.cccdlabs.sarva.data.p2p.distance;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.messages.BleSignal;
+import com.google.android.gms.nearby.messages.Distance;
+
+/**
+ * Estimates the distance to a partner device from the RSSI of its BLE signal with the
+ * log-distance path loss model:
+ * <pre>
+ * distance = 10 ^ ((measuredPower - rssi) / (10 * pathLossExponent))
+ * </pre>
+ * where <code>measuredPower</code> is the RSSI at 1 meter. Both are taken from the
+ * {@link DeviceCalibrationTable} entry of the partner device, the measured power falling back to
+ * the TX power the device reports less the {@link #PATH_LOSS_AT_1M} of the signal over its first
+ * meter, then to {@link #DEFAULT_MEASURED_POWER}.
+ * <p>
+ * RSSI fluctuates widely from one reading to the next, so the RSSI passed should be smoothed
+ * first, as by the {@link com.cccdlabs.sarva.data.p2p.nearby.client.PartnerRssiFilter}. Even so
+ * the distance is at best approximate and its accuracy is {@link Distance.Accuracy#LOW}.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerDistanceEstimator {
+
+    /**
+     * RSSI in dBm at 1 meter used when neither the calibration nor the device gives one, that of
+     * a typical phone.
+     */
+    public static final double DEFAULT_MEASURED_POWER = -59;
+
+    /**
+     * Free-space path loss in dB of a 2.4 GHz BLE signal at 1 meter. The TX power a device reports
+     * is that at the antenna, not the RSSI at 1 meter, so is less this loss.
+     */
+    public static final double PATH_LOSS_AT_1M = 41;
+
+    /**
+     * Accuracy of the distances estimated.
+     */
+    public static final int ACCURACY = Distance.Accuracy.LOW;
+
+    /**
+     * Calibration of the partner devices.
+     */
+    private final DeviceCalibrationTable calibrationTable;
+
+    /**
+     * Constructor.
+     *
+     * @param calibrationTable The DeviceCalibrationTable of the partner devices
+     */
+    public PartnerDistanceEstimator(@NonNull DeviceCalibrationTable calibrationTable) {
+        this.calibrationTable = calibrationTable;
+    }
+
+    /**
+     * Returns the estimated distance to a partner device.
+     *
+     * @param deviceName    The partner device brand and model, null if not known
+     * @param rssi          The RSSI in dBm, preferably smoothed
+     * @param txPower       The TX power reported or {@link BleSignal#UNKNOWN_TX_POWER}
+     * @return              The distance in meters or NaN if the RSSI is not a valid reading
+     */
+    public double estimate(String deviceName, double rssi, int txPower) {
+        if (!(rssi < 0)) {
+            // NaN or not a received signal
+            return Double.NaN;
+        }
+
+        DeviceCalibrationTable.Calibration calibration = calibrationTable.get(deviceName);
+        double measuredPower = calibration.getMeasuredPower();
+        if (Double.isNaN(measuredPower)) {
+            measuredPower = txPower == BleSignal.UNKNOWN_TX_POWER
+                    ? DEFAULT_MEASURED_POWER
+                    : txPower - PATH_LOSS_AT_1M;
+        }
+
+        return Math.pow(10, (measuredPower - rssi) / (10 * calibration.getPathLossExponent()));
+    }
+
+    public DeviceCalibrationTable getCalibrationTable() {
+        return calibrationTable;
+    }
+}
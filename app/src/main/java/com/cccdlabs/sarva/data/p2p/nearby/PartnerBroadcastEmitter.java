@@ -52,6 +52,8 @@ public class PartnerBroadcastEmitter implements PartnerEmitter {
                     .hasPublish(true)
                     .hasSubscribe(false)
                     .setPublishMode(PartnerMessage.Mode.PING)
+                    .setBackpressureMode(PartnerNearbyMessagesClient.BackpressureMode.LATEST_READING)
+                    .setTeardownDelay(PartnerNearbyMessagesClient.DEFAULT_TEARDOWN_DELAY_MS)
                     .setDebug(BuildConfig.DEBUG)
                     .build();
         }
@@ -7,31 +7,42 @@ import androidx.annotation.NonNull;
 import com.cccdlabs.sarva.BuildConfig;
 import com.cccdlabs.sarva.data.p2p.nearby.client.PartnerNearbyMessagesClient;
 import com.cccdlabs.sarva.data.repository.partners.PartnerRepository;
+import com.cccdlabs.sarva.data.repository.partners.PartnerWriteBuffer;
 import com.cccdlabs.sarva.domain.model.partners.Partner;
 import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
 import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
 import com.cccdlabs.sarva.domain.p2p.base.PartnerEmitter;
 
 import io.reactivex.Flowable;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
 public class PartnerFindEmitter implements PartnerEmitter {
 
     protected final Activity mActivity;
     protected final PartnerRepository mRepository;
+
+    /**
+     * Write-behind buffer syncing found partners to the database in batches.
+     */
+    protected final PartnerWriteBuffer mWriteBuffer;
     protected PartnerNearbyMessagesClient mClient;
 
     public PartnerFindEmitter(@NonNull Activity activity, @NonNull PartnerRepository repository ) {
         mActivity = activity;
         mRepository = repository;
+        mWriteBuffer = new PartnerWriteBuffer(repository, Schedulers.io());
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Receives the partners pairing.
      */
     @Override
     public Flowable<PartnerResult> getPartnerFlowable() {
-        return getClient().getPartnerFlowable().map(
+        return getClient().getPartnerFlowable(PartnerMessage.Mode.PAIR).map(
                 new Function<PartnerResult, PartnerResult>() {
                     @Override
                     public PartnerResult apply(PartnerResult partnerResult) throws Exception {
@@ -42,10 +53,16 @@ public class PartnerFindEmitter implements PartnerEmitter {
                         }
 
                         if (partner.isEmitting()) {
-                            // Partner just found so sync in db
-                            partner = mRepository.sync(partner);
+                            // Partner found so sync in db with the next batch
+                            mWriteBuffer.write(partner);
                         }
-                        return new PartnerResult(partner);
+                        return new PartnerResult(partner, partnerResult.isReading(), partnerResult.getMode());
+                    }
+                }).doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        // pending partners written rather than waiting on the flush interval
+                        mWriteBuffer.requestFlush();
                     }
                 });
     }
@@ -73,6 +90,8 @@ public class PartnerFindEmitter implements PartnerEmitter {
                     .hasPublish(true)
                     .hasSubscribe(true)
                     .setPublishMode(PartnerMessage.Mode.PAIR)
+                    .setBackpressureMode(PartnerNearbyMessagesClient.BackpressureMode.LATEST_READING)
+                    .setTeardownDelay(PartnerNearbyMessagesClient.DEFAULT_TEARDOWN_DELAY_MS)
                     .setDebug(BuildConfig.DEBUG)
                     .build();
         }
@@ -84,10 +103,14 @@ public class PartnerFindEmitter implements PartnerEmitter {
     public void startEmitter() {}
 
     @Override
-    public void pauseEmitter() {}
+    public void pauseEmitter() {
+        mWriteBuffer.requestFlush();
+    }
 
     @Override
-    public void resetEmitter() {}
+    public void resetEmitter() {
+        mWriteBuffer.requestFlush();
+    }
 
     @Override
     public void resumeEmitter() {}
@@ -5,33 +5,92 @@ import android.app.Activity;
 import androidx.annotation.NonNull;
 
 import com.cccdlabs.sarva.BuildConfig;
+import com.cccdlabs.sarva.R;
+import com.cccdlabs.sarva.data.p2p.distance.DeviceCalibrationTable;
+import com.cccdlabs.sarva.data.p2p.distance.PartnerDistanceEstimator;
 import com.cccdlabs.sarva.data.p2p.nearby.client.PartnerNearbyMessagesClient;
+import com.cccdlabs.sarva.data.p2p.nearby.client.PartnerRssiFilter;
+import com.cccdlabs.sarva.data.p2p.nearby.client.PartnerTrendDetector;
+import com.cccdlabs.sarva.data.p2p.triage.PartnerTriageQueue;
 import com.cccdlabs.sarva.data.repository.partners.PartnerRepository;
+import com.cccdlabs.sarva.data.repository.partners.PartnerWriteBuffer;
 import com.cccdlabs.sarva.domain.model.partners.Partner;
 import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
 import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
 import com.cccdlabs.sarva.domain.p2p.base.PartnerEmitter;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import io.reactivex.Flowable;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
 public class PartnerSearchEmitter implements PartnerEmitter {
 
     protected final Activity mActivity;
     protected final PartnerRepository mRepository;
+
+    /**
+     * Write-behind buffer syncing found partners to the database in batches.
+     */
+    protected final PartnerWriteBuffer mWriteBuffer;
+
+    /**
+     * Detects whether each partner found is approaching or receding from its filtered RSSI.
+     */
+    protected final PartnerTrendDetector mTrendDetector;
+
+    /**
+     * Partners found ordered by distance, to pick the next target of the search.
+     */
+    protected final PartnerTriageQueue mTriageQueue;
     protected PartnerNearbyMessagesClient mClient;
 
+    /**
+     * Partner Flowable shared by all subscribers so each result updates the trend and write
+     * buffer once, however many subscribers, such as the triage, are fed by it.
+     */
+    private Flowable<PartnerResult> mPartnerFlowable;
+
+    /**
+     * Client the shared partner Flowable was created from.
+     */
+    private PartnerNearbyMessagesClient mPartnerFlowableClient;
+
     public PartnerSearchEmitter(@NonNull Activity activity, @NonNull PartnerRepository repository ) {
         mActivity = activity;
         mRepository = repository;
+        mWriteBuffer = new PartnerWriteBuffer(repository, Schedulers.io());
+        mTrendDetector = new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.RSSI).build();
+        mTriageQueue = new PartnerTriageQueue();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Flowable<PartnerResult> getPartnerFlowable() {
-        return getClient().getPartnerFlowable().map(
+    public synchronized Flowable<PartnerResult> getPartnerFlowable() {
+        PartnerNearbyMessagesClient client = getClient();
+        if (mPartnerFlowable == null || mPartnerFlowableClient != client) {
+            mPartnerFlowable = createPartnerFlowable(client);
+            mPartnerFlowableClient = client;
+        }
+
+        return mPartnerFlowable;
+    }
+
+    /**
+     * Returns the client Flowable of the partners sending a signal mapped to add the trend of
+     * each partner found and sync it in the database, shared so the mapping is not run again
+     * for each subscriber.
+     *
+     * @param client    The client
+     * @return          The shared Flowable of PartnerResult objects
+     */
+    private Flowable<PartnerResult> createPartnerFlowable(@NonNull PartnerNearbyMessagesClient client) {
+        return client.getPartnerFlowable(PartnerMessage.Mode.PING).map(
                 new Function<PartnerResult, PartnerResult>() {
                     @Override
                     public PartnerResult apply(PartnerResult partnerResult) throws Exception {
@@ -41,13 +100,48 @@ public class PartnerSearchEmitter implements PartnerEmitter {
                             return partnerResult;
                         }
 
-                        if (partner.isEmitting()) {
-                            // Partner just found so sync in db
-                            partner = mRepository.sync(partner);
+                        if (! partner.isEmitting()) {
+                            // trend starts over if found again
+                            mTrendDetector.remove(partner.getUuid());
+                            return new PartnerResult(partner, partnerResult.isReading(), partnerResult.getMode());
                         }
-                        return new PartnerResult(partner);
+
+                        // Partner found so sync in db with the next batch
+                        mWriteBuffer.write(partner);
+                        PartnerResult.Trend trend = mTrendDetector.update(partner,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+                        return new PartnerResult(partner, partnerResult.isReading(), partnerResult.getMode(),
+                                trend, mTrendDetector.getConfidence(partner.getUuid()));
                     }
-                });
+                }).doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        // pending partners written rather than waiting on the flush interval
+                        mWriteBuffer.requestFlush();
+                    }
+                }).publish().refCount();
+    }
+
+    /**
+     * Returns a Flowable of the nearest partners not yet located, fed by the partner Flowable and
+     * emitted each time the order changes, so a search screen need not sort every partner on
+     * every reading.
+     *
+     * @param k The number of partners
+     * @return  The Flowable of the List of at most K Partner objects, nearest first
+     */
+    public Flowable<List<Partner>> getTriageFlowable(int k) {
+        return mTriageQueue.getTopFlowable(getPartnerFlowable(), k);
+    }
+
+    /**
+     * Marks a partner located, removing it from the triage for the rest of the search.
+     *
+     * @param uuid  The partner UUID
+     * @return      True if the partner was in the triage, false if not
+     */
+    public boolean markLocated(@NonNull String uuid) {
+        return mTriageQueue.markLocated(uuid);
     }
 
     /**
@@ -73,6 +167,12 @@ public class PartnerSearchEmitter implements PartnerEmitter {
                     .hasPublish(true)
                     .hasSubscribe(true)
                     .setPublishMode(PartnerMessage.Mode.SEARCH)
+                    .setBackpressureMode(PartnerNearbyMessagesClient.BackpressureMode.LATEST_READING)
+                    .setTeardownDelay(PartnerNearbyMessagesClient.DEFAULT_TEARDOWN_DELAY_MS)
+                    .setRssiFilter(new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.KALMAN)
+                            .build())
+                    .setDistanceEstimator(new PartnerDistanceEstimator(
+                            DeviceCalibrationTable.fromResource(mActivity, R.raw.device_calibration)))
                     .setDebug(BuildConfig.DEBUG)
                     .build();
         }
@@ -84,10 +184,16 @@ public class PartnerSearchEmitter implements PartnerEmitter {
     public void startEmitter() {}
 
     @Override
-    public void pauseEmitter() {}
+    public void pauseEmitter() {
+        mWriteBuffer.requestFlush();
+    }
 
     @Override
-    public void resetEmitter() {}
+    public void resetEmitter() {
+        mWriteBuffer.requestFlush();
+        mTrendDetector.clear();
+        mTriageQueue.clear();
+    }
 
     @Override
     public void resumeEmitter() {}
@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import com.cccdlabs.sarva.BuildConfig;
 import com.cccdlabs.sarva.data.p2p.nearby.client.PartnerNearbyMessagesClient;
 import com.cccdlabs.sarva.data.repository.partners.PartnerRepository;
+import com.cccdlabs.sarva.data.repository.partners.PartnerWriteBuffer;
 import com.cccdlabs.sarva.domain.model.partners.Partner;
 import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
 import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
@@ -16,12 +17,19 @@ import java.util.ArrayList;
 import java.util.List;
 
 import io.reactivex.Flowable;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
 public class PartnerTransmitterEmitter implements PartnerEmitter {
 
     protected final Activity mActivity;
     protected final PartnerRepository mRepository;
+
+    /**
+     * Write-behind buffer syncing found partners to the database in batches.
+     */
+    protected final PartnerWriteBuffer mWriteBuffer;
     protected PartnerNearbyMessagesClient mClient;
 
     /**
@@ -34,15 +42,18 @@ public class PartnerTransmitterEmitter implements PartnerEmitter {
     public PartnerTransmitterEmitter(@NonNull Activity activity, @NonNull PartnerRepository repository ) {
         mActivity = activity;
         mRepository = repository;
+        mWriteBuffer = new PartnerWriteBuffer(repository, Schedulers.io());
         mPartners = new ArrayList<>();
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Receives the partners searching.
      */
     @Override
     public Flowable<PartnerResult> getPartnerFlowable() {
-        return getClient().getPartnerFlowable().map(
+        return getClient().getPartnerFlowable(PartnerMessage.Mode.SEARCH).map(
                 new Function<PartnerResult, PartnerResult>() {
                     @Override
                     public PartnerResult apply(PartnerResult partnerResult) throws Exception {
@@ -53,8 +64,8 @@ public class PartnerTransmitterEmitter implements PartnerEmitter {
                         }
 
                         if (partner.isEmitting()) {
-                            // Partner just found so sync in db
-                            partner = mRepository.sync(partner);
+                            // Partner found so sync in db with the next batch
+                            mWriteBuffer.write(partner);
                         }
 
                         trackPartner(partner, partner.isEmitting());
@@ -67,7 +78,13 @@ public class PartnerTransmitterEmitter implements PartnerEmitter {
                             // [should publish here]
                         }
 
-                        return new PartnerResult(partner);
+                        return new PartnerResult(partner, partnerResult.isReading(), partnerResult.getMode());
+                    }
+                }).doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        // pending partners written rather than waiting on the flush interval
+                        mWriteBuffer.requestFlush();
                     }
                 });
     }
@@ -95,6 +112,8 @@ public class PartnerTransmitterEmitter implements PartnerEmitter {
                     .hasPublish(true)
                     .hasSubscribe(true)
                     .setPublishMode(PartnerMessage.Mode.PING)
+                    .setBackpressureMode(PartnerNearbyMessagesClient.BackpressureMode.LATEST_READING)
+                    .setTeardownDelay(PartnerNearbyMessagesClient.DEFAULT_TEARDOWN_DELAY_MS)
                     .setDebug(BuildConfig.DEBUG)
                     .build();
         }
@@ -129,10 +148,14 @@ public class PartnerTransmitterEmitter implements PartnerEmitter {
     public void startEmitter() {}
 
     @Override
-    public void pauseEmitter() {}
+    public void pauseEmitter() {
+        mWriteBuffer.requestFlush();
+    }
 
     @Override
-    public void resetEmitter() {}
+    public void resetEmitter() {
+        mWriteBuffer.requestFlush();
+    }
 
     @Override
     public void resumeEmitter() {}
@@ -255,7 +255,7 @@ abstract public class AbstractNearbyPartnerEmitter implements PartnerEmitter {
          */
         protected boolean checkInvalidState(Message message) {
             PartnerMessage partnerMessage = NearbyUtils.toPartnerMessage(message);
-            if (emitter.isCancelled() || (receiveMode != null && receiveMode != partnerMessage.getMode())) {
+            if (emitter.isCancelled() || (receiveMode != null && partnerMessage != null && receiveMode != partnerMessage.getMode())) {
                 // If FlowableEmitter is canceled (will perform any cleanup operations from Cancellable)
                 // or if receive mode not matching, exit and return false. No exception to emit.
                 return true;
@@ -0,0 +1,165 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.p2p.transport.PartnerTransport;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+import com.google.android.gms.nearby.messages.MessagesClient;
+import com.google.android.gms.nearby.messages.PublishCallback;
+import com.google.android.gms.nearby.messages.PublishOptions;
+import com.google.android.gms.nearby.messages.StatusCallback;
+import com.google.android.gms.nearby.messages.Strategy;
+import com.google.android.gms.nearby.messages.SubscribeCallback;
+import com.google.android.gms.nearby.messages.SubscribeOptions;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+
+/**
+ * {@link PartnerTransport} backed by the Google Nearby Messages {@link MessagesClient}, publishing
+ * and subscribing over BLE, Bluetooth and near-ultrasonic audio with the default strategy.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class NearbyPartnerTransport implements PartnerTransport {
+
+    /**
+     * Nearby discovery mode, set to broadcast and scan for pairing codes to/from other devices.
+     */
+    private static final int DISCOVERY_MODE = Strategy.DISCOVERY_MODE_DEFAULT;
+
+    /**
+     * Nearby distance covered, allows messages to be exchanged over any distance.
+     */
+    private static final int DISTANCE_TYPE = Strategy.DISTANCE_TYPE_DEFAULT;
+
+    /**
+     * Nearby TTL in seconds, NOTE: Strategy.TTL_SECONDS_INFINITE not supported for publishing.
+     */
+    private static final int TTL_SECONDS = Strategy.TTL_SECONDS_MAX;
+
+    /**
+     * The MessagesClient to publish and subscribe with.
+     */
+    private final MessagesClient messagesClient;
+
+    /**
+     * Callback for permission change registered with the MessagesClient, null if none.
+     */
+    private StatusCallback statusCallback;
+
+    /**
+     * Constructor.
+     *
+     * @param messagesClient    The MessagesClient
+     * @param statusCallback    Callback for permission change to register with the
+     *                          MessagesClient until closed, null for none
+     */
+    public NearbyPartnerTransport(@NonNull MessagesClient messagesClient,
+            StatusCallback statusCallback) {
+        this.messagesClient = messagesClient;
+        this.statusCallback = statusCallback;
+        if (statusCallback != null) {
+            messagesClient.registerStatusCallback(statusCallback);
+        }
+    }
+
+    /**
+     * Returns the MessagesClient published and subscribed with.
+     *
+     * @return The MessagesClient
+     */
+    @NonNull
+    public MessagesClient getMessagesClient() {
+        return messagesClient;
+    }
+
+    @Override
+    public void publish(@NonNull Message message, @NonNull final ExpiryListener expiry,
+            @NonNull Callback callback) {
+        PublishOptions options = new PublishOptions.Builder()
+                .setStrategy(buildStrategy())
+                .setCallback(new PublishCallback() {
+                    @Override
+                    public void onExpired() {
+                        expiry.onExpired();
+                    }
+                })
+                .build();
+        complete(messagesClient.publish(message, options), callback);
+    }
+
+    @Override
+    public void unpublish(@NonNull Message message, @NonNull Callback callback) {
+        complete(messagesClient.unpublish(message), callback);
+    }
+
+    @Override
+    public void subscribe(@NonNull MessageListener listener, @NonNull final ExpiryListener expiry,
+            @NonNull Callback callback) {
+        SubscribeOptions options = new SubscribeOptions.Builder()
+                .setStrategy(buildStrategy())
+                .setCallback(new SubscribeCallback() {
+                    @Override
+                    public void onExpired() {
+                        expiry.onExpired();
+                    }
+                })
+                .build();
+        complete(messagesClient.subscribe(listener, options), callback);
+    }
+
+    @Override
+    public void unsubscribe(@NonNull MessageListener listener, @NonNull Callback callback) {
+        complete(messagesClient.unsubscribe(listener), callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean reportsSignal() {
+        return true;
+    }
+
+    /**
+     * Unregisters the permission change callback.
+     */
+    @Override
+    public void close() {
+        if (statusCallback != null) {
+            messagesClient.unregisterStatusCallback(statusCallback);
+            statusCallback = null;
+        }
+    }
+
+    private static Strategy buildStrategy() {
+        return new Strategy.Builder()
+                .setDiscoveryMode(DISCOVERY_MODE)
+                .setDistanceType(DISTANCE_TYPE)
+                .setTtlSeconds(TTL_SECONDS)
+                .build();
+    }
+
+    /**
+     * Passes the result of a Nearby Task on to a Callback.
+     *
+     * @param task      The Task
+     * @param callback  The Callback
+     */
+    private static void complete(Task<Void> task, final Callback callback) {
+        task.addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                callback.onFailure(e);
+            }
+        }).addOnSuccessListener(new OnSuccessListener<Void>() {
+            @Override
+            public void onSuccess(Void aVoid) {
+                callback.onSuccess();
+            }
+        });
+    }
+}
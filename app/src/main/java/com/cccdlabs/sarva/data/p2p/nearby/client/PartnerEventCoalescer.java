@@ -0,0 +1,307 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Coalesces the distance and BLE signal readings of each partner, by UUID, received within a
+ * configurable time window into a single {@link PartnerResult}. With many partners in range,
+ * Nearby invokes <code>onDistanceChanged()</code> and <code>onBleSignalChanged()</code> in bursts
+ * and without coalescing each reading would be passed on to every subscriber.
+ * <p>
+ * Found and lost partners are not coalesced and are passed on immediately. A lost partner also
+ * drops any readings pending for the partner so a stale reading cannot follow the lost result.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerEventCoalescer {
+
+    /**
+     * Receives the results passed through or flushed from the coalescer.
+     */
+    public interface OnResultListener {
+
+        /**
+         * Called for each found, lost or coalesced partner result.
+         *
+         * @param result The PartnerResult
+         */
+        void onResult(@NonNull PartnerResult result);
+    }
+
+    /**
+     * Latest known readings for a single partner.
+     */
+    private static class Reading {
+
+        /**
+         * The most recent Partner received, readings are copied into this on flush.
+         */
+        Partner partner;
+
+        /**
+         * The Mode of the most recent message received.
+         */
+        PartnerMessage.Mode mode;
+
+        double distance;
+        int accuracy;
+        int rssi;
+        double filteredRssi;
+        int txPower;
+
+        /**
+         * True if a reading was received since the last flush.
+         */
+        boolean isDirty;
+    }
+
+    /**
+     * Object to use for synchronizing the readings Map.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Latest readings by partner UUID, insertion ordered so partners flush in order first heard.
+     */
+    private final Map<String, Reading> readings;
+
+    /**
+     * The coalescing window in milliseconds.
+     */
+    private final long windowMs;
+
+    /**
+     * Worker used to schedule the flush at the end of a window.
+     */
+    private final Scheduler.Worker worker;
+
+    /**
+     * Receives found, lost and flushed results.
+     */
+    private final OnResultListener listener;
+
+    /**
+     * The scheduled flush, null if no readings are pending.
+     */
+    private Disposable scheduledFlush;
+
+    /**
+     * Constructor.
+     *
+     * @param windowMs  The coalescing window in milliseconds, must be greater than zero
+     * @param scheduler The RxJava Scheduler to run the flush at the end of each window
+     * @param listener  Receives the found, lost and coalesced results
+     */
+    public PartnerEventCoalescer(long windowMs, @NonNull Scheduler scheduler,
+            @NonNull OnResultListener listener) {
+        if (windowMs <= 0) {
+            throw new IllegalArgumentException("Parameter windowMs must be greater than zero");
+        }
+
+        this.windowMs = windowMs;
+        this.listener = listener;
+        worker = scheduler.createWorker();
+        readings = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the coalescing window in milliseconds.
+     *
+     * @return The window in milliseconds
+     */
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Passes on a found partner immediately.
+     *
+     * @param partner The found Partner
+     * @param mode    The Mode of the received message, null if not known
+     */
+    public void onFound(@NonNull Partner partner, PartnerMessage.Mode mode) {
+        String uuid = partner.getUuid();
+        if (uuid != null) {
+            synchronized (lock) {
+                Reading reading = readings.get(uuid);
+                if (reading == null) {
+                    reading = new Reading();
+                    readings.put(uuid, reading);
+                }
+                reading.partner = partner;
+                reading.mode = mode;
+            }
+        }
+
+        listener.onResult(new PartnerResult(partner, false, mode));
+    }
+
+    /**
+     * Passes on a lost partner immediately, dropping any pending readings for the partner.
+     *
+     * @param partner The lost Partner
+     * @param mode    The Mode of the received message, null if not known
+     */
+    public void onLost(@NonNull Partner partner, PartnerMessage.Mode mode) {
+        String uuid = partner.getUuid();
+        if (uuid != null) {
+            synchronized (lock) {
+                readings.remove(uuid);
+            }
+        }
+
+        listener.onResult(new PartnerResult(partner, false, mode));
+    }
+
+    /**
+     * Merges the distance and accuracy of a partner into its pending reading.
+     *
+     * @param partner   The Partner the distance was received for
+     * @param mode      The Mode of the received message, null if not known
+     * @param distance  The distance in meters
+     * @param accuracy  The accuracy of the distance
+     */
+    public void onDistanceChanged(@NonNull Partner partner, PartnerMessage.Mode mode,
+            double distance, int accuracy) {
+        synchronized (lock) {
+            Reading reading = getReading(partner, mode);
+            if (reading == null) {
+                return;
+            }
+            reading.distance = distance;
+            reading.accuracy = accuracy;
+            markDirty(reading);
+        }
+    }
+
+    /**
+     * Merges the RSSI and TX power of a partner into its pending reading, along with the
+     * filtered RSSI set on the partner.
+     *
+     * @param partner   The Partner the signal was received for
+     * @param mode      The Mode of the received message, null if not known
+     * @param rssi      The RSSI value
+     * @param txPower   The TX power value
+     */
+    public void onBleSignalChanged(@NonNull Partner partner, PartnerMessage.Mode mode,
+            int rssi, int txPower) {
+        synchronized (lock) {
+            Reading reading = getReading(partner, mode);
+            if (reading == null) {
+                return;
+            }
+            reading.rssi = rssi;
+            reading.filteredRssi = partner.getFilteredRssi();
+            reading.txPower = txPower;
+            markDirty(reading);
+        }
+    }
+
+    /**
+     * Emits one result for each partner with readings received within the current window.
+     */
+    public void flush() {
+        List<PartnerResult> results;
+        synchronized (lock) {
+            scheduledFlush = null;
+            results = new ArrayList<>(readings.size());
+            for (Reading reading : readings.values()) {
+                if ( ! reading.isDirty) {
+                    continue;
+                }
+
+                Partner partner = reading.partner;
+                partner.setDistance(reading.distance);
+                partner.setAccuracy(reading.accuracy);
+                partner.setRssi(reading.rssi);
+                partner.setFilteredRssi(reading.filteredRssi);
+                partner.setTxPower(reading.txPower);
+                partner.setEmitting(true);
+                reading.isDirty = false;
+                results.add(new PartnerResult(partner, true, reading.mode));
+            }
+        }
+
+        // emit outside the lock, subscribers may take their time
+        for (PartnerResult result : results) {
+            listener.onResult(result);
+        }
+    }
+
+    /**
+     * Cancels any scheduled flush and drops all readings.
+     */
+    public void clear() {
+        synchronized (lock) {
+            if (scheduledFlush != null) {
+                scheduledFlush.dispose();
+                scheduledFlush = null;
+            }
+            readings.clear();
+        }
+    }
+
+    /**
+     * Clears the coalescer and releases the Scheduler worker. Instance should not be used after.
+     */
+    public void dispose() {
+        clear();
+        worker.dispose();
+    }
+
+    /**
+     * Returns the Reading for a partner, creating it if none. Note that the caller must hold the
+     * lock.
+     *
+     * @param partner   The Partner
+     * @param mode      The Mode of the received message
+     * @return          The Reading or null if the partner has no UUID
+     */
+    private Reading getReading(Partner partner, PartnerMessage.Mode mode) {
+        String uuid = partner.getUuid();
+        if (uuid == null) {
+            return null;
+        }
+
+        Reading reading = readings.get(uuid);
+        if (reading == null) {
+            reading = new Reading();
+            readings.put(uuid, reading);
+        }
+        reading.partner = partner;
+        reading.mode = mode;
+        return reading;
+    }
+
+    /**
+     * Flags a Reading as pending and schedules a flush at the end of the window if not already
+     * scheduled. Note that the caller must hold the lock.
+     *
+     * @param reading The Reading
+     */
+    private void markDirty(Reading reading) {
+        reading.isDirty = true;
+        if (scheduledFlush == null) {
+            scheduledFlush = worker.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns each partner a small int handle, the index its state is kept at in the primitive
+ * arrays of the {@link PartnerRssiFilter} and {@link PartnerTrendDetector}, so a reading of a
+ * known partner allocates nothing. A handle is freed when the partner is removed and, when all
+ * handles are in use, the handle of the partner least recently used is reassigned.
+ * <p>
+ * Not thread safe, the owner synchronizes access.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+class PartnerHandleTable {
+
+    /**
+     * Number of handles.
+     */
+    private final int capacity;
+
+    /**
+     * Handles by partner UUID.
+     */
+    private final Map<String, Integer> handles;
+
+    /**
+     * Boxed handles, so assigning a handle does not allocate.
+     */
+    private final Integer[] handleKeys;
+
+    /**
+     * Partner UUID by handle, null if the handle is free.
+     */
+    private final String[] uuids;
+
+    /**
+     * Free handles, a stack of the first <code>freeCount</code> elements.
+     */
+    private final int[] freeHandles;
+    private int freeCount;
+
+    /**
+     * Sequence of the last use by handle, to find the least recently used.
+     */
+    private final long[] lastUsed;
+    private long sequence;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of handles, greater than zero
+     */
+    PartnerHandleTable(int capacity) {
+        this.capacity = capacity;
+        handles = new HashMap<>(capacity * 2);
+        handleKeys = new Integer[capacity];
+        uuids = new String[capacity];
+        freeHandles = new int[capacity];
+        lastUsed = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            handleKeys[i] = i;
+        }
+        freeAll();
+    }
+
+    /**
+     * Returns the handle assigned to a partner.
+     *
+     * @param uuid  The partner UUID
+     * @return      The handle or -1 if none is assigned
+     */
+    int find(@NonNull String uuid) {
+        Integer handle = handles.get(uuid);
+        return handle == null ? -1 : handle;
+    }
+
+    /**
+     * Assigns a handle to a partner without one, a free handle or else that of the partner
+     * least recently used. The owner resets the state at the handle.
+     *
+     * @param uuid  The partner UUID
+     * @return      The handle
+     */
+    int assign(@NonNull String uuid) {
+        int assigned;
+        if (freeCount > 0) {
+            assigned = freeHandles[--freeCount];
+        } else {
+            assigned = 0;
+            for (int i = 1; i < capacity; i++) {
+                if (lastUsed[i] < lastUsed[assigned]) {
+                    assigned = i;
+                }
+            }
+            handles.remove(uuids[assigned]);
+        }
+
+        uuids[assigned] = uuid;
+        lastUsed[assigned] = ++sequence;
+        handles.put(uuid, handleKeys[assigned]);
+        return assigned;
+    }
+
+    /**
+     * Marks a handle the most recently used.
+     *
+     * @param handle The handle
+     */
+    void touch(int handle) {
+        lastUsed[handle] = ++sequence;
+    }
+
+    /**
+     * Throws if a handle is not assigned to a partner.
+     *
+     * @param handle The handle
+     */
+    void checkAssigned(int handle) {
+        if (handle < 0 || handle >= capacity || uuids[handle] == null) {
+            throw new IllegalArgumentException("Parameter handle [" + handle + "] not assigned");
+        }
+    }
+
+    /**
+     * Frees the handle of a partner.
+     *
+     * @param uuid  The partner UUID
+     * @return      True if the partner had a handle, false if not
+     */
+    boolean remove(@NonNull String uuid) {
+        Integer handle = handles.remove(uuid);
+        if (handle == null) {
+            return false;
+        }
+
+        uuids[handle] = null;
+        freeHandles[freeCount++] = handle;
+        return true;
+    }
+
+    /**
+     * Returns the number of partners with a handle assigned.
+     *
+     * @return The number of partners
+     */
+    int size() {
+        return handles.size();
+    }
+
+    /**
+     * Frees the handles of all partners.
+     */
+    void clear() {
+        handles.clear();
+        Arrays.fill(uuids, null);
+        freeAll();
+    }
+
+    /**
+     * Marks all handles free, lowest handles assigned first.
+     */
+    private void freeAll() {
+        freeCount = capacity;
+        for (int i = 0; i < capacity; i++) {
+            freeHandles[i] = capacity - 1 - i;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.FlowableOperator;
+
+/**
+ * RxJava operator that applies backpressure to {@link PartnerResult} emissions by keeping only
+ * the latest pending distance or BLE signal reading, see {@link PartnerResult#isReading()}, of
+ * each partner by UUID. A reading received while an older reading of the same partner is waiting
+ * for a request replaces the older reading, keeping its place in the queue.
+ * <p>
+ * Found and lost partners, publish/subscribe status and error results are never dropped. A found
+ * or lost partner also closes any pending reading of the partner to replacement, so readings are
+ * never reordered around it.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerLatestReadingOperator implements FlowableOperator<PartnerResult, PartnerResult> {
+
+    /**
+     * Count of stale readings dropped, shared by all subscribers of the operator.
+     */
+    private final AtomicLong droppedReadings;
+
+    /**
+     * Constructor.
+     *
+     * @param droppedReadings Counter to increment for each stale reading dropped
+     */
+    public PartnerLatestReadingOperator(@NonNull AtomicLong droppedReadings) {
+        this.droppedReadings = droppedReadings;
+    }
+
+    @Override
+    public Subscriber<? super PartnerResult> apply(Subscriber<? super PartnerResult> subscriber) {
+        return new LatestReadingSubscriber(subscriber, droppedReadings);
+    }
+
+    /**
+     * Queued result, the result of a reading may be replaced while waiting for a request.
+     */
+    private static class Slot {
+
+        /**
+         * The queued PartnerResult.
+         */
+        PartnerResult result;
+
+        /**
+         * The partner UUID if the result is a reading open to replacement, null if not.
+         */
+        final String readingUuid;
+
+        Slot(PartnerResult result, String readingUuid) {
+            this.result = result;
+            this.readingUuid = readingUuid;
+        }
+    }
+
+    /**
+     * Subscribes to the upstream without bounds and emits to the downstream as requested.
+     */
+    private static class LatestReadingSubscriber implements Subscriber<PartnerResult>, Subscription {
+
+        private final Subscriber<? super PartnerResult> downstream;
+
+        private final AtomicLong droppedReadings;
+
+        /**
+         * Results waiting for a downstream request, guarded by itself.
+         */
+        private final ArrayDeque<Slot> queue;
+
+        /**
+         * Queued readings open to replacement by partner UUID, guarded by the queue.
+         */
+        private final Map<String, Slot> pendingReadings;
+
+        private final AtomicLong requested;
+
+        /**
+         * Work-in-progress counter, ensures a single thread drains the queue at a time.
+         */
+        private final AtomicInteger wip;
+
+        private Subscription upstream;
+
+        private Throwable error;
+
+        private volatile boolean done;
+
+        private volatile boolean cancelled;
+
+        LatestReadingSubscriber(Subscriber<? super PartnerResult> downstream,
+                AtomicLong droppedReadings) {
+            this.downstream = downstream;
+            this.droppedReadings = droppedReadings;
+            queue = new ArrayDeque<>();
+            pendingReadings = new HashMap<>();
+            requested = new AtomicLong();
+            wip = new AtomicInteger();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(PartnerResult result) {
+            String uuid = result.getUuid();
+            synchronized (queue) {
+                if (uuid == null) {
+                    queue.offer(new Slot(result, null));
+                } else if ( ! result.isReading()) {
+                    pendingReadings.remove(uuid);
+                    queue.offer(new Slot(result, null));
+                } else {
+                    Slot slot = pendingReadings.get(uuid);
+                    if (slot == null) {
+                        slot = new Slot(result, uuid);
+                        pendingReadings.put(uuid, slot);
+                        queue.offer(slot);
+                    } else {
+                        slot.result = result;
+                        droppedReadings.incrementAndGet();
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("Request must be greater than zero: " + n));
+                return;
+            }
+
+            for (;;) {
+                long current = requested.get();
+                long next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+                if (requested.compareAndSet(current, next)) {
+                    break;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if ( ! cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                if (wip.getAndIncrement() == 0) {
+                    clear();
+                }
+            }
+        }
+
+        /**
+         * Emits queued results while the downstream has outstanding requests.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            for (;;) {
+                long r = requested.get();
+                long emitted = 0L;
+
+                while (emitted != r) {
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+
+                    boolean isDone = done;
+                    PartnerResult result = poll();
+                    if (result == null) {
+                        if (isDone) {
+                            terminate();
+                            return;
+                        }
+                        break;
+                    }
+
+                    downstream.onNext(result);
+                    emitted++;
+                }
+
+                if (cancelled) {
+                    clear();
+                    return;
+                }
+
+                if (done && isEmpty()) {
+                    terminate();
+                    return;
+                }
+
+                if (emitted != 0L && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        private PartnerResult poll() {
+            synchronized (queue) {
+                Slot slot = queue.poll();
+                if (slot == null) {
+                    return null;
+                }
+                if (slot.readingUuid != null) {
+                    pendingReadings.remove(slot.readingUuid);
+                }
+                return slot.result;
+            }
+        }
+
+        private boolean isEmpty() {
+            synchronized (queue) {
+                return queue.isEmpty();
+            }
+        }
+
+        private void clear() {
+            synchronized (queue) {
+                queue.clear();
+                pendingReadings.clear();
+            }
+        }
+
+        private void terminate() {
+            if (error != null) {
+                downstream.onError(error);
+            } else {
+                downstream.onComplete();
+            }
+        }
+    }
+}
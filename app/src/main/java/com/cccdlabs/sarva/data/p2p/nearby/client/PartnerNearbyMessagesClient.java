@@ -5,9 +5,14 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.cccdlabs.sarva.data.p2p.distance.PartnerDistanceEstimator;
 import com.cccdlabs.sarva.data.p2p.nearby.exception.ClientStateException;
 import com.cccdlabs.sarva.data.p2p.nearby.exception.PermissionException;
+import com.cccdlabs.sarva.data.p2p.nearby.record.NearbyEventLogWriter;
+import com.cccdlabs.sarva.data.p2p.nearby.record.NearbyEventReplayer;
+import com.cccdlabs.sarva.data.p2p.nearby.record.RecordingMessageListener;
 import com.cccdlabs.sarva.data.p2p.nearby.utils.NearbyUtils;
+import com.cccdlabs.sarva.data.p2p.transport.PartnerTransport;
 import com.cccdlabs.sarva.domain.model.partners.Partner;
 import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
 import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
@@ -17,26 +22,27 @@ import com.google.android.gms.nearby.messages.Distance;
 import com.google.android.gms.nearby.messages.Message;
 import com.google.android.gms.nearby.messages.MessageListener;
 import com.google.android.gms.nearby.messages.MessagesClient;
-import com.google.android.gms.nearby.messages.PublishCallback;
-import com.google.android.gms.nearby.messages.PublishOptions;
 import com.google.android.gms.nearby.messages.StatusCallback;
-import com.google.android.gms.nearby.messages.Strategy;
-import com.google.android.gms.nearby.messages.SubscribeCallback;
-import com.google.android.gms.nearby.messages.SubscribeOptions;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
-
-import java.util.HashMap;
-import java.util.Map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 import io.reactivex.FlowableEmitter;
 import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.exceptions.Exceptions;
 import io.reactivex.functions.Cancellable;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * Abstraction for Nearby Messages implementation of P2P communication between devices.
@@ -47,63 +53,91 @@ import io.reactivex.functions.Cancellable;
 public final class PartnerNearbyMessagesClient {
 
     /**
-     * Object to use for synchronizing Map variables.
+     * Backpressure applied to the Flowable returned by {@link #getPartnerFlowable()}.
      */
-    private static final Object LOCK = new Object();
+    public enum BackpressureMode {
+
+        /**
+         * No backpressure, results are emitted as received and subscribers must keep up.
+         */
+        NONE,
+
+        /**
+         * Buffers all results until requested by subscribers.
+         */
+        BUFFER,
+
+        /**
+         * Buffers found, lost, status and error results until requested but keeps only the latest
+         * pending distance or BLE signal reading of each partner.
+         *
+         * @see PartnerLatestReadingOperator
+         */
+        LATEST_READING
+    }
 
     /**
-     * Nearby discovery mode, set to broadcast and scan for pairing codes to/from other devices.
+     * Grace period in milliseconds the emitters of the application keep publishing and
+     * subscribing after their last subscriber leaves, long enough for the subscriber of the
+     * next screen to attach.
      */
-    private static final int DISCOVERY_MODE = Strategy.DISCOVERY_MODE_DEFAULT;
+    public static final long DEFAULT_TEARDOWN_DELAY_MS = 5000L;
 
     /**
-     * Nearby distance covered, allows messages to be exchanged over any distance.
+     * Receive modes mask of an emitter receiving partners of all modes, including partners whose
+     * message mode is not known.
      */
-    private static final int DISTANCE_TYPE = Strategy.DISTANCE_TYPE_DEFAULT;
+    private static final int ALL_MODES = 0;
 
     /**
-     * Nearby TTL in seconds, NOTE: Strategy.TTL_SECONDS_INFINITE not supported for publishing.
+     * Empty array of emitters, the initial and final state of {@link #emitters}.
      */
-    private static final int TTL_SECONDS = Strategy.TTL_SECONDS_MAX;
+    private static final Route[] EMPTY_EMITTERS = new Route[0];
 
     /**
-     * Container for instances created from the {@link Builder} class.
+     * Container for instances created from the {@link Builder} class. Instances are tracked by
+     * identity, iteration is over a snapshot so it does not block adding or removing.
      *
      * @see Builder
      */
-    private static volatile Map<Integer, PartnerNearbyMessagesClient> instances;
+    private static final Set<PartnerNearbyMessagesClient> instances = new CopyOnWriteArraySet<>();
 
     /**
-     * Container for RxJava emitters that subscribe to Nearby Messages.
+     * Copy-on-write array of RxJava emitters that subscribe to Nearby Messages, each routed the
+     * partners of its receive modes from the single process-wide Nearby subscription. Emitters
+     * are added and removed by compare-and-set of a new array so results are multicast to a
+     * stable snapshot without locking, and emitters are tracked by identity rather than hash code.
      *
      * @see <a href="http://reactivex.io/RxJava/javadoc/io/reactivex/FlowableEmitter.html" target="_top">RxJava FlowableEmitter</a>
      */
-    private static volatile Map<Integer, FlowableEmitter<PartnerResult>> emitters;
+    private static final AtomicReference<Route[]> emitters = new AtomicReference<>(EMPTY_EMITTERS);
 
     /**
-     * The publish/subscribe status to emit upon status change.
+     * The publish/subscribe status, a copy of which is emitted upon status change.
      */
-    private volatile static PartnerResult.Status pubSubStatus;
+    private static final PartnerResult.Status pubSubStatus = new PartnerResult.Status();
 
     /**
-     * Flag if device is currently publishing a message.
+     * Lifecycle of Nearby Messages publishing, shared by all instances like the publication.
      */
-    private volatile static boolean isPublishing;
+    private static final PubSubStateMachine publishState = new PubSubStateMachine();
 
     /**
-     * Flag if device is currently listening for messages from other devices.
+     * Lifecycle of Nearby Messages subscribing, shared by all instances like the subscription.
      */
-    private volatile static boolean isSubscribing;
+    private static final PubSubStateMachine subscribeState = new PubSubStateMachine();
 
     /**
-     * True if publishing initialized, false if not.
+     * Latest presence of each partner heard by the process-wide subscription, replayed to
+     * emitters registering after the partners were found.
      */
-    private volatile static boolean hasInitializedPublish;
+    private static final PartnerPresenceTable presenceTable = new PartnerPresenceTable();
 
     /**
-     * True if publishing initialized, false if not.
+     * {@link PartnerMessage.Mode} of the message last published, a different publish mode is a
+     * change of configuration which restarts publishing.
      */
-    private volatile static boolean hasInitializedSubscribe;
+    private volatile static PartnerMessage.Mode publishedMode;
 
     /**
      * Tag used for debug.
@@ -120,15 +154,41 @@ public final class PartnerNearbyMessagesClient {
      */
     private static MessageListener messageListener;
 
+    /**
+     * The client whose reading pipeline, its coalescer, silence detector, RSSI filter, distance
+     * estimator and event recorder, the subscribed {@link #messageListener} runs, null if not
+     * subscribed. The pipeline is disposed once unsubscribed if the client has finished.
+     */
+    private volatile static PartnerNearbyMessagesClient subscribedClient;
+
     /**
      * The Nearby message that emits from this device to other devices.
      */
     private static Message message;
 
     /**
-     * The MessagesClient to use for publishing and subscribing.
+     * The Nearby transport used for publishing and subscribing when no transport is set on the
+     * instance, created on first use.
+     */
+    private static PartnerTransport transport;
+
+    /**
+     * The transport the message was last published with, unpublished with the same whichever
+     * client stops publishing. Null if not published.
+     */
+    private static PartnerTransport publishTransport;
+
+    /**
+     * The transport the message listener was last subscribed with, unsubscribed with the same
+     * whichever client stops subscribing. Null if not subscribed.
+     */
+    private static PartnerTransport subscribeTransport;
+
+    /**
+     * The teardown of publishing and subscribing delayed after the last emitter left, null if
+     * none is pending. Guarded by the class.
      */
-    private static MessagesClient messagesClient;
+    private static TeardownTask pendingTeardown;
 
     /**
      * The Android application context.
@@ -147,6 +207,14 @@ public final class PartnerNearbyMessagesClient {
      */
     private Flowable<PartnerResult> flowable;
 
+    /**
+     * RxJava Flowable objects receiving partners of only some modes, indexed by receive modes
+     * mask and created on first use.
+     *
+     * @see #getPartnerFlowable(PartnerMessage.Mode, PartnerMessage.Mode...)
+     */
+    private final Flowable<PartnerResult>[] modeFlowables = newFlowableArray();
+
     /**
      * {@link com.cccdlabs.sarva.domain.model.partners.PartnerMessage.Mode} for publishing.
      */
@@ -165,29 +233,207 @@ public final class PartnerNearbyMessagesClient {
     /**
      * True if class instance has called {@link #finish()}, effectively ending functionality.
      */
-    private boolean hasFinished;
+    private volatile boolean hasFinished;
+
+    /**
+     * The instance PartnerTransport to use for publishing and subscribing, null to use Nearby
+     * Messages.
+     */
+    private PartnerTransport subTransport;
+
+    /**
+     * Coalesces partner distance and BLE signal readings, null if readings are emitted as received.
+     */
+    private PartnerEventCoalescer coalescer;
+
+    /**
+     * Detects partners gone silent before Nearby reports them lost, null if not detected.
+     */
+    private PartnerSilenceDetector silenceDetector;
+
+    /**
+     * Smooths the BLE RSSI readings of each partner, null if not smoothed.
+     */
+    private PartnerRssiFilter rssiFilter;
+
+    /**
+     * Estimates partner distances from the BLE signal, null if not estimated.
+     */
+    private PartnerDistanceEstimator distanceEstimator;
+
+    /**
+     * Records the Nearby messages received to an event log, null if not recorded.
+     */
+    private NearbyEventLogWriter eventRecorder;
+
+    /**
+     * Backpressure applied to the instance Flowable.
+     */
+    private BackpressureMode backpressureMode;
+
+    /**
+     * Count of stale partner readings dropped by the {@link BackpressureMode#LATEST_READING} mode.
+     */
+    private final AtomicLong droppedReadings = new AtomicLong();
 
     /**
-     * The instance MessagesClient to use for publishing and subscribing. Use should only be limited to mock
-     * instances for unit tests.
+     * Delay in milliseconds before publishing and subscribing stop once the last emitter left,
+     * 0 to stop at once.
      */
-    private MessagesClient subMessagesClient;
+    private long teardownDelayMs;
+
+    /**
+     * The RxJava Scheduler the delayed teardown runs on.
+     */
+    private Scheduler teardownScheduler;
 
     /**
      * True to debug output to System.out.
      */
     private boolean debug;
 
+    /**
+     * A registered emitter and the {@link PartnerMessage.Mode}s of partners routed to it. Live
+     * results are held from registering until the current status and partners are replayed to
+     * the emitter, so a replayed result never follows a newer live one.
+     */
+    private static final class Route {
+
+        /**
+         * The client instance whose Flowable the emitter subscribed to.
+         */
+        final PartnerNearbyMessagesClient client;
+
+        /**
+         * The RxJava emitter.
+         */
+        final FlowableEmitter<PartnerResult> emitter;
+
+        /**
+         * Bit mask of Mode ordinals routed to the emitter, {@link #ALL_MODES} for all.
+         */
+        final int receiveModes;
+
+        /**
+         * Live results held while replaying, null once replayed. Guarded by the Route.
+         */
+        private volatile List<PartnerResult> held = new ArrayList<>();
+
+        Route(PartnerNearbyMessagesClient client, FlowableEmitter<PartnerResult> emitter,
+                int receiveModes) {
+            this.client = client;
+            this.emitter = emitter;
+            this.receiveModes = receiveModes;
+        }
+
+        /**
+         * Passes a live result on to the emitter, or holds it until replayed.
+         *
+         * @param result The PartnerResult
+         */
+        void onNext(PartnerResult result) {
+            if (held != null) {
+                synchronized (this) {
+                    List<PartnerResult> results = held;
+                    if (results != null) {
+                        results.add(result);
+                        return;
+                    }
+                }
+            }
+
+            emitter.onNext(result);
+        }
+
+        /**
+         * Ends the replay, passing on the live results held meanwhile in order.
+         */
+        synchronized void endReplay() {
+            List<PartnerResult> results = held;
+            if (results == null) {
+                return;
+            }
+
+            try {
+                for (PartnerResult result : results) {
+                    if (emitter.isCancelled()) {
+                        return;
+                    }
+                    emitter.onNext(result);
+                }
+            } finally {
+                // live results wait on the Route until those held are passed on
+                held = null;
+            }
+        }
+
+        /**
+         * Returns true if the result is routed to the emitter. Status and error results are
+         * routed to all emitters, partners only to emitters of a client that subscribes.
+         *
+         * @param result    The PartnerResult
+         * @return          True if routed to the emitter
+         */
+        boolean accepts(PartnerResult result) {
+            if (result.getPartner() == null) {
+                return true;
+            }
+            if ( ! client.hasSubscribe) {
+                // partners of the subscription of another client, not asked for
+                return false;
+            }
+            if (receiveModes == ALL_MODES) {
+                return true;
+            }
+
+            PartnerMessage.Mode mode = result.getMode();
+            return mode != null && (receiveModes & (1 << mode.ordinal())) != 0;
+        }
+    }
+
     /**
      * Extension of the {@link MessageListener} that links the Nearby messages received to the
-     * RxJava Flowable objects that emit the result in the application.
+     * RxJava Flowable objects that emit the result in the application. Messages whose content
+     * does not decode to a {@link PartnerMessage} are ignored, whichever transport they came from.
      */
     public static class PartnerMessageListener extends MessageListener {
 
+        /**
+         * Coalesces distance and BLE signal readings, null to emit each reading as received.
+         */
+        private final PartnerEventCoalescer coalescer;
+
+        /**
+         * Detects partners gone silent, null if not detected.
+         */
+        private final PartnerSilenceDetector silenceDetector;
+
+        /**
+         * Smooths BLE RSSI readings, null if not smoothed.
+         */
+        private final PartnerRssiFilter rssiFilter;
+
+        /**
+         * Estimates distances Nearby does not measure, null if not estimated.
+         */
+        private final PartnerDistanceEstimator distanceEstimator;
+
         /**
          * Constructor.
+         *
+         * @param coalescer         The PartnerEventCoalescer or null to emit readings as received
+         * @param silenceDetector   The PartnerSilenceDetector or null if not detected
+         * @param rssiFilter        The PartnerRssiFilter or null if not smoothed
+         * @param distanceEstimator The PartnerDistanceEstimator or null if not estimated
          */
-        private PartnerMessageListener() {}
+        private PartnerMessageListener(PartnerEventCoalescer coalescer,
+                PartnerSilenceDetector silenceDetector, PartnerRssiFilter rssiFilter,
+                PartnerDistanceEstimator distanceEstimator) {
+            this.coalescer = coalescer;
+            this.silenceDetector = silenceDetector;
+            this.rssiFilter = rssiFilter;
+            this.distanceEstimator = distanceEstimator;
+        }
 
         /**
          * Receives a message from a "lost" partner and emits the approximate distance and signal
@@ -203,9 +449,23 @@ public final class PartnerNearbyMessagesClient {
          */
         @Override
         public void onFound(Message message) {
-            Partner partner = NearbyUtils.toPartnerModel(message);
+            PartnerMessage partnerMessage = NearbyUtils.toPartnerMessage(message);
+            if (partnerMessage == null) {
+                // malformed content or of a later version, not a partner
+                return;
+            }
+            Partner partner = NearbyUtils.toPartnerModel(partnerMessage);
+            PartnerMessage.Mode mode = partnerMessage.getMode();
             partner.setEmitting(true); // Set the partner to true since within range
-            emitResult(new PartnerResult(partner));
+            presenceTable.onFound(partner, mode);
+            if (silenceDetector != null) {
+                silenceDetector.onHeard(partner, mode);
+            }
+            if (coalescer != null) {
+                coalescer.onFound(partner, mode);
+            } else {
+                emitResult(new PartnerResult(partner, false, mode));
+            }
         }
 
         /**
@@ -219,9 +479,27 @@ public final class PartnerNearbyMessagesClient {
          */
         @Override
         public void onLost(Message message) {
-            Partner partner = NearbyUtils.toPartnerModel(message);
+            PartnerMessage partnerMessage = NearbyUtils.toPartnerMessage(message);
+            if (partnerMessage == null) {
+                // malformed content or of a later version, not a partner
+                return;
+            }
+            Partner partner = NearbyUtils.toPartnerModel(partnerMessage);
+            PartnerMessage.Mode mode = partnerMessage.getMode();
             partner.setEmitting(false); // Set the partner to false since out of range
-            emitResult(new PartnerResult(partner));
+            if (silenceDetector != null && ! silenceDetector.remove(partner.getUuid())) {
+                // already reported lost when it went silent
+                return;
+            }
+            if (rssiFilter != null && partner.getUuid() != null) {
+                rssiFilter.remove(partner.getUuid());
+            }
+            presenceTable.onLost(partner, mode);
+            if (coalescer != null) {
+                coalescer.onLost(partner, mode);
+            } else {
+                emitResult(new PartnerResult(partner, false, mode));
+            }
         }
 
         /**
@@ -230,6 +508,9 @@ public final class PartnerNearbyMessagesClient {
          * Creates a {@link Partner} object from the user, sets the emitting flag to true and emits
          * it through a {@link PartnerResult}.
          * <p>
+         * If Nearby gives no distance and a {@link PartnerDistanceEstimator} is set, the distance
+         * is estimated from the last BLE signal of the partner instead.
+         * <p>
          * Errors occurring within this call are passed via a <code>PartnerResult</code> and emitted
          * keeping the subscription flow active.
          *
@@ -239,11 +520,37 @@ public final class PartnerNearbyMessagesClient {
          */
         @Override
         public void onDistanceChanged(Message message, Distance distance) {
-            Partner partner = NearbyUtils.toPartnerModel(message);
-            partner.setDistance(distance.getMeters());
-            partner.setAccuracy(distance.getAccuracy());
+            PartnerMessage partnerMessage = NearbyUtils.toPartnerMessage(message);
+            if (partnerMessage == null) {
+                // malformed content or of a later version, not a partner
+                return;
+            }
+            Partner partner = NearbyUtils.toPartnerModel(partnerMessage);
+            PartnerMessage.Mode mode = partnerMessage.getMode();
+            double meters = distance.getMeters();
+            int accuracy = distance.getAccuracy();
+            boolean isMeasured = ! Double.isNaN(meters);
+            if (! isMeasured && distanceEstimator != null && partner.getUuid() != null) {
+                PartnerPresenceTable.Presence last = presenceTable.get(partner.getUuid());
+                if (last != null) {
+                    meters = distanceEstimator.estimate(partner.getDeviceName(),
+                            last.getFilteredRssi(), last.getTxPower());
+                    accuracy = PartnerDistanceEstimator.ACCURACY;
+                }
+            }
+            presenceTable.onDistanceChanged(partner, mode, meters, accuracy, isMeasured);
+            if (silenceDetector != null) {
+                silenceDetector.onHeard(partner, mode);
+            }
+            if (coalescer != null) {
+                coalescer.onDistanceChanged(partner, mode, meters, accuracy);
+                return;
+            }
+
+            partner.setDistance(meters);
+            partner.setAccuracy(accuracy);
             partner.setEmitting(true); // Set the partner to true since within range
-            emitResult(new PartnerResult(partner));
+            emitResult(new PartnerResult(partner, true, mode));
         }
 
         /**
@@ -251,7 +558,10 @@ public final class PartnerNearbyMessagesClient {
          * device changes.
          * <p>
          * Creates a {@link Partner} object from the user, sets the emitting flag to true and emits
-         * it through a {@link PartnerResult}.
+         * it through a {@link PartnerResult}, with the RSSI both as received and smoothed by the
+         * {@link PartnerRssiFilter} if set. Until Nearby measures the distance to the partner, the
+         * distance is estimated from the filtered RSSI by the {@link PartnerDistanceEstimator} if
+         * set.
          * <p>
          * Errors occurring within this call are passed via a <code>PartnerResult</code> and emitted
          * keeping the subscription flow active.
@@ -262,11 +572,50 @@ public final class PartnerNearbyMessagesClient {
          */
         @Override
         public void onBleSignalChanged(Message message, BleSignal bleSignal) {
-            Partner partner = NearbyUtils.toPartnerModel(message);
+            PartnerMessage partnerMessage = NearbyUtils.toPartnerMessage(message);
+            if (partnerMessage == null) {
+                // malformed content or of a later version, not a partner
+                return;
+            }
+            Partner partner = NearbyUtils.toPartnerModel(partnerMessage);
+            PartnerMessage.Mode mode = partnerMessage.getMode();
+            partner.setFilteredRssi(rssiFilter == null || partner.getUuid() == null
+                    ? bleSignal.getRssi()
+                    : rssiFilter.filter(partner.getUuid(), bleSignal.getRssi()));
+            double estimate = Double.NaN;
+            if (distanceEstimator != null && partner.getUuid() != null) {
+                PartnerPresenceTable.Presence last = presenceTable.get(partner.getUuid());
+                if (last == null || ! last.isDistanceMeasured()) {
+                    estimate = distanceEstimator.estimate(partner.getDeviceName(),
+                            partner.getFilteredRssi(), bleSignal.getTxPower());
+                }
+            }
+            boolean isEstimated = ! Double.isNaN(estimate);
+            presenceTable.onBleSignalChanged(partner, mode, bleSignal.getRssi(), bleSignal.getTxPower());
+            if (isEstimated) {
+                presenceTable.onDistanceChanged(partner, mode, estimate,
+                        PartnerDistanceEstimator.ACCURACY, false);
+            }
+            if (silenceDetector != null) {
+                silenceDetector.onHeard(partner, mode);
+            }
+            if (coalescer != null) {
+                coalescer.onBleSignalChanged(partner, mode, bleSignal.getRssi(), bleSignal.getTxPower());
+                if (isEstimated) {
+                    coalescer.onDistanceChanged(partner, mode, estimate,
+                            PartnerDistanceEstimator.ACCURACY);
+                }
+                return;
+            }
+
+            if (isEstimated) {
+                partner.setDistance(estimate);
+                partner.setAccuracy(PartnerDistanceEstimator.ACCURACY);
+            }
             partner.setRssi(bleSignal.getRssi());
             partner.setTxPower(bleSignal.getTxPower());
             partner.setEmitting(true); // Set the partner to true since within range
-            emitResult(new PartnerResult(partner));
+            emitResult(new PartnerResult(partner, true, mode));
         }
     }
 
@@ -282,66 +631,84 @@ public final class PartnerNearbyMessagesClient {
         }
     }
 
+    /**
+     * Teardown of publishing and subscribing run once the teardown delay of the client whose
+     * last emitter left has passed, unless an emitter registered meanwhile.
+     */
+    private final class TeardownTask implements Runnable {
+
+        /**
+         * The scheduled run, set while holding the class lock.
+         */
+        private Disposable disposable;
+
+        @Override
+        public void run() {
+            synchronized (PartnerNearbyMessagesClient.class) {
+                if (pendingTeardown != this || emitters.get().length > 0) {
+                    // canceled, or replaced by a later teardown
+                    return;
+                }
+                pendingTeardown = null;
+            }
+
+            teardown();
+        }
+
+        /**
+         * Tears down at once, such as when destroying.
+         */
+        void runNow() {
+            teardown();
+        }
+    }
+
     /**
      * Callback for when Nearby Messages publishing has expired by TTL.
      */
-    protected class PartnerPublishCallback extends PublishCallback {
+    protected class PartnerPublishCallback implements PartnerTransport.ExpiryListener {
         @Override
         public void onExpired() {
             if (debug) {
                 String msg = TAG + "[" + getClass().getSimpleName() + "][onExpired] instance[";
-                msg += PartnerNearbyMessagesClient.this.hashCode() + "]";
+                msg += PartnerNearbyMessagesClient.this.hashCode() + "] state[" + publishState + "]";
                 System.out.println(msg);
             }
 
-            isPublishing = false;
-            /*
-            synchronized (LOCK) {
-                message = null;
+            // Nearby seems to like to invoke the PublishCallback when unpublishing, in which
+            // case the state machine waits on the unpublish result, restarting if necessary
+            if (publishState.getState() == PubSubStateMachine.State.ACTIVE) {
                 pubSubStatus.isPublishing = false;
-                //emitResult(new PartnerResult(pubSubStatus));
-            }
-            */
-
-            // Nearby seems to like to invoke the PublishCallback when unpublishing,
-            // so this bit here to restart publishing if necessary
-            if (hasPublish && ! hasInitializedPublish) {
-                publish();
             }
+            performPublish(publishState.onExpired());
         }
     }
 
     /**
      * Callback for when Nearby Messages subscribing has expired by TTL.
      */
-    protected class PartnerSubscribeCallback extends SubscribeCallback {
+    protected class PartnerSubscribeCallback implements PartnerTransport.ExpiryListener {
         @Override
         public void onExpired() {
             if (debug) {
                 String msg = TAG + "[" + getClass().getSimpleName() + "][onExpired] instance[";
-                msg += PartnerNearbyMessagesClient.this.hashCode() + "]";
+                msg += PartnerNearbyMessagesClient.this.hashCode() + "] state[" + subscribeState + "]";
                 System.out.println(msg);
             }
 
-            isSubscribing = false;
-            // Nearby seems to like to invoke the PublishCallback when unpublishing,
-            // so this bit here to restart publishing if necessary
-            if (hasSubscribe && ! hasInitializedSubscribe) {
-                subscribe();
-            }
-            /*
-            synchronized (LOCK) {
-                messageListener = null;
+            // Nearby seems to like to invoke the SubscribeCallback when unsubscribing, in which
+            // case the state machine waits on the unsubscribe result, restarting if necessary
+            if (subscribeState.getState() == PubSubStateMachine.State.ACTIVE) {
                 pubSubStatus.isSubscribing = false;
-                //emitResult(new PartnerResult(pubSubStatus));
+                releaseSubscribedClient();
             }
-            */
+            performSubscribe(subscribeState.onExpired());
         }
     }
 
     /**
      * Builder pattern class to create instances of PartnerNearbyMessagesClient. Note that instances
-     * are tracked in a {@link Map}.
+     * are tracked in a {@link Set}.
      */
     public static class Builder {
 
@@ -372,9 +739,59 @@ public final class PartnerNearbyMessagesClient {
         private boolean hasSubscribe;
 
         /**
-         * The Nearby Messages client instance.
+         * The transport to publish and subscribe with.
+         */
+        private PartnerTransport transport;
+
+        /**
+         * Window in milliseconds to coalesce partner readings, 0 to emit readings as received.
+         */
+        private long coalesceWindowMs;
+
+        /**
+         * The RxJava Scheduler to flush coalesced partner readings.
+         */
+        private Scheduler coalesceScheduler;
+
+        /**
+         * Silence in milliseconds after which a partner is reported lost, 0 to wait on Nearby.
+         */
+        private long silenceTimeoutMs;
+
+        /**
+         * The RxJava Scheduler to detect silent partners on.
+         */
+        private Scheduler silenceScheduler;
+
+        /**
+         * Event log to record the Nearby messages received to.
+         */
+        private NearbyEventLogWriter eventRecorder;
+
+        /**
+         * Smooths the BLE RSSI readings of each partner.
+         */
+        private PartnerRssiFilter rssiFilter;
+
+        /**
+         * Estimates partner distances Nearby does not measure.
+         */
+        private PartnerDistanceEstimator distanceEstimator;
+
+        /**
+         * Backpressure applied to the client Flowable.
+         */
+        private BackpressureMode backpressureMode;
+
+        /**
+         * Delay in milliseconds before stopping once the last emitter left, 0 to stop at once.
          */
-        private MessagesClient messagesClient;
+        private long teardownDelayMs;
+
+        /**
+         * The RxJava Scheduler to run the delayed teardown on.
+         */
+        private Scheduler teardownScheduler;
 
         /**
          * True for debug output to System.out.
@@ -422,7 +839,9 @@ public final class PartnerNearbyMessagesClient {
         }
 
         /**
-         * Sets subscribing active or inactive. Inactive is default.
+         * Sets subscribing active or inactive. Inactive is default. The Flowable of a client
+         * that does not subscribe receives status and error results only, not the partners
+         * found by the subscriptions of other clients.
          *
          * @param hasSubscribe  True to enable subscribing, false if not
          * @return              Builder instance for chaining methods in this class
@@ -439,60 +858,281 @@ public final class PartnerNearbyMessagesClient {
          * @return                  Builder instance for chaining methods in this class
          */
         public Builder setMessagesClient(MessagesClient messagesClient) {
-            this.messagesClient = messagesClient;
+            this.transport = messagesClient == null
+                    ? null
+                    : new NearbyPartnerTransport(messagesClient, null);
             return this;
         }
 
-        public Builder setDebug(boolean debug) {
-            this.debug = debug;
+        /**
+         * Sets the {@link PartnerTransport} to publish and subscribe with, such as
+         * {@link com.cccdlabs.sarva.data.p2p.udp.UdpMulticastPartnerTransport} on a local
+         * network. Default is null, using Nearby Messages.
+         *
+         * @param transport The PartnerTransport
+         * @return          Builder instance for chaining methods in this class
+         */
+        public Builder setTransport(PartnerTransport transport) {
+            this.transport = transport;
             return this;
         }
 
         /**
-         * Creates and returns an instance of the PartnerNearbyMessagesClient class.
+         * Sets the window in milliseconds to coalesce the distance and BLE signal readings of
+         * each partner into a single emitted {@link PartnerResult}. Found and lost partners are
+         * always emitted immediately. Default is 0, emitting each reading as received.
          *
-         * @return PartnerNearbyMessagesClient object
+         * @param coalesceWindowMs  The window in milliseconds, 0 to disable
+         * @return                  Builder instance for chaining methods in this class
          */
-        public PartnerNearbyMessagesClient build() {
-            checkParameters();
-            PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient();
-            client.activity = activity;
-            client.context = context;
-            client.publishMode = publishMode == null ? PartnerMessage.Mode.DEFAULT : publishMode;
-            client.hasPublish = hasPublish;
-            client.hasSubscribe = hasSubscribe;
-            client.subMessagesClient = messagesClient;
-            client.debug = debug;
-            int index = client.hashCode();
+        public Builder setCoalesceWindow(long coalesceWindowMs) {
+            this.coalesceWindowMs = coalesceWindowMs;
+            return this;
+        }
 
-            synchronized (LOCK) {
-                if (debug) {
-                    String msg = client.TAG + "[" + getClass().getSimpleName() + "][build] instance[";
-                    msg += index + "]";
-                    System.out.println(msg);
-                }
+        /**
+         * Sets the RxJava {@link Scheduler} to flush coalesced partner readings at the end of each
+         * window. Default is <code>Schedulers.computation()</code>.
+         *
+         * @param coalesceScheduler The Scheduler
+         * @return                  Builder instance for chaining methods in this class
+         * @see                     #setCoalesceWindow(long)
+         */
+        public Builder setCoalesceScheduler(Scheduler coalesceScheduler) {
+            this.coalesceScheduler = coalesceScheduler;
+            return this;
+        }
 
-                instances.put(index, client);
-            }
+        /**
+         * Sets the silence in milliseconds after which a partner not heard from is reported lost,
+         * through a {@link PartnerResult} with the emitting flag false, rather than waiting on
+         * Nearby <code>onLost()</code> which can take many seconds. The later Nearby lost
+         * result of the partner is not passed on. Not applied over a transport that does not
+         * report the signal, see {@link PartnerTransport#reportsSignal()}. Default is 0, waiting
+         * on Nearby.
+         *
+         * @param silenceTimeoutMs  The silence in milliseconds, 0 to disable
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setSilenceTimeout(long silenceTimeoutMs) {
+            this.silenceTimeoutMs = silenceTimeoutMs;
+            return this;
+        }
 
-            return client;
+        /**
+         * Sets the RxJava {@link Scheduler} to detect silent partners on, which is also the clock
+         * the silence is timed by. Default is <code>Schedulers.computation()</code>.
+         *
+         * @param silenceScheduler  The Scheduler
+         * @return                  Builder instance for chaining methods in this class
+         * @see                     #setSilenceTimeout(long)
+         */
+        public Builder setSilenceScheduler(Scheduler silenceScheduler) {
+            this.silenceScheduler = silenceScheduler;
+            return this;
         }
 
         /**
-         * Verifies that a non-null {@link Activity} or {@link Context} is set and publishing
-         * and/or subscribing is enabled.
+         * Sets an event log to record every Nearby message callback received while subscribed,
+         * for later replay with {@link NearbyEventReplayer}. The caller closes the log when the
+         * recording is done. Default is null, not recording.
+         *
+         * @param eventRecorder The NearbyEventLogWriter
+         * @return              Builder instance for chaining methods in this class
          */
-        private void checkParameters() {
-            String message = null;
-            if (activity == null && context == null) {
-                message += "Builder(Activity) or Builder(Context) must be set with non-null value";
-            }
+        public Builder setEventRecorder(NearbyEventLogWriter eventRecorder) {
+            this.eventRecorder = eventRecorder;
+            return this;
+        }
 
-            if (!hasPublish && !hasSubscribe) {
-                if (message != null) {
-                    message += ", ";
-                }
-                message += "either hasPublish(true) or hasSubscribe(true) must be called for publish/subscribe";
+        /**
+         * Sets the filter smoothing the BLE RSSI readings of each partner, passed on as the
+         * filtered RSSI of the {@link Partner} alongside the RSSI as received. A partner lost
+         * starts over unsmoothed when found again. Default is null, the filtered RSSI being the
+         * RSSI as received.
+         *
+         * @param rssiFilter    The PartnerRssiFilter
+         * @return              Builder instance for chaining methods in this class
+         */
+        public Builder setRssiFilter(PartnerRssiFilter rssiFilter) {
+            this.rssiFilter = rssiFilter;
+            return this;
+        }
+
+        /**
+         * Sets the estimator of the distance to partners from the filtered RSSI, used while
+         * Nearby has not measured the distance to a partner. Estimated distances have
+         * {@link PartnerDistanceEstimator#ACCURACY}. Default is null, only distances measured by
+         * Nearby are passed on.
+         *
+         * @param distanceEstimator The PartnerDistanceEstimator
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setDistanceEstimator(PartnerDistanceEstimator distanceEstimator) {
+            this.distanceEstimator = distanceEstimator;
+            return this;
+        }
+
+        /**
+         * Sets the backpressure applied to the Flowable of the client. Default is
+         * <code>BackpressureMode.NONE</code>, subscribers must keep up with the results emitted.
+         *
+         * @param backpressureMode  The BackpressureMode
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setBackpressureMode(BackpressureMode backpressureMode) {
+            this.backpressureMode = backpressureMode;
+            return this;
+        }
+
+        /**
+         * Sets the delay in milliseconds before publishing and subscribing stop and the
+         * transports close once the last subscriber of any client leaves. A subscriber arriving
+         * within the delay, such as of the next screen, attaches to the running discovery
+         * instead of restarting it. The partners heard within the delay are kept over the
+         * teardown, replayed to the next subscriber. Default is 0, stopping at once, see
+         * {@link #DEFAULT_TEARDOWN_DELAY_MS}.
+         *
+         * @param teardownDelayMs   The delay in milliseconds, 0 to stop at once
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setTeardownDelay(long teardownDelayMs) {
+            this.teardownDelayMs = teardownDelayMs;
+            return this;
+        }
+
+        /**
+         * Sets the RxJava {@link Scheduler} to run the delayed teardown on. Default is
+         * <code>Schedulers.computation()</code>.
+         *
+         * @param teardownScheduler The Scheduler
+         * @return                  Builder instance for chaining methods in this class
+         * @see                     #setTeardownDelay(long)
+         */
+        public Builder setTeardownScheduler(Scheduler teardownScheduler) {
+            this.teardownScheduler = teardownScheduler;
+            return this;
+        }
+
+        /**
+         * Sets debug output to System.out.
+         *
+         * @param debug True for debug output, false if not
+         * @return      Builder instance for chaining methods in this class
+         */
+        public Builder setDebug(boolean debug) {
+            this.debug = debug;
+            return this;
+        }
+
+        /**
+         * Creates and returns an instance of the PartnerNearbyMessagesClient class.
+         *
+         * @return PartnerNearbyMessagesClient object
+         */
+        public PartnerNearbyMessagesClient build() {
+            checkParameters();
+            PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient();
+            client.activity = activity;
+            client.context = context;
+            client.publishMode = publishMode == null ? PartnerMessage.Mode.DEFAULT : publishMode;
+            client.hasPublish = hasPublish;
+            client.hasSubscribe = hasSubscribe;
+            client.subTransport = transport;
+            client.backpressureMode = backpressureMode == null
+                    ? BackpressureMode.NONE
+                    : backpressureMode;
+            client.debug = debug;
+            client.eventRecorder = eventRecorder;
+            client.rssiFilter = rssiFilter;
+            client.distanceEstimator = distanceEstimator;
+            client.teardownDelayMs = teardownDelayMs;
+            client.teardownScheduler = teardownScheduler == null
+                    ? Schedulers.computation()
+                    : teardownScheduler;
+            if (coalesceWindowMs > 0) {
+                Scheduler scheduler = coalesceScheduler == null
+                        ? Schedulers.computation()
+                        : coalesceScheduler;
+                client.coalescer = new PartnerEventCoalescer(coalesceWindowMs, scheduler,
+                        new PartnerEventCoalescer.OnResultListener() {
+                            @Override
+                            public void onResult(@NonNull PartnerResult result) {
+                                emitResult(result);
+                            }
+                        });
+            }
+            if (silenceTimeoutMs > 0) {
+                Scheduler scheduler = silenceScheduler == null
+                        ? Schedulers.computation()
+                        : silenceScheduler;
+                final PartnerEventCoalescer coalescer = client.coalescer;
+                final PartnerRssiFilter rssiFilter = client.rssiFilter;
+                client.silenceDetector = new PartnerSilenceDetector(silenceTimeoutMs, scheduler,
+                        new PartnerEventCoalescer.OnResultListener() {
+                            @Override
+                            public void onResult(@NonNull PartnerResult result) {
+                                if (rssiFilter != null) {
+                                    rssiFilter.remove(result.getUuid());
+                                }
+                                presenceTable.onLost(result.getPartner(), result.getMode());
+                                if (coalescer != null) {
+                                    // drops readings pending for the partner
+                                    coalescer.onLost(result.getPartner(), result.getMode());
+                                } else {
+                                    emitResult(result);
+                                }
+                            }
+                        });
+            }
+            client.initFlowable();
+            instances.add(client);
+
+            if (debug) {
+                String msg = client.TAG + "[" + getClass().getSimpleName() + "][build] instance[";
+                msg += client.hashCode() + "]";
+                System.out.println(msg);
+            }
+
+            return client;
+        }
+
+        /**
+         * Verifies that a non-null {@link Activity} or {@link Context} is set and publishing
+         * and/or subscribing is enabled.
+         */
+        private void checkParameters() {
+            String message = null;
+            if (activity == null && context == null) {
+                message += "Builder(Activity) or Builder(Context) must be set with non-null value";
+            }
+
+            if (!hasPublish && !hasSubscribe) {
+                if (message != null) {
+                    message += ", ";
+                }
+                message += "either hasPublish(true) or hasSubscribe(true) must be called for publish/subscribe";
+            }
+
+            if (coalesceWindowMs < 0) {
+                if (message != null) {
+                    message += ", ";
+                }
+                message += "setCoalesceWindow(long) must be zero or greater";
+            }
+
+            if (silenceTimeoutMs < 0) {
+                if (message != null) {
+                    message += ", ";
+                }
+                message += "setSilenceTimeout(long) must be zero or greater";
+            }
+
+            if (teardownDelayMs < 0) {
+                if (message != null) {
+                    message += ", ";
+                }
+                message += "setTeardownDelay(long) must be zero or greater";
             }
 
             if (message != null) {
@@ -505,18 +1145,7 @@ public final class PartnerNearbyMessagesClient {
     /**
      * Constructor.
      */
-    private PartnerNearbyMessagesClient() {
-        if (instances == null) {
-            synchronized (LOCK) {
-                if (instances == null) {
-                    instances = new HashMap<>();
-                    emitters = new HashMap<>();
-                    pubSubStatus = new PartnerResult.Status();
-                }
-            }
-        }
-        initFlowable();
-    }
+    private PartnerNearbyMessagesClient() {}
 
     /**
      * Subclass to return the type of message for Nearby publishing.
@@ -542,21 +1171,103 @@ public final class PartnerNearbyMessagesClient {
     }
 
     /**
-     * Returns true if publishing a Nearby message, false if not.
+     * Returns an RxJava Flowable receiving only partners found in Nearby messages of the given
+     * {@link PartnerMessage.Mode}s, along with all status and error results. Partners are routed
+     * from the same process-wide Nearby subscription as {@link #getPartnerFlowable()}, so
+     * consumers of different modes can subscribe at the same time without a second
+     * subscription. The Flowable of each combination of modes is created once and reused.
+     *
+     * @param mode  The Mode of partners to receive
+     * @param modes Further Modes of partners to receive
+     * @return      The RxJava Flowable object
+     */
+    public Flowable<PartnerResult> getPartnerFlowable(@NonNull PartnerMessage.Mode mode,
+            PartnerMessage.Mode... modes) {
+        checkStatus();
+        int receiveModes = 1 << mode.ordinal();
+        for (PartnerMessage.Mode m : modes) {
+            receiveModes |= 1 << m.ordinal();
+        }
+
+        synchronized (modeFlowables) {
+            Flowable<PartnerResult> modeFlowable = modeFlowables[receiveModes];
+            if (modeFlowable == null) {
+                modeFlowable = createFlowable(receiveModes);
+                modeFlowables[receiveModes] = modeFlowable;
+            }
+            return modeFlowable;
+        }
+    }
+
+    /**
+     * Returns the count of stale partner distance and BLE signal readings dropped, in favor of a
+     * later reading, for subscribers not keeping up. Always 0 unless the client was built with
+     * <code>BackpressureMode.LATEST_READING</code>.
+     *
+     * @return The count of dropped readings
+     */
+    public long getDroppedReadingCount() {
+        return droppedReadings.get();
+    }
+
+    /**
+     * Returns the latest presence of a partner heard by the Nearby subscription, synchronously
+     * and without waiting on a Nearby callback. Lost partners are returned, not emitting, until
+     * subscribing stops.
+     *
+     * @param uuid  The partner UUID
+     * @return      The Presence or null if the partner has not been heard
+     */
+    public PartnerPresenceTable.Presence getPresence(@NonNull String uuid) {
+        return presenceTable.get(uuid);
+    }
+
+    /**
+     * Returns a live, unmodifiable view of the latest presence of every partner heard by the
+     * Nearby subscription, read without copying or locking.
+     *
+     * @return The Presence collection
+     * @see    PartnerPresenceTable#getPresences()
+     */
+    @NonNull
+    public Collection<PartnerPresenceTable.Presence> getPresences() {
+        return presenceTable.getPresences();
+    }
+
+    /**
+     * Returns true if publishing a Nearby message, or starting to, false if not.
      *
      * @return True if publishing a Nearby message, false if not
      */
     public boolean isPublishing() {
-        return isPublishing;
+        return publishState.isStarted();
     }
 
     /**
-     * Returns true if subscribing to Nearby messages, false if not.
+     * Returns true if subscribing to Nearby messages, or starting to, false if not.
      *
      * @return True if subscribing to Nearby messages, false if not
      */
     public boolean isSubscribing() {
-        return isSubscribing;
+        return subscribeState.isStarted();
+    }
+
+    /**
+     * Returns the lifecycle state of Nearby Messages publishing.
+     *
+     * @return The publishing State
+     */
+    public PubSubStateMachine.State getPublishState() {
+        return publishState.getState();
+    }
+
+    /**
+     * Returns the lifecycle state of Nearby Messages subscribing.
+     *
+     * @return The subscribing State
+     */
+    public PubSubStateMachine.State getSubscribeState() {
+        return subscribeState.getState();
     }
 
     /**
@@ -572,34 +1283,33 @@ public final class PartnerNearbyMessagesClient {
      * Unregisters emitters and resets the class to an initial state.
      */
     public static void destroy() {
-        synchronized (LOCK) {
-            if (instances == null || instances.size() == 0) {
-                return;
-            }
-
-            Set<Integer> iKeys = instances.keySet();
-            for (Integer iKey : iKeys) {
-                PartnerNearbyMessagesClient instance = instances.get(iKey);
-                if (instance == null) {
-                    continue;
+        for (PartnerNearbyMessagesClient instance : instances) {
+            for (Route route : emitters.get()) {
+                FlowableEmitter<PartnerResult> emitter = route.emitter;
+                if (instance.debug) {
+                    String msg = instance.TAG + "[destroy] unregister emitter[" + emitter.hashCode() + "]";
+                    System.out.println(msg);
                 }
-                if (emitters != null && emitters.size() > 0) {
-                    Set<Integer> eKeys = emitters.keySet();
-                    for (Integer eKey : eKeys) {
-                        FlowableEmitter<PartnerResult> emitter = emitters.get(eKey);
-                        if (emitter == null) {
-                            continue;
-                        }
 
-System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter[" + emitter.hashCode() + "]");
-
-                        instance.unregisterEmitter(emitter);
-                        emitter.onComplete();
-                    }
-                }
-                instance.finish();
+                instance.unregisterEmitter(emitter);
+                emitter.onComplete();
             }
+            instance.finish();
+        }
+
+        // discovery kept running for the teardown delay is stopped now
+        TeardownTask teardown = cancelTeardown();
+        if (teardown != null) {
+            teardown.runNow();
         }
+
+        publishState.reset();
+        subscribeState.reset();
+        publishTransport = null;
+        subscribeTransport = null;
+        releaseSubscribedClient();
+        pubSubStatus.reset();
+        presenceTable.clear();
     }
 
     /**
@@ -623,10 +1333,24 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
      * @see <a href="http://reactivex.io/RxJava/2.x/javadoc/io/reactivex/Flowable.html" target="_top">Flowable</a>
      */
     protected void initFlowable() {
-        flowable = Flowable.create(
+        flowable = createFlowable(ALL_MODES);
+    }
+
+    /**
+     * Creates an RxJava {@link Flowable} whose subscribers are routed the partners of the given
+     * receive modes.
+     *
+     * @param receiveModes  Bit mask of Mode ordinals, {@link #ALL_MODES} for all
+     * @return              The Flowable
+     */
+    private Flowable<PartnerResult> createFlowable(final int receiveModes) {
+        Flowable<PartnerResult> flowable = Flowable.create(
                 new FlowableOnSubscribe<PartnerResult>() {
                     @Override
-                    public void subscribe(final FlowableEmitter<PartnerResult> emitter) throws Exception {
+                    public void subscribe(FlowableEmitter<PartnerResult> source) throws Exception {
+                        // results are emitted from Nearby callbacks and the coalescer Scheduler,
+                        // the serialized emitter makes concurrent onNext() calls safe
+                        final FlowableEmitter<PartnerResult> emitter = source.serialize();
                         try {
                             emitter.setCancellable(new Cancellable() {
                                 @Override
@@ -645,7 +1369,7 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
                                 String msg = TAG + "[initFlowable] subscribed";
                                 System.out.println(msg);
                             }
-                            PartnerNearbyMessagesClient.this.registerEmitter(emitter);
+                            PartnerNearbyMessagesClient.this.registerEmitter(emitter, receiveModes);
                         } catch (Exception e) {
                             if (emitter.isCancelled()) {
                                 Exceptions.propagate(e);
@@ -655,102 +1379,176 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
                         }
                     }
                 },
-                BackpressureStrategy.MISSING
+                backpressureMode == BackpressureMode.BUFFER
+                        ? BackpressureStrategy.BUFFER
+                        : BackpressureStrategy.MISSING
         );
+
+        if (backpressureMode == BackpressureMode.LATEST_READING) {
+            flowable = flowable.lift(new PartnerLatestReadingOperator(droppedReadings));
+        }
+
+        return flowable;
     }
 
     /**
-     * Returns the Nearby Messages client with a {@link Context} or {@link Activity} passed
-     * into the constructor of an instance of this class.
+     * Returns the transport set on the instance or otherwise the Nearby Messages transport,
+     * created with the {@link Context} or {@link Activity} passed into the constructor of an
+     * instance of this class.
      *
-     * @return The MessagesClient
+     * @return The PartnerTransport
      */
-    protected MessagesClient getMessagesClient() {
-        if (subMessagesClient != null) {
-            return subMessagesClient;
+    protected PartnerTransport getTransport() {
+        if (subTransport != null) {
+            return subTransport;
         }
 
-        MessagesClient messagesClient = context == null
-                ? Nearby.getMessagesClient(activity)
-                : Nearby.getMessagesClient(context);
+        synchronized (PartnerNearbyMessagesClient.class) {
+            if (transport == null) {
+                MessagesClient messagesClient = context == null
+                        ? Nearby.getMessagesClient(activity)
+                        : Nearby.getMessagesClient(context);
+                statusCallback = new PartnerStatusCallback();
+                transport = new NearbyPartnerTransport(messagesClient, statusCallback);
 
-        if (statusCallback == null) {
-            statusCallback = new PartnerStatusCallback();
-            messagesClient.registerStatusCallback(statusCallback);
-        }
+                if (debug) {
+                    String msg = TAG + "[getTransport] instance[" + messagesClient.hashCode() + "]";
+                    System.out.println(msg);
+                }
+            }
 
-        if (debug) {
-            String msg = TAG + "[getMessagesClient] instance[" + messagesClient.hashCode() + "]";
-            System.out.println(msg);
+            return transport;
         }
+    }
+
+    /**
+     * Returns the transport the message was published with, or the transport of the instance if
+     * not published.
+     *
+     * @return The PartnerTransport
+     */
+    private PartnerTransport getPublishTransport() {
+        PartnerTransport published = publishTransport;
+        return published == null ? getTransport() : published;
+    }
 
-        return messagesClient;
+    /**
+     * Returns the transport the message listener was subscribed with, or the transport of the
+     * instance if not subscribed.
+     *
+     * @return The PartnerTransport
+     */
+    private PartnerTransport getSubscribeTransport() {
+        PartnerTransport subscribed = subscribeTransport;
+        return subscribed == null ? getTransport() : subscribed;
     }
 
     /**
-     * Upon receving a subscriber in the class Flowable, this saves the FlowableEmitter in a
-     * {@link Map} and will trigger {@link #publish()} and {@link #subscribe()} if it is the first
-     * subscriber.
+     * Upon receving a subscriber in the class Flowable, this adds the FlowableEmitter to the
+     * emitters array and will trigger {@link #publish()} and {@link #subscribe()} if not already
+     * started. Later subscribers attach to the running publication and subscription, receiving
+     * the current status. Publishing is only restarted if the publish mode or transport differs,
+     * and subscribing if the reading pipeline or transport differs, the latest client's
+     * configuration applying.
      *
      * @param emitter   The FlowableEmitter
-     * @return          The hash code generated from the emitter and map index
+     * @return          True if emitter registered, false if already registered
      */
-    protected int registerEmitter(@NonNull FlowableEmitter<PartnerResult> emitter) {
-        int hashCode = emitter.hashCode();
-        synchronized (LOCK) {
-            if (emitters.containsKey(hashCode)) {
-                return hashCode;
-            }
-            emitters.put(hashCode, emitter);
+    protected boolean registerEmitter(@NonNull FlowableEmitter<PartnerResult> emitter) {
+        return registerEmitter(emitter, ALL_MODES);
+    }
+
+    /**
+     * Adds the FlowableEmitter to the emitters array, routed partners of the given receive
+     * modes, and triggers publishing and subscribing as {@link #registerEmitter(FlowableEmitter)}.
+     *
+     * @param emitter       The FlowableEmitter
+     * @param receiveModes  Bit mask of Mode ordinals, {@link #ALL_MODES} for all
+     * @return              True if emitter registered, false if already registered
+     */
+    private boolean registerEmitter(@NonNull FlowableEmitter<PartnerResult> emitter, int receiveModes) {
+        Route route = addEmitter(this, emitter, receiveModes);
+        if (route == null) {
+            return false;
         }
 
+        // attaching to the discovery kept running since the last emitter left
+        cancelTeardown();
+
         if (debug) {
-            String msg = TAG + "[registerEmitter] emitters[" + hashCode + ", size: " + emitters.size() + "]";
+            String msg = TAG + "[registerEmitter] emitters[" + emitter.hashCode() + ", size: ";
+            msg += emitters.get().length + "]";
             System.out.println(msg);
         }
 
-        if (isPublishing) {
-            // Cancel any current publishing before publishing
-            unpublish(hasPublish);
-        } else if (hasPublish) {
-            publish();
+        try {
+            // already publishing and/or subscribing for earlier emitters,
+            // pass on the current status the emitter would otherwise miss
+            PartnerResult.Status status = copyPubSubStatus();
+            if ((status.isPublishing || status.isSubscribing) && ! emitter.isCancelled()) {
+                emitter.onNext(new PartnerResult(status));
+            }
+
+            // and the partners already found, rather than nothing until the next Nearby callback
+            if (status.isSubscribing) {
+                replayPresences(route);
+            } else if (hasSubscribe && presenceTable.size() > 0) {
+                // subscribing again after the teardown, those heard since likely still in range
+                presenceTable.expire(teardownDelayMs);
+                replayPresences(route);
+            }
+        } finally {
+            // then the live results received meanwhile, newer than those replayed
+            route.endReplay();
         }
 
-        if (isSubscribing) {
-            // Cancel any current subscribing before publishing
-            unsubscribe(hasSubscribe);
-        } else if (hasSubscribe) {
-            subscribe();
+        if (hasPublish) {
+            if (publishState.isStarted()
+                    && (publishMode != publishedMode || ! hasSameTransport(publishTransport))) {
+                // message of another Mode or over another transport published by another instance
+                performPublish(publishState.restart());
+            } else {
+                performPublish(publishState.start());
+            }
         }
 
-        return hashCode;
+        if (hasSubscribe) {
+            PartnerNearbyMessagesClient subscribed = subscribedClient;
+            if (subscribeState.isStarted() && ((subscribed != null && ! hasSamePipeline(subscribed))
+                    || ! hasSameTransport(subscribeTransport))) {
+                // readings processed by the pipeline of another instance or over another transport
+                performSubscribe(subscribeState.restart());
+            } else {
+                performSubscribe(subscribeState.start());
+            }
+        }
+
+        return true;
     }
 
     /**
      * Upon canceling a subscriber in the class Flowable, this removes the FlowableEmitter from the
-     * {@link Map} and will trigger {@link #unpublish(boolean)} and {@link #unsubscribe(boolean)}
-     * if it is the only subscriber left.
+     * emitters array and will trigger {@link #unpublish()} and {@link #unsubscribe()}
+     * if it is the only subscriber left. The instance is finished once none of its own
+     * subscribers are left.
      *
      * @param emitter   The FlowableEmitter
      * @return          True if emitter unregistered successfully
      */
     protected boolean unregisterEmitter(FlowableEmitter<PartnerResult> emitter) {
         if (emitter != null) {
-            int hashCode = emitter.hashCode();
-
-            synchronized (LOCK) {
-                if (emitters != null) {
-                    if (emitters.containsKey(hashCode)) {
-                        reset();
-                        emitters.remove(hashCode);
-                        if (debug) {
-                            String msg = TAG + "[unregisterEmitter] emitters[" + hashCode + ", size: ";
-                            msg += emitters.size() + "]";
-                            System.out.println(msg);
-                        }
+            if (containsEmitter(emitter)) {
+                reset();
+                removeEmitter(emitter);
+                if (debug) {
+                    String msg = TAG + "[unregisterEmitter] emitters[" + emitter.hashCode() + ", size: ";
+                    msg += emitters.get().length + "]";
+                    System.out.println(msg);
+                }
 
-                        finish();
-                    }
+                // other subscribers of the instance, such as of another mode, keep it alive
+                if ( ! hasEmitters(this)) {
+                    finish();
                 }
             }
 
@@ -761,7 +1559,149 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
     }
 
     /**
-     * Emits a {@link PartnerResult} from {@link FlowableEmitter} emitters.
+     * Emits the latest presence of every partner routed to the emitter of a newly registered
+     * Route, ahead of the live results held by the Route.
+     *
+     * @param route The Route
+     */
+    private void replayPresences(Route route) {
+        FlowableEmitter<PartnerResult> emitter = route.emitter;
+        for (PartnerPresenceTable.Presence presence : presenceTable.getPresences()) {
+            PartnerResult result = presence.toResult();
+            if (emitter.isCancelled()) {
+                return;
+            }
+            if (route.accepts(result)) {
+                emitter.onNext(result);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the FlowableEmitter, by identity, is in the emitters array.
+     *
+     * @param emitter   The FlowableEmitter
+     * @return          True if registered, false if not
+     */
+    private static boolean containsEmitter(FlowableEmitter<PartnerResult> emitter) {
+        for (Route route : emitters.get()) {
+            if (route.emitter == emitter) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if any FlowableEmitter in the emitters array subscribed to a Flowable of the
+     * client instance.
+     *
+     * @param client    The client instance
+     * @return          True if the instance has emitters, false if not
+     */
+    private static boolean hasEmitters(PartnerNearbyMessagesClient client) {
+        for (Route route : emitters.get()) {
+            if (route.client == client) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds a FlowableEmitter to the emitters array, retrying the copy if the array was changed
+     * concurrently.
+     *
+     * @param client        The client instance whose Flowable the emitter subscribed to
+     * @param emitter       The FlowableEmitter
+     * @param receiveModes  Bit mask of Mode ordinals routed to the emitter
+     * @return              The Route added, holding live results until replayed, or null if
+     *                      already in the array
+     */
+    private static Route addEmitter(PartnerNearbyMessagesClient client,
+            FlowableEmitter<PartnerResult> emitter, int receiveModes) {
+        Route route = new Route(client, emitter, receiveModes);
+        for (;;) {
+            Route[] current = emitters.get();
+            for (Route r : current) {
+                if (r.emitter == emitter) {
+                    return null;
+                }
+            }
+
+            int size = current.length;
+            Route[] next = new Route[size + 1];
+            System.arraycopy(current, 0, next, 0, size);
+            next[size] = route;
+            if (emitters.compareAndSet(current, next)) {
+                return route;
+            }
+        }
+    }
+
+    /**
+     * Removes a FlowableEmitter from the emitters array, retrying the copy if the array was
+     * changed concurrently.
+     *
+     * @param emitter   The FlowableEmitter
+     * @return          True if removed, false if not in the array
+     */
+    private static boolean removeEmitter(FlowableEmitter<PartnerResult> emitter) {
+        for (;;) {
+            Route[] current = emitters.get();
+            int size = current.length;
+            int index = -1;
+            for (int i = 0; i < size; i++) {
+                if (current[i].emitter == emitter) {
+                    index = i;
+                    break;
+                }
+            }
+
+            if (index < 0) {
+                return false;
+            }
+
+            Route[] next;
+            if (size == 1) {
+                next = EMPTY_EMITTERS;
+            } else {
+                next = new Route[size - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, size - index - 1);
+            }
+
+            if (emitters.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a new array to hold a Flowable for each receive modes mask.
+     *
+     * @return The Flowable array
+     */
+    @SuppressWarnings("unchecked")
+    private static Flowable<PartnerResult>[] newFlowableArray() {
+        return new Flowable[1 << PartnerMessage.Mode.values().length];
+    }
+
+    /**
+     * Returns a copy of the current publish/subscribe status to emit, so that subscribers do not
+     * see later changes to the status.
+     *
+     * @return The PartnerResult.Status copy
+     */
+    private static PartnerResult.Status copyPubSubStatus() {
+        return new PartnerResult.Status(pubSubStatus.isPublishing, pubSubStatus.isSubscribing);
+    }
+
+    /**
+     * Emits a {@link PartnerResult} from the {@link FlowableEmitter} emitters it is routed to
+     * by the {@link PartnerMessage.Mode} of the partner.
      *
      * @param partner The PartnerResult object
      */
@@ -769,16 +1709,11 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
         Throwable throwable = partner.getException();
         boolean hasEmittedError = false;
 
-        synchronized (LOCK) {
-            if (emitters != null && emitters.size() > 0) {
-                Set<Integer> keys = emitters.keySet();
-                for (Integer key : keys) {
-                    FlowableEmitter<PartnerResult> emitter = emitters.get(key);
-                    if (emitter != null && !emitter.isCancelled()) {
-                        emitter.onNext(partner);
-                        hasEmittedError = throwable != null;
-                    }
-                }
+        for (Route route : emitters.get()) {
+            FlowableEmitter<PartnerResult> emitter = route.emitter;
+            if ( ! emitter.isCancelled() && route.accepts(partner)) {
+                route.onNext(partner);
+                hasEmittedError = throwable != null;
             }
         }
 
@@ -801,16 +1736,11 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
     protected static void emitError(@NonNull Throwable throwable) {
         boolean hasEmitted = false;
 
-        synchronized (LOCK) {
-            if (emitters != null && emitters.size() > 0) {
-                Set<Integer> keys = emitters.keySet();
-                for (Integer key : keys) {
-                    FlowableEmitter<PartnerResult> emitter = emitters.get(key);
-                    if (emitter != null && !emitter.isCancelled()) {
-                        emitter.onError(throwable);
-                        hasEmitted = true;
-                    }
-                }
+        for (Route route : emitters.get()) {
+            FlowableEmitter<PartnerResult> emitter = route.emitter;
+            if ( ! emitter.isCancelled()) {
+                emitter.onError(throwable);
+                hasEmitted = true;
             }
         }
 
@@ -819,77 +1749,226 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
         }
     }
 
+    /**
+     * Returns the client to make a publish or subscribe call for the registered emitters, the
+     * latest registered client not finished that publishes, or subscribes.
+     *
+     * @param isPublish True for a client that publishes, false for one that subscribes
+     * @return          The client or null if there is none
+     */
+    private static PartnerNearbyMessagesClient getStartingClient(boolean isPublish) {
+        Route[] routes = emitters.get();
+        for (int i = routes.length - 1; i >= 0; i--) {
+            PartnerNearbyMessagesClient client = routes[i].client;
+            if ( ! client.hasFinished && (isPublish ? client.hasPublish : client.hasSubscribe)) {
+                return client;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns true if readings are processed the same by the pipeline of the instance and of
+     * another client, that is the same client or neither with a pipeline.
+     *
+     * @param client    The other client
+     * @return          True if the same pipeline, false if not
+     */
+    private boolean hasSamePipeline(@NonNull PartnerNearbyMessagesClient client) {
+        return client == this || ( ! hasPipeline() && ! client.hasPipeline());
+    }
+
+    /**
+     * Returns true if the instance publishes and subscribes with the given transport, or with
+     * Nearby Messages through the same MessagesClient.
+     *
+     * @param other The transport publishing or subscribing, null if none
+     * @return      True if the same transport, false if not
+     */
+    private boolean hasSameTransport(PartnerTransport other) {
+        if (other == null) {
+            return true;
+        }
+
+        PartnerTransport own = getTransport();
+        if (own == other) {
+            return true;
+        }
+
+        return own instanceof NearbyPartnerTransport
+                && other instanceof NearbyPartnerTransport
+                && ((NearbyPartnerTransport) own).getMessagesClient()
+                        == ((NearbyPartnerTransport) other).getMessagesClient();
+    }
+
+    /**
+     * Returns true if readings are coalesced, timed for silence, smoothed, estimated or
+     * recorded by the instance, false if passed on as received.
+     *
+     * @return True if the instance has a reading pipeline, false if not
+     */
+    private boolean hasPipeline() {
+        return coalescer != null
+                || silenceDetector != null
+                || rssiFilter != null
+                || distanceEstimator != null
+                || eventRecorder != null;
+    }
+
+    /**
+     * Drops the pending readings and partner state of the pipeline of the instance.
+     */
+    private synchronized void clearPipeline() {
+        if (coalescer != null) {
+            coalescer.clear();
+        }
+        if (silenceDetector != null) {
+            silenceDetector.clear();
+        }
+        if (rssiFilter != null) {
+            rssiFilter.clear();
+        }
+    }
+
+    /**
+     * Disposes the Schedulers of the pipeline of the instance. Called once no listener runs it.
+     */
+    private synchronized void disposePipeline() {
+        if (coalescer != null) {
+            coalescer.dispose();
+            coalescer = null;
+        }
+
+        if (silenceDetector != null) {
+            silenceDetector.dispose();
+            silenceDetector = null;
+        }
+    }
+
+    /**
+     * Forgets the client whose pipeline the listener ran once unsubscribed, disposing the
+     * pipeline if the client has finished.
+     */
+    private static void releaseSubscribedClient() {
+        PartnerNearbyMessagesClient client = subscribedClient;
+        subscribedClient = null;
+        if (client != null && ! instances.contains(client)) {
+            client.disposePipeline();
+        }
+    }
+
+    /**
+     * Performs the Nearby call for publishing returned by an event of the publish state machine.
+     * A start is made by the latest registered client still publishing, since the start may
+     * have been queued for a client registered after the call in flight was made, by an
+     * instance finished since.
+     *
+     * @param action The Action to perform
+     */
+    private void performPublish(@NonNull PubSubStateMachine.Action action) {
+        switch (action) {
+            case START:
+                PartnerNearbyMessagesClient client = getStartingClient(true);
+                if (client == null) {
+                    // no subscriber left to publish for
+                    publishState.onStartFailed();
+                } else {
+                    client.publish();
+                }
+                break;
+            case STOP:
+                unpublish();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Performs the Nearby call for subscribing returned by an event of the subscribe state
+     * machine. A start is made by the latest registered client still subscribing, as
+     * {@link #performPublish(PubSubStateMachine.Action)}.
+     *
+     * @param action The Action to perform
+     */
+    private void performSubscribe(@NonNull PubSubStateMachine.Action action) {
+        switch (action) {
+            case START:
+                PartnerNearbyMessagesClient client = getStartingClient(false);
+                if (client == null) {
+                    // no subscriber left to subscribe for
+                    subscribeState.onStartFailed();
+                } else {
+                    client.subscribe();
+                }
+                break;
+            case STOP:
+                unsubscribe();
+                break;
+            default:
+                break;
+        }
+    }
+
     /**
      * Starts Nearby Messages publishing, emitting a {@link Message} containing this device's
-     * information and {@link PartnerMessage.Mode} or message type.
+     * information and {@link PartnerMessage.Mode} or message type. Called only when the publish
+     * state machine enters {@link PubSubStateMachine.State#STARTING}.
      */
     protected synchronized void publish() {
-        if (isPublishing || hasFinished) {
+        if (hasFinished) {
             if (debug) {
-                String msg = TAG + "[publish] exiting, ";
-                msg += hasFinished ? "instance is destroyed" : "already publishing";
-                System.out.println(msg);
+                System.out.println(TAG + "[publish] exiting, instance is destroyed");
             }
 
+            publishState.onStartFailed();
             return;
         }
 
-        isPublishing = true;
         Context c = context == null ? activity : context;
+        publishedMode = publishMode;
         message = NearbyUtils.createMessage(c, publishMode);
 
-        PublishCallback callback = new PartnerPublishCallback();
-        Strategy strategy = new Strategy.Builder()
-                .setDiscoveryMode(DISCOVERY_MODE)
-                .setDistanceType(DISTANCE_TYPE)
-                .setTtlSeconds(TTL_SECONDS)
-                .build();
-        PublishOptions options = new PublishOptions.Builder()
-                .setStrategy(strategy)
-                .setCallback(callback)
-                .build();
-
         if (debug) {
             System.out.println(TAG + "[publish]");
         }
 
-        Task<Void> task =  getMessagesClient().publish(message, options);
-        task.addOnFailureListener(new OnFailureListener() {
+        publishTransport = getTransport();
+        publishTransport.publish(message, new PartnerPublishCallback(), new PartnerTransport.Callback() {
             @Override
             public void onFailure(@NonNull Exception e) {
                 if (debug) {
                     System.out.println(TAG + "[publish] onFailure[" + e + "]");
                 }
 
-                if (hasFinished) {
-                    isPublishing = false;
+                publishState.onStartFailed();
+                if (instances.isEmpty()) {
                     return;
                 }
 
-                synchronized (LOCK) {
-                    isPublishing = false;
-                    emitError(e);
-                }
+                emitError(e);
             }
-        }).addOnSuccessListener(new OnSuccessListener<Void>() {
+
             @Override
-            public void onSuccess(Void aVoid) {
+            public void onSuccess() {
                 if (debug) {
                     System.out.println(TAG + "[publish] onSuccess");
                 }
-                if (hasFinished) {
+
+                // stop or restart may have been requested while starting, and clients
+                // registered since attach to the call whether or not this instance finished
+                PubSubStateMachine.Action action = publishState.onStarted();
+                if (instances.isEmpty()) {
                     if (debug) {
                         System.out.println(TAG + "[publish] onSuccess aborting, not publishing");
                     }
-                    isPublishing = false;
-                    return;
-                }
-
-                synchronized (LOCK) {
-                    hasInitializedPublish = true;
+                } else if (action == PubSubStateMachine.Action.NONE) {
                     pubSubStatus.isPublishing = true;
-                    emitResult(new PartnerResult(pubSubStatus));
+                    emitResult(new PartnerResult(copyPubSubStatus()));
                 }
+
+                performPublish(action);
             }
         });
     }
@@ -898,230 +1977,199 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
      * Initializes a {@link MessageListener} from a given {@link FlowableEmitter} and starts
      * Nearby Messages subscribing. The message listener will listen for received messages and the
      * emitter handles the messages, passing them on to subscribers in the application.
-     * Subsequent calls are ingnored until {@link #unsubscribe(boolean)} called.
+     * Called only when the subscribe state machine enters
+     * {@link PubSubStateMachine.State#STARTING}.
      */
     protected synchronized void subscribe() {
-        if (isSubscribing || hasFinished) {
+        if (instances.isEmpty()) {
             if (debug) {
-                String msg = TAG + "[subscribe] exiting, ";
-                msg += hasFinished ? "instance is destroyed" : "already subscribing";
-                System.out.println(msg);
+                System.out.println(TAG + "[subscribe] exiting, instance is destroyed");
             }
 
+            subscribeState.onStartFailed();
             return;
         }
 
-        isSubscribing = true;
-        messageListener = new PartnerMessageListener();
-        SubscribeCallback callback = new PartnerSubscribeCallback();
-        Strategy strategy = new Strategy.Builder()
-                .setDiscoveryMode(DISCOVERY_MODE)
-                .setDistanceType(DISTANCE_TYPE)
-                .setTtlSeconds(TTL_SECONDS)
-                .build();
-        SubscribeOptions options = new SubscribeOptions.Builder()
-                .setStrategy(strategy)
-                .setCallback(callback)
-                .build();
+        subscribeTransport = getTransport();
 
+        // partners heard only once until lost by the transport would all go silent
+        MessageListener listener = new PartnerMessageListener(coalescer,
+                subscribeTransport.reportsSignal() ? silenceDetector : null,
+                rssiFilter, distanceEstimator);
+        messageListener = eventRecorder == null
+                ? listener
+                : new RecordingMessageListener(listener, eventRecorder);
+        subscribedClient = this;
         if (debug) {
             System.out.println(TAG + "[subscribe]");
         }
 
-        Task<Void> task = getMessagesClient().subscribe(messageListener, options);
-        task.addOnFailureListener(new OnFailureListener() {
+        subscribeTransport.subscribe(messageListener, new PartnerSubscribeCallback(), new PartnerTransport.Callback() {
             @Override
             public void onFailure(@NonNull Exception e) {
                 if (debug) {
                     System.out.println(TAG + "[subscribe] onFailure[" + e + "]");
                 }
 
-                if (hasFinished) {
-                    isSubscribing = false;
+                subscribeState.onStartFailed();
+                releaseSubscribedClient();
+                if (instances.isEmpty()) {
                     return;
                 }
 
-                synchronized (LOCK) {
-                    isSubscribing = false;
-                    emitError(e);
-                }
+                emitError(e);
             }
-        }).addOnSuccessListener(new OnSuccessListener<Void>() {
+
             @Override
-            public void onSuccess(Void aVoid) {
+            public void onSuccess() {
                 if (debug) {
                     System.out.println(TAG + "[subscribe] onSuccess");
                 }
 
-                if (hasFinished) {
+                // stop or restart may have been requested while starting, and clients
+                // registered since attach to the call whether or not this instance finished
+                PubSubStateMachine.Action action = subscribeState.onStarted();
+                if (instances.isEmpty()) {
                     if (debug) {
                         System.out.println(TAG + "[subscribe] onSuccess aborting, not subscribing");
                     }
-                    isSubscribing = false;
-                    return;
-                }
-
-                synchronized (LOCK) {
-                    hasInitializedSubscribe = true;
+                } else if (action == PubSubStateMachine.Action.NONE) {
                     pubSubStatus.isSubscribing = true;
-                    emitResult(new PartnerResult(pubSubStatus));
+                    emitResult(new PartnerResult(copyPubSubStatus()));
                 }
+
+                performSubscribe(action);
             }
         });
     }
 
     /**
-     * Stops Nearby Messages publishing.
+     * Stops Nearby Messages publishing. Called only when the publish state machine enters
+     * {@link PubSubStateMachine.State#STOPPING} or {@link PubSubStateMachine.State#RESTARTING},
+     * publishing again on success if restarting.
      */
-    protected synchronized void unpublish(final boolean resetPublish) {
-        if (message == null || !isPublishing) {
+    protected synchronized void unpublish() {
+        if (message == null) {
             if (debug) {
-                System.out.println(TAG + "[unpublish(" + resetPublish + ")] already not publishing, exiting");
+                System.out.println(TAG + "[unpublish] no message published, exiting");
             }
 
+            performPublish(publishState.onStopped());
             return;
         }
 
-        isPublishing = false;
-        Task<Void> task = getMessagesClient().unpublish(message);
         if (debug) {
-            System.out.println(TAG + "[unpublish(" + resetPublish + ")]");
+            System.out.println(TAG + "[unpublish] state[" + publishState + "]");
         }
 
-        task.addOnFailureListener(new OnFailureListener() {
+        getPublishTransport().unpublish(message, new PartnerTransport.Callback() {
             @Override
             public void onFailure(@NonNull Exception e) {
                 if (debug) {
-                    System.out.println(TAG + "[unpublish(" + resetPublish + ")] onFailure[" + e + "]");
+                    System.out.println(TAG + "[unpublish] onFailure[" + e + "]");
                 }
 
-                hasInitializedPublish = false;
-                if (hasFinished) {
+                publishState.onStopFailed();
+                if (instances.isEmpty()) {
                     return;
                 }
 
-                synchronized (LOCK) {
-                    message = null;
-                    pubSubStatus.isPublishing = false;
-                }
+                message = null;
+                pubSubStatus.isPublishing = false;
 
                 // emitting an error will trigger unpublish/unsubscribe again,
                 // so emitting through onNext
                 emitResult(new PartnerResult(e));
             }
-        }).addOnSuccessListener(new OnSuccessListener<Void>() {
+
             @Override
-            public void onSuccess(Void aVoid) {
+            public void onSuccess() {
                 if (debug) {
                     String msg;
-                    msg = TAG + "[unpublish(" + resetPublish + ")] onSuccess ";
+                    msg = TAG + "[unpublish] onSuccess ";
                     msg += "instance[" + PartnerNearbyMessagesClient.this.hashCode() + "]";
                     System.out.println(msg);
                 }
 
-                hasInitializedPublish = false;
-                if (hasFinished) {
-                    return;
-                }
-
-                synchronized (LOCK) {
+                PubSubStateMachine.Action action = publishState.onStopped();
+                if ( ! instances.isEmpty()) {
                     message = null;
                     pubSubStatus.isPublishing = false;
-                    //emitResult(new PartnerResult(pubSubStatus));
-
-                    if (resetPublish) {
-                        publish();
-                    } else if (hasFinished && !isSubscribing) {
-                        if (debug) {
-                            System.out.println(TAG + "[unpublish(" + resetPublish + ")] setting pubSubStatus null");
-                        }
-
-                        pubSubStatus = null;
-                    }
                 }
+
+                performPublish(action);
             }
         });
     }
 
     /**
-     * Stops Nearby Messages subscribing.
+     * Stops Nearby Messages subscribing. Called only when the subscribe state machine enters
+     * {@link PubSubStateMachine.State#STOPPING} or {@link PubSubStateMachine.State#RESTARTING},
+     * subscribing again on success if restarting.
      */
-    private synchronized void unsubscribe(final boolean resetSubscribing) {
-        if (messageListener == null || !isSubscribing) {
+    private synchronized void unsubscribe() {
+        if (messageListener == null) {
             if (debug) {
-                System.out.println(TAG + "[unsubscribe(" + resetSubscribing + ")] already not subscribing, exiting");
+                System.out.println(TAG + "[unsubscribe] no listener subscribed, exiting");
             }
 
+            performSubscribe(subscribeState.onStopped());
             return;
         }
 
-        isSubscribing = false;
-        Task<Void> task = getMessagesClient().unsubscribe(messageListener);
         if (debug) {
-            System.out.println(TAG + "[unsubscribe(" + resetSubscribing + ")]");
+            System.out.println(TAG + "[unsubscribe] state[" + subscribeState + "]");
         }
 
-        task.addOnFailureListener(new OnFailureListener() {
+        getSubscribeTransport().unsubscribe(messageListener, new PartnerTransport.Callback() {
             @Override
             public void onFailure(@NonNull Exception e) {
                 if (debug) {
-                    System.out.println(TAG + "[unsubscribe(" + resetSubscribing + ")] onFailure[" + e + "]");
+                    System.out.println(TAG + "[unsubscribe] onFailure[" + e + "]");
                 }
 
-                hasInitializedSubscribe = false;
-                if (hasFinished) {
+                subscribeState.onStopFailed();
+                releaseSubscribedClient();
+                if (instances.isEmpty()) {
                     return;
                 }
 
-                synchronized (LOCK) {
-                    messageListener = null;
-                    pubSubStatus.isSubscribing = false;
-                }
+                messageListener = null;
+                pubSubStatus.isSubscribing = false;
 
                 // emitting an error will trigger unpublish/unsubscribe again,
                 // so emitting through onNext
                 emitResult(new PartnerResult(e));
             }
-        }).addOnSuccessListener(new OnSuccessListener<Void>() {
+
             @Override
-            public void onSuccess(Void aVoid) {
+            public void onSuccess() {
                 if (debug) {
                     String msg;
-                    msg = TAG + "[unsubscribe(" + resetSubscribing + ")] onSuccess ";
+                    msg = TAG + "[unsubscribe] onSuccess ";
                     msg += "instance[" + PartnerNearbyMessagesClient.this.hashCode() + "]";
                     System.out.println(msg);
                 }
 
-                hasInitializedSubscribe = false;
-                if (hasFinished) {
-                    return;
-                }
-
-                synchronized (LOCK) {
+                PubSubStateMachine.Action action = subscribeState.onStopped();
+                releaseSubscribedClient();
+                if ( ! instances.isEmpty()) {
                     messageListener = null;
                     pubSubStatus.isSubscribing = false;
-                    //emitResult(new PartnerResult(pubSubStatus));
-
-                    if (resetSubscribing) {
-                        subscribe();
-                    } else if (hasFinished && !isPublishing) {
-                        if (debug) {
-                            System.out.println(TAG + "[unsubscribe(" + resetSubscribing + ")] setting pubSubStatus null");
-                        }
-
-                        pubSubStatus = null;
-                    }
                 }
+
+                performSubscribe(action);
             }
         });
     }
 
     /**
      * Closes the Nearby Messages publishing and subscribing and resets the messages client to
-     * the initial state.
+     * the initial state, once the teardown delay has passed without another emitter
+     * registering if the instance has one.
      */
     protected synchronized void reset() {
-        if (emitters.size() > 1) {
+        if (emitters.get().length > 1) {
             if (debug) {
                 System.out.println(TAG + "[reset] exiting, emitter(s) still active");
             }
@@ -1129,61 +2177,138 @@ System.out.println("[PartnerNearbyMessagesClient][destroy] unregister emitter["
             return;
         }
 
+        if (teardownDelayMs > 0) {
+            scheduleTeardown();
+            return;
+        }
+
+        teardown();
+    }
+
+    /**
+     * Schedules the teardown after the teardown delay, replacing any pending.
+     */
+    private void scheduleTeardown() {
         if (debug) {
-            System.out.println(TAG + "[reset]");
+            System.out.println(TAG + "[reset] tearing down in " + teardownDelayMs + " ms");
         }
 
-        unpublish(false);
-        unsubscribe(false);
-        if (pubSubStatus != null) {
-            pubSubStatus.reset();
+        synchronized (PartnerNearbyMessagesClient.class) {
+            TeardownTask previous = pendingTeardown;
+            if (previous != null) {
+                previous.disposable.dispose();
+            }
+
+            TeardownTask task = new TeardownTask();
+            task.disposable = teardownScheduler.scheduleDirect(task, teardownDelayMs,
+                    TimeUnit.MILLISECONDS);
+            pendingTeardown = task;
         }
+    }
 
-        if (statusCallback != null && messagesClient != null) {
-            messagesClient.unregisterStatusCallback(statusCallback);
-            statusCallback = null;
+    /**
+     * Cancels the pending teardown.
+     *
+     * @return The TeardownTask canceled or null if none was pending
+     */
+    private static TeardownTask cancelTeardown() {
+        synchronized (PartnerNearbyMessagesClient.class) {
+            TeardownTask task = pendingTeardown;
+            pendingTeardown = null;
+            if (task != null) {
+                task.disposable.dispose();
+            }
+            return task;
         }
     }
 
     /**
-     * Closes the Nearby Messages publishing and subscribing and tidies up resources for GC.
+     * Stops publishing and subscribing, clears the partner state and closes the transports. The
+     * presences of the partners heard within the teardown delay are kept.
      */
-    protected void finish() {
+    private synchronized void teardown() {
         if (debug) {
-            System.out.println(TAG + "[finish]");
+            System.out.println(TAG + "[teardown]");
         }
 
-        int hashCode = this.hashCode();
-        synchronized (LOCK) {
-            if (instances == null) {
-                return;
+        PartnerNearbyMessagesClient subscribed = subscribedClient;
+        try {
+            performPublish(publishState.stop());
+        } finally {
+            // an unpublish failure may be propagated to the RxJava error handler
+            // by throwing, subscribing is stopped regardless
+            performSubscribe(subscribeState.stop());
+            if (subscribed != null) {
+                subscribed.clearPipeline();
             }
+            // partners heard within the teardown delay are kept for the next subscriber,
+            // the table is only cleared on destroy
+            presenceTable.expire(teardownDelayMs);
+            pubSubStatus.reset();
 
-            if (instances.containsKey(hashCode)) {
-                instances.remove(hashCode);
-                if (debug) {
-                    String msg = TAG + "[finish] removing instance[" + hashCode + ", size: ";
-                    msg += instances.size() + "]";
-                    System.out.println(msg);
+            synchronized (PartnerNearbyMessagesClient.class) {
+                // the transports actually used, whichever client set them
+                if (publishTransport != null) {
+                    publishTransport.close();
+                }
+                if (subscribeTransport != null && subscribeTransport != publishTransport) {
+                    subscribeTransport.close();
                 }
+                if (transport != null) {
+                    transport.close();
+                    transport = null;
+                    statusCallback = null;
+                }
+            }
+        }
+    }
 
-                if (instances.size() == 0) {
-                    instances = null;
-                    emitters = null;
-                    if (!isPublishing && !isSubscribing) {
-                        if (debug) {
-                            System.out.println(TAG + "[finish] setting pubSubStatus null");
-                        }
+    /**
+     * Closes the Nearby Messages publishing and subscribing and tidies up resources for GC.
+     */
+    protected void finish() {
+        if (debug) {
+            System.out.println(TAG + "[finish]");
+        }
 
-                        pubSubStatus = null;
+        if (instances.remove(this)) {
+            if (debug) {
+                String msg = TAG + "[finish] removing instance[" + hashCode() + ", size: ";
+                msg += instances.size() + "]";
+                System.out.println(msg);
+            }
+
+            if (instances.isEmpty()) {
+                emitters.set(EMPTY_EMITTERS);
+                if ( ! publishState.isStarted() && ! subscribeState.isStarted()) {
+                    if (debug) {
+                        System.out.println(TAG + "[finish] resetting pubSubStatus");
                     }
+
+                    pubSubStatus.reset();
                 }
             }
         }
 
+        // the subscribed listener runs the pipeline of the instance until unsubscribed, handed
+        // over to the latest client left subscribing if its pipeline differs
+        if (subscribedClient == this) {
+            PartnerNearbyMessagesClient next = getStartingClient(false);
+            if (next != null && next != this && ! next.hasSamePipeline(this)) {
+                performSubscribe(subscribeState.restart());
+            }
+        }
+
+        if (subscribedClient != this) {
+            disposePipeline();
+        }
+
         activity = null;
         context = null;
         flowable = null;
+        synchronized (modeFlowables) {
+            Arrays.fill(modeFlowables, null);
+        }
         publishMode = null;
         hasFinished = true;
     }
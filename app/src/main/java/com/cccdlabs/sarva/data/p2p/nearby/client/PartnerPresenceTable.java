@@ -0,0 +1,360 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of the latest known presence of each partner by UUID, kept up to date from the Nearby
+ * callbacks so that the current state can be read synchronously at any time rather than waiting
+ * on the next callback. Lost partners stay in the table, no longer emitting, until expired or
+ * cleared.
+ * <p>
+ * Each {@link Presence} is immutable and replaced on update, so reads never lock: a lookup by
+ * UUID is a single hash table read and {@link #getPresences()} is a live, weakly consistent view
+ * of the table that does not copy it. Updates are serialized, merging a distance reading with the
+ * last BLE signal and vice versa.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerPresenceTable {
+
+    /**
+     * Immutable latest presence of a single partner.
+     */
+    public static class Presence {
+
+        private final String uuid;
+        private final String username;
+        private final String deviceName;
+        private final Date updatedAt;
+        private final PartnerMessage.Mode mode;
+        private final boolean isEmitting;
+        private final double distance;
+        private final int accuracy;
+        private final boolean isDistanceMeasured;
+        private final int rssi;
+        private final double filteredRssi;
+        private final int txPower;
+        private final long lastSeenMillis;
+
+        /**
+         * Constructor.
+         *
+         * @param partner           The Partner of the latest message, its readings are not used
+         * @param mode              The Mode of the latest message
+         * @param isEmitting        True if the partner is within range
+         * @param distance          Latest distance in meters
+         * @param accuracy          Latest distance accuracy
+         * @param isDistanceMeasured True if the distance was measured by Nearby, false if
+         *                          estimated or not known
+         * @param rssi              Latest BLE RSSI
+         * @param filteredRssi      Latest filtered BLE RSSI
+         * @param txPower           Latest BLE TX power
+         * @param lastSeenMillis    Wall clock time in milliseconds last heard from
+         */
+        private Presence(Partner partner, PartnerMessage.Mode mode, boolean isEmitting,
+                double distance, int accuracy, boolean isDistanceMeasured, int rssi,
+                double filteredRssi, int txPower, long lastSeenMillis) {
+            uuid = partner.getUuid();
+            username = partner.getUsername();
+            deviceName = partner.getDeviceName();
+            updatedAt = partner.getUpdatedAt();
+            this.mode = mode;
+            this.isEmitting = isEmitting;
+            this.distance = distance;
+            this.accuracy = accuracy;
+            this.isDistanceMeasured = isDistanceMeasured;
+            this.rssi = rssi;
+            this.filteredRssi = filteredRssi;
+            this.txPower = txPower;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public PartnerMessage.Mode getMode() {
+            return mode;
+        }
+
+        public boolean isEmitting() {
+            return isEmitting;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        public int getAccuracy() {
+            return accuracy;
+        }
+
+        /**
+         * Returns whether the distance was measured by Nearby rather than estimated from the
+         * BLE signal or not known.
+         *
+         * @return True if measured, false if not
+         */
+        public boolean isDistanceMeasured() {
+            return isDistanceMeasured;
+        }
+
+        public int getRssi() {
+            return rssi;
+        }
+
+        public double getFilteredRssi() {
+            return filteredRssi;
+        }
+
+        public int getTxPower() {
+            return txPower;
+        }
+
+        /**
+         * Returns the wall clock time in milliseconds the partner was last heard from, or lost.
+         *
+         * @return The time in milliseconds
+         */
+        public long getLastSeenMillis() {
+            return lastSeenMillis;
+        }
+
+        /**
+         * Returns a new {@link Partner} with the presence.
+         *
+         * @return The Partner
+         */
+        @NonNull
+        public Partner toPartner() {
+            Partner partner = new Partner();
+            partner.setUuid(uuid);
+            partner.setUsername(username);
+            partner.setDeviceName(deviceName);
+            partner.setUpdatedAt(updatedAt);
+            partner.setEmitting(isEmitting);
+            partner.setDistance(distance);
+            partner.setAccuracy(accuracy);
+            partner.setRssi(rssi);
+            partner.setFilteredRssi(filteredRssi);
+            partner.setTxPower(txPower);
+            return partner;
+        }
+
+        /**
+         * Returns a new {@link PartnerResult} with the presence, as a found or lost result
+         * rather than a reading so it is never dropped for a later reading.
+         *
+         * @return The PartnerResult
+         */
+        @NonNull
+        public PartnerResult toResult() {
+            return new PartnerResult(toPartner(), false, mode);
+        }
+
+        @Override
+        public String toString() {
+            return "Presence[uuid: " + uuid + ", mode: " + mode + ", isEmitting: " + isEmitting
+                    + ", distance: " + distance + ", rssi: " + rssi + ", lastSeenMillis: "
+                    + lastSeenMillis + "]";
+        }
+    }
+
+    /**
+     * Object to use for serializing updates.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Latest presence by partner UUID.
+     */
+    private final Map<String, Presence> presences = new ConcurrentHashMap<>();
+
+    /**
+     * Unmodifiable view of the presences.
+     */
+    private final Collection<Presence> presencesView =
+            Collections.unmodifiableCollection(presences.values());
+
+    /**
+     * Records a partner found, keeping its last readings if already known.
+     *
+     * @param partner   The found Partner
+     * @param mode      The Mode of the received message, null if not known
+     */
+    public void onFound(@NonNull Partner partner, PartnerMessage.Mode mode) {
+        if (partner.getUuid() == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            Presence last = presences.get(partner.getUuid());
+            presences.put(partner.getUuid(), last == null
+                    ? new Presence(partner, mode, true, 0, 0, false, 0, 0, 0, now())
+                    : new Presence(partner, mode, true, last.distance, last.accuracy,
+                            last.isDistanceMeasured, last.rssi, last.filteredRssi, last.txPower,
+                            now()));
+        }
+    }
+
+    /**
+     * Records a partner lost, keeping its last readings.
+     *
+     * @param partner   The lost Partner
+     * @param mode      The Mode of the received message, null if not known
+     */
+    public void onLost(@NonNull Partner partner, PartnerMessage.Mode mode) {
+        if (partner.getUuid() == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            Presence last = presences.get(partner.getUuid());
+            presences.put(partner.getUuid(), last == null
+                    ? new Presence(partner, mode, false, 0, 0, false, 0, 0, 0, now())
+                    : new Presence(partner, mode, false, last.distance, last.accuracy,
+                            last.isDistanceMeasured, last.rssi, last.filteredRssi, last.txPower,
+                            now()));
+        }
+    }
+
+    /**
+     * Records a distance reading of a partner measured by Nearby, keeping its last BLE signal.
+     *
+     * @param partner   The Partner
+     * @param mode      The Mode of the received message, null if not known
+     * @param distance  The distance in meters
+     * @param accuracy  The distance accuracy
+     */
+    public void onDistanceChanged(@NonNull Partner partner, PartnerMessage.Mode mode,
+            double distance, int accuracy) {
+        onDistanceChanged(partner, mode, distance, accuracy, true);
+    }
+
+    /**
+     * Records a distance reading of a partner, keeping its last BLE signal.
+     *
+     * @param partner       The Partner
+     * @param mode          The Mode of the received message, null if not known
+     * @param distance      The distance in meters
+     * @param accuracy      The distance accuracy
+     * @param isMeasured    True if measured by Nearby, false if estimated
+     */
+    public void onDistanceChanged(@NonNull Partner partner, PartnerMessage.Mode mode,
+            double distance, int accuracy, boolean isMeasured) {
+        if (partner.getUuid() == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            Presence last = presences.get(partner.getUuid());
+            presences.put(partner.getUuid(), last == null
+                    ? new Presence(partner, mode, true, distance, accuracy, isMeasured, 0, 0, 0,
+                            now())
+                    : new Presence(partner, mode, true, distance, accuracy, isMeasured,
+                            last.rssi, last.filteredRssi, last.txPower, now()));
+        }
+    }
+
+    /**
+     * Records a BLE signal reading of a partner, along with the filtered RSSI set on the partner,
+     * keeping its last distance.
+     *
+     * @param partner   The Partner
+     * @param mode      The Mode of the received message, null if not known
+     * @param rssi      The RSSI
+     * @param txPower   The TX power
+     */
+    public void onBleSignalChanged(@NonNull Partner partner, PartnerMessage.Mode mode, int rssi,
+            int txPower) {
+        if (partner.getUuid() == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            Presence last = presences.get(partner.getUuid());
+            presences.put(partner.getUuid(), new Presence(partner, mode, true,
+                    last == null ? 0 : last.distance, last == null ? 0 : last.accuracy,
+                    last != null && last.isDistanceMeasured, rssi, partner.getFilteredRssi(),
+                    txPower, now()));
+        }
+    }
+
+    /**
+     * Returns the latest presence of a partner.
+     *
+     * @param uuid  The partner UUID
+     * @return      The Presence or null if the partner has not been heard
+     */
+    public Presence get(@NonNull String uuid) {
+        return presences.get(uuid);
+    }
+
+    /**
+     * Returns a live, unmodifiable view of the latest presence of every partner. Iterating it
+     * never throws on concurrent updates, each Presence seen being the latest at the time it is
+     * reached.
+     *
+     * @return The Presence collection
+     */
+    @NonNull
+    public Collection<Presence> getPresences() {
+        return presencesView;
+    }
+
+    /**
+     * Returns the number of partners in the table.
+     *
+     * @return The number of partners
+     */
+    public int size() {
+        return presences.size();
+    }
+
+    /**
+     * Removes the partners not heard from within the given age, those last seen that long ago or
+     * longer.
+     *
+     * @param maxAgeMillis  The age in milliseconds, 0 to remove all partners
+     * @return              The number of partners removed
+     */
+    public int expire(long maxAgeMillis) {
+        long expiredAt = now() - maxAgeMillis;
+        int count = 0;
+        synchronized (lock) {
+            Iterator<Presence> iterator = presences.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().lastSeenMillis <= expiredAt) {
+                    iterator.remove();
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes all partners from the table.
+     */
+    public void clear() {
+        synchronized (lock) {
+            presences.clear();
+        }
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,370 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Smooths the BLE RSSI readings of each partner, which jump by as much as 10 dBm from one
+ * reading to the next, with an exponential moving average, a median of the last readings or a
+ * one-dimensional Kalman filter.
+ * <p>
+ * The state of each partner is kept in primitive arrays at the index of a handle of a
+ * {@link PartnerHandleTable}, assigned on the first reading of a partner, so filtering a reading
+ * of a known partner allocates nothing. When all handles are in use, the handle of the partner
+ * least recently filtered is reassigned.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerRssiFilter {
+
+    /**
+     * The filter applied to the readings of each partner.
+     */
+    public enum Type {
+
+        /**
+         * Exponential moving average, weighting each reading by the smoothing factor.
+         */
+        EMA,
+
+        /**
+         * Median of the last readings, ignoring single outliers altogether.
+         */
+        MEDIAN,
+
+        /**
+         * One-dimensional Kalman filter of a constant signal with process and measurement noise.
+         */
+        KALMAN
+    }
+
+    /**
+     * Default number of partners filtered at once.
+     */
+    public static final int DEFAULT_MAX_PARTNERS = 64;
+
+    /**
+     * Default weight of each reading in the {@link Type#EMA} filter.
+     */
+    public static final double DEFAULT_SMOOTHING_FACTOR = 0.25;
+
+    /**
+     * Default number of readings the {@link Type#MEDIAN} filter takes the median of.
+     */
+    public static final int DEFAULT_MEDIAN_WINDOW = 5;
+
+    /**
+     * Default variance in dBm squared the {@link Type#KALMAN} filter expects the signal to drift
+     * by between readings.
+     */
+    public static final double DEFAULT_PROCESS_NOISE = 0.5;
+
+    /**
+     * Default variance in dBm squared of the readings in the {@link Type#KALMAN} filter.
+     */
+    public static final double DEFAULT_MEASUREMENT_NOISE = 16;
+
+    private final Type type;
+    private final int maxPartners;
+    private final double smoothingFactor;
+    private final int medianWindow;
+    private final double processNoise;
+    private final double measurementNoise;
+
+    /**
+     * Handles of the partners filtered.
+     */
+    private final PartnerHandleTable handles;
+
+    /**
+     * Number of readings filtered by handle, at most the median window.
+     */
+    private final int[] counts;
+
+    /**
+     * Smoothed RSSI by handle, of the EMA and Kalman filters.
+     */
+    private final double[] estimates;
+
+    /**
+     * Estimate variance by handle, of the Kalman filter.
+     */
+    private final double[] variances;
+
+    /**
+     * Ring buffers of the last readings, <code>medianWindow</code> elements per handle, and the
+     * next position in each.
+     */
+    private final int[] readings;
+    private final int[] positions;
+
+    /**
+     * Scratch array the last readings are sorted in to take the median.
+     */
+    private final int[] sorted;
+
+    /**
+     * Constructor, use the {@link Builder}.
+     *
+     * @param builder The Builder
+     */
+    private PartnerRssiFilter(Builder builder) {
+        type = builder.type;
+        maxPartners = builder.maxPartners;
+        smoothingFactor = builder.smoothingFactor;
+        medianWindow = builder.medianWindow;
+        processNoise = builder.processNoise;
+        measurementNoise = builder.measurementNoise;
+
+        handles = new PartnerHandleTable(maxPartners);
+        counts = new int[maxPartners];
+        estimates = new double[maxPartners];
+        variances = new double[maxPartners];
+        readings = new int[type == Type.MEDIAN ? maxPartners * medianWindow : 0];
+        positions = new int[type == Type.MEDIAN ? maxPartners : 0];
+        sorted = new int[type == Type.MEDIAN ? medianWindow : 0];
+    }
+
+    /**
+     * Returns the filter applied.
+     *
+     * @return The Type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the handle of a partner, assigning one if the partner has none. A handle stays
+     * assigned to the partner until removed, or reassigned when all handles are in use and the
+     * partner is the least recently filtered.
+     *
+     * @param uuid  The partner UUID
+     * @return      The handle
+     */
+    public synchronized int getHandle(@NonNull String uuid) {
+        int handle = handles.find(uuid);
+        if (handle >= 0) {
+            return handle;
+        }
+
+        handle = handles.assign(uuid);
+        counts[handle] = 0;
+        return handle;
+    }
+
+    /**
+     * Filters a reading of a partner.
+     *
+     * @param uuid  The partner UUID
+     * @param rssi  The RSSI reading
+     * @return      The smoothed RSSI
+     */
+    public synchronized double filter(@NonNull String uuid, int rssi) {
+        return filter(getHandle(uuid), rssi);
+    }
+
+    /**
+     * Filters a reading of the partner of a handle.
+     *
+     * @param handle    The handle from {@link #getHandle(String)}
+     * @param rssi      The RSSI reading
+     * @return          The smoothed RSSI
+     */
+    public synchronized double filter(int handle, int rssi) {
+        handles.checkAssigned(handle);
+        handles.touch(handle);
+        switch (type) {
+            case EMA:
+                return filterEma(handle, rssi);
+            case MEDIAN:
+                return filterMedian(handle, rssi);
+            default:
+                return filterKalman(handle, rssi);
+        }
+    }
+
+    /**
+     * Frees the handle of a partner, such as when the partner is lost, so its next reading
+     * starts unsmoothed.
+     *
+     * @param uuid The partner UUID
+     */
+    public synchronized void remove(@NonNull String uuid) {
+        handles.remove(uuid);
+    }
+
+    /**
+     * Returns the number of partners with a handle assigned.
+     *
+     * @return The number of partners
+     */
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    /**
+     * Frees the handles of all partners.
+     */
+    public synchronized void clear() {
+        handles.clear();
+    }
+
+    private double filterEma(int handle, int rssi) {
+        if (counts[handle] == 0) {
+            counts[handle] = 1;
+            estimates[handle] = rssi;
+        } else {
+            estimates[handle] += smoothingFactor * (rssi - estimates[handle]);
+        }
+        return estimates[handle];
+    }
+
+    private double filterMedian(int handle, int rssi) {
+        int offset = handle * medianWindow;
+        if (counts[handle] == 0) {
+            positions[handle] = 0;
+        }
+        readings[offset + positions[handle]] = rssi;
+        positions[handle] = (positions[handle] + 1) % medianWindow;
+        if (counts[handle] < medianWindow) {
+            counts[handle]++;
+        }
+
+        // insertion sort, the window is small
+        int count = counts[handle];
+        for (int i = 0; i < count; i++) {
+            int value = readings[offset + i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > value) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = value;
+        }
+
+        int middle = count / 2;
+        return count % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private double filterKalman(int handle, int rssi) {
+        if (counts[handle] == 0) {
+            counts[handle] = 1;
+            estimates[handle] = rssi;
+            variances[handle] = measurementNoise;
+            return rssi;
+        }
+
+        double variance = variances[handle] + processNoise;
+        double gain = variance / (variance + measurementNoise);
+        estimates[handle] += gain * (rssi - estimates[handle]);
+        variances[handle] = (1 - gain) * variance;
+        return estimates[handle];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[type: " + type + ", partners: " + handles.size()
+                + ", maxPartners: " + maxPartners + "]";
+    }
+
+    /**
+     * Builder pattern class to create instances of PartnerRssiFilter.
+     */
+    public static class Builder {
+
+        private final Type type;
+        private int maxPartners = DEFAULT_MAX_PARTNERS;
+        private double smoothingFactor = DEFAULT_SMOOTHING_FACTOR;
+        private int medianWindow = DEFAULT_MEDIAN_WINDOW;
+        private double processNoise = DEFAULT_PROCESS_NOISE;
+        private double measurementNoise = DEFAULT_MEASUREMENT_NOISE;
+
+        /**
+         * Constructor.
+         *
+         * @param type The filter to apply
+         */
+        public Builder(@NonNull Type type) {
+            this.type = type;
+        }
+
+        /**
+         * Sets the number of partners filtered at once. Default is
+         * {@link #DEFAULT_MAX_PARTNERS}.
+         *
+         * @param maxPartners   The number of partners, must be greater than zero
+         * @return              Builder instance for chaining methods in this class
+         */
+        public Builder setMaxPartners(int maxPartners) {
+            this.maxPartners = maxPartners;
+            return this;
+        }
+
+        /**
+         * Sets the weight of each reading in the {@link Type#EMA} filter, higher following the
+         * readings more closely. Default is {@link #DEFAULT_SMOOTHING_FACTOR}.
+         *
+         * @param smoothingFactor   The weight, greater than zero and at most 1
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setSmoothingFactor(double smoothingFactor) {
+            this.smoothingFactor = smoothingFactor;
+            return this;
+        }
+
+        /**
+         * Sets the number of readings the {@link Type#MEDIAN} filter takes the median of.
+         * Default is {@link #DEFAULT_MEDIAN_WINDOW}.
+         *
+         * @param medianWindow  The number of readings, must be greater than zero
+         * @return              Builder instance for chaining methods in this class
+         */
+        public Builder setMedianWindow(int medianWindow) {
+            this.medianWindow = medianWindow;
+            return this;
+        }
+
+        /**
+         * Sets the process and measurement noise of the {@link Type#KALMAN} filter, a higher
+         * ratio of process to measurement noise following the readings more closely. Defaults
+         * are {@link #DEFAULT_PROCESS_NOISE} and {@link #DEFAULT_MEASUREMENT_NOISE}.
+         *
+         * @param processNoise      Variance in dBm squared of the signal between readings,
+         *                          must be greater than zero
+         * @param measurementNoise  Variance in dBm squared of the readings, must be greater
+         *                          than zero
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setNoise(double processNoise, double measurementNoise) {
+            this.processNoise = processNoise;
+            this.measurementNoise = measurementNoise;
+            return this;
+        }
+
+        /**
+         * Creates and returns an instance of the PartnerRssiFilter class.
+         *
+         * @return PartnerRssiFilter object
+         */
+        public PartnerRssiFilter build() {
+            if (type == null) {
+                throw new IllegalArgumentException("Parameter type is null value");
+            }
+            if (maxPartners <= 0) {
+                throw new IllegalArgumentException("Parameter maxPartners must be greater than zero");
+            }
+            if (smoothingFactor <= 0 || smoothingFactor > 1) {
+                throw new IllegalArgumentException("Parameter smoothingFactor must be greater than zero and at most 1");
+            }
+            if (medianWindow <= 0) {
+                throw new IllegalArgumentException("Parameter medianWindow must be greater than zero");
+            }
+            if (processNoise <= 0 || measurementNoise <= 0) {
+                throw new IllegalArgumentException("Parameters processNoise and measurementNoise must be greater than zero");
+            }
+
+            return new PartnerRssiFilter(this);
+        }
+    }
+}
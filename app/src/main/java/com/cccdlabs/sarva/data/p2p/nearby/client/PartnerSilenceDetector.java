@@ -0,0 +1,367 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Detects partners that have gone silent, no message heard from them within a silence timeout,
+ * well before Nearby gets around to <code>onLost()</code>, and passes on a lost
+ * {@link PartnerResult} for each with the emitting flag false.
+ * <p>
+ * Partners are tracked by UUID in a hashed timing wheel: a ring of slots each holding a linked
+ * list of the partners whose deadline falls in that tick, advanced by a single periodic task on
+ * the {@link Scheduler} however many partners are tracked. Hearing from a partner only records
+ * the time, O(1), and the partner is moved to the slot of its new deadline lazily when its
+ * current slot comes round. The Scheduler is also the clock, so a <code>TestScheduler</code>
+ * drives the detector in tests.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerSilenceDetector {
+
+    /**
+     * Number of slots in the wheel, a power of 2.
+     */
+    private static final int WHEEL_SIZE = 64;
+
+    /**
+     * Ticks per silence timeout, the timeout is detected within this fraction of itself.
+     */
+    private static final int TICKS_PER_TIMEOUT = 8;
+
+    /**
+     * A tracked partner, linked into the list of its wheel slot.
+     */
+    private static class Entry {
+
+        /**
+         * The most recent Partner received.
+         */
+        Partner partner;
+
+        /**
+         * The Mode of the most recent message received.
+         */
+        PartnerMessage.Mode mode;
+
+        /**
+         * Time in milliseconds the partner was last heard from.
+         */
+        long lastHeardMs;
+
+        /**
+         * Index of the wheel slot holding the entry.
+         */
+        int slot;
+
+        Entry prev;
+        Entry next;
+    }
+
+    /**
+     * Object to use for synchronizing the entries and wheel.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Tracked partners by UUID.
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Head of the entry list of each slot, null if empty.
+     */
+    private final Entry[] wheel = new Entry[WHEEL_SIZE];
+
+    /**
+     * The silence timeout in milliseconds.
+     */
+    private final long timeoutMs;
+
+    /**
+     * Duration of a wheel tick in milliseconds.
+     */
+    private final long tickMs;
+
+    /**
+     * Worker running the periodic tick and providing the time.
+     */
+    private final Scheduler.Worker worker;
+
+    /**
+     * Receives the lost results of silent partners.
+     */
+    private final PartnerEventCoalescer.OnResultListener listener;
+
+    /**
+     * The next tick to process.
+     */
+    private long nextTick;
+
+    /**
+     * The periodic tick, null while no partners are tracked.
+     */
+    private Disposable scheduledTick;
+
+    /**
+     * Constructor.
+     *
+     * @param timeoutMs The silence timeout in milliseconds, must be greater than zero
+     * @param scheduler The RxJava Scheduler to run the tick and read the time from
+     * @param listener  Receives the lost results of silent partners
+     */
+    public PartnerSilenceDetector(long timeoutMs, @NonNull Scheduler scheduler,
+            @NonNull PartnerEventCoalescer.OnResultListener listener) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("Parameter timeoutMs must be greater than zero");
+        }
+
+        this.timeoutMs = timeoutMs;
+        this.listener = listener;
+        tickMs = Math.max(1L, timeoutMs / TICKS_PER_TIMEOUT);
+        worker = scheduler.createWorker();
+    }
+
+    /**
+     * Returns the silence timeout in milliseconds.
+     *
+     * @return The timeout in milliseconds
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Records that a partner was heard from, tracking the partner if not already.
+     *
+     * @param partner   The Partner heard from
+     * @param mode      The Mode of the received message, null if not known
+     */
+    public void onHeard(@NonNull Partner partner, PartnerMessage.Mode mode) {
+        String uuid = partner.getUuid();
+        if (uuid == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            long now = worker.now(TimeUnit.MILLISECONDS);
+            Entry entry = entries.get(uuid);
+            if (entry == null) {
+                if (scheduledTick == null) {
+                    start(now);
+                }
+
+                entry = new Entry();
+                entry.lastHeardMs = now;
+                entries.put(uuid, entry);
+                link(entry, slotOf(now));
+            } else {
+                entry.lastHeardMs = now;
+            }
+            entry.partner = partner;
+            entry.mode = mode;
+        }
+    }
+
+    /**
+     * Stops tracking a partner, such as when lost by Nearby.
+     *
+     * @param uuid  The partner UUID
+     * @return      True if the partner was tracked
+     */
+    public boolean remove(String uuid) {
+        if (uuid == null) {
+            return false;
+        }
+
+        synchronized (lock) {
+            Entry entry = entries.remove(uuid);
+            if (entry == null) {
+                return false;
+            }
+
+            unlink(entry);
+            if (entries.isEmpty()) {
+                stop();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of partners tracked.
+     *
+     * @return The partner count
+     */
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Processes the wheel slots up to the current time, passing on a lost result for each
+     * partner silent for the timeout. Run by the periodic tick.
+     */
+    public void tick() {
+        List<Entry> silent = null;
+        synchronized (lock) {
+            long now = worker.now(TimeUnit.MILLISECONDS);
+            long currentTick = now / tickMs;
+
+            // after a long pause each slot only needs processing once
+            long lastTick = Math.min(currentTick, nextTick + WHEEL_SIZE - 1);
+            for (long t = nextTick; t <= lastTick; t++) {
+                silent = processSlot((int) (t & (WHEEL_SIZE - 1)), now, silent);
+            }
+            nextTick = Math.max(nextTick, currentTick + 1);
+
+            if (entries.isEmpty()) {
+                stop();
+            }
+        }
+
+        if (silent == null) {
+            return;
+        }
+
+        // emit outside the lock, subscribers may take their time
+        for (Entry entry : silent) {
+            Partner partner = new Partner();
+            partner.setUuid(entry.partner.getUuid());
+            partner.setUsername(entry.partner.getUsername());
+            partner.setDeviceName(entry.partner.getDeviceName());
+            partner.setUpdatedAt(entry.partner.getUpdatedAt());
+            partner.setEmitting(false);
+            listener.onResult(new PartnerResult(partner, false, entry.mode));
+        }
+    }
+
+    /**
+     * Stops the tick and drops all tracked partners.
+     */
+    public void clear() {
+        synchronized (lock) {
+            stop();
+            entries.clear();
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Clears the detector and releases the Scheduler worker. Instance should not be used after.
+     */
+    public void dispose() {
+        clear();
+        worker.dispose();
+    }
+
+    /**
+     * Removes the silent partners of a slot and moves the others to the slot of their deadline.
+     * Note that the caller must hold the lock.
+     *
+     * @param slot      The slot index
+     * @param now       The current time in milliseconds
+     * @param silent    The silent partners found so far, null if none
+     * @return          The silent partners found, null if none
+     */
+    private List<Entry> processSlot(int slot, long now, List<Entry> silent) {
+        Entry entry = wheel[slot];
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.lastHeardMs + timeoutMs <= now) {
+                unlink(entry);
+                entries.remove(entry.partner.getUuid());
+                if (silent == null) {
+                    silent = new ArrayList<>();
+                }
+                silent.add(entry);
+            } else {
+                int deadlineSlot = slotOf(entry.lastHeardMs);
+                if (deadlineSlot != slot) {
+                    unlink(entry);
+                    link(entry, deadlineSlot);
+                }
+            }
+            entry = next;
+        }
+
+        return silent;
+    }
+
+    /**
+     * Returns the slot of the tick in which a partner last heard at the given time falls silent.
+     *
+     * @param lastHeardMs   The time in milliseconds the partner was last heard from
+     * @return              The slot index
+     */
+    private int slotOf(long lastHeardMs) {
+        long deadline = lastHeardMs + timeoutMs;
+        long deadlineTick = (deadline + tickMs - 1) / tickMs;
+        return (int) (deadlineTick & (WHEEL_SIZE - 1));
+    }
+
+    private void link(Entry entry, int slot) {
+        Entry head = wheel[slot];
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        wheel[slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            wheel[entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * Schedules the periodic tick. Note that the caller must hold the lock.
+     *
+     * @param now The current time in milliseconds
+     */
+    private void start(long now) {
+        nextTick = now / tickMs;
+        scheduledTick = worker.schedulePeriodically(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the periodic tick. Note that the caller must hold the lock.
+     */
+    private void stop() {
+        if (scheduledTick != null) {
+            scheduledTick.dispose();
+            scheduledTick = null;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+/**
+ * Detects whether each partner is approaching or receding, the "warmer/colder" of a fine search,
+ * from a least squares line fit to the last readings of its smoothed RSSI or distance against
+ * time. The slope of the line gives the {@link PartnerResult.Trend} and how well the line fits
+ * the readings, its coefficient of determination, the confidence in it.
+ * <p>
+ * The sums the fit is solved from are updated as each reading enters and leaves the window, so
+ * a reading costs the same however large the window. To keep rounding errors from building up,
+ * the sums are recomputed from the window each time it is refilled, amortized over the readings
+ * of the window. The state of each partner is kept in primitive arrays at the index of a handle
+ * of a {@link PartnerHandleTable}, shared with the {@link PartnerRssiFilter}, the handle of the
+ * partner least recently updated reassigned when all are in use.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerTrendDetector {
+
+    /**
+     * The partner reading the trend is detected from.
+     */
+    public enum Signal {
+
+        /**
+         * The filtered RSSI in dBm, rising as the partner approaches.
+         */
+        RSSI,
+
+        /**
+         * The distance in meters, falling as the partner approaches.
+         */
+        DISTANCE
+    }
+
+    /**
+     * Default number of partners detected at once.
+     */
+    public static final int DEFAULT_MAX_PARTNERS = 64;
+
+    /**
+     * Default number of readings the line is fit to.
+     */
+    public static final int DEFAULT_WINDOW = 8;
+
+    /**
+     * Default change in dBm per second of the filtered RSSI below which a partner is steady.
+     */
+    public static final double DEFAULT_RSSI_SLOPE_THRESHOLD = 0.5;
+
+    /**
+     * Default change in meters per second of the distance below which a partner is steady.
+     */
+    public static final double DEFAULT_DISTANCE_SLOPE_THRESHOLD = 0.1;
+
+    /**
+     * Fewest readings a trend is detected from.
+     */
+    public static final int MIN_READINGS = 3;
+
+    private final Signal signal;
+    private final int maxPartners;
+    private final int window;
+    private final double slopeThreshold;
+
+    /**
+     * Handles of the partners detected.
+     */
+    private final PartnerHandleTable handles;
+
+    /**
+     * Ring buffers of the last readings, <code>window</code> elements per handle, the seconds
+     * since the origin of the handle and the value, and the next position in each.
+     */
+    private final double[] times;
+    private final double[] values;
+    private final int[] positions;
+
+    /**
+     * Number of readings by handle, at most the window.
+     */
+    private final int[] counts;
+
+    /**
+     * Wall clock time in milliseconds the reading times of each handle are relative to.
+     */
+    private final long[] origins;
+
+    /**
+     * Sums of the times, values, times squared, times by values and values squared by handle.
+     */
+    private final double[] sumT;
+    private final double[] sumV;
+    private final double[] sumTT;
+    private final double[] sumTV;
+    private final double[] sumVV;
+
+    /**
+     * Latest trend, confidence and slope towards the partner by handle.
+     */
+    private final PartnerResult.Trend[] trends;
+    private final double[] confidences;
+    private final double[] slopes;
+
+    /**
+     * Constructor, use the {@link Builder}.
+     *
+     * @param builder The Builder
+     */
+    private PartnerTrendDetector(Builder builder) {
+        signal = builder.signal;
+        maxPartners = builder.maxPartners;
+        window = builder.window;
+        slopeThreshold = Double.isNaN(builder.slopeThreshold)
+                ? (signal == Signal.RSSI ? DEFAULT_RSSI_SLOPE_THRESHOLD : DEFAULT_DISTANCE_SLOPE_THRESHOLD)
+                : builder.slopeThreshold;
+
+        handles = new PartnerHandleTable(maxPartners);
+        times = new double[maxPartners * window];
+        values = new double[maxPartners * window];
+        positions = new int[maxPartners];
+        counts = new int[maxPartners];
+        origins = new long[maxPartners];
+        sumT = new double[maxPartners];
+        sumV = new double[maxPartners];
+        sumTT = new double[maxPartners];
+        sumTV = new double[maxPartners];
+        sumVV = new double[maxPartners];
+        trends = new PartnerResult.Trend[maxPartners];
+        confidences = new double[maxPartners];
+        slopes = new double[maxPartners];
+    }
+
+    /**
+     * Returns the partner reading the trend is detected from.
+     *
+     * @return The Signal
+     */
+    public Signal getSignal() {
+        return signal;
+    }
+
+    /**
+     * Returns the handle of a partner, assigning one if the partner has none. A handle stays
+     * assigned to the partner until removed, or reassigned when all handles are in use and the
+     * partner is the least recently updated.
+     *
+     * @param uuid  The partner UUID
+     * @return      The handle
+     */
+    public synchronized int getHandle(@NonNull String uuid) {
+        int handle = handles.find(uuid);
+        if (handle >= 0) {
+            return handle;
+        }
+
+        handle = handles.assign(uuid);
+        counts[handle] = 0;
+        positions[handle] = 0;
+        trends[handle] = PartnerResult.Trend.UNKNOWN;
+        confidences[handle] = 0;
+        slopes[handle] = 0;
+        return handle;
+    }
+
+    /**
+     * Adds the reading of the {@link Signal} of a partner, if it has one. A partner without a
+     * valid reading, such as a distance reading when detecting from the RSSI, keeps its trend.
+     *
+     * @param partner       The Partner
+     * @param timeMillis    Time in milliseconds the reading was received
+     * @return              The Trend of the partner
+     */
+    public synchronized PartnerResult.Trend update(@NonNull Partner partner, long timeMillis) {
+        if (partner.getUuid() == null) {
+            return PartnerResult.Trend.UNKNOWN;
+        }
+
+        double value;
+        if (signal == Signal.RSSI) {
+            value = partner.getRssi() < 0 ? partner.getFilteredRssi() : Double.NaN;
+        } else {
+            value = partner.getDistance() > 0 ? partner.getDistance() : Double.NaN;
+        }
+        return update(getHandle(partner.getUuid()), timeMillis, value);
+    }
+
+    /**
+     * Adds a reading of a partner.
+     *
+     * @param uuid          The partner UUID
+     * @param timeMillis    Time in milliseconds the reading was received
+     * @param value         The filtered RSSI or distance, NaN if none
+     * @return              The Trend of the partner
+     */
+    public synchronized PartnerResult.Trend update(@NonNull String uuid, long timeMillis,
+            double value) {
+        return update(getHandle(uuid), timeMillis, value);
+    }
+
+    /**
+     * Adds a reading of the partner of a handle.
+     *
+     * @param handle        The handle from {@link #getHandle(String)}
+     * @param timeMillis    Time in milliseconds the reading was received
+     * @param value         The filtered RSSI or distance, NaN if none
+     * @return              The Trend of the partner
+     */
+    public synchronized PartnerResult.Trend update(int handle, long timeMillis, double value) {
+        handles.checkAssigned(handle);
+        handles.touch(handle);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return trends[handle];
+        }
+
+        if (counts[handle] == 0) {
+            origins[handle] = timeMillis;
+            sumT[handle] = 0;
+            sumV[handle] = 0;
+            sumTT[handle] = 0;
+            sumTV[handle] = 0;
+            sumVV[handle] = 0;
+        }
+
+        int index = handle * window + positions[handle];
+        if (counts[handle] == window) {
+            // oldest reading leaves the window
+            double t = times[index];
+            double v = values[index];
+            sumT[handle] -= t;
+            sumV[handle] -= v;
+            sumTT[handle] -= t * t;
+            sumTV[handle] -= t * v;
+            sumVV[handle] -= v * v;
+        } else {
+            counts[handle]++;
+        }
+
+        double t = (timeMillis - origins[handle]) / 1000.0;
+        times[index] = t;
+        values[index] = value;
+        sumT[handle] += t;
+        sumV[handle] += value;
+        sumTT[handle] += t * t;
+        sumTV[handle] += t * value;
+        sumVV[handle] += value * value;
+
+        positions[handle] = (positions[handle] + 1) % window;
+        if (positions[handle] == 0 && counts[handle] == window) {
+            rebase(handle);
+        }
+
+        fit(handle);
+        return trends[handle];
+    }
+
+    /**
+     * Returns the latest trend of a partner.
+     *
+     * @param uuid  The partner UUID
+     * @return      The Trend, UNKNOWN if the partner has too few readings
+     */
+    public synchronized PartnerResult.Trend getTrend(@NonNull String uuid) {
+        int handle = handles.find(uuid);
+        return handle < 0 ? PartnerResult.Trend.UNKNOWN : trends[handle];
+    }
+
+    /**
+     * Returns the confidence in the latest trend of a partner, the fraction of the change in its
+     * readings explained by the trend, or not for a steady partner, scaled down while the window
+     * is filling.
+     *
+     * @param uuid  The partner UUID
+     * @return      The confidence from 0 to 1
+     */
+    public synchronized double getConfidence(@NonNull String uuid) {
+        int handle = handles.find(uuid);
+        return handle < 0 ? 0 : confidences[handle];
+    }
+
+    /**
+     * Returns the latest rate a partner is approaching at, in dBm or meters per second of the
+     * {@link Signal}, negative if receding.
+     *
+     * @param uuid  The partner UUID
+     * @return      The rate, zero if the trend is not known
+     */
+    public synchronized double getSlope(@NonNull String uuid) {
+        int handle = handles.find(uuid);
+        return handle < 0 ? 0 : slopes[handle];
+    }
+
+    /**
+     * Frees the handle of a partner, such as when the partner is lost, so its trend starts over
+     * when found again.
+     *
+     * @param uuid The partner UUID
+     */
+    public synchronized void remove(@NonNull String uuid) {
+        handles.remove(uuid);
+    }
+
+    /**
+     * Returns the number of partners with a handle assigned.
+     *
+     * @return The number of partners
+     */
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    /**
+     * Frees the handles of all partners.
+     */
+    public synchronized void clear() {
+        handles.clear();
+    }
+
+    /**
+     * Moves the origin of a full window to its oldest reading and recomputes the sums, dropping
+     * the rounding errors of adding and removing readings.
+     *
+     * @param handle The handle
+     */
+    private void rebase(int handle) {
+        int offset = handle * window;
+        // the oldest reading is next to be replaced, at position zero
+        double shift = times[offset];
+        origins[handle] += Math.round(shift * 1000);
+        shift = Math.round(shift * 1000) / 1000.0;
+
+        double st = 0, sv = 0, stt = 0, stv = 0, svv = 0;
+        for (int i = offset; i < offset + window; i++) {
+            double t = times[i] - shift;
+            double v = values[i];
+            times[i] = t;
+            st += t;
+            sv += v;
+            stt += t * t;
+            stv += t * v;
+            svv += v * v;
+        }
+        sumT[handle] = st;
+        sumV[handle] = sv;
+        sumTT[handle] = stt;
+        sumTV[handle] = stv;
+        sumVV[handle] = svv;
+    }
+
+    /**
+     * Fits the line to the readings of a handle and sets its trend, confidence and slope.
+     *
+     * @param handle The handle
+     */
+    private void fit(int handle) {
+        int n = counts[handle];
+        double varT = sumTT[handle] - sumT[handle] * sumT[handle] / n;
+        if (n < MIN_READINGS || varT <= 1e-9) {
+            // too few readings or all at once, no slope
+            trends[handle] = PartnerResult.Trend.UNKNOWN;
+            confidences[handle] = 0;
+            slopes[handle] = 0;
+            return;
+        }
+
+        double covTV = sumTV[handle] - sumT[handle] * sumV[handle] / n;
+        double varV = sumVV[handle] - sumV[handle] * sumV[handle] / n;
+        double slope = covTV / varT;
+        double determination = varV <= 1e-9 ? 0 : Math.min(1, covTV * covTV / (varT * varV));
+        double fill = (double) n / window;
+
+        // positive slope towards the partner
+        slope = signal == Signal.RSSI ? slope : -slope;
+        slopes[handle] = slope;
+        if (Math.abs(slope) < slopeThreshold) {
+            trends[handle] = PartnerResult.Trend.STEADY;
+            confidences[handle] = (1 - determination) * fill;
+        } else {
+            trends[handle] = slope > 0
+                    ? PartnerResult.Trend.APPROACHING
+                    : PartnerResult.Trend.RECEDING;
+            confidences[handle] = determination * fill;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[signal: " + signal + ", partners: "
+                + handles.size() + ", window: " + window + ", slopeThreshold: "
+                + slopeThreshold + "]";
+    }
+
+    /**
+     * Builder pattern class to create instances of PartnerTrendDetector.
+     */
+    public static class Builder {
+
+        private final Signal signal;
+        private int maxPartners = DEFAULT_MAX_PARTNERS;
+        private int window = DEFAULT_WINDOW;
+        private double slopeThreshold = Double.NaN;
+
+        /**
+         * Constructor.
+         *
+         * @param signal The partner reading to detect the trend from
+         */
+        public Builder(@NonNull Signal signal) {
+            this.signal = signal;
+        }
+
+        /**
+         * Sets the number of partners detected at once. Default is
+         * {@link #DEFAULT_MAX_PARTNERS}.
+         *
+         * @param maxPartners   The number of partners, must be greater than zero
+         * @return              Builder instance for chaining methods in this class
+         */
+        public Builder setMaxPartners(int maxPartners) {
+            this.maxPartners = maxPartners;
+            return this;
+        }
+
+        /**
+         * Sets the number of readings the line is fit to, larger being steadier but slower to
+         * follow a change of direction. Default is {@link #DEFAULT_WINDOW}.
+         *
+         * @param window    The number of readings, at least {@link #MIN_READINGS}
+         * @return          Builder instance for chaining methods in this class
+         */
+        public Builder setWindow(int window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Sets the rate of change per second below which a partner is steady. Default is
+         * {@link #DEFAULT_RSSI_SLOPE_THRESHOLD} or {@link #DEFAULT_DISTANCE_SLOPE_THRESHOLD}
+         * by signal.
+         *
+         * @param slopeThreshold    The rate in dBm or meters per second, must not be negative
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setSlopeThreshold(double slopeThreshold) {
+            this.slopeThreshold = slopeThreshold;
+            return this;
+        }
+
+        /**
+         * Creates and returns an instance of the PartnerTrendDetector class.
+         *
+         * @return PartnerTrendDetector object
+         */
+        public PartnerTrendDetector build() {
+            if (signal == null) {
+                throw new IllegalArgumentException("Parameter signal is null value");
+            }
+            if (maxPartners <= 0) {
+                throw new IllegalArgumentException("Parameter maxPartners must be greater than zero");
+            }
+            if (window < MIN_READINGS) {
+                throw new IllegalArgumentException("Parameter window must be at least " + MIN_READINGS);
+            }
+            if (slopeThreshold < 0) {
+                throw new IllegalArgumentException("Parameter slopeThreshold must not be negative");
+            }
+
+            return new PartnerTrendDetector(this);
+        }
+    }
+}
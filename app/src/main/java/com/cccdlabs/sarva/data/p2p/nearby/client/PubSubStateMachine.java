@@ -0,0 +1,314 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+/**
+ * State machine of the lifecycle of either Nearby Messages publishing or subscribing. Requests to
+ * start, stop or restart, and the results of the Nearby calls, are passed in as events and each
+ * returns the {@link Action} the caller must then perform, so that a Nearby call is only made
+ * when the state actually changes:
+ * <ul>
+ * <li>Starting when already starting or active, such as for a second subscriber, is free</li>
+ * <li>A request received while a Nearby call is in flight is queued as an {@link Intent} and
+ * performed when the call completes, only the latest one is kept</li>
+ * <li>Restarting, for a change of configuration, stops and starts again only when active</li>
+ * </ul>
+ * Events received in a state they do not apply to, such as the late result of a call made
+ * before {@link #reset()}, are ignored.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PubSubStateMachine {
+
+    /**
+     * Lifecycle state.
+     */
+    public enum State {
+
+        /**
+         * Not started, the initial state.
+         */
+        IDLE,
+
+        /**
+         * Start call made, waiting for the result.
+         */
+        STARTING,
+
+        /**
+         * Started.
+         */
+        ACTIVE,
+
+        /**
+         * Stop call made, waiting for the result.
+         */
+        STOPPING,
+
+        /**
+         * Stop call made, to start again on success.
+         */
+        RESTARTING
+    }
+
+    /**
+     * Request queued while a Nearby call is in flight.
+     */
+    public enum Intent {
+
+        /**
+         * Nothing queued.
+         */
+        NONE,
+
+        /**
+         * Start once stopped.
+         */
+        START,
+
+        /**
+         * Stop once started.
+         */
+        STOP,
+
+        /**
+         * Stop and start again once started.
+         */
+        RESTART
+    }
+
+    /**
+     * Nearby call the caller must perform after an event.
+     */
+    public enum Action {
+
+        /**
+         * No call.
+         */
+        NONE,
+
+        /**
+         * Call publish or subscribe.
+         */
+        START,
+
+        /**
+         * Call unpublish or unsubscribe.
+         */
+        STOP
+    }
+
+    /**
+     * The current state.
+     */
+    private State state = State.IDLE;
+
+    /**
+     * The queued request.
+     */
+    private Intent pending = Intent.NONE;
+
+    /**
+     * Requests publishing or subscribing to start.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action start() {
+        switch (state) {
+            case IDLE:
+                state = State.STARTING;
+                return Action.START;
+            case STARTING:
+                if (pending == Intent.STOP) {
+                    pending = Intent.NONE;
+                }
+                return Action.NONE;
+            case STOPPING:
+                pending = Intent.START;
+                return Action.NONE;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    /**
+     * Requests publishing or subscribing to stop.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action stop() {
+        switch (state) {
+            case STARTING:
+                pending = Intent.STOP;
+                return Action.NONE;
+            case ACTIVE:
+                state = State.STOPPING;
+                return Action.STOP;
+            case STOPPING:
+                pending = Intent.NONE;
+                return Action.NONE;
+            case RESTARTING:
+                // stop call already in flight, just do not start again
+                state = State.STOPPING;
+                return Action.NONE;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    /**
+     * Requests publishing or subscribing to restart for a change of configuration. Nothing is
+     * done if not started, or if stopping, since the next start applies the configuration.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action restart() {
+        switch (state) {
+            case STARTING:
+                if (pending != Intent.STOP) {
+                    pending = Intent.RESTART;
+                }
+                return Action.NONE;
+            case ACTIVE:
+                state = State.RESTARTING;
+                return Action.STOP;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    /**
+     * Called when the start call succeeds, performing any request queued meanwhile.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action onStarted() {
+        if (state != State.STARTING) {
+            return Action.NONE;
+        }
+
+        Intent intent = pending;
+        pending = Intent.NONE;
+        switch (intent) {
+            case STOP:
+                state = State.STOPPING;
+                return Action.STOP;
+            case RESTART:
+                state = State.RESTARTING;
+                return Action.STOP;
+            default:
+                state = State.ACTIVE;
+                return Action.NONE;
+        }
+    }
+
+    /**
+     * Called when the start call fails, dropping any request queued meanwhile.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action onStartFailed() {
+        if (state == State.STARTING) {
+            state = State.IDLE;
+            pending = Intent.NONE;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Called when the stop call succeeds, starting again if restarting or if a start was
+     * requested meanwhile.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action onStopped() {
+        if (state == State.RESTARTING || (state == State.STOPPING && pending == Intent.START)) {
+            state = State.STARTING;
+            pending = Intent.NONE;
+            return Action.START;
+        }
+
+        if (state == State.STOPPING) {
+            state = State.IDLE;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Called when the stop call fails. The call is not retried and neither is a restart or
+     * queued start, the failure is left to the caller to report.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action onStopFailed() {
+        if (state == State.STOPPING || state == State.RESTARTING) {
+            state = State.IDLE;
+            pending = Intent.NONE;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Called when Nearby ends publishing or subscribing by TTL. Note Nearby also calls back
+     * when stopping, in which case the result of the stop call is waited for.
+     *
+     * @return The Action to perform
+     */
+    @NonNull
+    public synchronized Action onExpired() {
+        if (state == State.ACTIVE) {
+            state = State.IDLE;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Returns the machine to {@link State#IDLE} with nothing queued.
+     */
+    public synchronized void reset() {
+        state = State.IDLE;
+        pending = Intent.NONE;
+    }
+
+    /**
+     * Returns the current state.
+     *
+     * @return The State
+     */
+    @NonNull
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the request queued while a Nearby call is in flight.
+     *
+     * @return The Intent, {@link Intent#NONE} if nothing queued
+     */
+    @NonNull
+    public synchronized Intent getPendingIntent() {
+        return pending;
+    }
+
+    /**
+     * Returns true if starting or active.
+     *
+     * @return True if starting or active, false if not
+     */
+    public synchronized boolean isStarted() {
+        return state == State.STARTING || state == State.ACTIVE;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return state + (pending == Intent.NONE ? "" : "[" + pending + "]");
+    }
+}
@@ -0,0 +1,339 @@
+package com.cccdlabs.sarva.data.p2p.nearby.record;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.messages.BleSignal;
+import com.google.android.gms.nearby.messages.Distance;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+/**
+ * A single Nearby {@link MessageListener} callback as recorded in a Nearby event log: the
+ * callback, when it was received and the message, distance or BLE signal passed to it.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ * @see NearbyEventLogWriter
+ * @see NearbyEventLogReader
+ */
+public class NearbyEvent {
+
+    /**
+     * The MessageListener callback of the event.
+     */
+    public enum Type {
+
+        /**
+         * <code>onFound(Message)</code>
+         */
+        FOUND(1),
+
+        /**
+         * <code>onLost(Message)</code>
+         */
+        LOST(2),
+
+        /**
+         * <code>onDistanceChanged(Message, Distance)</code>
+         */
+        DISTANCE_CHANGED(3),
+
+        /**
+         * <code>onBleSignalChanged(Message, BleSignal)</code>
+         */
+        BLE_SIGNAL_CHANGED(4);
+
+        /**
+         * Code of the type in the event log.
+         */
+        private final int code;
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        /**
+         * Returns the code of the type in the event log.
+         *
+         * @return The code
+         */
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * Returns the type of an event log code.
+         *
+         * @param code  The code
+         * @return      The Type or null if the code is unknown
+         */
+        public static Type fromCode(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The callback.
+     */
+    private final Type type;
+
+    /**
+     * Time in microseconds the event was received, from the start of the recording.
+     */
+    private final long timeMicros;
+
+    /**
+     * Content of the message.
+     */
+    private final byte[] content;
+
+    /**
+     * Namespace of the message.
+     */
+    private final String namespace;
+
+    /**
+     * Type of the message.
+     */
+    private final String messageType;
+
+    /**
+     * Distance in meters, {@link Type#DISTANCE_CHANGED} only.
+     */
+    private final double meters;
+
+    /**
+     * Accuracy of the distance, {@link Type#DISTANCE_CHANGED} only.
+     */
+    private final int accuracy;
+
+    /**
+     * RSSI of the BLE signal, {@link Type#BLE_SIGNAL_CHANGED} only.
+     */
+    private final int rssi;
+
+    /**
+     * TX power of the BLE signal, {@link Type#BLE_SIGNAL_CHANGED} only.
+     */
+    private final int txPower;
+
+    /**
+     * Constructor.
+     *
+     * @param type          The callback
+     * @param timeMicros    Time in microseconds from the start of the recording
+     * @param content       Content of the message
+     * @param namespace     Namespace of the message
+     * @param messageType   Type of the message
+     * @param meters        Distance in meters, 0 if not DISTANCE_CHANGED
+     * @param accuracy      Accuracy of the distance, 0 if not DISTANCE_CHANGED
+     * @param rssi          RSSI of the BLE signal, 0 if not BLE_SIGNAL_CHANGED
+     * @param txPower       TX power of the BLE signal, 0 if not BLE_SIGNAL_CHANGED
+     */
+    public NearbyEvent(@NonNull Type type, long timeMicros, @NonNull byte[] content,
+            @NonNull String namespace, @NonNull String messageType, double meters, int accuracy,
+            int rssi, int txPower) {
+        this.type = type;
+        this.timeMicros = timeMicros;
+        this.content = content;
+        this.namespace = namespace;
+        this.messageType = messageType;
+        this.meters = meters;
+        this.accuracy = accuracy;
+        this.rssi = rssi;
+        this.txPower = txPower;
+    }
+
+    /**
+     * Returns the callback of the event.
+     *
+     * @return The Type
+     */
+    @NonNull
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the time the event was received, from the start of the recording.
+     *
+     * @return The time in microseconds
+     */
+    public long getTimeMicros() {
+        return timeMicros;
+    }
+
+    /**
+     * Returns the content of the message.
+     *
+     * @return The content bytes
+     */
+    @NonNull
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Returns the namespace of the message.
+     *
+     * @return The namespace
+     */
+    @NonNull
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the type of the message.
+     *
+     * @return The message type
+     */
+    @NonNull
+    public String getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * Returns the distance of a {@link Type#DISTANCE_CHANGED} event.
+     *
+     * @return The distance in meters
+     */
+    public double getMeters() {
+        return meters;
+    }
+
+    /**
+     * Returns the accuracy of the distance of a {@link Type#DISTANCE_CHANGED} event.
+     *
+     * @return The accuracy
+     */
+    public int getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Returns the RSSI of a {@link Type#BLE_SIGNAL_CHANGED} event.
+     *
+     * @return The RSSI
+     */
+    public int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * Returns the TX power of a {@link Type#BLE_SIGNAL_CHANGED} event.
+     *
+     * @return The TX power
+     */
+    public int getTxPower() {
+        return txPower;
+    }
+
+    /**
+     * Creates the Nearby {@link Message} of the event.
+     *
+     * @return The Message
+     */
+    @NonNull
+    public Message toMessage() {
+        return new Message(content, namespace, messageType);
+    }
+
+    /**
+     * Passes the event to the corresponding callback of a {@link MessageListener}.
+     *
+     * @param listener The MessageListener
+     */
+    public void dispatch(@NonNull MessageListener listener) {
+        Message message = toMessage();
+        switch (type) {
+            case FOUND:
+                listener.onFound(message);
+                break;
+            case LOST:
+                listener.onLost(message);
+                break;
+            case DISTANCE_CHANGED:
+                listener.onDistanceChanged(message, new RecordedDistance(meters, accuracy));
+                break;
+            case BLE_SIGNAL_CHANGED:
+                listener.onBleSignalChanged(message, new RecordedBleSignal(rssi, txPower));
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("[").append("type: ").append(type).append(", ");
+        buffer.append("timeMicros: ").append(timeMicros).append(", ");
+        buffer.append("content: ").append(content.length).append(" bytes");
+        if (type == Type.DISTANCE_CHANGED) {
+            buffer.append(", meters: ").append(meters);
+            buffer.append(", accuracy: ").append(accuracy);
+        } else if (type == Type.BLE_SIGNAL_CHANGED) {
+            buffer.append(", rssi: ").append(rssi);
+            buffer.append(", txPower: ").append(txPower);
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * {@link Distance} of a replayed {@link Type#DISTANCE_CHANGED} event.
+     */
+    private static class RecordedDistance implements Distance {
+
+        private final double meters;
+        private final int accuracy;
+
+        RecordedDistance(double meters, int accuracy) {
+            this.meters = meters;
+            this.accuracy = accuracy;
+        }
+
+        @Override
+        public int getAccuracy() {
+            return accuracy;
+        }
+
+        @Override
+        public double getMeters() {
+            return meters;
+        }
+
+        @Override
+        public int compareTo(@NonNull Distance distance) {
+            return Double.compare(meters, distance.getMeters());
+        }
+    }
+
+    /**
+     * {@link BleSignal} of a replayed {@link Type#BLE_SIGNAL_CHANGED} event.
+     */
+    private static class RecordedBleSignal implements BleSignal {
+
+        private final int rssi;
+        private final int txPower;
+
+        RecordedBleSignal(int rssi, int txPower) {
+            this.rssi = rssi;
+            this.txPower = txPower;
+        }
+
+        @Override
+        public int getRssi() {
+            return rssi;
+        }
+
+        @Override
+        public int getTxPower() {
+            return txPower;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.cccdlabs.sarva.data.p2p.nearby.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the {@link NearbyEvent}s of a binary Nearby event log written by
+ * {@link NearbyEventLogWriter}.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class NearbyEventLogReader implements Closeable {
+
+    /**
+     * Longest varint of a long.
+     */
+    private static final int MAX_VARINT_BYTES = 10;
+
+    /**
+     * Longest content or string accepted, guards against allocating for a corrupt length.
+     */
+    private static final int MAX_BYTES_LENGTH = 1 << 20;
+
+    /**
+     * The log stream.
+     */
+    private final DataInputStream in;
+
+    /**
+     * Time in microseconds of the last event read.
+     */
+    private long lastTimeMicros;
+
+    /**
+     * Constructor, reads and verifies the log header.
+     *
+     * @param in            The InputStream to read the log from
+     * @throws IOException  if the header fails to read, is not of a Nearby event log or is of an
+     *                      unknown version
+     */
+    public NearbyEventLogReader(@NonNull InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        for (byte b : NearbyEventLogWriter.MAGIC) {
+            if (this.in.readByte() != b) {
+                throw new IOException("Not a Nearby event log");
+            }
+        }
+
+        int version = this.in.readUnsignedByte();
+        if (version != NearbyEventLogWriter.VERSION_1) {
+            throw new IOException("Unknown Nearby event log version " + version);
+        }
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return              The NearbyEvent or null at the end of the log
+     * @throws IOException  if the event fails to read, is truncated or malformed
+     */
+    public NearbyEvent read() throws IOException {
+        int code = in.read();
+        if (code < 0) {
+            return null;
+        }
+
+        NearbyEvent.Type type = NearbyEvent.Type.fromCode(code);
+        if (type == null) {
+            throw new IOException("Unknown Nearby event type code " + code);
+        }
+
+        lastTimeMicros += readVarint();
+        byte[] content = readBytes();
+        String namespace = new String(readBytes(), NearbyEventLogWriter.CHARSET);
+        String messageType = new String(readBytes(), NearbyEventLogWriter.CHARSET);
+        double meters = 0;
+        int accuracy = 0;
+        int rssi = 0;
+        int txPower = 0;
+        switch (type) {
+            case DISTANCE_CHANGED:
+                meters = in.readDouble();
+                accuracy = (int) readVarint();
+                break;
+            case BLE_SIGNAL_CHANGED:
+                rssi = unzigzag(readVarint());
+                txPower = unzigzag(readVarint());
+                break;
+        }
+
+        return new NearbyEvent(type, lastTimeMicros, content, namespace, messageType, meters,
+                accuracy, rssi, txPower);
+    }
+
+    /**
+     * Closes the stream.
+     *
+     * @throws IOException if the stream fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private byte[] readBytes() throws IOException {
+        long length = readVarint();
+        if (length > MAX_BYTES_LENGTH) {
+            throw new IOException("Nearby event length " + length + " too long");
+        }
+
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Nearby event log truncated");
+            }
+
+            value |= (long) (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Nearby event varint malformed");
+    }
+
+    private static int unzigzag(long value) {
+        int n = (int) value;
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -0,0 +1,168 @@
+package com.cccdlabs.sarva.data.p2p.nearby.record;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.Constants;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes {@link NearbyEvent}s to a compact binary Nearby event log. Version 1 of the log is a
+ * header followed by one record per event:
+ * <ul>
+ * <li>4 byte header, {@link #MAGIC} then the version {@link #VERSION_1}</li>
+ * <li>1 byte {@link NearbyEvent.Type} code</li>
+ * <li>varint time in microseconds since the previous event, or since the start of the
+ * recording for the first</li>
+ * <li>varint length prefixed message content</li>
+ * <li>varint length prefixed UTF-8 message namespace and type</li>
+ * <li>8 byte distance in meters and varint accuracy, DISTANCE_CHANGED only</li>
+ * <li>zigzag varint RSSI and TX power, BLE_SIGNAL_CHANGED only</li>
+ * </ul>
+ * Events are written buffered, call {@link #close()} when the recording is done.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ * @see NearbyEventLogReader
+ */
+public class NearbyEventLogWriter implements Closeable {
+
+    /**
+     * Bytes starting a Nearby event log.
+     */
+    static final byte[] MAGIC = { 'S', 'N', 'E' };
+
+    /**
+     * Version 1 of the log.
+     */
+    static final int VERSION_1 = 1;
+
+    /**
+     * Character set of encoded strings.
+     */
+    static final Charset CHARSET = Charset.forName(Constants.CHAR_ENCODING);
+
+    /**
+     * The log stream.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * Time in nanoseconds the recording started, the origin of event times.
+     */
+    private final long startNanos;
+
+    /**
+     * Time in microseconds of the last event written.
+     */
+    private long lastTimeMicros;
+
+    /**
+     * Number of events written.
+     */
+    private long eventCount;
+
+    /**
+     * Constructor, writes the log header. The recording starts, event times being measured from
+     * now.
+     *
+     * @param out           The OutputStream to write the log to
+     * @throws IOException  if the header fails to write
+     */
+    public NearbyEventLogWriter(@NonNull OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION_1);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the time in microseconds since the recording started, the time of an event
+     * happening now. Listeners recording to the log one after another, such as on each
+     * subscribe, share this single timeline.
+     *
+     * @return The time in microseconds
+     */
+    public long getElapsedMicros() {
+        return (System.nanoTime() - startNanos) / 1000L;
+    }
+
+    /**
+     * Writes an event. Events are expected in order of time, an event earlier than the last
+     * written is written at the time of the last.
+     *
+     * @param event         The NearbyEvent
+     * @throws IOException  if the event fails to write
+     */
+    public synchronized void write(@NonNull NearbyEvent event) throws IOException {
+        long delta = Math.max(0, event.getTimeMicros() - lastTimeMicros);
+        lastTimeMicros += delta;
+
+        out.writeByte(event.getType().getCode());
+        writeVarint(delta);
+        writeBytes(event.getContent());
+        writeBytes(event.getNamespace().getBytes(CHARSET));
+        writeBytes(event.getMessageType().getBytes(CHARSET));
+        switch (event.getType()) {
+            case DISTANCE_CHANGED:
+                out.writeDouble(event.getMeters());
+                writeVarint(event.getAccuracy());
+                break;
+            case BLE_SIGNAL_CHANGED:
+                writeVarint(zigzag(event.getRssi()));
+                writeVarint(zigzag(event.getTxPower()));
+                break;
+        }
+        eventCount++;
+    }
+
+    /**
+     * Returns the number of events written.
+     *
+     * @return The event count
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Writes any buffered events to the stream.
+     *
+     * @throws IOException if the stream fails to flush
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the stream.
+     *
+     * @throws IOException if the stream fails to close
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+}
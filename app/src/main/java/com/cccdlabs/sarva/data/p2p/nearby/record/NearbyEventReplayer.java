@@ -0,0 +1,132 @@
+package com.cccdlabs.sarva.data.p2p.nearby.record;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the events of a Nearby event log into a {@link MessageListener} on the calling thread,
+ * keeping the recorded timing in real time or accelerated up to {@link #MAX_SPEED} times.
+ * <p>
+ * Events are dispatched against the start of the replay rather than the previous event, so a
+ * slow listener does not stretch the replay. How far dispatch fell behind the recorded timing
+ * is kept in {@link #getMaxLagNanos()}, a listener that keeps up at a speed has a lag near zero.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ * @see RecordingMessageListener
+ */
+public class NearbyEventReplayer {
+
+    /**
+     * Greatest replay speed, a multiple of real time.
+     */
+    public static final double MAX_SPEED = 1000d;
+
+    /**
+     * Replay speed, a multiple of real time.
+     */
+    private final double speed;
+
+    /**
+     * Number of events dispatched in the last replay.
+     */
+    private long eventCount;
+
+    /**
+     * Duration in nanoseconds of the last replay.
+     */
+    private long elapsedNanos;
+
+    /**
+     * Greatest lag in nanoseconds of an event behind its replay time in the last replay.
+     */
+    private long maxLagNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param speed Replay speed, 1 for real time up to {@link #MAX_SPEED}
+     * @throws IllegalArgumentException if speed is not greater than 0 or is above MAX_SPEED
+     */
+    public NearbyEventReplayer(double speed) {
+        if ( ! (speed > 0 && speed <= MAX_SPEED)) {
+            throw new IllegalArgumentException("Parameter speed must be greater than 0 and at most " + MAX_SPEED);
+        }
+
+        this.speed = speed;
+    }
+
+    /**
+     * Dispatches the events of a log to a listener, sleeping until the replay time of each. The
+     * reader is read to the end but not closed.
+     *
+     * @param reader                The NearbyEventLogReader of the log
+     * @param listener              The MessageListener to dispatch to
+     * @return                      The number of events dispatched
+     * @throws IOException          if the log fails to read
+     * @throws InterruptedException if interrupted while waiting on an event
+     */
+    public long replay(@NonNull NearbyEventLogReader reader, @NonNull MessageListener listener)
+            throws IOException, InterruptedException {
+        eventCount = 0;
+        maxLagNanos = 0;
+        long startNanos = System.nanoTime();
+
+        NearbyEvent event;
+        while ((event = reader.read()) != null) {
+            long dueNanos = startNanos + (long) (event.getTimeMicros() * 1000d / speed);
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } else if (-waitNanos > maxLagNanos) {
+                maxLagNanos = -waitNanos;
+            }
+
+            event.dispatch(listener);
+            eventCount++;
+        }
+
+        elapsedNanos = System.nanoTime() - startNanos;
+        return eventCount;
+    }
+
+    /**
+     * Returns the replay speed.
+     *
+     * @return The speed, a multiple of real time
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the number of events dispatched in the last replay.
+     *
+     * @return The event count
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the duration of the last replay.
+     *
+     * @return The duration in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the greatest lag of an event behind its replay time in the last replay.
+     *
+     * @return The lag in nanoseconds
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+}
@@ -0,0 +1,128 @@
+package com.cccdlabs.sarva.data.p2p.nearby.record;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.messages.BleSignal;
+import com.google.android.gms.nearby.messages.Distance;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import java.io.IOException;
+
+/**
+ * {@link MessageListener} that records every callback to a Nearby event log before passing it on
+ * to the listener it wraps, so a real session can be captured and later replayed with
+ * {@link NearbyEventReplayer}. Times are recorded from the start of the log, so a log keeps one
+ * timeline however many listeners record to it.
+ * <p>
+ * Recording never interrupts the wrapped listener: should writing fail, recording stops and
+ * the error is available from {@link #getError()}.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class RecordingMessageListener extends MessageListener {
+
+    /**
+     * The listener callbacks are passed on to.
+     */
+    private final MessageListener listener;
+
+    /**
+     * The log events are recorded to.
+     */
+    private final NearbyEventLogWriter writer;
+
+    /**
+     * First error writing the log, null if none.
+     */
+    private volatile IOException error;
+
+    /**
+     * Constructor.
+     *
+     * @param listener  The MessageListener to pass callbacks on to
+     * @param writer    The NearbyEventLogWriter to record callbacks to
+     */
+    public RecordingMessageListener(@NonNull MessageListener listener,
+            @NonNull NearbyEventLogWriter writer) {
+        this.listener = listener;
+        this.writer = writer;
+    }
+
+    @Override
+    public void onFound(Message message) {
+        record(NearbyEvent.Type.FOUND, message, 0, 0, 0, 0);
+        listener.onFound(message);
+    }
+
+    @Override
+    public void onLost(Message message) {
+        record(NearbyEvent.Type.LOST, message, 0, 0, 0, 0);
+        listener.onLost(message);
+    }
+
+    @Override
+    public void onDistanceChanged(Message message, Distance distance) {
+        record(NearbyEvent.Type.DISTANCE_CHANGED, message, distance.getMeters(),
+                distance.getAccuracy(), 0, 0);
+        listener.onDistanceChanged(message, distance);
+    }
+
+    @Override
+    public void onBleSignalChanged(Message message, BleSignal bleSignal) {
+        record(NearbyEvent.Type.BLE_SIGNAL_CHANGED, message, 0, 0, bleSignal.getRssi(),
+                bleSignal.getTxPower());
+        listener.onBleSignalChanged(message, bleSignal);
+    }
+
+    /**
+     * Returns the listener callbacks are passed on to.
+     *
+     * @return The wrapped MessageListener
+     */
+    @NonNull
+    public MessageListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Returns the error that stopped recording.
+     *
+     * @return The IOException or null if recording
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    private void record(NearbyEvent.Type type, Message message, double meters, int accuracy,
+            int rssi, int txPower) {
+        if (error != null) {
+            return;
+        }
+
+        long timeMicros = writer.getElapsedMicros();
+        byte[] content = message.getContent();
+        NearbyEvent event = new NearbyEvent(
+                type,
+                timeMicros,
+                content == null ? new byte[0] : content,
+                nonNull(message.getNamespace()),
+                nonNull(message.getType()),
+                meters,
+                accuracy,
+                rssi,
+                txPower
+        );
+
+        try {
+            writer.write(event);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,165 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.preference.PreferenceManager;
+
+import com.cccdlabs.sarva.data.settings.GeneralSettingsManager;
+import com.cccdlabs.sarva.data.utils.DateUtils;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.google.android.gms.nearby.messages.Message;
+
+import java.util.Date;
+
+/**
+ * Cache of the Nearby {@link Message} published by this device for each
+ * {@link PartnerMessage.Mode}. The messages are built together on first use from the UUID and
+ * username settings, then returned as is by each publish until an
+ * {@link SharedPreferences.OnSharedPreferenceChangeListener} sees either setting change.
+ * <p>
+ * Note the time of a cached message is the time it was built, not of the publish.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class IdentityMessageCache {
+
+    /**
+     * The Android application context the settings are read from.
+     */
+    private final Context mContext;
+
+    /**
+     * The default SharedPreferences the listener is registered with.
+     */
+    private final SharedPreferences mSharedPreferences;
+
+    /**
+     * Key of the UUID setting.
+     */
+    private final String mUuidKey;
+
+    /**
+     * Key of the username setting.
+     */
+    private final String mUsernameKey;
+
+    /**
+     * Messages indexed by Mode ordinal, null until built or after the settings change.
+     */
+    private volatile Message[] mMessages;
+
+    /**
+     * Count of times the messages were built.
+     */
+    private volatile int mBuildCount;
+
+    /**
+     * Invalidates the cached messages when the UUID or username setting changes. Held as a
+     * field since SharedPreferences only keeps a weak reference to its listeners.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    // null key if preferences cleared
+                    if (key == null || key.equals(mUuidKey) || key.equals(mUsernameKey)) {
+                        invalidate();
+                    }
+                }
+            };
+
+    /**
+     * Constructor, registers the settings change listener.
+     *
+     * @param context The Android application context
+     */
+    public IdentityMessageCache(@NonNull Context context) {
+        GeneralSettingsManager settings = new GeneralSettingsManager(context);
+        mContext = context;
+        mUuidKey = settings.getUuidKey();
+        mUsernameKey = settings.getUsernameKey();
+        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        mSharedPreferences.registerOnSharedPreferenceChangeListener(mListener);
+    }
+
+    /**
+     * Returns the cached Nearby {@link Message} of this device for a {@link PartnerMessage.Mode},
+     * building the messages of all Modes if not cached.
+     *
+     * @param mode  The message type enum
+     * @return      The Nearby Message object
+     */
+    public Message get(@NonNull PartnerMessage.Mode mode) {
+        Message[] messages = mMessages;
+        if (messages == null) {
+            synchronized (this) {
+                messages = mMessages;
+                if (messages == null) {
+                    messages = build();
+                    mMessages = messages;
+                }
+            }
+        }
+
+        return messages[mode.ordinal()];
+    }
+
+    /**
+     * Removes the cached messages so they are built again from the settings on next use.
+     */
+    public synchronized void invalidate() {
+        mMessages = null;
+    }
+
+    /**
+     * Returns the Android application context the settings are read from.
+     *
+     * @return The Context
+     */
+    public Context getContext() {
+        return mContext;
+    }
+
+    /**
+     * Returns the count of times the messages were built.
+     *
+     * @return The build count
+     */
+    public int getBuildCount() {
+        return mBuildCount;
+    }
+
+    /**
+     * Unregisters the settings change listener and removes the cached messages.
+     */
+    public void release() {
+        mSharedPreferences.unregisterOnSharedPreferenceChangeListener(mListener);
+        invalidate();
+    }
+
+    private Message[] build() {
+        GeneralSettingsManager settings = new GeneralSettingsManager(mContext);
+        String uuid = settings.getUuid();
+        String username = settings.getUsername();
+        String deviceName = NearbyUtils.getDeviceName();
+        Date time = DateUtils.currentTimestamp();
+
+        PartnerMessage.Mode[] modes = PartnerMessage.Mode.values();
+        Message[] messages = new Message[modes.length];
+        for (PartnerMessage.Mode mode : modes) {
+            PartnerMessage message = new PartnerMessage();
+            message.setUuid(uuid);
+            message.setUsername(username);
+            message.setDeviceName(deviceName);
+            message.setMode(mode);
+            message.setTime(time);
+            messages[mode.ordinal()] = NearbyUtils.toNearbyMessage(message);
+        }
+
+        mBuildCount++;
+        return messages;
+    }
+}
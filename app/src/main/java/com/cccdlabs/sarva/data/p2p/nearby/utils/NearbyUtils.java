@@ -6,23 +6,14 @@ import android.os.Build;
 import androidx.annotation.NonNull;
 
 import com.cccdlabs.sarva.data.Constants;
-import com.cccdlabs.sarva.data.entity.base.Entity;
-import com.cccdlabs.sarva.data.settings.GeneralSettingsManager;
-import com.cccdlabs.sarva.data.utils.DateUtils;
 import com.cccdlabs.sarva.domain.model.partners.Partner;
 import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
 import com.google.android.gms.nearby.messages.Message;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
 
-import java.lang.reflect.Type;
 import java.nio.charset.Charset;
-import java.util.Date;
 
 /**
  * Utility class to convert objects between Nearby {@link Message}, {@link PartnerMessage}
@@ -34,30 +25,34 @@ import java.util.Date;
 final public class NearbyUtils {
 
     /**
-     * Creates a deserializer for {@link PartnerMessage.Mode} type strings within JSON and
-     * converting those to its enum value.
-     */
-    private static class ModeDeserializer implements JsonDeserializer<PartnerMessage.Mode> {
-
-        /**
-         * Converts a JSON element {@link PartnerMessage.Mode} type string to an enum value.
-         *
-         * @param json      The Gson JsonElement element to deserialize
-         * @param typeOfT   Type of object to deserialize to (ignored)
-         * @param context   (Ignored within overrided method)
-         * @return          The Mode enum deserialized value from a JSON element
-         * @throws JsonParseException if JsonElement contains an invalid value to be parsed.
-         */
-        @Override
-        public PartnerMessage.Mode deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-                throws JsonParseException {
-            String modeStr = json.getAsString();
-            return PartnerMessage.Mode.fromValue(modeStr);
-        }
-    }
+     * Character set of the legacy JSON form.
+     */
+    private static final Charset CHARSET = Charset.forName(Constants.CHAR_ENCODING);
+
+    /**
+     * Cache of messages decoded from Nearby message content.
+     */
+    private static final PartnerMessageCache MESSAGE_CACHE =
+            new PartnerMessageCache(Constants.MESSAGE_CACHE_SIZE);
+
+    /**
+     * Gson reading and writing the legacy JSON form with the streaming
+     * {@link PartnerMessageTypeAdapter}, created once as Gson is immutable and thread safe.
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(PartnerMessage.class, new PartnerMessageTypeAdapter())
+            .serializeNulls()
+            .create();
+
+    /**
+     * Cache of the messages published by this device, created on first use.
+     */
+    private static IdentityMessageCache sIdentityMessages;
 
     /**
-     * Creates a Nearby {@link Message} for this device to be published to other devices.
+     * Creates a Nearby {@link Message} for this device to be published to other devices. The
+     * message is returned from an {@link IdentityMessageCache} which is only rebuilt when the
+     * UUID or username setting changes.
      *
      * @param context   The Android application context
      * @param mode      The message type enum
@@ -65,14 +60,30 @@ final public class NearbyUtils {
      * @see             PartnerMessage.Mode
      */
     public static Message createMessage(@NonNull Context context, @NonNull PartnerMessage.Mode mode) {
-        GeneralSettingsManager settings = new GeneralSettingsManager(context);
-        PartnerMessage message = new PartnerMessage();
-        message.setUuid(settings.getUuid());
-        message.setUsername(settings.getUsername());
-        message.setDeviceName(getDeviceName());
-        message.setMode(mode);
-        message.setTime(DateUtils.currentTimestamp());
-        return toNearbyMessage(message);
+        return getIdentityMessageCache(context).get(mode);
+    }
+
+    /**
+     * Returns the cache of messages published by this device, replacing it if created with
+     * a different application context.
+     *
+     * @param context   The Android application context
+     * @return          The IdentityMessageCache
+     */
+    public static synchronized IdentityMessageCache getIdentityMessageCache(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        if (appContext == null) {
+            appContext = context;
+        }
+
+        if (sIdentityMessages == null || sIdentityMessages.getContext() != appContext) {
+            if (sIdentityMessages != null) {
+                sIdentityMessages.release();
+            }
+            sIdentityMessages = new IdentityMessageCache(appContext);
+        }
+
+        return sIdentityMessages;
     }
 
     /**
@@ -88,7 +99,8 @@ final public class NearbyUtils {
     }
 
     /**
-     * Converts a {@link PartnerMessage} to Nearby {@link Message}.
+     * Converts a {@link PartnerMessage} to Nearby {@link Message}, with content in the form
+     * returned by {@link #encodeContent(PartnerMessage)}.
      *
      * @param message   The PartnerMessage object
      * @return          The Nearby Message object
@@ -98,7 +110,7 @@ final public class NearbyUtils {
             return null;
         }
 
-        return new Message(partnerMessageToJson(message).getBytes(Charset.forName(Constants.CHAR_ENCODING)));
+        return new Message(encodeContent(message));
     }
 
     /**
@@ -120,7 +132,21 @@ final public class NearbyUtils {
         message.setUsername(model.getUsername());
         message.setDeviceName(model.getDeviceName());
         message.setMode(mode);
-        return new Message(partnerMessageToJson(message).getBytes(Charset.forName(Constants.CHAR_ENCODING)));
+        return new Message(encodeContent(message));
+    }
+
+    /**
+     * Encodes the content of a {@link PartnerMessage} to publish, in the binary form of
+     * {@link PartnerMessageCodec} if {@link Constants#PUBLISH_BINARY_MESSAGES}, otherwise in the
+     * legacy JSON form that every build decodes.
+     *
+     * @param message   The PartnerMessage object
+     * @return          The encoded content
+     */
+    public static byte[] encodeContent(@NonNull PartnerMessage message) {
+        return Constants.PUBLISH_BINARY_MESSAGES
+                ? PartnerMessageCodec.encode(message)
+                : partnerMessageToJson(message).getBytes(CHARSET);
     }
 
     /**
@@ -158,18 +184,37 @@ final public class NearbyUtils {
     }
 
     /**
-     * Converts a Nearby {@link Message} to {@link PartnerMessage}.
+     * Converts a Nearby {@link Message} to {@link PartnerMessage}, with content in either the
+     * binary or legacy JSON form. Decoded messages are cached by message content so the returned
+     * PartnerMessage is immutable.
      *
      * @param message   The Nearby Message object
-     * @return          The PartnerMessage object
+     * @return          The immutable PartnerMessage object
+     * @see             PartnerMessageCache
+     * @see             PartnerMessageCodec
      */
     public static PartnerMessage toPartnerMessage(Message message) {
         if (message == null) {
             return null;
         }
 
-        String content = new String(message.getContent(), Charset.forName(Constants.CHAR_ENCODING));
-        return partnerMessageFromJson(content);
+        byte[] bytes = message.getContent();
+        PartnerMessage partnerMessage = MESSAGE_CACHE.get(bytes);
+        if (partnerMessage != null) {
+            return partnerMessage;
+        }
+
+        partnerMessage = PartnerMessageCodec.decode(bytes);
+        return partnerMessage == null ? null : MESSAGE_CACHE.put(bytes, partnerMessage);
+    }
+
+    /**
+     * Returns the cache of messages decoded from Nearby message content, for hit and miss stats.
+     *
+     * @return The PartnerMessageCache
+     */
+    public static PartnerMessageCache getMessageCache() {
+        return MESSAGE_CACHE;
     }
 
     /**
@@ -179,56 +224,26 @@ final public class NearbyUtils {
      * @param json  The JSON string
      * @return      The PartnerMessage object
      */
-    private static PartnerMessage partnerMessageFromJson(String json) {
+    static PartnerMessage partnerMessageFromJson(String json) {
         if (json == null) {
             return null;
         }
 
         try {
-            return getGson(true).fromJson(json, PartnerMessage.class);
+            return GSON.fromJson(json, PartnerMessage.class);
         } catch (JsonSyntaxException e) {
             return null;
         }
     }
 
     /**
-     * Returns a JSON String representing a PartnerMessage.
+     * Returns a JSON String representing a PartnerMessage, the legacy form of Nearby message
+     * content published before {@link PartnerMessageCodec}.
      *
      * @param partnerMessage    The PartnerMessage object
      * @return                  The JSON String
      */
-    private static String partnerMessageToJson(@NonNull PartnerMessage partnerMessage) {
-        return getGson(false).toJson(partnerMessage);
-    }
-
-    /**
-     * Returns a {@link Gson} object configured additionally with the DateDeserializer,
-     * BooleanDeserializer and ModeDeserializer to parse JSON into their respective types.
-     *
-     * @param isDeserialize True if Gson object used for deserializing object, otherwise for
-     *                      serialization from object
-     * @return              The Gson object
-     * @see                 Gson
-     * @see                 Entity.DateDeserializer
-     * @see                 Entity.BooleanDeserializer
-     * @see                 ModeDeserializer
-     */
-    private static Gson getGson(boolean isDeserialize) {
-        GsonBuilder builder = new GsonBuilder();
-
-        if (isDeserialize) {
-            // Convert SQL YYYY-MM-DD( HH:mm:ss) string to Date object
-            builder.registerTypeAdapter(Date.class, new Entity.DateDeserializer());
-
-            // Convert 0 or 1 to boolean
-            builder.registerTypeAdapter(boolean.class, new Entity.BooleanDeserializer());
-
-            // Convert {@link Mode} enum to String
-            builder.registerTypeAdapter(PartnerMessage.Mode.class, new ModeDeserializer());
-        } else {
-            builder.serializeNulls();
-        }
-
-        return builder.create();
+    static String partnerMessageToJson(@NonNull PartnerMessage partnerMessage) {
+        return GSON.toJson(partnerMessage);
     }
 }
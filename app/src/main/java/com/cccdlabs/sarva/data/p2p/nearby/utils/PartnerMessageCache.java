@@ -0,0 +1,235 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of decoded {@link PartnerMessage} objects keyed by the
+ * content of the Nearby message they were decoded from. Nearby delivers the same published
+ * message over and over with only the distance or BLE signal changing, so cached messages save
+ * decoding the same content each time.
+ * <p>
+ * Cached messages are immutable, calling a setter throws an {@link UnsupportedOperationException}.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerMessageCache {
+
+    /**
+     * Cache key wrapping message content, compared by bytes with the hash code computed once.
+     */
+    private static final class ContentKey {
+
+        private final byte[] content;
+
+        private final int hashCode;
+
+        ContentKey(byte[] content) {
+            this.content = content;
+            hashCode = Arrays.hashCode(content);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if ( ! (o instanceof ContentKey)) {
+                return false;
+            }
+
+            ContentKey other = (ContentKey) o;
+            return hashCode == other.hashCode && Arrays.equals(content, other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Read-only copy of a decoded {@link PartnerMessage}.
+     */
+    private static final class ImmutablePartnerMessage extends PartnerMessage {
+
+        ImmutablePartnerMessage(PartnerMessage message) {
+            super.setUuid(message.getUuid());
+            super.setUsername(message.getUsername());
+            super.setDeviceName(message.getDeviceName());
+            super.setMode(message.getMode());
+            Date time = message.getTime();
+            super.setTime(time == null ? null : new Date(time.getTime()));
+        }
+
+        @Override
+        public Date getTime() {
+            // Date is mutable so return a copy
+            Date time = super.getTime();
+            return time == null ? null : new Date(time.getTime());
+        }
+
+        @Override
+        public void setUuid(String uuid) {
+            throw new UnsupportedOperationException("Cached PartnerMessage is immutable");
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("Cached PartnerMessage is immutable");
+        }
+
+        @Override
+        public void setDeviceName(String deviceName) {
+            throw new UnsupportedOperationException("Cached PartnerMessage is immutable");
+        }
+
+        @Override
+        public void setMode(Mode mode) {
+            throw new UnsupportedOperationException("Cached PartnerMessage is immutable");
+        }
+
+        @Override
+        public void setTime(Date time) {
+            throw new UnsupportedOperationException("Cached PartnerMessage is immutable");
+        }
+    }
+
+    /**
+     * The maximum number of messages cached.
+     */
+    private final int maxSize;
+
+    /**
+     * Access ordered map of cached messages, guarded by itself.
+     */
+    private final LinkedHashMap<ContentKey, PartnerMessage> messages;
+
+    /**
+     * Count of lookups returning a cached message.
+     */
+    private long hitCount;
+
+    /**
+     * Count of lookups not returning a cached message.
+     */
+    private long missCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize The maximum number of messages cached, must be greater than zero
+     */
+    public PartnerMessageCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Parameter maxSize must be greater than zero");
+        }
+
+        this.maxSize = maxSize;
+        messages = new LinkedHashMap<ContentKey, PartnerMessage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ContentKey, PartnerMessage> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached message decoded from the given message content, null if not cached.
+     *
+     * @param content   The message content
+     * @return          The immutable PartnerMessage or null if not cached
+     */
+    public PartnerMessage get(@NonNull byte[] content) {
+        ContentKey key = new ContentKey(content);
+        synchronized (messages) {
+            PartnerMessage message = messages.get(key);
+            if (message == null) {
+                missCount++;
+            } else {
+                hitCount++;
+            }
+            return message;
+        }
+    }
+
+    /**
+     * Caches an immutable copy of a message decoded from the given message content, evicting the
+     * least recently used message if the cache is full.
+     *
+     * @param content   The message content
+     * @param message   The PartnerMessage decoded from the content
+     * @return          The immutable PartnerMessage cached
+     */
+    public PartnerMessage put(@NonNull byte[] content, @NonNull PartnerMessage message) {
+        // copy content in case the caller reuses the array
+        ContentKey key = new ContentKey(Arrays.copyOf(content, content.length));
+        PartnerMessage immutable = message instanceof ImmutablePartnerMessage
+                ? message
+                : new ImmutablePartnerMessage(message);
+        synchronized (messages) {
+            messages.put(key, immutable);
+        }
+        return immutable;
+    }
+
+    /**
+     * Removes all cached messages and resets the hit and miss counts.
+     */
+    public void clear() {
+        synchronized (messages) {
+            messages.clear();
+            hitCount = 0;
+            missCount = 0;
+        }
+    }
+
+    /**
+     * Returns the number of messages cached.
+     *
+     * @return The number of messages cached
+     */
+    public int size() {
+        synchronized (messages) {
+            return messages.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of messages cached.
+     *
+     * @return The maximum number of messages
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the count of lookups returning a cached message.
+     *
+     * @return The hit count
+     */
+    public long getHitCount() {
+        synchronized (messages) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Returns the count of lookups not returning a cached message.
+     *
+     * @return The miss count
+     */
+    public long getMissCount() {
+        synchronized (messages) {
+            return missCount;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.Constants;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Encodes and decodes a {@link PartnerMessage} to and from the compact binary form published in
+ * Nearby message content. Version 1 of the binary form is laid out as:
+ * <ul>
+ * <li>1 byte header, {@link #HEADER_V1}</li>
+ * <li>16 byte UUID, most then least significant bits, big-endian</li>
+ * <li>1 byte {@link PartnerMessage.Mode} code, see {@link #modeToCode(PartnerMessage.Mode)}</li>
+ * <li>1 byte flags, set if the time, username or device name follow</li>
+ * <li>varint time, milliseconds since epoch</li>
+ * <li>varint length prefixed UTF-8 username</li>
+ * <li>varint length prefixed UTF-8 device name</li>
+ * </ul>
+ * The header byte has the high bit set so it can never be mistaken for the legacy JSON form,
+ * which starts with <code>{</code>. Content in the legacy JSON form is still decoded so devices
+ * publishing JSON continue to be found.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+final public class PartnerMessageCodec {
+
+    /**
+     * Header byte of version 1 of the binary form.
+     */
+    public static final byte HEADER_V1 = (byte) 0x81;
+
+    /**
+     * Flag set if a time follows the mode.
+     */
+    private static final int FLAG_TIME = 0x01;
+
+    /**
+     * Flag set if a username follows the time.
+     */
+    private static final int FLAG_USERNAME = 0x02;
+
+    /**
+     * Flag set if a device name follows the username.
+     */
+    private static final int FLAG_DEVICE_NAME = 0x04;
+
+    /**
+     * Mode code for a null mode.
+     */
+    private static final int MODE_NONE = 0;
+
+    /**
+     * Length in bytes of header, UUID, mode and flags.
+     */
+    private static final int FIXED_LENGTH = 19;
+
+    /**
+     * Character set of encoded strings.
+     */
+    private static final Charset CHARSET = Charset.forName(Constants.CHAR_ENCODING);
+
+    /**
+     * Encodes a {@link PartnerMessage} in the binary form. The PartnerMessage must have a valid
+     * UUID.
+     *
+     * @param message   The PartnerMessage
+     * @return          The encoded bytes
+     * @throws IllegalArgumentException if the PartnerMessage UUID is null or invalid
+     */
+    public static byte[] encode(@NonNull PartnerMessage message) {
+        UUID uuid = parseUuid(message.getUuid());
+        if (uuid == null) {
+            throw new IllegalArgumentException("PartnerMessage UUID null or invalid: " + message.getUuid());
+        }
+
+        Date time = message.getTime();
+        byte[] username = message.getUsername() == null ? null : message.getUsername().getBytes(CHARSET);
+        byte[] deviceName = message.getDeviceName() == null ? null : message.getDeviceName().getBytes(CHARSET);
+
+        int flags = 0;
+        int length = FIXED_LENGTH;
+        if (time != null) {
+            flags |= FLAG_TIME;
+            length += varintLength(time.getTime());
+        }
+        if (username != null) {
+            flags |= FLAG_USERNAME;
+            length += varintLength(username.length) + username.length;
+        }
+        if (deviceName != null) {
+            flags |= FLAG_DEVICE_NAME;
+            length += varintLength(deviceName.length) + deviceName.length;
+        }
+
+        byte[] bytes = new byte[length];
+        bytes[0] = HEADER_V1;
+        int pos = writeLong(bytes, 1, uuid.getMostSignificantBits());
+        pos = writeLong(bytes, pos, uuid.getLeastSignificantBits());
+        bytes[pos++] = (byte) modeToCode(message.getMode());
+        bytes[pos++] = (byte) flags;
+        if (time != null) {
+            pos = writeVarint(bytes, pos, time.getTime());
+        }
+        if (username != null) {
+            pos = writeString(bytes, pos, username);
+        }
+        if (deviceName != null) {
+            writeString(bytes, pos, deviceName);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Decodes a {@link PartnerMessage} from either the binary or the legacy JSON form. Note that
+     * if the content is malformed or of an unknown version, null is returned.
+     *
+     * @param bytes The encoded bytes
+     * @return      The PartnerMessage or null if not decoded
+     */
+    public static PartnerMessage decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        if (bytes[0] == HEADER_V1) {
+            return decodeV1(bytes);
+        }
+
+        if ((bytes[0] & 0x80) != 0) {
+            // binary form of a later version
+            return null;
+        }
+
+        return NearbyUtils.partnerMessageFromJson(new String(bytes, CHARSET));
+    }
+
+    /**
+     * Returns true if the bytes are in the binary form, false if legacy JSON or unknown.
+     *
+     * @param bytes The encoded bytes
+     * @return      True if binary form
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == HEADER_V1;
+    }
+
+    /**
+     * Returns the code of a {@link PartnerMessage.Mode} in the binary form. Codes are fixed
+     * rather than the enum ordinal so that reordering the enum does not change the binary form.
+     *
+     * @param mode  The Mode or null
+     * @return      The code
+     */
+    static int modeToCode(PartnerMessage.Mode mode) {
+        if (mode == null) {
+            return MODE_NONE;
+        }
+
+        switch (mode) {
+            case CHECK:
+                return 1;
+            case PAIR:
+                return 2;
+            case PING:
+                return 3;
+            case SEARCH:
+                return 4;
+            case DEFAULT:
+                return 5;
+            default:
+                return MODE_NONE;
+        }
+    }
+
+    /**
+     * Returns the {@link PartnerMessage.Mode} of a code in the binary form.
+     *
+     * @param code  The code
+     * @return      The Mode or null if none or unknown
+     */
+    static PartnerMessage.Mode codeToMode(int code) {
+        switch (code) {
+            case 1:
+                return PartnerMessage.Mode.CHECK;
+            case 2:
+                return PartnerMessage.Mode.PAIR;
+            case 3:
+                return PartnerMessage.Mode.PING;
+            case 4:
+                return PartnerMessage.Mode.SEARCH;
+            case 5:
+                return PartnerMessage.Mode.DEFAULT;
+            default:
+                return null;
+        }
+    }
+
+    private static PartnerMessage decodeV1(byte[] bytes) {
+        if (bytes.length < FIXED_LENGTH) {
+            return null;
+        }
+
+        long msb = readLong(bytes, 1);
+        long lsb = readLong(bytes, 9);
+        int mode = bytes[17] & 0xFF;
+        int flags = bytes[18] & 0xFF;
+
+        PartnerMessage message = new PartnerMessage();
+        message.setUuid(new UUID(msb, lsb).toString());
+        message.setMode(codeToMode(mode));
+
+        // position and decoded value, index 0 and 1 respectively
+        long[] cursor = {FIXED_LENGTH, 0L};
+        if ((flags & FLAG_TIME) != 0) {
+            if ( ! readVarint(bytes, cursor)) {
+                return null;
+            }
+            message.setTime(new Date(cursor[1]));
+        }
+        if ((flags & FLAG_USERNAME) != 0) {
+            String username = readString(bytes, cursor);
+            if (username == null) {
+                return null;
+            }
+            message.setUsername(username);
+        }
+        if ((flags & FLAG_DEVICE_NAME) != 0) {
+            String deviceName = readString(bytes, cursor);
+            if (deviceName == null) {
+                return null;
+            }
+            message.setDeviceName(deviceName);
+        }
+
+        return message;
+    }
+
+    private static UUID parseUuid(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+
+        try {
+            UUID parsed = UUID.fromString(uuid);
+            // UUID.fromString() accepts unpadded values which would not decode to the same string
+            return parsed.toString().equalsIgnoreCase(uuid) ? parsed : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int writeLong(byte[] bytes, int pos, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[pos++] = (byte) (value >>> shift);
+        }
+        return pos;
+    }
+
+    private static long readLong(byte[] bytes, int pos) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[pos + i] & 0xFFL);
+        }
+        return value;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0L) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeVarint(byte[] bytes, int pos, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Reads a varint at the cursor position, advancing the position.
+     *
+     * @param bytes     The encoded bytes
+     * @param cursor    The position at index 0, receives the value at index 1
+     * @return          True if read, false if malformed
+     */
+    private static boolean readVarint(byte[] bytes, long[] cursor) {
+        int pos = (int) cursor[0];
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= bytes.length) {
+                return false;
+            }
+            byte b = bytes[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                cursor[0] = pos;
+                cursor[1] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int writeString(byte[] bytes, int pos, byte[] string) {
+        pos = writeVarint(bytes, pos, string.length);
+        System.arraycopy(string, 0, bytes, pos, string.length);
+        return pos + string.length;
+    }
+
+    private static String readString(byte[] bytes, long[] cursor) {
+        if ( ! readVarint(bytes, cursor)) {
+            return null;
+        }
+
+        int pos = (int) cursor[0];
+        long length = cursor[1];
+        if (length < 0 || length > bytes.length - pos) {
+            return null;
+        }
+
+        cursor[0] = pos + length;
+        return new String(bytes, pos, (int) length, CHARSET);
+    }
+
+    /**
+     * Constructor, private to prevent instantiation.
+     */
+    private PartnerMessageCodec() {}
+}
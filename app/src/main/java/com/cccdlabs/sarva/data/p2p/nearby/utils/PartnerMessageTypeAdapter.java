@@ -0,0 +1,102 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import com.cccdlabs.sarva.data.utils.DateUtils;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Streaming {@link TypeAdapter} reading and writing a {@link PartnerMessage} in the legacy JSON
+ * form of Nearby message content, without reflection. The time is written as an SQL datetime
+ * string so it is parsed back, the {@link PartnerMessage.Mode} as its enum name and read back
+ * case insensitive. Unknown keys are skipped and values that fail to parse are left null.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerMessageTypeAdapter extends TypeAdapter<PartnerMessage> {
+
+    /**
+     * Writes a {@link PartnerMessage} as a JSON object. Null values are written or left out per
+     * the {@link JsonWriter} serialize nulls setting.
+     *
+     * @param out           The JsonWriter
+     * @param message       The PartnerMessage
+     * @throws IOException  if the JsonWriter fails to write
+     */
+    @Override
+    public void write(JsonWriter out, PartnerMessage message) throws IOException {
+        if (message == null) {
+            out.nullValue();
+            return;
+        }
+
+        PartnerMessage.Mode mode = message.getMode();
+        out.beginObject();
+        out.name("uuid").value(message.getUuid());
+        out.name("username").value(message.getUsername());
+        out.name("deviceName").value(message.getDeviceName());
+        out.name("mode").value(mode == null ? null : mode.name());
+        out.name("time").value(DateUtils.dateToSqlString(message.getTime()));
+        out.endObject();
+    }
+
+    /**
+     * Reads a {@link PartnerMessage} from a JSON object.
+     *
+     * @param in            The JsonReader
+     * @return              The PartnerMessage or null if JSON null
+     * @throws IOException  if the JsonReader fails to read or the JSON is malformed
+     */
+    @Override
+    public PartnerMessage read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        PartnerMessage message = new PartnerMessage();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "uuid":
+                    message.setUuid(in.nextString());
+                    break;
+                case "username":
+                    message.setUsername(in.nextString());
+                    break;
+                case "deviceName":
+                    message.setDeviceName(in.nextString());
+                    break;
+                case "mode":
+                    message.setMode(PartnerMessage.Mode.fromValue(in.nextString()));
+                    break;
+                case "time":
+                    try {
+                        message.setTime(DateUtils.sqlStringToDate(in.nextString()));
+                    } catch (ParseException e) {
+                        // time published by an older version in Date.toString() form
+                        message.setTime(null);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return message;
+    }
+}
@@ -0,0 +1,104 @@
+package com.cccdlabs.sarva.data.p2p.transport;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+/**
+ * Transport that partner messages are published and received over. The
+ * {@link com.cccdlabs.sarva.data.p2p.nearby.client.PartnerNearbyMessagesClient} drives
+ * publishing and subscribing through this interface, so the radio or network underneath can be
+ * swapped, Google Nearby Messages being one backend.
+ * <p>
+ * Messages and callbacks use the Nearby {@link Message} and {@link MessageListener} types since
+ * they are plain data and callback classes, so backends report partners found, lost and their
+ * signal through the same listener whichever transport heard them. Each operation completes
+ * asynchronously through a {@link Callback}, on a thread of the backend's choosing.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public interface PartnerTransport {
+
+    /**
+     * Receives the result of a publish, subscribe, unpublish or unsubscribe operation.
+     */
+    interface Callback {
+
+        /**
+         * Called when the operation succeeds.
+         */
+        void onSuccess();
+
+        /**
+         * Called when the operation fails.
+         *
+         * @param e The Exception of the failure
+         */
+        void onFailure(@NonNull Exception e);
+    }
+
+    /**
+     * Receives the end of publishing or subscribing by the transport, such as by TTL.
+     */
+    interface ExpiryListener {
+
+        /**
+         * Called when publishing or subscribing has ended without being stopped.
+         */
+        void onExpired();
+    }
+
+    /**
+     * Starts publishing a message to other devices.
+     *
+     * @param message   The Message to publish
+     * @param expiry    Receives the end of publishing by the transport
+     * @param callback  Receives the result
+     */
+    void publish(@NonNull Message message, @NonNull ExpiryListener expiry,
+            @NonNull Callback callback);
+
+    /**
+     * Stops publishing a message.
+     *
+     * @param message   The Message published
+     * @param callback  Receives the result
+     */
+    void unpublish(@NonNull Message message, @NonNull Callback callback);
+
+    /**
+     * Starts receiving the messages of other devices.
+     *
+     * @param listener  Receives the partners found, lost and their signal
+     * @param expiry    Receives the end of subscribing by the transport
+     * @param callback  Receives the result
+     */
+    void subscribe(@NonNull MessageListener listener, @NonNull ExpiryListener expiry,
+            @NonNull Callback callback);
+
+    /**
+     * Stops receiving messages.
+     *
+     * @param listener  The MessageListener subscribed
+     * @param callback  Receives the result
+     */
+    void unsubscribe(@NonNull MessageListener listener, @NonNull Callback callback);
+
+    /**
+     * Returns true if the transport reports the signal of partners through
+     * <code>onBleSignalChanged()</code> or <code>onDistanceChanged()</code> each time they are
+     * heard. A transport only reporting found and lost detects silent partners itself, so they
+     * are not timed for silence by the client.
+     *
+     * @return True if the signal is reported, false if only found and lost
+     */
+    boolean reportsSignal();
+
+    /**
+     * Releases the resources of the transport. Publishing and subscribing should be stopped
+     * first.
+     */
+    void close();
+}
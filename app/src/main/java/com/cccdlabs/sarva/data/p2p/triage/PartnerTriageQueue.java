@@ -0,0 +1,369 @@
+package com.cccdlabs.sarva.data.p2p.triage;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+
+/**
+ * Triage of the partners in range during a search, ordered by their estimated distance so the
+ * searcher can pick the next target. The distance is weighed by the confidence in it: a reading
+ * of no confidence counts as up to {@link #CONFIDENCE_PENALTY} farther, so a slightly farther
+ * partner held with high confidence comes before a nearer one barely trusted. Of partners at the
+ * same weighted distance, the one with the higher confidence comes first.
+ * <p>
+ * The queue is an indexed binary heap keyed by partner UUID: each partner keeps its position in
+ * the heap, so a new distance moves it up or down in O(log n) rather than re-sorting every
+ * partner on every reading, and the nearest K are read in O(K log K). Partners lost leave the
+ * queue until found again. Partners marked located leave it for good, until unmarked or the
+ * queue is cleared, so they are not picked again while their devices keep emitting.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerTriageQueue {
+
+    /**
+     * Fraction of the distance added to a partner of no confidence, in proportion for the rest.
+     */
+    public static final double CONFIDENCE_PENALTY = 0.25;
+
+    /**
+     * A partner in the queue.
+     */
+    private static class Entry {
+
+        private final String uuid;
+        private Partner partner;
+        private double distance;
+        private double confidence;
+
+        /**
+         * Distance weighed by confidence, the order of the heap.
+         */
+        private double key;
+
+        /**
+         * Position in the heap.
+         */
+        private int index;
+
+        private Entry(String uuid) {
+            this.uuid = uuid;
+        }
+    }
+
+    /**
+     * Heap of the partners, the nearest at index zero.
+     */
+    private final List<Entry> heap = new ArrayList<>();
+
+    /**
+     * Partners in the heap by UUID.
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * UUIDs of the partners marked located.
+     */
+    private final Set<String> located = new HashSet<>();
+
+    /**
+     * Updates the queue from a result of the search emitter. An emitting partner with a
+     * distance is added or moved to its distance, with the trend confidence of the result, and a
+     * partner lost is removed. Other results, and results of partners marked located, are
+     * ignored.
+     *
+     * @param result    The PartnerResult
+     * @return          True if the queue changed, false if not
+     */
+    public synchronized boolean offer(@NonNull PartnerResult result) {
+        Partner partner = result.getPartner();
+        if (partner == null || partner.getUuid() == null) {
+            return false;
+        }
+
+        if (! partner.isEmitting()) {
+            return remove(partner.getUuid());
+        }
+
+        double distance = partner.getDistance();
+        if (! (distance > 0) || Double.isInfinite(distance)) {
+            // no distance to order by yet
+            return false;
+        }
+        return update(partner, distance, result.getTrendConfidence());
+    }
+
+    /**
+     * Adds a partner or moves it to a new distance, unless marked located.
+     *
+     * @param partner       The Partner
+     * @param distance      The estimated distance in meters
+     * @param confidence    The confidence in the partner from 0 to 1, the lower weighing the
+     *                      distance up to {@link #CONFIDENCE_PENALTY} farther
+     * @return              True if the queue changed, false if the partner is marked located
+     */
+    public synchronized boolean update(@NonNull Partner partner, double distance,
+            double confidence) {
+        if (partner.getUuid() == null) {
+            throw new IllegalArgumentException("Parameter partner has null UUID");
+        }
+        if (Double.isNaN(distance)) {
+            throw new IllegalArgumentException("Parameter distance is NaN");
+        }
+        if (located.contains(partner.getUuid())) {
+            return false;
+        }
+
+        Entry entry = entries.get(partner.getUuid());
+        if (entry == null) {
+            entry = new Entry(partner.getUuid());
+            entry.partner = partner;
+            entry.distance = distance;
+            entry.confidence = confidence;
+            entry.key = key(distance, confidence);
+            entry.index = heap.size();
+            heap.add(entry);
+            entries.put(entry.uuid, entry);
+            siftUp(entry.index);
+            return true;
+        }
+
+        double key = key(distance, confidence);
+        boolean isNearer = compare(key, confidence, entry.key, entry.confidence) < 0;
+        entry.partner = partner;
+        entry.distance = distance;
+        entry.confidence = confidence;
+        entry.key = key;
+        if (isNearer) {
+            siftUp(entry.index);
+        } else {
+            siftDown(entry.index);
+        }
+        return true;
+    }
+
+    /**
+     * Marks a partner located, removing it from the queue and ignoring it from then on.
+     *
+     * @param uuid  The partner UUID
+     * @return      True if the partner was in the queue, false if not
+     */
+    public synchronized boolean markLocated(@NonNull String uuid) {
+        located.add(uuid);
+        return remove(uuid);
+    }
+
+    /**
+     * Unmarks a partner located, such as one marked by mistake, so it rejoins the queue on its
+     * next distance.
+     *
+     * @param uuid The partner UUID
+     */
+    public synchronized void unmarkLocated(@NonNull String uuid) {
+        located.remove(uuid);
+    }
+
+    /**
+     * Returns whether a partner is marked located.
+     *
+     * @param uuid  The partner UUID
+     * @return      True if marked located, false if not
+     */
+    public synchronized boolean isLocated(@NonNull String uuid) {
+        return located.contains(uuid);
+    }
+
+    /**
+     * Removes a partner from the queue, in O(log n).
+     *
+     * @param uuid  The partner UUID
+     * @return      True if the partner was in the queue, false if not
+     */
+    public synchronized boolean remove(@NonNull String uuid) {
+        Entry entry = entries.remove(uuid);
+        if (entry == null) {
+            return false;
+        }
+
+        int index = entry.index;
+        Entry last = heap.remove(heap.size() - 1);
+        if (last != entry) {
+            set(index, last);
+            siftUp(index);
+            siftDown(last.index);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the nearest partner.
+     *
+     * @return The Partner or null if the queue is empty
+     */
+    public synchronized Partner peek() {
+        return heap.isEmpty() ? null : heap.get(0).partner;
+    }
+
+    /**
+     * Returns the nearest partners, nearest first, in O(K log K) without disturbing the queue.
+     *
+     * @param k The number of partners
+     * @return  The List of at most K Partner objects
+     */
+    @NonNull
+    public synchronized List<Partner> getTop(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Parameter k must be greater than zero");
+        }
+
+        int count = Math.min(k, heap.size());
+        List<Partner> top = new ArrayList<>(count);
+        if (count == 0) {
+            return top;
+        }
+
+        // the next nearest is always the root or a child of one already taken
+        PriorityQueue<Entry> candidates = new PriorityQueue<>(Math.max(1, count * 2),
+                new Comparator<Entry>() {
+                    @Override
+                    public int compare(Entry a, Entry b) {
+                        return PartnerTriageQueue.compare(a, b);
+                    }
+                });
+        candidates.add(heap.get(0));
+        while (top.size() < count) {
+            Entry entry = candidates.poll();
+            top.add(entry.partner);
+            int child = entry.index * 2 + 1;
+            if (child < heap.size()) {
+                candidates.add(heap.get(child));
+            }
+            if (child + 1 < heap.size()) {
+                candidates.add(heap.get(child + 1));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Returns a Flowable of the nearest partners, updating the queue from each result of the
+     * search emitter and emitting the nearest K each time the queue changes.
+     *
+     * @param results   The Flowable of the search emitter
+     * @param k         The number of partners
+     * @return          The Flowable of the List of at most K Partner objects, nearest first
+     */
+    @NonNull
+    public Flowable<List<Partner>> getTopFlowable(@NonNull Flowable<PartnerResult> results,
+            final int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Parameter k must be greater than zero");
+        }
+
+        return results.filter(new Predicate<PartnerResult>() {
+            @Override
+            public boolean test(PartnerResult result) throws Exception {
+                return offer(result);
+            }
+        }).map(new Function<PartnerResult, List<Partner>>() {
+            @Override
+            public List<Partner> apply(PartnerResult result) throws Exception {
+                return getTop(k);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of partners in the queue, not counting those marked located.
+     *
+     * @return The number of partners
+     */
+    public synchronized int size() {
+        return heap.size();
+    }
+
+    /**
+     * Removes all partners from the queue and unmarks all located.
+     */
+    public synchronized void clear() {
+        heap.clear();
+        entries.clear();
+        located.clear();
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap.get(index);
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            Entry parentEntry = heap.get(parent);
+            if (compare(entry, parentEntry) >= 0) {
+                break;
+            }
+            set(index, parentEntry);
+            index = parent;
+        }
+        set(index, entry);
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap.get(index);
+        int size = heap.size();
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compare(heap.get(child + 1), heap.get(child)) < 0) {
+                child++;
+            }
+            Entry childEntry = heap.get(child);
+            if (compare(childEntry, entry) >= 0) {
+                break;
+            }
+            set(index, childEntry);
+            index = child;
+        }
+        set(index, entry);
+    }
+
+    private void set(int index, Entry entry) {
+        heap.set(index, entry);
+        entry.index = index;
+    }
+
+    private static int compare(Entry a, Entry b) {
+        return compare(a.key, a.confidence, b.key, b.confidence);
+    }
+
+    /**
+     * Orders by weighted distance, then by confidence, higher first.
+     */
+    private static int compare(double keyA, double confidenceA, double keyB,
+            double confidenceB) {
+        int compare = Double.compare(keyA, keyB);
+        return compare != 0 ? compare : Double.compare(confidenceB, confidenceA);
+    }
+
+    /**
+     * Returns the distance weighed by confidence, clamped from 0 to 1.
+     */
+    private static double key(double distance, double confidence) {
+        double doubt = 1 - Math.max(0, Math.min(1, confidence));
+        return distance * (1 + CONFIDENCE_PENALTY * doubt);
+    }
+}
@@ -0,0 +1,731 @@
+package com.cccdlabs.sarva.data.p2p.udp;
+
+import android.net.wifi.WifiManager;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.p2p.transport.PartnerTransport;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PartnerTransport} over UDP multicast on the local network, for devices on the same
+ * Wi-Fi such as base camp tablets. The published message is sent as a beacon datagram every
+ * beacon interval and a partner not heard from for the lost timeout is reported lost, so
+ * presence updates well within a second. Datagrams are laid out as:
+ * <ul>
+ * <li>2 byte {@link #MAGIC}</li>
+ * <li>1 byte version, {@link #VERSION_1}</li>
+ * <li>1 byte kind, {@link #KIND_BEACON} or {@link #KIND_BYE} sent once on unpublishing so
+ * partners are lost at once</li>
+ * <li>the content of the published message, as encoded by
+ * {@link com.cccdlabs.sarva.data.p2p.nearby.utils.NearbyUtils#encodeContent}</li>
+ * </ul>
+ * Only found and lost are reported, there being no signal strength or distance over a network.
+ * Publishing and subscribing do not expire. Listener callbacks are made in order on a single
+ * transport thread. On Android a {@link WifiManager.MulticastLock} is held while subscribed,
+ * many devices otherwise filtering out multicast datagrams, so the {@link WifiManager} is to be
+ * set on the {@link Builder}.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class UdpMulticastPartnerTransport implements PartnerTransport {
+
+    /**
+     * Default multicast group, in the organization-local scope.
+     */
+    public static final String DEFAULT_GROUP = "239.255.42.99";
+
+    /**
+     * Default UDP port.
+     */
+    public static final int DEFAULT_PORT = 47474;
+
+    /**
+     * Default interval in milliseconds between beacons.
+     */
+    public static final long DEFAULT_BEACON_INTERVAL_MS = 250L;
+
+    /**
+     * Tag of the multicast lock.
+     */
+    private static final String MULTICAST_LOCK_TAG = "sarva-udp-partner";
+
+    /**
+     * Beacons missed before a partner is reported lost, by default.
+     */
+    private static final int LOST_BEACONS = 4;
+
+    /**
+     * Bytes starting a datagram.
+     */
+    static final byte[] MAGIC = { 'S', 'B' };
+
+    /**
+     * Version 1 of the datagram.
+     */
+    static final byte VERSION_1 = 1;
+
+    /**
+     * Kind of datagram sent while publishing.
+     */
+    static final byte KIND_BEACON = 1;
+
+    /**
+     * Kind of datagram sent once when unpublishing.
+     */
+    static final byte KIND_BYE = 2;
+
+    /**
+     * Length in bytes of the datagram header.
+     */
+    static final int HEADER_LENGTH = 4;
+
+    /**
+     * Longest datagram received.
+     */
+    private static final int MAX_DATAGRAM_LENGTH = 512;
+
+    /**
+     * Multicast group sent to and joined.
+     */
+    private final InetAddress group;
+
+    /**
+     * UDP port sent to and received on.
+     */
+    private final int port;
+
+    /**
+     * Network interface to send and receive on, null for the system default.
+     */
+    private final NetworkInterface networkInterface;
+
+    /**
+     * Interval in milliseconds between beacons.
+     */
+    private final long beaconIntervalMs;
+
+    /**
+     * Silence in milliseconds after which a partner is reported lost.
+     */
+    private final long lostTimeoutMs;
+
+    /**
+     * Lock letting multicast datagrams through the Wi-Fi filter while subscribed, null if no
+     * WifiManager was set.
+     */
+    private final WifiManager.MulticastLock multicastLock;
+
+    /**
+     * Object to use for synchronizing the sockets and state.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Partners heard by content, the time in milliseconds last heard from.
+     */
+    private final Map<ByteBuffer, Long> heard = new HashMap<>();
+
+    /**
+     * Runs the beacon, lost sweep and listener callbacks, null until first used.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Socket beacons are sent from, null if not publishing.
+     */
+    private MulticastSocket sendSocket;
+
+    /**
+     * Socket joined to the group, null if not subscribing.
+     */
+    private MulticastSocket receiveSocket;
+
+    /**
+     * Datagram of the published message, null if not publishing.
+     */
+    private byte[] beacon;
+
+    /**
+     * The periodic beacon, null if not publishing.
+     */
+    private ScheduledFuture<?> beaconTask;
+
+    /**
+     * The periodic lost sweep, null if not subscribing.
+     */
+    private ScheduledFuture<?> sweepTask;
+
+    /**
+     * The subscribed listener, null if not subscribing.
+     */
+    private MessageListener listener;
+
+    /**
+     * Builder pattern class to create instances of UdpMulticastPartnerTransport.
+     */
+    public static class Builder {
+
+        private InetAddress group;
+        private int port = DEFAULT_PORT;
+        private NetworkInterface networkInterface;
+        private long beaconIntervalMs = DEFAULT_BEACON_INTERVAL_MS;
+        private long lostTimeoutMs;
+        private WifiManager wifiManager;
+
+        /**
+         * Sets the multicast group. Default is {@link #DEFAULT_GROUP}.
+         *
+         * @param group The multicast group address
+         * @return      Builder instance for chaining methods in this class
+         */
+        public Builder setGroup(InetAddress group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * Sets the UDP port. Default is {@link #DEFAULT_PORT}.
+         *
+         * @param port  The port
+         * @return      Builder instance for chaining methods in this class
+         */
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Sets the network interface to send and receive on, such as loopback for tests. Default
+         * is null, the system default.
+         *
+         * @param networkInterface  The NetworkInterface
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setNetworkInterface(NetworkInterface networkInterface) {
+            this.networkInterface = networkInterface;
+            return this;
+        }
+
+        /**
+         * Sets the interval in milliseconds between beacons. Default is
+         * {@link #DEFAULT_BEACON_INTERVAL_MS}.
+         *
+         * @param beaconIntervalMs  The interval in milliseconds
+         * @return                  Builder instance for chaining methods in this class
+         */
+        public Builder setBeaconInterval(long beaconIntervalMs) {
+            this.beaconIntervalMs = beaconIntervalMs;
+            return this;
+        }
+
+        /**
+         * Sets the silence in milliseconds after which a partner is reported lost. Default is
+         * 4 beacon intervals.
+         *
+         * @param lostTimeoutMs The silence in milliseconds
+         * @return              Builder instance for chaining methods in this class
+         */
+        public Builder setLostTimeout(long lostTimeoutMs) {
+            this.lostTimeoutMs = lostTimeoutMs;
+            return this;
+        }
+
+        /**
+         * Sets the WifiManager to acquire a multicast lock from while subscribed, without which
+         * many devices filter out multicast datagrams. Default is null, no lock, such as on
+         * loopback for tests.
+         *
+         * @param wifiManager   The WifiManager
+         * @return              Builder instance for chaining methods in this class
+         */
+        public Builder setWifiManager(WifiManager wifiManager) {
+            this.wifiManager = wifiManager;
+            return this;
+        }
+
+        /**
+         * Creates and returns an instance of the UdpMulticastPartnerTransport class.
+         *
+         * @return UdpMulticastPartnerTransport object
+         */
+        public UdpMulticastPartnerTransport build() {
+            if (group == null) {
+                try {
+                    group = InetAddress.getByName(DEFAULT_GROUP);
+                } catch (UnknownHostException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            String message = null;
+            if ( ! group.isMulticastAddress()) {
+                message = "setGroup(InetAddress) must be a multicast address";
+            }
+
+            if (port <= 0 || port > 0xFFFF) {
+                message = (message == null ? "" : message + ", ") + "setPort(int) must be a valid port";
+            }
+
+            if (beaconIntervalMs <= 0 || lostTimeoutMs < 0) {
+                message = (message == null ? "" : message + ", ")
+                        + "setBeaconInterval(long) must be greater than zero and setLostTimeout(long) zero or greater";
+            }
+
+            if (message != null) {
+                throw new IllegalArgumentException(getClass().getSimpleName() + ": " + message);
+            }
+
+            return new UdpMulticastPartnerTransport(this);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param builder The Builder
+     */
+    private UdpMulticastPartnerTransport(Builder builder) {
+        group = builder.group;
+        port = builder.port;
+        networkInterface = builder.networkInterface;
+        beaconIntervalMs = builder.beaconIntervalMs;
+        lostTimeoutMs = builder.lostTimeoutMs > 0
+                ? builder.lostTimeoutMs
+                : builder.beaconIntervalMs * LOST_BEACONS;
+        if (builder.wifiManager != null) {
+            multicastLock = builder.wifiManager.createMulticastLock(MULTICAST_LOCK_TAG);
+            // a single hold however often subscribed, released on the first unsubscribe
+            multicastLock.setReferenceCounted(false);
+        } else {
+            multicastLock = null;
+        }
+    }
+
+    @Override
+    public void publish(@NonNull Message message, @NonNull ExpiryListener expiry,
+            @NonNull Callback callback) {
+        try {
+            synchronized (lock) {
+                if (sendSocket == null) {
+                    sendSocket = new MulticastSocket();
+                    sendSocket.setTimeToLive(1);
+                    if (networkInterface != null) {
+                        sendSocket.setNetworkInterface(networkInterface);
+                    }
+                }
+
+                beacon = toDatagram(KIND_BEACON, message.getContent());
+                if (beaconTask == null) {
+                    beaconTask = getExecutor().scheduleAtFixedRate(new Runnable() {
+                        @Override
+                        public void run() {
+                            sendBeacon();
+                        }
+                    }, 0, beaconIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return;
+        }
+
+        callback.onSuccess();
+    }
+
+    @Override
+    public void unpublish(@NonNull Message message, @NonNull Callback callback) {
+        try {
+            synchronized (lock) {
+                if (beaconTask != null) {
+                    beaconTask.cancel(false);
+                    beaconTask = null;
+                }
+
+                if (sendSocket != null) {
+                    byte[] bye = toDatagram(KIND_BYE, message.getContent());
+                    try {
+                        sendSocket.send(new DatagramPacket(bye, bye.length, group, port));
+                    } finally {
+                        sendSocket.close();
+                        sendSocket = null;
+                        beacon = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return;
+        }
+
+        callback.onSuccess();
+    }
+
+    @Override
+    public void subscribe(@NonNull MessageListener listener, @NonNull ExpiryListener expiry,
+            @NonNull Callback callback) {
+        try {
+            synchronized (lock) {
+                if (receiveSocket == null) {
+                    final MulticastSocket socket = new MulticastSocket(port);
+                    try {
+                        socket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+                    } catch (IOException e) {
+                        socket.close();
+                        throw e;
+                    }
+
+                    receiveSocket = socket;
+                    if (multicastLock != null) {
+                        multicastLock.acquire();
+                    }
+                    Thread receiver = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            receive(socket);
+                        }
+                    }, "udp-partner-receiver");
+                    receiver.setDaemon(true);
+                    receiver.start();
+
+                    sweepTask = getExecutor().scheduleAtFixedRate(new Runnable() {
+                        @Override
+                        public void run() {
+                            sweepLost();
+                        }
+                    }, beaconIntervalMs, beaconIntervalMs, TimeUnit.MILLISECONDS);
+                }
+
+                this.listener = listener;
+            }
+        } catch (IOException e) {
+            callback.onFailure(e);
+            return;
+        }
+
+        callback.onSuccess();
+    }
+
+    @Override
+    public void unsubscribe(@NonNull MessageListener listener, @NonNull Callback callback) {
+        synchronized (lock) {
+            this.listener = null;
+            heard.clear();
+            if (sweepTask != null) {
+                sweepTask.cancel(false);
+                sweepTask = null;
+            }
+
+            if (receiveSocket != null) {
+                // closing ends the receive loop
+                receiveSocket.close();
+                receiveSocket = null;
+            }
+            releaseMulticastLock();
+        }
+
+        callback.onSuccess();
+    }
+
+    /**
+     * Returns false, partners being found once and lost on the lost timeout.
+     *
+     * @return False
+     */
+    @Override
+    public boolean reportsSignal() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (beaconTask != null) {
+                beaconTask.cancel(false);
+                beaconTask = null;
+            }
+            if (sweepTask != null) {
+                sweepTask.cancel(false);
+                sweepTask = null;
+            }
+            if (sendSocket != null) {
+                sendSocket.close();
+                sendSocket = null;
+            }
+            if (receiveSocket != null) {
+                receiveSocket.close();
+                receiveSocket = null;
+            }
+            releaseMulticastLock();
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+            listener = null;
+            beacon = null;
+            heard.clear();
+        }
+    }
+
+    /**
+     * Returns the interval in milliseconds between beacons.
+     *
+     * @return The interval in milliseconds
+     */
+    public long getBeaconIntervalMs() {
+        return beaconIntervalMs;
+    }
+
+    /**
+     * Returns the silence in milliseconds after which a partner is reported lost.
+     *
+     * @return The silence in milliseconds
+     */
+    public long getLostTimeoutMs() {
+        return lostTimeoutMs;
+    }
+
+    /**
+     * Returns the transport thread executor, creating it on first use. Note that the caller must
+     * hold the lock.
+     *
+     * @return The ScheduledExecutorService
+     */
+    private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "udp-partner-transport");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Releases the multicast lock if held. Note that the caller must hold the lock.
+     */
+    private void releaseMulticastLock() {
+        if (multicastLock != null && multicastLock.isHeld()) {
+            multicastLock.release();
+        }
+    }
+
+    private void sendBeacon() {
+        synchronized (lock) {
+            if (sendSocket == null || beacon == null) {
+                return;
+            }
+
+            try {
+                sendSocket.send(new DatagramPacket(beacon, beacon.length, group, port));
+            } catch (IOException e) {
+                // dropped like any datagram, the next beacon is sent regardless
+            }
+        }
+    }
+
+    /**
+     * Receive loop of the subscribed socket, passing each datagram to the transport thread.
+     * Ends when the socket is closed.
+     *
+     * @param socket The subscribed socket
+     */
+    private void receive(MulticastSocket socket) {
+        byte[] buffer = new byte[MAX_DATAGRAM_LENGTH];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while ( ! socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+            } catch (IOException e) {
+                return;
+            }
+
+            final byte kind = parseKind(buffer, packet.getLength());
+            if (kind == 0) {
+                continue;
+            }
+
+            final byte[] content = Arrays.copyOfRange(buffer, HEADER_LENGTH, packet.getLength());
+            ExecutorService executor;
+            synchronized (lock) {
+                executor = this.executor;
+            }
+            if (executor == null) {
+                return;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDatagram(kind, content);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // executor shut down by close()
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles a datagram on the transport thread, reporting a partner found on its first beacon
+     * and lost on its bye.
+     *
+     * @param kind      The datagram kind
+     * @param content   The message content
+     */
+    private void onDatagram(byte kind, byte[] content) {
+        MessageListener listener;
+        boolean found = false;
+        boolean lost = false;
+        synchronized (lock) {
+            listener = this.listener;
+            if (listener == null) {
+                return;
+            }
+
+            if (beacon != null && isOwnContent(content)) {
+                // not reporting this device to itself
+                return;
+            }
+
+            ByteBuffer key = ByteBuffer.wrap(content);
+            if (kind == KIND_BEACON) {
+                found = heard.put(key, now()) == null;
+            } else {
+                lost = heard.remove(key) != null;
+            }
+        }
+
+        if (found) {
+            listener.onFound(new Message(content));
+        } else if (lost) {
+            listener.onLost(new Message(content));
+        }
+    }
+
+    /**
+     * Reports lost the partners not heard from for the lost timeout, run on the transport thread.
+     */
+    private void sweepLost() {
+        MessageListener listener;
+        List<byte[]> lost = null;
+        synchronized (lock) {
+            listener = this.listener;
+            long now = now();
+            Iterator<Map.Entry<ByteBuffer, Long>> iterator = heard.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<ByteBuffer, Long> entry = iterator.next();
+                if (now - entry.getValue() > lostTimeoutMs) {
+                    iterator.remove();
+                    if (lost == null) {
+                        lost = new ArrayList<>();
+                    }
+                    lost.add(entry.getKey().array());
+                }
+            }
+        }
+
+        if (listener == null || lost == null) {
+            return;
+        }
+
+        for (byte[] content : lost) {
+            listener.onLost(new Message(content));
+        }
+    }
+
+    /**
+     * Returns true if the content is of the message published. Note that the caller must hold
+     * the lock.
+     *
+     * @param content   The message content
+     * @return          True if this device's message
+     */
+    private boolean isOwnContent(byte[] content) {
+        if (content.length != beacon.length - HEADER_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != beacon[HEADER_LENGTH + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Creates a datagram of a kind with message content.
+     *
+     * @param kind      The datagram kind
+     * @param content   The message content
+     * @return          The datagram bytes
+     * @throws IOException if the content does not fit a datagram
+     */
+    static byte[] toDatagram(byte kind, byte[] content) throws IOException {
+        if (HEADER_LENGTH + content.length > MAX_DATAGRAM_LENGTH) {
+            throw new IOException("Message content of " + content.length + " bytes too long for a datagram");
+        }
+
+        byte[] datagram = new byte[HEADER_LENGTH + content.length];
+        datagram[0] = MAGIC[0];
+        datagram[1] = MAGIC[1];
+        datagram[2] = VERSION_1;
+        datagram[3] = kind;
+        System.arraycopy(content, 0, datagram, HEADER_LENGTH, content.length);
+        return datagram;
+    }
+
+    /**
+     * Returns the kind of a datagram.
+     *
+     * @param datagram  The datagram bytes
+     * @param length    The datagram length
+     * @return          The kind or 0 if not a datagram of this transport or of an unknown version
+     */
+    static byte parseKind(byte[] datagram, int length) {
+        if (length <= HEADER_LENGTH
+                || datagram[0] != MAGIC[0]
+                || datagram[1] != MAGIC[1]
+                || datagram[2] != VERSION_1) {
+            return 0;
+        }
+
+        byte kind = datagram[3];
+        return kind == KIND_BEACON || kind == KIND_BYE ? kind : 0;
+    }
+}
@@ -0,0 +1,194 @@
+package com.cccdlabs.sarva.data.repository.partners;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.repository.exception.RepositoryQueryException;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of {@link Partner} rows by UUID, read through by
+ * {@link PartnerRepository} so repeated lookups of the same partners are memory reads rather
+ * than a SELECT and mapping each time. UUIDs with no row are cached as missing too, so lookups
+ * of unknown partners are memory reads as well.
+ * <p>
+ * Only the persisted fields of a partner are cached and each lookup returns a new copy, so
+ * callers may modify the Partner returned or put. Loads run outside the lock and are only cached
+ * if no write invalidated the cache meanwhile, so a load racing a write can never cache the row
+ * from before the write.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerCache {
+
+    /**
+     * Loads a partner on a cache miss.
+     */
+    public interface Loader {
+
+        /**
+         * Returns the partner of a UUID from the database.
+         *
+         * @param uuid  The partner UUID
+         * @return      The Partner or null if there is no row for the UUID
+         * @throws      RepositoryQueryException if an SQL error occurs
+         */
+        Partner load(@NonNull String uuid) throws RepositoryQueryException;
+    }
+
+    /**
+     * Default maximum number of UUIDs cached.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * Cached value of a UUID with no row.
+     */
+    private static final Partner MISSING = new Partner();
+
+    /**
+     * Cached partners by UUID in access order, least recently used first.
+     */
+    private final LinkedHashMap<String, Partner> partners;
+
+    private long generation;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Maximum number of UUIDs cached, must be greater than zero
+     */
+    public PartnerCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Parameter maxSize must be greater than zero");
+        }
+
+        partners = new LinkedHashMap<String, Partner>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Partner> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the partner of a UUID, from the cache if cached or else loaded and put
+     * unless the cache is invalidated during the load. A loaded partner is counted as a miss.
+     *
+     * @param uuid      The partner UUID
+     * @param loader    Loads the partner from the database on a miss
+     * @return          The Partner copy, null if there is no row for the UUID
+     * @throws          RepositoryQueryException if the loader throws
+     */
+    public Partner get(@NonNull String uuid, @NonNull Loader loader)
+            throws RepositoryQueryException {
+        long loadGeneration;
+        synchronized (this) {
+            Partner partner = partners.get(uuid);
+            if (partner != null) {
+                hitCount++;
+                return partner == MISSING ? null : copy(partner);
+            }
+
+            missCount++;
+            loadGeneration = generation;
+        }
+
+        Partner loaded = loader.load(uuid);
+        synchronized (this) {
+            if (loadGeneration == generation) {
+                partners.put(uuid, loaded == null ? MISSING : copy(loaded));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Caches the row of a UUID just written to the database, replacing any cached value.
+     *
+     * @param partner The written Partner
+     */
+    public synchronized void put(@NonNull Partner partner) {
+        generation++;
+        partners.put(partner.getUuid(), copy(partner));
+    }
+
+    /**
+     * Removes a UUID from the cache.
+     *
+     * @param uuid The partner UUID
+     */
+    public synchronized void invalidate(@NonNull String uuid) {
+        generation++;
+        partners.remove(uuid);
+    }
+
+    /**
+     * Removes all UUIDs from the cache, such as after a write of unknown or many rows.
+     */
+    public synchronized void clear() {
+        generation++;
+        partners.clear();
+    }
+
+    /**
+     * Returns the number of UUIDs cached.
+     *
+     * @return The number of UUIDs
+     */
+    public synchronized int size() {
+        return partners.size();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     *
+     * @return The miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "[size: " + partners.size() + ", hits: " + hitCount
+                + ", misses: " + missCount + "]";
+    }
+
+    /**
+     * Returns a copy of the persisted fields of a partner.
+     *
+     * @param partner   The Partner
+     * @return          The Partner copy
+     */
+    private static Partner copy(Partner partner) {
+        Partner copy = new Partner();
+        copy.setId(partner.getId());
+        copy.setUuid(partner.getUuid());
+        copy.setCreatedAt(copy(partner.getCreatedAt()));
+        copy.setUpdatedAt(copy(partner.getUpdatedAt()));
+        copy.setUsername(partner.getUsername());
+        copy.setDeviceName(partner.getDeviceName());
+        copy.setActive(partner.isActive());
+        return copy;
+    }
+
+    private static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+}
@@ -5,25 +5,36 @@ import android.database.sqlite.SQLiteException;
 import com.cccdlabs.sarva.data.entity.partners.PartnerEntity;
 import com.cccdlabs.sarva.data.mappers.partners.PartnerMapper;
 import com.cccdlabs.sarva.data.repository.base.AbstractRepository;
+import com.cccdlabs.sarva.data.utils.DateUtils;
 import com.cccdlabs.sarva.data.storage.dao.partners.PartnerDao;
 import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.repository.exception.RepositoryDeleteException;
 import com.cccdlabs.sarva.domain.repository.exception.RepositoryException;
+import com.cccdlabs.sarva.domain.repository.exception.RepositoryInsertException;
 import com.cccdlabs.sarva.domain.repository.exception.RepositoryQueryException;
 import com.cccdlabs.sarva.domain.repository.exception.RepositoryUpdateException;
 import com.cccdlabs.sarva.domain.repository.partners.PartnerRepo;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 /**
  * Database functions specific for the {@link Partner} domain model also utilizing
  * {@link PartnerEntity}. General database functions are covered in the inherited
  * {@link AbstractRepository}.
+ * <p>
+ * Lookups by UUID read through a {@link PartnerCache}, which every write of a partner row
+ * invalidates, so the partners looked up for each message received while emitting are memory
+ * reads. Annotated with {@link Singleton} so all users share the one cache.
  *
  * @author Johnny Spence
  * @version 1.0.0
  */
+@Singleton
 public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner, PartnerMapper, PartnerDao>
         implements PartnerRepo {
 
@@ -33,6 +44,124 @@ public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner
     @Inject
     public PartnerRepository() {}
 
+    /**
+     * Interval in milliseconds within which the update timestamp of a synced partner whose
+     * persisted fields are unchanged is not refreshed.
+     */
+    public static final long LAST_SEEN_INTERVAL_MS = 60000L;
+
+    /**
+     * Cache of partner rows by UUID.
+     */
+    private final PartnerCache cache = new PartnerCache(PartnerCache.DEFAULT_MAX_SIZE);
+
+    /**
+     * Loads partner rows missing from the cache.
+     */
+    private final PartnerCache.Loader loader = new PartnerCache.Loader() {
+        @Override
+        public Partner load(String uuid) throws RepositoryQueryException {
+            return PartnerRepository.super.getByUuid(uuid);
+        }
+    };
+
+    /**
+     * Returns a single partner from a given UUID, from the cache if cached.
+     *
+     * @param uuid  The UUID of row to retrieve
+     * @return      The Partner or null if it does not exist
+     * @throws      RepositoryQueryException if UUID parameter null or empty value or an SQL
+     *              error occurs in the SELECT query
+     */
+    @Override
+    public Partner getByUuid(String uuid) throws RepositoryQueryException {
+        if (uuid == null || uuid.equals("")) {
+            throw new RepositoryQueryException("Parameter uuid is null or empty value");
+        }
+
+        return cache.get(uuid, loader);
+    }
+
+    /**
+     * Performs a database INSERT of a partner and invalidates its cached UUID.
+     *
+     * @param model The Partner domain model object
+     * @return      The AUTO_INCREMENT id of the inserted row
+     * @throws      RepositoryInsertException if model parameter null or an SQL error occurs in
+     *              the INSERT query
+     */
+    @Override
+    public int insert(Partner model) throws RepositoryInsertException {
+        try {
+            return super.insert(model);
+        } finally {
+            invalidate(model);
+        }
+    }
+
+    /**
+     * Performs a database UPDATE of a partner and invalidates its cached UUID.
+     *
+     * @param model The Partner domain model object
+     * @return      The number of rows successfully updated
+     * @throws      RepositoryUpdateException if model parameter null or an SQL error occurs in
+     *              the UPDATE query
+     */
+    @Override
+    public int update(Partner model) throws RepositoryUpdateException {
+        try {
+            return super.update(model);
+        } finally {
+            invalidate(model);
+        }
+    }
+
+    /**
+     * Performs a database DELETE of a partner given a row UUID and invalidates the cached UUID.
+     * Deleting by model or id also deletes by UUID.
+     *
+     * @param uuid  The UUID of row to perform delete
+     * @return      The number of rows successfully deleted
+     * @throws      RepositoryDeleteException if UUID parameter null or empty or an SQL error
+     *              occurs in the DELETE query
+     */
+    @Override
+    public int delete(String uuid) throws RepositoryDeleteException {
+        try {
+            return super.delete(uuid);
+        } finally {
+            if (uuid != null) {
+                cache.invalidate(uuid);
+            }
+        }
+    }
+
+    /**
+     * Performs a database DELETE of a List of partners and invalidates their cached UUIDs, or
+     * the whole cache if any are without a UUID since they are deleted by id.
+     *
+     * @param models    The List of Partner domain model objects
+     * @return          The number of rows successfully deleted
+     * @throws          RepositoryDeleteException if models parameter null or an error occurs
+     *                  while deleting the models
+     */
+    @Override
+    public int delete(List<Partner> models) throws RepositoryDeleteException {
+        try {
+            return super.delete(models);
+        } finally {
+            if (models != null) {
+                for (Partner model : models) {
+                    if (model == null || model.getUuid() == null) {
+                        cache.clear();
+                        break;
+                    }
+                    cache.invalidate(model.getUuid());
+                }
+            }
+        }
+    }
+
     /**
      * Returns a list of {@link Partner} objects marked active in the database.
      *
@@ -64,13 +193,17 @@ public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner
             return false;
         }
 
-        return super.getByUuid(uuid) != null;
+        return getByUuid(uuid) != null;
     }
 
     /**
      * Accepts a Partner domain model and will insert it if it doesn't exist or update the database
      * row if it does. If passed in null value or entity UUID null or empty string, will return
      * null. Note that this method will initially set the status of the model to inactive.
+     * <p>
+     * The row is only updated if a persisted field changed. Otherwise only its update timestamp
+     * is refreshed, at most once per {@link #LAST_SEEN_INTERVAL_MS}, so syncing a partner whose
+     * readings alone changed usually does not write to the database.
      *
      * @param model The Partner domain model object
      * @return      The Partner domain model object with AUTO_INCREMENT id set
@@ -83,19 +216,103 @@ public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner
         }
 
         model.setActive(false);
-        Partner toCheck = super.getByUuid(model.getUuid());
+        Partner toCheck = getByUuid(model.getUuid());
         if (toCheck == null) {
-            int id = super.insert(model);
+            int id = insert(model);
             model.setId(id);
-        } else {
+        } else if (isChanged(toCheck, model)) {
             model.setId(toCheck.getId());
             model.setCreatedAt(toCheck.getCreatedAt());
-            super.update(model);
+            update(model);
+        } else {
+            Date seenAt = seenAt(toCheck);
+            if (seenAt != null) {
+                try {
+                    getDao().setUpdatedAt(model.getUuid(), DateUtils.dateToSqlString(seenAt));
+                } catch (SQLiteException e) {
+                    throw new RepositoryUpdateException(e);
+                }
+                toCheck.setUpdatedAt(seenAt);
+                cache.put(toCheck);
+            }
+            setStoredFields(model, toCheck);
         }
 
         return model;
     }
 
+    /**
+     * Accepts Partner domain models and inserts or updates each as {@link #sync(Partner)}, with
+     * a single INSERT or UPDATE per model written all in one transaction rather than a
+     * transaction per statement. Models with a null or empty UUID are skipped. Models are
+     * compared with their rows in the cache, so a batch of partners whose readings alone changed
+     * usually does not touch the database at all. The rows written replace any cached, so the
+     * partners are found in the cache afterwards.
+     *
+     * @param models    The Partner domain model objects
+     * @return          The Partner domain model objects synced with AUTO_INCREMENT id set
+     * @throws          RepositoryException if models parameter null or an SQL error occurs, in
+     *                  which case none of the models are written
+     */
+    public List<Partner> syncAll(List<Partner> models) throws RepositoryException {
+        if (models == null) {
+            throw new RepositoryInsertException("Parameter List<Partner> models is null value");
+        }
+
+        Date now = seenAt(null);
+        List<Partner> synced = new ArrayList<>(models.size());
+        List<Partner> written = new ArrayList<>(models.size());
+        List<PartnerEntity> entities = new ArrayList<>(models.size());
+        List<Partner> seen = new ArrayList<>();
+        List<String> seenUuids = new ArrayList<>();
+        for (Partner model : models) {
+            if (model == null || model.getUuid() == null || model.getUuid().equals("")) {
+                continue;
+            }
+
+            model.setActive(false);
+            synced.add(model);
+            Partner toCheck = getByUuid(model.getUuid());
+            if (toCheck == null || isChanged(toCheck, model)) {
+                PartnerEntity entity = getMapper().fromDomainModel(model);
+                entity.touch();
+                written.add(model);
+                entities.add(entity);
+            } else {
+                if (seenAt(toCheck) != null) {
+                    toCheck.setUpdatedAt(now);
+                    seen.add(toCheck);
+                    seenUuids.add(toCheck.getUuid());
+                }
+                setStoredFields(model, toCheck);
+            }
+        }
+
+        if (entities.isEmpty() && seenUuids.isEmpty()) {
+            return synced;
+        }
+
+        try {
+            getDao().sync(entities, seenUuids, DateUtils.dateToSqlString(now));
+        } catch (SQLiteException e) {
+            throw new RepositoryInsertException(e);
+        }
+
+        for (int i = 0; i < written.size(); i++) {
+            Partner model = written.get(i);
+            PartnerEntity entity = entities.get(i);
+            model.setId(entity.getId());
+            model.setCreatedAt(entity.getCreatedAt());
+            model.setUpdatedAt(entity.getUpdatedAt());
+            cache.put(getMapper().toDomainModel(entity));
+        }
+        for (Partner partner : seen) {
+            cache.put(partner);
+        }
+
+        return synced;
+    }
+
     /**
      * Sets a partner row active flag to true.
      *
@@ -112,6 +329,8 @@ public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner
             return getDao().setActive(uuid) > 0;
         } catch (SQLiteException e) {
             throw new RepositoryUpdateException(e);
+        } finally {
+            cache.invalidate(uuid);
         }
     }
 
@@ -131,6 +350,8 @@ public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner
             return getDao().setInactive(uuid) > 0;
         } catch (SQLiteException e) {
             throw new RepositoryUpdateException(e);
+        } finally {
+            cache.invalidate(uuid);
         }
     }
 
@@ -144,6 +365,83 @@ public class PartnerRepository extends AbstractRepository<PartnerEntity, Partner
             getDao().setAllInactive();
         } catch (SQLiteException e) {
             throw new RepositoryUpdateException(e);
+        } finally {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of UUID lookups answered from the cache.
+     *
+     * @return The cache hit count
+     */
+    public long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Returns the number of UUID lookups that queried the database.
+     *
+     * @return The cache miss count
+     */
+    public long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Returns true if a persisted field of a partner differs from its row.
+     *
+     * @param stored    The Partner row
+     * @param model     The Partner domain model object to sync
+     * @return          True if the row is to be updated
+     */
+    private static boolean isChanged(Partner stored, Partner model) {
+        return stored.isActive() != model.isActive()
+                || !isEqual(stored.getUsername(), model.getUsername())
+                || !isEqual(stored.getDeviceName(), model.getDeviceName());
+    }
+
+    /**
+     * Returns the time to refresh the update timestamp of an unchanged row to, or null if it was
+     * refreshed within {@link #LAST_SEEN_INTERVAL_MS}. The time is truncated to the second as
+     * stored in the database.
+     *
+     * @param stored    The Partner row, null to return the current time
+     * @return          The Date or null if not to be refreshed
+     */
+    private static Date seenAt(Partner stored) {
+        long now = System.currentTimeMillis();
+        if (stored != null && stored.getUpdatedAt() != null
+                && now - stored.getUpdatedAt().getTime() < LAST_SEEN_INTERVAL_MS) {
+            return null;
+        }
+        return new Date(now - now % 1000);
+    }
+
+    /**
+     * Sets the id and timestamps of a partner to those of its row.
+     *
+     * @param model     The Partner domain model object
+     * @param stored    The Partner row
+     */
+    private static void setStoredFields(Partner model, Partner stored) {
+        model.setId(stored.getId());
+        model.setCreatedAt(stored.getCreatedAt());
+        model.setUpdatedAt(stored.getUpdatedAt());
+    }
+
+    private static boolean isEqual(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Invalidates the cached UUID of a partner written.
+     *
+     * @param model The Partner domain model object, may be null
+     */
+    private void invalidate(Partner model) {
+        if (model != null && model.getUuid() != null) {
+            cache.invalidate(model.getUuid());
         }
     }
 }
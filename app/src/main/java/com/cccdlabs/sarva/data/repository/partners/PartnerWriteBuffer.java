@@ -0,0 +1,386 @@
+package com.cccdlabs.sarva.data.repository.partners;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.repository.exception.RepositoryException;
+import com.cccdlabs.sarva.domain.repository.partners.PartnerRepo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.plugins.RxJavaPlugins;
+
+/**
+ * Write-behind buffer of partners to sync to the database. Partners written are coalesced by
+ * UUID, the latest write of a partner replacing any pending, and flushed together with
+ * {@link PartnerRepo#syncAll(List)} in a single transaction at most a flush interval after the
+ * first pending write, or at once on the {@link Scheduler} when the maximum pending partners is
+ * reached. A stream of BLE signal readings thereby costs a transaction per interval instead of
+ * several statements per reading on the emitting thread.
+ * <p>
+ * A copy of each partner written is buffered, so the sync setting its id, timestamps and
+ * active flag on the io thread does not touch the partner emitted to subscribers, and later
+ * changes to the partner do not reach the write pending.
+ * <p>
+ * {@link #flush()} writes pending partners synchronously and {@link #requestFlush()} at once on
+ * the Scheduler, such as when pausing or destroying. Errors of scheduled flushes are passed to
+ * the RxJava error handler. The size and latency of each flush are recorded for reporting.
+ *
+ * @author Johnny Spence
+ * @version 1.0.0
+ */
+public class PartnerWriteBuffer {
+
+    /**
+     * Default interval in milliseconds pending partners are flushed within.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000L;
+
+    /**
+     * Default number of pending partners at which they are flushed at once.
+     */
+    public static final int DEFAULT_MAX_PENDING = 64;
+
+    /**
+     * Object to use for synchronizing the pending partners and metrics.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Object to use for serializing flushes so writes of a partner reach the database in order.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * The repository partners are synced with.
+     */
+    private final PartnerRepo repository;
+
+    /**
+     * Interval in milliseconds pending partners are flushed within.
+     */
+    private final long flushIntervalMs;
+
+    /**
+     * Number of pending partners at which they are flushed at once.
+     */
+    private final int maxPending;
+
+    /**
+     * Worker used to run scheduled flushes.
+     */
+    private final Scheduler.Worker worker;
+
+    /**
+     * Partners pending a flush by UUID, insertion ordered so partners are written in order.
+     */
+    private Map<String, Partner> pending = new LinkedHashMap<>();
+
+    /**
+     * The scheduled flush, null if no partners are pending.
+     */
+    private Disposable scheduledFlush;
+
+    /**
+     * True if the scheduled flush is to run at once for the maximum pending partners.
+     */
+    private boolean isFlushDue;
+
+    private long writeCount;
+    private long flushCount;
+    private long flushedCount;
+    private int lastBatchSize;
+    private int maxBatchSize;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long totalFlushNanos;
+
+    /**
+     * Constructor with the default flush interval and maximum pending partners.
+     *
+     * @param repository    The repository partners are synced with
+     * @param scheduler     The RxJava Scheduler to run flushes on
+     */
+    public PartnerWriteBuffer(@NonNull PartnerRepo repository, @NonNull Scheduler scheduler) {
+        this(repository, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_MAX_PENDING, scheduler);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param repository        The repository partners are synced with
+     * @param flushIntervalMs   Interval in milliseconds pending partners are flushed within,
+     *                          must be greater than zero
+     * @param maxPending        Number of pending partners at which they are flushed at once,
+     *                          must be greater than zero
+     * @param scheduler         The RxJava Scheduler to run flushes on
+     */
+    public PartnerWriteBuffer(@NonNull PartnerRepo repository, long flushIntervalMs,
+            int maxPending, @NonNull Scheduler scheduler) {
+        if (flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("Parameter flushIntervalMs must be greater than zero");
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Parameter maxPending must be greater than zero");
+        }
+
+        this.repository = repository;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxPending = maxPending;
+        worker = scheduler.createWorker();
+    }
+
+    /**
+     * Buffers a copy of a partner to sync, replacing any write of the partner pending. Partners
+     * with a null UUID are ignored.
+     *
+     * @param partner The Partner
+     */
+    public void write(@NonNull Partner partner) {
+        if (partner.getUuid() == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            writeCount++;
+            pending.put(partner.getUuid(), copyOf(partner));
+            if (pending.size() >= maxPending) {
+                requestFlush();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = worker.schedule(newFlushTask(), flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Schedules the pending partners to be flushed at once on the {@link Scheduler}, rather
+     * than at the end of the flush interval, such as when pausing or destroying on the main
+     * thread where the database may not be accessed.
+     */
+    public void requestFlush() {
+        synchronized (lock) {
+            if (pending.isEmpty() || isFlushDue) {
+                return;
+            }
+
+            // replace the interval flush with one at once
+            if (scheduledFlush != null) {
+                scheduledFlush.dispose();
+            }
+            isFlushDue = true;
+            scheduledFlush = worker.schedule(newFlushTask());
+        }
+    }
+
+    /**
+     * Syncs the pending partners to the database on the calling thread, in a single transaction.
+     *
+     * @return The number of partners written
+     * @throws RepositoryException if an error occurs writing the partners, which are dropped
+     */
+    public int flush() throws RepositoryException {
+        synchronized (flushLock) {
+            List<Partner> batch;
+            synchronized (lock) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.dispose();
+                    scheduledFlush = null;
+                }
+                isFlushDue = false;
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+
+                batch = new ArrayList<>(pending.values());
+                pending = new LinkedHashMap<>();
+            }
+
+            long start = System.nanoTime();
+            repository.syncAll(batch);
+            long nanos = System.nanoTime() - start;
+
+            synchronized (lock) {
+                flushCount++;
+                flushedCount += batch.size();
+                lastBatchSize = batch.size();
+                maxBatchSize = Math.max(maxBatchSize, batch.size());
+                lastFlushNanos = nanos;
+                maxFlushNanos = Math.max(maxFlushNanos, nanos);
+                totalFlushNanos += nanos;
+            }
+
+            return batch.size();
+        }
+    }
+
+    /**
+     * Returns the number of partners pending a flush.
+     *
+     * @return The number of pending partners
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Returns the number of partners written to the buffer.
+     *
+     * @return The number of writes
+     */
+    public long getWriteCount() {
+        synchronized (lock) {
+            return writeCount;
+        }
+    }
+
+    /**
+     * Returns the number of flushes that wrote partners.
+     *
+     * @return The number of flushes
+     */
+    public long getFlushCount() {
+        synchronized (lock) {
+            return flushCount;
+        }
+    }
+
+    /**
+     * Returns the number of partners written to the database, less than the writes to the
+     * buffer by the writes coalesced.
+     *
+     * @return The number of partners flushed
+     */
+    public long getFlushedCount() {
+        synchronized (lock) {
+            return flushedCount;
+        }
+    }
+
+    /**
+     * Returns the number of partners written by the last flush.
+     *
+     * @return The last batch size
+     */
+    public int getLastBatchSize() {
+        synchronized (lock) {
+            return lastBatchSize;
+        }
+    }
+
+    /**
+     * Returns the largest number of partners written by a flush.
+     *
+     * @return The largest batch size
+     */
+    public int getMaxBatchSize() {
+        synchronized (lock) {
+            return maxBatchSize;
+        }
+    }
+
+    /**
+     * Returns the time in nanoseconds the last flush took to write to the database.
+     *
+     * @return The last flush latency in nanoseconds
+     */
+    public long getLastFlushNanos() {
+        synchronized (lock) {
+            return lastFlushNanos;
+        }
+    }
+
+    /**
+     * Returns the longest time in nanoseconds a flush took to write to the database.
+     *
+     * @return The longest flush latency in nanoseconds
+     */
+    public long getMaxFlushNanos() {
+        synchronized (lock) {
+            return maxFlushNanos;
+        }
+    }
+
+    /**
+     * Returns the mean time in nanoseconds a flush took to write to the database.
+     *
+     * @return The mean flush latency in nanoseconds, 0 if not flushed
+     */
+    public long getMeanFlushNanos() {
+        synchronized (lock) {
+            return flushCount == 0 ? 0 : totalFlushNanos / flushCount;
+        }
+    }
+
+    /**
+     * Cancels any scheduled flush and releases the Scheduler worker. Pending partners are
+     * dropped, {@link #flush()} first to write them.
+     */
+    public void dispose() {
+        synchronized (lock) {
+            pending.clear();
+            scheduledFlush = null;
+            isFlushDue = false;
+        }
+        worker.dispose();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return getClass().getSimpleName() + "[writes: " + writeCount + ", flushes: "
+                    + flushCount + ", flushed: " + flushedCount + ", lastBatchSize: "
+                    + lastBatchSize + ", maxBatchSize: " + maxBatchSize + ", lastFlushNanos: "
+                    + lastFlushNanos + ", maxFlushNanos: " + maxFlushNanos + "]";
+        }
+    }
+
+    /**
+     * Returns a copy of a partner for the sync to update.
+     *
+     * @param partner   The Partner
+     * @return          The copy
+     */
+    private static Partner copyOf(Partner partner) {
+        Partner copy = new Partner();
+        copy.setId(partner.getId());
+        copy.setUuid(partner.getUuid());
+        copy.setCreatedAt(partner.getCreatedAt());
+        copy.setUpdatedAt(partner.getUpdatedAt());
+        copy.setUsername(partner.getUsername());
+        copy.setDeviceName(partner.getDeviceName());
+        copy.setActive(partner.isActive());
+        copy.setEmitting(partner.isEmitting());
+        copy.setDistance(partner.getDistance());
+        copy.setAccuracy(partner.getAccuracy());
+        copy.setRssi(partner.getRssi());
+        copy.setTxPower(partner.getTxPower());
+        copy.setFilteredRssi(partner.getFilteredRssi());
+        return copy;
+    }
+
+    /**
+     * Returns a task running a scheduled flush.
+     *
+     * @return The Runnable
+     */
+    private Runnable newFlushTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RepositoryException e) {
+                    RxJavaPlugins.onError(e);
+                }
+            }
+        };
+    }
+}
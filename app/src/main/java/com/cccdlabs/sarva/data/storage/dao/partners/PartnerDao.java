@@ -7,6 +7,7 @@ import java.util.List;
 
 import androidx.room.Dao;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
 /**
  * Abstraction for {@link PartnerEntity} functions using a {@link androidx.room.Room}
@@ -27,6 +28,43 @@ abstract public class PartnerDao implements EntityDao<PartnerEntity> {
     @Query("DELETE FROM partners WHERE uuid=:uuid")
     abstract public int delete(String uuid);
 
+    /**
+     * Performs an INSERT of each entity whose UUID does not exist and otherwise an UPDATE,
+     * keeping the row AUTO_INCREMENT id and created timestamp, all in a single transaction.
+     * The id of each entity is set to that of its row.
+     *
+     * @param entities The PartnerEntity objects
+     */
+    @Transaction
+    public void sync(List<PartnerEntity> entities) {
+        for (PartnerEntity entity : entities) {
+            PartnerEntity original = fromUuid(entity.getUuid());
+            if (original == null) {
+                entity.setId((int) insert(entity));
+            } else {
+                entity.setId(original.getId());
+                entity.setCreatedAt(original.getCreatedAt());
+                update(entity);
+            }
+        }
+    }
+
+    /**
+     * Performs {@link #sync(List)} of entities whose persisted fields changed and an UPDATE of
+     * only the update timestamp of rows seen unchanged, all in a single transaction.
+     *
+     * @param entities  The PartnerEntity objects to INSERT or UPDATE
+     * @param seenUuids The UUIDs of the rows seen unchanged
+     * @param seenAt    The SQL timestamp the unchanged rows were seen
+     */
+    @Transaction
+    public void sync(List<PartnerEntity> entities, List<String> seenUuids, String seenAt) {
+        sync(entities);
+        for (String uuid : seenUuids) {
+            setUpdatedAt(uuid, seenAt);
+        }
+    }
+
     /**
      * Performs a SELECT retrieving a row by AUTO_INCREMENT id.
      *
@@ -4,9 +4,14 @@ import androidx.annotation.NonNull;
 
 import com.cccdlabs.sarva.data.p2p.nearby.PartnerSearchEmitter;
 import com.cccdlabs.sarva.domain.interactors.partners.base.PartnerUseCase;
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+
+import java.util.List;
 
 import javax.inject.Inject;
 
+import io.reactivex.Flowable;
+
 /**
  * {@link com.cccdlabs.sarva.domain.interactors.base.UseCase} to broadcast and receive P2P
  * info to and from other devices for conducting a search for other partner devices.
@@ -23,4 +28,24 @@ public class PartnerSearchUseCase extends PartnerUseCase {
     public PartnerSearchUseCase(@NonNull PartnerSearchEmitter emitter) {
         super(emitter);
     }
+
+    /**
+     * Returns a Flowable of the nearest partners not yet located, the next targets of the search.
+     *
+     * @param k The number of partners
+     * @return  The Flowable of the List of at most K Partner objects, nearest first
+     */
+    public Flowable<List<Partner>> emitTriage(int k) {
+        return ((PartnerSearchEmitter) mEmitter).getTriageFlowable(k);
+    }
+
+    /**
+     * Marks a partner located, no longer a target of the search.
+     *
+     * @param uuid  The partner UUID
+     * @return      True if the partner was a target, false if not
+     */
+    public boolean markLocated(@NonNull String uuid) {
+        return ((PartnerSearchEmitter) mEmitter).markLocated(uuid);
+    }
 }
\ No newline at end of file
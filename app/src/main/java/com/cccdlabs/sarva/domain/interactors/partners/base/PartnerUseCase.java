@@ -22,4 +22,18 @@ public class PartnerUseCase extends AbstractUseCase<Void, PartnerResult> {
     public Flowable<PartnerResult> emit(Void v) {
         return mEmitter.getPartnerFlowable();
     }
+
+    /**
+     * Pauses this device's P2P communication with other devices.
+     */
+    public void pauseEmitterSource() {
+        mEmitter.pauseEmitter();
+    }
+
+    /**
+     * Resets this device's P2P communication with other devices.
+     */
+    public void resetEmitterSource() {
+        mEmitter.resetEmitter();
+    }
 }
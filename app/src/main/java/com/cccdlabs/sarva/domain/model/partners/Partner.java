@@ -50,6 +50,11 @@ public class Partner extends Model {
      */
     private int txPower;
 
+    /**
+     * Bluetooth BLE RSSI value of a user in search mode smoothed over the readings received.
+     */
+    private double filteredRssi;
+
 
     /**
      * Returns the name of the user connected to this device.
@@ -194,4 +199,24 @@ public class Partner extends Model {
     public void setTxPower(int txPower) {
         this.txPower = txPower;
     }
+
+    /**
+     * Returns the Bluetooth BLE RSSI value of a user connected to this device smoothed over the
+     * readings received, or the raw RSSI if not smoothed.
+     *
+     * @return The filtered RSSI value
+     */
+    public double getFilteredRssi() {
+        return filteredRssi;
+    }
+
+    /**
+     * Sets the Bluetooth BLE RSSI value of a user connected to this device smoothed over the
+     * readings received.
+     *
+     * @param filteredRssi The filtered RSSI value
+     */
+    public void setFilteredRssi(double filteredRssi) {
+        this.filteredRssi = filteredRssi;
+    }
 }
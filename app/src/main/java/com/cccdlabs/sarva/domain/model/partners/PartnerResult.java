@@ -55,6 +55,27 @@ public class PartnerResult {
      */
     private final PublishStatus publishStatus;
 
+    /**
+     * True if the Partner is a distance or BLE signal reading, superseded by any later reading.
+     */
+    private final boolean isReading;
+
+    /**
+     * The {@link PartnerMessage.Mode} of the message the Partner was received in, null if not
+     * known or no Partner passed in constructor.
+     */
+    private final PartnerMessage.Mode mode;
+
+    /**
+     * Whether the partner is approaching or receding, UNKNOWN if not detected.
+     */
+    private final Trend trend;
+
+    /**
+     * Confidence in the trend from 0 to 1.
+     */
+    private final double trendConfidence;
+
     /**
      * While the publish flag can return true false, if one not passed in this class constructor,
      * then it will be considered an invalid call to access this flag. Hence we have three options:
@@ -109,6 +130,31 @@ public class PartnerResult {
         }
     }
 
+    /**
+     * Whether a partner is approaching or receding, the "warmer/colder" of a fine search.
+     */
+    public enum Trend {
+        /**
+         * Not enough readings to tell or not detected.
+         */
+        UNKNOWN,
+
+        /**
+         * Neither approaching nor receding.
+         */
+        STEADY,
+
+        /**
+         * Getting closer, warmer.
+         */
+        APPROACHING,
+
+        /**
+         * Getting farther, colder.
+         */
+        RECEDING
+    }
+
     public static class Status {
         public boolean isPublishing;
         public boolean isSubscribing;
@@ -147,8 +193,52 @@ public class PartnerResult {
      * @param partner The Partner object
      */
     public PartnerResult(@NonNull Partner partner) {
+        this(partner, false);
+    }
+
+    /**
+     * Constructor, sets the {@link Partner} value and if the partner is a distance or BLE signal
+     * reading. Readings may be dropped in favor of a later reading of the same partner by a slow
+     * subscriber, unlike a found or lost partner.
+     *
+     * @param partner   The Partner object
+     * @param isReading True if a distance or BLE signal reading, false if not
+     */
+    public PartnerResult(@NonNull Partner partner, boolean isReading) {
+        this(partner, isReading, null);
+    }
+
+    /**
+     * Constructor, sets the {@link Partner} value, if the partner is a distance or BLE signal
+     * reading and the {@link PartnerMessage.Mode} of the message the partner was received in.
+     *
+     * @param partner   The Partner object
+     * @param isReading True if a distance or BLE signal reading, false if not
+     * @param mode      The Mode of the received message, null if not known
+     */
+    public PartnerResult(@NonNull Partner partner, boolean isReading, PartnerMessage.Mode mode) {
+        this(partner, isReading, mode, Trend.UNKNOWN, 0);
+    }
+
+    /**
+     * Constructor, sets the {@link Partner} value, if the partner is a distance or BLE signal
+     * reading, the {@link PartnerMessage.Mode} of the message the partner was received in and
+     * whether the partner is approaching or receding.
+     *
+     * @param partner           The Partner object
+     * @param isReading         True if a distance or BLE signal reading, false if not
+     * @param mode              The Mode of the received message, null if not known
+     * @param trend             The Trend of the partner
+     * @param trendConfidence   The confidence in the trend from 0 to 1
+     */
+    public PartnerResult(@NonNull Partner partner, boolean isReading, PartnerMessage.Mode mode,
+            @NonNull Trend trend, double trendConfidence) {
         uuid = partner.getUuid();
         this.partner = partner;
+        this.isReading = isReading;
+        this.mode = mode;
+        this.trend = trend;
+        this.trendConfidence = trendConfidence;
         status = null;
         exception = null;
         publishStatus = PublishStatus.INVALID;
@@ -168,6 +258,10 @@ public class PartnerResult {
         uuid = null;
         partner = null;
         exception = null;
+        isReading = false;
+        mode = null;
+        trend = Trend.UNKNOWN;
+        trendConfidence = 0;
         hasResult = true;
         hasError = false;
     }
@@ -185,6 +279,10 @@ public class PartnerResult {
         partner = null;
         status = null;
         exception = null;
+        isReading = false;
+        mode = null;
+        trend = Trend.UNKNOWN;
+        trendConfidence = 0;
         hasResult = false;
         hasError = false;
     }
@@ -201,6 +299,10 @@ public class PartnerResult {
         partner = null;
         status = null;
         publishStatus = PublishStatus.INVALID;
+        isReading = false;
+        mode = null;
+        trend = Trend.UNKNOWN;
+        trendConfidence = 0;
         hasResult = false;
         hasError = true;
     }
@@ -259,6 +361,43 @@ public class PartnerResult {
         return hasResult;
     }
 
+    /**
+     * Returns true if the {@link Partner} is a distance or BLE signal reading, false if a found or
+     * lost partner or no Partner passed in constructor.
+     *
+     * @return True if a distance or BLE signal reading, false if not
+     */
+    public boolean isReading() {
+        return isReading;
+    }
+
+    /**
+     * Returns the {@link PartnerMessage.Mode} of the message the {@link Partner} was received in.
+     *
+     * @return The Mode or null if not known or no Partner passed in constructor
+     */
+    public PartnerMessage.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns whether the {@link Partner} is approaching or receding.
+     *
+     * @return The Trend, UNKNOWN if not detected or no Partner passed in constructor
+     */
+    public Trend getTrend() {
+        return trend;
+    }
+
+    /**
+     * Returns the confidence in the {@link #getTrend()} of the {@link Partner}.
+     *
+     * @return The confidence from 0 to 1
+     */
+    public double getTrendConfidence() {
+        return trendConfidence;
+    }
+
     /**
      * Returns one of the following:
      * <ul>
@@ -282,6 +421,10 @@ public class PartnerResult {
         buffer.append("status: ").append(status).append(", ");
         buffer.append("publishStatus: ").append(publishStatus).append(", ");
         buffer.append("exception: ").append(exception).append(", ");
+        buffer.append("isReading: ").append(isReading).append(", ");
+        buffer.append("mode: ").append(mode).append(", ");
+        buffer.append("trend: ").append(trend).append(", ");
+        buffer.append("trendConfidence: ").append(trendConfidence).append(", ");
         buffer.append("hasResult: ").append(hasResult).append(", ");
         buffer.append("hasError: ").append(hasError);
         buffer.append("]");
@@ -33,6 +33,16 @@ public interface PartnerRepo {
      */
     Partner sync(Partner model) throws RepositoryException;
 
+    /**
+     * Inserts or updates each model as {@link #sync(Partner)}, all in a single transaction.
+     *
+     * @param models    The Partner models
+     * @return          The inserted or updated partner models
+     * @throws          RepositoryException if an error occurs retrieving, inserting or updating
+     *                  the entities, in which case none are written
+     */
+    List<Partner> syncAll(List<Partner> models) throws RepositoryException;
+
     /**
      * Sets a partner row active flag to true.
      *
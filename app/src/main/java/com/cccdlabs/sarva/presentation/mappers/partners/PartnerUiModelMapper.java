@@ -38,6 +38,7 @@ public class PartnerUiModelMapper {
         uiModel.setDistance(domainModel.getDistance());
         uiModel.setAccuracy(domainModel.getAccuracy());
         uiModel.setRssi(domainModel.getRssi());
+        uiModel.setFilteredRssi(domainModel.getFilteredRssi());
         uiModel.setTxPower(domainModel.getTxPower());
         return uiModel;
 
@@ -83,6 +84,7 @@ public class PartnerUiModelMapper {
         model.setDistance(uiModel.getDistance());
         model.setAccuracy(uiModel.getAccuracy());
         model.setRssi(uiModel.getRssi());
+        model.setFilteredRssi(uiModel.getFilteredRssi());
         model.setTxPower(uiModel.getTxPower());
         return model;
     }
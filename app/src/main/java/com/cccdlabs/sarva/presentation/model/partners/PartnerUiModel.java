@@ -55,6 +55,12 @@ public class PartnerUiModel extends UiModel {
      */
     private int txPower;
 
+    /**
+     * Extra data field to store the smoothed Bluetooth BLE RSSI value of a user in search mode.
+     * Not a database field or serialized for data transfer.
+     */
+    private double filteredRssi;
+
 
     /**
      * Returns the name of the user connected to this device.
@@ -199,4 +205,24 @@ public class PartnerUiModel extends UiModel {
     public void setTxPower(int txPower) {
         this.txPower = txPower;
     }
+
+    /**
+     * Returns the Bluetooth BLE RSSI value of a user connected to this device smoothed over the
+     * readings received, or the raw RSSI if not smoothed.
+     *
+     * @return The filtered RSSI value
+     */
+    public double getFilteredRssi() {
+        return filteredRssi;
+    }
+
+    /**
+     * Sets the Bluetooth BLE RSSI value of a user connected to this device smoothed over the
+     * readings received.
+     *
+     * @param filteredRssi The filtered RSSI value
+     */
+    public void setFilteredRssi(double filteredRssi) {
+        this.filteredRssi = filteredRssi;
+    }
 }
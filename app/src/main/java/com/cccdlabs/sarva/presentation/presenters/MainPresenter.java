@@ -104,7 +104,6 @@ public class MainPresenter extends AbstractPresenter<Partner> {
         mUseCase.emit(null)
                 .subscribeOn(mExecutorThread.getScheduler())
                 .observeOn(mMainThread.getScheduler())
-                .onBackpressureBuffer(100)
                 .subscribe(mSubscriber);
         isPublishing = true;
     }
@@ -268,7 +268,12 @@ public class PartnerCheckPresenter extends AbstractPresenter<Partner> {
      * {@inheritDoc}
      */
     @Override
-    public void pause() {}
+    public void pause() {
+        if (mPartnerCheckUseCase != null) {
+            // partners found are written to the db rather than waiting on the next batch
+            mPartnerCheckUseCase.pauseEmitterSource();
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -285,6 +290,9 @@ public class PartnerCheckPresenter extends AbstractPresenter<Partner> {
     @Override
     public void destroy() {
         stopEmitter();
+        if (mPartnerCheckUseCase != null) {
+            mPartnerCheckUseCase.resetEmitterSource();
+        }
         if (mPartners != null) {
             mPartners.clear();
         }
@@ -322,7 +330,6 @@ public class PartnerCheckPresenter extends AbstractPresenter<Partner> {
         mPartnerCheckUseCase.emit(null)
                 .subscribeOn(mExecutorThread.getScheduler())
                 .observeOn(mMainThread.getScheduler())
-                .onBackpressureBuffer(100)
                 .subscribe(mPartnerCheckSubscriber);
         ((PartnerCheckView)getView()).onEmissionStarted();
         mDisposables.add(mPartnerCheckSubscriber);
@@ -3,12 +3,14 @@ package com.cccdlabs.sarva.presentation.ui.widgets;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
 import androidx.annotation.Nullable;
@@ -30,6 +32,7 @@ public class BarMeterWidget extends View {
     protected static final int DEFAULT_BAR_BORDER_COLOR       = 0xFF666666;
     protected static final int DEFAULT_BORDER_COLOR           = 0xFF666666;
     protected static final int DEFAULT_INNER_FILL_COLOR       = 0xFF222222;
+    protected static final float DEFAULT_SIGNAL_HYSTERESIS    = 0.3f; // fraction of a bar
 
     private int maxWidth;
     private int maxHeight;
@@ -51,6 +54,35 @@ public class BarMeterWidget extends View {
     private Paint borderPaint;
     private Paint innerFillPaint;
 
+    /**
+     * The container and inactive bars, drawn once per size into a bitmap, null until drawn or
+     * when the size changes.
+     */
+    private Bitmap backgroundCache;
+
+    /**
+     * Fraction of a bar the signal must pass a bar boundary by to change the bars shown.
+     */
+    private float signalHysteresis = DEFAULT_SIGNAL_HYSTERESIS;
+
+    /**
+     * Bars of the latest signal bound, applied on the next frame, and whether a frame callback
+     * is posted to apply them.
+     */
+    private int pendingActiveBars = -1;
+    private boolean isFramePosted;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            isFramePosted = false;
+            if (pendingActiveBars >= 0) {
+                setNumActiveBars(pendingActiveBars);
+                pendingActiveBars = -1;
+            }
+        }
+    };
+
     private static class SavedState extends BaseSavedState {
 
         int numActiveBars;
@@ -157,27 +189,114 @@ public class BarMeterWidget extends View {
         return barFillColor;
     }
 
+    /**
+     * Sets the color of the active bars, redrawing if changed. The size is not affected so no
+     * layout is requested.
+     *
+     * @param colorHex The ARGB color
+     */
     public void setBarFillColor(int colorHex) {
+        if (colorHex == barFillColor) {
+            return;
+        }
         barFillColor = colorHex;
         barFillPaint.setColor(barFillColor);
         invalidate();
-        requestLayout();
     }
 
     public int getNumActiveBars() {
         return numActiveBars;
     }
 
+    /**
+     * Sets the number of active bars, redrawing if changed. The size is not affected so no
+     * layout is requested.
+     *
+     * @param numActiveBars The number of active bars, clamped to the total bars
+     */
     public void setNumActiveBars(int numActiveBars) {
-        if (numActiveBars < 0) {
-            this.numActiveBars = 0;
-        } else if (numActiveBars >= numTotalBars) {
-            this.numActiveBars = numTotalBars;
-        } else {
-            this.numActiveBars = numActiveBars;
+        int clamped = Math.max(0, Math.min(numTotalBars, numActiveBars));
+        if (clamped == this.numActiveBars) {
+            return;
         }
+        this.numActiveBars = clamped;
         invalidate();
-        requestLayout();
+    }
+
+    public float getSignalHysteresis() {
+        return signalHysteresis;
+    }
+
+    /**
+     * Sets how far past a bar boundary a signal bound with {@link #bindSignal(float)} must go to
+     * change the bars shown, so a signal hovering at a boundary does not flicker. Default is
+     * {@link #DEFAULT_SIGNAL_HYSTERESIS}.
+     *
+     * @param signalHysteresis The fraction of a bar, from 0 to less than 1
+     */
+    public void setSignalHysteresis(float signalHysteresis) {
+        if (signalHysteresis < 0 || signalHysteresis >= 1) {
+            throw new IllegalArgumentException("Parameter signalHysteresis must be from 0 to less than 1");
+        }
+        this.signalHysteresis = signalHysteresis;
+    }
+
+    /**
+     * Shows a continuous signal level as bars, with hysteresis so a level at a bar boundary does
+     * not flicker. Levels bound within a frame are batched, the bars of the latest applied once
+     * on the next {@link Choreographer} frame, so the meter may be bound to every BLE reading.
+     * Must be called on the UI thread.
+     *
+     * @param level The signal level from 0 for no bars to 1 for all bars
+     */
+    public void bindSignal(float level) {
+        int current = pendingActiveBars >= 0 ? pendingActiveBars : numActiveBars;
+        pendingActiveBars = toActiveBars(level, numTotalBars, current, signalHysteresis);
+        if (! isFramePosted) {
+            isFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    /**
+     * Returns the bars to show for a signal level, keeping the current bars unless the level is
+     * past one of their boundaries by the hysteresis.
+     *
+     * @param level         The signal level from 0 to 1
+     * @param totalBars     The total number of bars
+     * @param currentBars   The number of bars shown
+     * @param hysteresis    The fraction of a bar past a boundary to change the bars
+     * @return              The number of bars to show
+     */
+    static int toActiveBars(float level, int totalBars, int currentBars, float hysteresis) {
+        if (Float.isNaN(level)) {
+            return currentBars;
+        }
+
+        float bars = Math.max(0, Math.min(1, level)) * totalBars;
+        if (bars >= totalBars) {
+            // full scale, no boundary above to pass
+            return totalBars;
+        }
+        if (bars >= currentBars - hysteresis && bars < currentBars + 1 + hysteresis) {
+            return currentBars;
+        }
+        return Math.min(totalBars, (int) bars);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // freed while off screen, such as a meter scrolled out of a list
+        recycleBackground();
+        if (isFramePosted) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            isFramePosted = false;
+        }
+        if (pendingActiveBars >= 0) {
+            numActiveBars = pendingActiveBars;
+            pendingActiveBars = -1;
+        }
     }
 
     @Override
@@ -245,9 +364,42 @@ public class BarMeterWidget extends View {
         return totalBars < numTotalBars ? totalBars : numTotalBars;
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        recycleBackground();
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        recycleBackground();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+        recycleBackground();
+    }
+
+    /**
+     * Draws the cached container and inactive bars, then the active bars over them, so only the
+     * active bars are drawn shape by shape on each frame.
+     *
+     * @param canvas The Canvas
+     */
     @Override
     protected void onDraw(Canvas canvas) {
-        drawContainer(canvas);
+        if (getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        if (backgroundCache == null) {
+            backgroundCache = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+            Canvas cacheCanvas = new Canvas(backgroundCache);
+            drawContainer(cacheCanvas);
+            drawBars(cacheCanvas, barBasePaint, getMaxTotalBars());
+        }
+        canvas.drawBitmap(backgroundCache, 0, 0, null);
         drawBars(canvas);
     }
 
@@ -264,11 +416,26 @@ public class BarMeterWidget extends View {
         canvas.drawRoundRect(xStart, yStart, xEnd, yEnd, outerCornerRadius, outerCornerRadius, borderPaint);
     }
 
+    /**
+     * Draws the active bars.
+     *
+     * @param canvas The Canvas
+     */
     protected void drawBars(Canvas canvas) {
+        drawBars(canvas, barFillPaint, Math.min(numActiveBars, getMaxTotalBars()));
+    }
+
+    /**
+     * Draws the first bars with their border.
+     *
+     * @param canvas    The Canvas
+     * @param fillPaint The Paint to fill the bars with
+     * @param numBars   The number of bars
+     */
+    protected void drawBars(Canvas canvas, Paint fillPaint, int numBars) {
         if (canvas == null) {
             return;
         }
-        int numBars = getMaxTotalBars();
         int widgetHeight = getWidgetHeight();
         int start = BORDER_WIDTH + innerPadding;
         int barHeight = widgetHeight - (2 * start);
@@ -281,11 +448,14 @@ public class BarMeterWidget extends View {
             xStart = start + (spacing * i);
             xEnd = xStart + barWidth;
             canvas.drawRoundRect(xStart, yStart, xEnd, yEnd, barCornerRadius, barCornerRadius, barBorderPaint);
-            if (i < numActiveBars) {
-                canvas.drawRoundRect(xStart, yStart, xEnd, yEnd, barCornerRadius, barCornerRadius, barFillPaint);
-            } else {
-                canvas.drawRoundRect(xStart, yStart, xEnd, yEnd, barCornerRadius, barCornerRadius, barBasePaint);
-            }
+            canvas.drawRoundRect(xStart, yStart, xEnd, yEnd, barCornerRadius, barCornerRadius, fillPaint);
+        }
+    }
+
+    private void recycleBackground() {
+        if (backgroundCache != null) {
+            backgroundCache.recycle();
+            backgroundCache = null;
         }
     }
 
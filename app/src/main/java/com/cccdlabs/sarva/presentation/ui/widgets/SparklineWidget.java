@@ -0,0 +1,282 @@
+package com.cccdlabs.sarva.presentation.ui.widgets;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import com.cccdlabs.sarva.R;
+
+/**
+ * Plots the last samples of a signal, such as the smoothed RSSI of a partner, as a sparkline,
+ * the newest sample at the right edge. Samples are kept in a fixed ring buffer so adding one
+ * allocates nothing, and the line is traced into a single reused {@link Path} on each draw.
+ */
+public class SparklineWidget extends View {
+
+    protected static final int DEFAULT_HEIGHT                 = 40; // Configurable with android:layout_height
+    protected static final int DEFAULT_NUM_SAMPLES            = 60;
+    protected static final float DEFAULT_MIN_VALUE            = -100; // RSSI dBm
+    protected static final float DEFAULT_MAX_VALUE            = -40;
+    protected static final int DEFAULT_LINE_WIDTH             = 3;
+    protected static final int DEFAULT_LINE_COLOR             = 0xFF00AA00;
+    protected static final int DEFAULT_BACKGROUND_FILL_COLOR  = 0xFF222222;
+
+    private int numSamples;
+    private float minValue;
+    private float maxValue;
+    private int lineWidth;
+    private int lineColor;
+    private int backgroundFillColor;
+
+    /**
+     * Ring buffer of the samples, the next written at <code>head</code>, the oldest of
+     * <code>count</code> samples at <code>head - count</code>.
+     */
+    private float[] samples;
+    private int head;
+    private int count;
+
+    private final Path path = new Path();
+    private Paint linePaint;
+    private Paint backgroundFillPaint;
+
+    private static class SavedState extends BaseSavedState {
+
+        float[] samples; // oldest first
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            samples = in.createFloatArray();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloatArray(samples);
+        }
+
+        @Override
+        public String toString() {
+            String str = "SparklineWidget.SavedState{ samples: ";
+            str += (samples == null ? 0 : samples.length) + " }";
+            return str;
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    public SparklineWidget(Context context) {
+        super(context);
+        init(context, null);
+    }
+
+    public SparklineWidget(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init(context, attrs);
+    }
+
+    public SparklineWidget(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context, attrs);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public SparklineWidget(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+        init(context, attrs);
+    }
+
+    private void init(Context context, AttributeSet attrs) {
+        setSaveEnabled(true);
+
+        TypedArray ta = context.getTheme().obtainStyledAttributes(attrs, R.styleable.SparklineWidget, 0, 0);
+        numSamples = Math.max(2, ta.getInt(R.styleable.SparklineWidget_numSamples, DEFAULT_NUM_SAMPLES));
+        minValue = ta.getFloat(R.styleable.SparklineWidget_minValue, DEFAULT_MIN_VALUE);
+        maxValue = ta.getFloat(R.styleable.SparklineWidget_maxValue, DEFAULT_MAX_VALUE);
+        lineWidth = ta.getDimensionPixelSize(R.styleable.SparklineWidget_lineWidth, DEFAULT_LINE_WIDTH);
+        lineColor = ta.getColor(R.styleable.SparklineWidget_lineColor, DEFAULT_LINE_COLOR);
+        backgroundFillColor = ta.getColor(R.styleable.SparklineWidget_backgroundFillColor, DEFAULT_BACKGROUND_FILL_COLOR);
+        ta.recycle();
+
+        if (maxValue <= minValue) {
+            throw new IllegalArgumentException("Attribute maxValue must be greater than minValue");
+        }
+
+        samples = new float[numSamples];
+
+        linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeWidth(lineWidth);
+        linePaint.setStrokeJoin(Paint.Join.ROUND);
+        linePaint.setStrokeCap(Paint.Cap.ROUND);
+        linePaint.setColor(lineColor);
+
+        backgroundFillPaint = new Paint();
+        backgroundFillPaint.setStyle(Paint.Style.FILL);
+        backgroundFillPaint.setColor(backgroundFillColor);
+    }
+
+    /**
+     * Adds a sample, dropping the oldest if full, and redraws. Allocates nothing. Must be called
+     * on the UI thread.
+     *
+     * @param sample The sample, NaN for a gap in the line
+     */
+    public void addSample(float sample) {
+        samples[head] = sample;
+        head = (head + 1) % numSamples;
+        if (count < numSamples) {
+            count++;
+        }
+        invalidate();
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void clear() {
+        head = 0;
+        count = 0;
+        invalidate();
+    }
+
+    /**
+     * Returns a sample.
+     *
+     * @param index The index of the sample, 0 the oldest
+     * @return      The sample
+     */
+    public float getSample(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Sample [" + index + "] of [" + count + "]");
+        }
+        return samples[(head - count + index + numSamples) % numSamples];
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    public int getLineColor() {
+        return lineColor;
+    }
+
+    /**
+     * Sets the color of the line, redrawing if changed.
+     *
+     * @param colorHex The ARGB color
+     */
+    public void setLineColor(int colorHex) {
+        if (colorHex == lineColor) {
+            return;
+        }
+        lineColor = colorHex;
+        linePaint.setColor(lineColor);
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = resolveSize(DEFAULT_HEIGHT + getPaddingTop() + getPaddingBottom(), heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int right = getWidth() - getPaddingRight();
+        int bottom = getHeight() - getPaddingBottom();
+        if (right <= left || bottom <= top) {
+            return;
+        }
+
+        canvas.drawRect(left, top, right, bottom, backgroundFillPaint);
+        if (count < 2) {
+            return;
+        }
+
+        // inset by half the line so it is not clipped at the extremes
+        float inset = lineWidth / 2f;
+        float spacing = (right - left - 2 * inset) / (numSamples - 1);
+        float yTop = top + inset;
+        float yScale = (bottom - top - 2 * inset) / (maxValue - minValue);
+        float x = right - inset - spacing * (count - 1);
+        boolean isDrawing = false;
+
+        path.rewind();
+        for (int i = 0; i < count; i++, x += spacing) {
+            float sample = samples[(head - count + i + numSamples) % numSamples];
+            if (Float.isNaN(sample)) {
+                isDrawing = false;
+                continue;
+            }
+
+            float clamped = Math.max(minValue, Math.min(maxValue, sample));
+            float y = yTop + (maxValue - clamped) * yScale;
+            if (isDrawing) {
+                path.lineTo(x, y);
+            } else {
+                path.moveTo(x, y);
+                isDrawing = true;
+            }
+        }
+        canvas.drawPath(path, linePaint);
+    }
+
+    @Nullable
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        SavedState savedState = new SavedState(superState);
+        savedState.samples = new float[count];
+        for (int i = 0; i < count; i++) {
+            savedState.samples[i] = getSample(i);
+        }
+        return savedState;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        head = 0;
+        count = 0;
+        if (savedState.samples != null) {
+            // the newest samples if fewer are plotted now
+            int from = Math.max(0, savedState.samples.length - numSamples);
+            for (int i = from; i < savedState.samples.length; i++) {
+                addSample(savedState.samples[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.cccdlabs.sarva.data.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchToneGeneratorTest {
+
+    private static final int SAMPLE_RATE = SearchToneGenerator.DEFAULT_SAMPLE_RATE;
+    private static final int BUFFER_SAMPLES = SAMPLE_RATE * 20 / 1000;
+
+    private SearchToneGenerator mGenerator;
+
+    @Before
+    public void setUp() throws Exception {
+        mGenerator = new SearchToneGenerator(SAMPLE_RATE);
+    }
+
+    @Test
+    public void shouldRaisePitchAndCadenceAsTargetNears() throws Exception {
+        assertEquals(SearchToneGenerator.MAX_FREQUENCY, SearchToneGenerator.getFrequency(0.1), 0.001);
+        assertEquals(SearchToneGenerator.MIN_FREQUENCY, SearchToneGenerator.getFrequency(100), 0.001);
+        assertEquals(SearchToneGenerator.MIN_PERIOD_MS, SearchToneGenerator.getPeriodMs(0.1));
+        assertEquals(SearchToneGenerator.MAX_PERIOD_MS, SearchToneGenerator.getPeriodMs(100));
+
+        double lastFrequency = 0;
+        int lastPeriod = Integer.MAX_VALUE;
+        for (double distance = 30; distance >= 0.5; distance -= 0.5) {
+            double frequency = SearchToneGenerator.getFrequency(distance);
+            int period = SearchToneGenerator.getPeriodMs(distance);
+            assertTrue("Pitch not rising at [" + distance + "]", frequency > lastFrequency);
+            assertTrue("Cadence not quickening at [" + distance + "]", period <= lastPeriod);
+            lastFrequency = frequency;
+            lastPeriod = period;
+        }
+    }
+
+    @Test
+    public void shouldGenerateBeepsAtPitchAndCadence() throws Exception {
+        double distance = 5;
+        mGenerator.setDistance(distance);
+        int periodSamples = SearchToneGenerator.getPeriodMs(distance) * SAMPLE_RATE / 1000;
+        short[] pcm = generate(periodSamples * 3);
+
+        // first beep sounds for half the period then silence
+        int beepSamples = (int) (periodSamples * SearchToneGenerator.DUTY_CYCLE);
+        double measured = countRisingZeroCrossings(pcm, 0, beepSamples) * (double) SAMPLE_RATE / beepSamples;
+        assertEquals(SearchToneGenerator.getFrequency(distance), measured, 30);
+        assertEquals("Silence not silent", 0, peak(pcm, beepSamples, periodSamples));
+        assertTrue("Second beep missing", peak(pcm, periodSamples, periodSamples + beepSamples) > 30000);
+        assertEquals("Beep clicks in", 0, pcm[0]);
+        assertTrue("Beep clicks out", Math.abs(pcm[beepSamples - 1]) < 2000);
+    }
+
+    @Test
+    public void shouldChangeWithinOneBuffer() throws Exception {
+        mGenerator.setDistance(20);
+        generate(BUFFER_SAMPLES);
+        mGenerator.setDistance(0.5);
+        short[] next = new short[BUFFER_SAMPLES];
+        mGenerator.fill(next, 0, next.length);
+        double measured = countRisingZeroCrossings(next, 0, next.length) * (double) SAMPLE_RATE / next.length;
+        assertEquals(SearchToneGenerator.MAX_FREQUENCY, measured, 60);
+    }
+
+    @Test
+    public void shouldBeSilentWithoutDistanceOrVolume() throws Exception {
+        assertEquals(0, peak(generate(BUFFER_SAMPLES), 0, BUFFER_SAMPLES));
+
+        mGenerator.setDistance(1);
+        mGenerator.setVolume(0);
+        assertEquals(0, peak(generate(BUFFER_SAMPLES), 0, BUFFER_SAMPLES));
+
+        mGenerator.setVolume(0.5f);
+        int peak = peak(generate(BUFFER_SAMPLES), 0, BUFFER_SAMPLES);
+        assertEquals(Short.MAX_VALUE / 2, peak, 200);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSampleRateBelowNyquist() throws Exception {
+        new SearchToneGenerator(2000);
+    }
+
+    private short[] generate(int samples) {
+        short[] pcm = new short[samples];
+        // filled in buffers as the player does
+        for (int offset = 0; offset < samples; offset += BUFFER_SAMPLES) {
+            mGenerator.fill(pcm, offset, Math.min(BUFFER_SAMPLES, samples - offset));
+        }
+        return pcm;
+    }
+
+    private static int countRisingZeroCrossings(short[] pcm, int from, int to) {
+        int count = 0;
+        for (int i = from + 1; i < to; i++) {
+            if (pcm[i - 1] < 0 && pcm[i] >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int peak(short[] pcm, int from, int to) {
+        int peak = 0;
+        for (int i = from; i < to; i++) {
+            peak = Math.max(peak, Math.abs(pcm[i]));
+        }
+        return peak;
+    }
+}
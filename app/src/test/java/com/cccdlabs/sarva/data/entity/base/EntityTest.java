@@ -303,6 +303,29 @@ public class EntityTest {
         assertFalse("image_file is present in JSON", jsonObject.has("image_file"));
     }
 
+    @Test
+    public void Entity_shouldApplyFlagsWithCachedGson() throws Exception {
+        mEntity1.setImageFile(null);
+        mEntity1.setSerializeNulls(true);
+        assertTrue("image_file is not present in JSON",
+                JsonUtils.toJsonObject(mEntity1.toJson()).has("image_file"));
+
+        // same Entity class with different flags
+        mEntity1.setSerializeNulls(false);
+        assertFalse("image_file is present in JSON",
+                JsonUtils.toJsonObject(mEntity1.toJson()).has("image_file"));
+
+        mEntity1.hasSerializedId(true);
+        assertTrue("id is not present in JSON", JsonUtils.toJsonObject(mEntity1.toJson()).has("id"));
+        mEntity1.hasSerializedId(false);
+        assertFalse("id is present in JSON", JsonUtils.toJsonObject(mEntity1.toJson()).has("id"));
+    }
+
+    @Test
+    public void Entity_shouldReuseGson() throws Exception {
+        assertTrue("Gson created on each call", Entity.getGson() == Entity.getGson());
+    }
+
     @After
     public void tearDown() throws Exception {
         mEntity1 = null;
@@ -0,0 +1,97 @@
+package com.cccdlabs.sarva.data.entity.partners;
+
+import com.cccdlabs.sarva.data.entity.base.Entity;
+import com.cccdlabs.sarva.data.utils.DateUtils;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerEntityTypeAdapterTest {
+
+    private static final String UUID = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+
+    private PartnerEntity entity;
+
+    @Before
+    public void setUp() throws Exception {
+        entity = new PartnerEntity();
+        entity.setId(7);
+        entity.setUuid(UUID);
+        entity.setUsername("partner");
+        entity.setDeviceName("Google Pixel 3A");
+        entity.setActive(true);
+        entity.setCreatedAt(new Date(1559392245000L));
+        entity.setUpdatedAt(new Date(1559392246000L));
+    }
+
+    @Test
+    public void shouldWriteSameKeysAsEntity() throws Exception {
+        JsonObject json = new JsonParser().parse(entity.toJson()).getAsJsonObject();
+
+        assertFalse("id is present in JSON", json.has("id"));
+        assertEquals(UUID, json.get("uuid").getAsString());
+        assertEquals("partner", json.get("username").getAsString());
+        assertEquals("Google Pixel 3A", json.get("device_name").getAsString());
+        assertEquals(1, json.get("is_active").getAsInt());
+        assertEquals("2019-06-01 12:30:45", json.get("created_at").getAsString());
+        assertEquals("2019-06-01 12:30:46", json.get("updated_at").getAsString());
+    }
+
+    @Test
+    public void shouldWriteIdWhenSerialized() throws Exception {
+        JsonObject json = new JsonParser().parse(entity.toString()).getAsJsonObject();
+        assertTrue("id not present in JSON", json.has("id"));
+        assertEquals(7, json.get("id").getAsInt());
+
+        // cached Gson without the id still used by toJson()
+        json = new JsonParser().parse(entity.toJson()).getAsJsonObject();
+        assertFalse("id is present in JSON", json.has("id"));
+    }
+
+    @Test
+    public void shouldRoundTripThroughEntity() throws Exception {
+        PartnerEntity result = (PartnerEntity) Entity.fromJson(entity.toJson(), PartnerEntity.class);
+
+        assertNotNull("PartnerEntity null", result);
+        assertEquals(0, result.getId());
+        assertEquals(UUID, result.getUuid());
+        assertEquals("partner", result.getUsername());
+        assertEquals("Google Pixel 3A", result.getDeviceName());
+        assertTrue(result.isActive());
+        assertEquals(entity.getCreatedAt(), result.getCreatedAt());
+        assertEquals(entity.getUpdatedAt(), result.getUpdatedAt());
+    }
+
+    @Test
+    public void shouldReadBooleansNullsAndUnknownKeys() throws Exception {
+        String json = "{\"id\":3,\"uuid\":\"" + UUID + "\",\"username\":null,"
+                + "\"is_active\":true,\"created_at\":\"2019-06-01\",\"extra\":{\"a\":[1,2]}}";
+        PartnerEntity result = (PartnerEntity) Entity.fromJson(json, PartnerEntity.class);
+
+        assertNotNull("PartnerEntity null", result);
+        assertEquals(3, result.getId());
+        assertNull(result.getUsername());
+        assertNull(result.getDeviceName());
+        assertTrue(result.isActive());
+        assertEquals(DateUtils.sqlStringToDate("2019-06-01"), result.getCreatedAt());
+        assertNull(result.getUpdatedAt());
+    }
+
+    @Test
+    public void shouldReturnNullWithInvalidUuid() throws Exception {
+        assertNull(Entity.fromJson("{\"uuid\":\"not-a-uuid\"}", PartnerEntity.class));
+    }
+}
@@ -29,6 +29,7 @@ import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +64,8 @@ public class MockMessagesClient extends MessagesClient {
     private boolean hasUnpublishError;
     private boolean hasUnsubscribeError;
     private boolean isClosed;
+    private boolean isDeferred;
+    private List<MockTask> mDeferredTasks;
     private static boolean debug;
 
     private enum ListenerCallbackMethod {
@@ -369,6 +372,7 @@ public class MockMessagesClient extends MessagesClient {
         statusCallbacks  = new HashMap<>();
         mPublishTask = new MockTask();
         mSubscribeTask = new MockTask();
+        mDeferredTasks = new ArrayList<>();
         isClosed = false;
     }
 
@@ -403,7 +407,7 @@ public class MockMessagesClient extends MessagesClient {
         isPublishing = !hasPublishError;
         mPublishTask.setComplete(true);
         mPublishTask.setSuccessful(isPublishing);
-        return mPublishTask;
+        return defer(mPublishTask);
     }
 
     /**
@@ -435,7 +439,7 @@ public class MockMessagesClient extends MessagesClient {
         isSubscribing = !hasSubscribeError;
         mSubscribeTask.setComplete(true);
         mSubscribeTask.setSuccessful(isSubscribing);
-        return mSubscribeTask;
+        return defer(mSubscribeTask);
     }
 
     /**
@@ -459,7 +463,7 @@ public class MockMessagesClient extends MessagesClient {
         isPublishing = false;
         mPublishTask.setComplete(true);
         mPublishTask.setSuccessful(!hasUnpublishError);
-        return mPublishTask;
+        return defer(mPublishTask);
     }
 
     /**
@@ -482,7 +486,7 @@ public class MockMessagesClient extends MessagesClient {
         isSubscribing = false;
         mSubscribeTask.setComplete(true);
         mSubscribeTask.setSuccessful(!hasUnsubscribeError);
-        return mSubscribeTask;
+        return defer(mSubscribeTask);
     }
 
     @Override
@@ -506,6 +510,36 @@ public class MockMessagesClient extends MessagesClient {
         return mStatusTask;
     }
 
+    /**
+     * Defers the success of publish(), subscribe(), unpublish() and unsubscribe() calls until
+     * completeDeferred() is called, as the real client completes them asynchronously. The state
+     * of this mock client changes on the call regardless. Failures are not deferred.
+     */
+    public void setDeferred(boolean deferred) {
+        checkState();
+        isDeferred = deferred;
+    }
+
+    /**
+     * Completes the deferred calls in the order made, including calls made by the callbacks of
+     * the calls completed.
+     *
+     * @return The number of calls completed
+     */
+    public int completeDeferred() {
+        checkState();
+        int count = 0;
+        while ( ! mDeferredTasks.isEmpty()) {
+            MockTask task = mDeferredTasks.remove(0);
+            if (debug) {
+                System.out.println(CLASS_TAG + " completeDeferred() task[" + task.hashCode() + "]");
+            }
+            task.triggerOnSuccess();
+            count++;
+        }
+        return count;
+    }
+
     /**
      * Returns the {@link Message} sent after a call to publish(). Not publishing, no message.
      */
@@ -522,6 +556,13 @@ public class MockMessagesClient extends MessagesClient {
         return null;
     }
 
+    /**
+     * Returns the {@link MessageListener} passed to subscribe(). Not subscribing, no listener.
+     */
+    public MessageListener captureMessageListener() {
+        return isSubscribing ? mMessageListener : null;
+    }
+
     /**
      * Mocks the {@link MessageListener} onFound(Message) callback.
      *
@@ -825,6 +866,7 @@ public class MockMessagesClient extends MessagesClient {
 
         mClientState.clear();
         mClientState = null;
+        mDeferredTasks.clear();
 
         isPublishing = false;
         isSubscribing = false;
@@ -943,6 +985,20 @@ public class MockMessagesClient extends MessagesClient {
         }
     }
 
+    /**
+     * Returns the task completing a call, a new task completed by completeDeferred() if deferred
+     * and the call succeeds.
+     */
+    private Task<Void> defer(MockTask task) {
+        if ( ! isDeferred || ! task.isSuccessful()) {
+            return task;
+        }
+
+        MockTask deferred = new MockTask();
+        mDeferredTasks.add(deferred);
+        return deferred;
+    }
+
     /**
      * Makes sure the close() method wasn't called prior to a mock method, otherwise
      * throws an exception.
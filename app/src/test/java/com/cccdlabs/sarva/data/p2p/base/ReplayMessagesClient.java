@@ -0,0 +1,62 @@
+package com.cccdlabs.sarva.data.p2p.base;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cccdlabs.sarva.data.p2p.nearby.record.NearbyEventLogReader;
+import com.cccdlabs.sarva.data.p2p.nearby.record.NearbyEventReplayer;
+import com.google.android.gms.nearby.messages.MessageListener;
+import com.google.android.gms.nearby.messages.SubscribeOptions;
+import com.google.android.gms.tasks.Task;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * MockMessagesClient that feeds a recorded Nearby event log to the subscribed
+ * {@link MessageListener}, in real time or accelerated, so a captured session can be re-run
+ * against the client, emitters and presenters without devices. Replay runs on the calling thread.
+ */
+public class ReplayMessagesClient extends MockMessagesClient {
+
+    private MessageListener mSubscribedListener;
+
+    public ReplayMessagesClient(@NonNull Context context) {
+        super(context);
+    }
+
+    @Override
+    public Task<Void> subscribe(@NonNull MessageListener messageListener, @Nullable SubscribeOptions subscribeOptions) {
+        Task<Void> task = super.subscribe(messageListener, subscribeOptions);
+        if (task != null) {
+            mSubscribedListener = messageListener;
+        }
+        return task;
+    }
+
+    @Override
+    public Task<Void> unsubscribe(@NonNull MessageListener messageListener) {
+        mSubscribedListener = null;
+        return super.unsubscribe(messageListener);
+    }
+
+    /**
+     * Replays a log to the subscribed listener, returning the replayer for its timings.
+     */
+    public NearbyEventReplayer replay(byte[] log, double speed) throws IOException, InterruptedException {
+        if (mSubscribedListener == null) {
+            throw new IllegalStateException("Not subscribed, nothing to replay to");
+        }
+
+        NearbyEventReplayer replayer = new NearbyEventReplayer(speed);
+        NearbyEventLogReader reader = new NearbyEventLogReader(new ByteArrayInputStream(log));
+        try {
+            replayer.replay(reader, mSubscribedListener);
+        } finally {
+            reader.close();
+        }
+        return replayer;
+    }
+}
@@ -0,0 +1,75 @@
+package com.cccdlabs.sarva.data.p2p.distance;
+
+import com.google.android.gms.nearby.messages.BleSignal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerDistanceEstimatorTest {
+
+    private static final String CALIBRATION_JSON = "{"
+            + "\"version\": 1,"
+            + "\"default\": {\"path_loss_exponent\": 2.5},"
+            + "\"devices\": {"
+            + "  \"samsung SM-G950F\": {\"measured_power\": -62, \"path_loss_exponent\": 2.0},"
+            + "  \"Google Pixel 3\": {\"measured_power\": -60, \"notes\": \"bench\"}"
+            + "}}";
+
+    private DeviceCalibrationTable mTable;
+    private PartnerDistanceEstimator mEstimator;
+
+    @Before
+    public void setUp() throws Exception {
+        mTable = DeviceCalibrationTable.read(new StringReader(CALIBRATION_JSON));
+        mEstimator = new PartnerDistanceEstimator(mTable);
+    }
+
+    @Test
+    public void shouldReadCalibrationTable() throws Exception {
+        assertEquals(2, mTable.size());
+        assertEquals(-62, mTable.get("samsung SM-G950F").getMeasuredPower(), 0);
+        assertEquals("Device name case not ignored",
+                -60, mTable.get("google pixel 3").getMeasuredPower(), 0);
+        assertEquals("Default exponent not used for device",
+                DeviceCalibrationTable.DEFAULT_PATH_LOSS_EXPONENT,
+                mTable.get("Google Pixel 3").getPathLossExponent(), 0);
+        assertEquals(2.5, mTable.get("unknown device").getPathLossExponent(), 0);
+        assertTrue(Double.isNaN(mTable.get(null).getMeasuredPower()));
+    }
+
+    @Test
+    public void shouldEstimateWithDeviceCalibration() throws Exception {
+        assertEquals(1, mEstimator.estimate("samsung SM-G950F", -62, -12), 0.0001);
+        assertEquals(10, mEstimator.estimate("samsung SM-G950F", -82, -12), 0.0001);
+    }
+
+    @Test
+    public void shouldEstimateWithTxPowerOfUnknownDevice() throws Exception {
+        // -16 dBm at the antenna is -57 dBm at 1 meter
+        assertEquals(1, mEstimator.estimate("unknown device", -57, -16), 0.0001);
+        assertEquals(10, mEstimator.estimate("unknown device", -82, -16), 0.0001);
+        assertEquals("Default measured power not used",
+                1, mEstimator.estimate(null, PartnerDistanceEstimator.DEFAULT_MEASURED_POWER,
+                        BleSignal.UNKNOWN_TX_POWER), 0.0001);
+    }
+
+    @Test
+    public void shouldNotEstimateInvalidRssi() throws Exception {
+        assertTrue(Double.isNaN(mEstimator.estimate("samsung SM-G950F", 0, -12)));
+        assertTrue(Double.isNaN(mEstimator.estimate("samsung SM-G950F", Double.NaN, -12)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidPathLossExponent() throws Exception {
+        DeviceCalibrationTable.read(new StringReader(
+                "{\"default\": {\"path_loss_exponent\": 0}}"));
+    }
+}
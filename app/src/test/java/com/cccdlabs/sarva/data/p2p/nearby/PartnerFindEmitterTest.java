@@ -150,7 +150,7 @@ public class PartnerFindEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnFound() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PAIR);
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
                 messages,
@@ -186,7 +186,7 @@ public class PartnerFindEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnLost() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PAIR);
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
                 messages,
@@ -10,6 +10,9 @@ import com.cccdlabs.sarva.data.p2p.nearby.client.MockPartnerNearbyMessagesClient
 import com.cccdlabs.sarva.data.p2p.nearby.client.PartnerNearbyMessagesClient;
 import com.cccdlabs.sarva.data.p2p.nearby.exception.PermissionException;
 import com.cccdlabs.sarva.data.p2p.nearby.utils.NearbyUtils;
+import com.cccdlabs.sarva.data.p2p.sim.PathLossModel;
+import com.cccdlabs.sarva.data.p2p.sim.SimulatedDevice;
+import com.cccdlabs.sarva.data.p2p.sim.SimulatedMesh;
 import com.cccdlabs.sarva.data.p2p.utils.TestData;
 import com.cccdlabs.sarva.data.p2p.utils.TestUtils;
 import com.cccdlabs.sarva.data.repository.partners.PartnerRepository;
@@ -105,13 +108,15 @@ public class PartnerSearchEmitterTest {
 
         @Override
         protected PartnerNearbyMessagesClient getClient() {
-            mClient = MockPartnerNearbyMessagesClient.get(
-                    context,
-                    mockMessagesClient,
-                    true,
-                    true,
-                    PartnerMessage.Mode.CHECK
-            );
+            if (mClient == null || mClient.hasFinished()) {
+                mClient = MockPartnerNearbyMessagesClient.get(
+                        context,
+                        mockMessagesClient,
+                        true,
+                        true,
+                        PartnerMessage.Mode.CHECK
+                );
+            }
             return mClient;
         }
     }
@@ -152,7 +157,7 @@ public class PartnerSearchEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnFound() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PING);
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
                 messages,
@@ -188,7 +193,7 @@ public class PartnerSearchEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnDistanceChanged() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PING);
         final List<Distance> distances = TestData.generateDistances();
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
@@ -225,7 +230,7 @@ public class PartnerSearchEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnBleSignalChanged() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PING);
         final List<BleSignal> signals = TestData.generateBleSignals();
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
@@ -262,7 +267,7 @@ public class PartnerSearchEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnLost() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PING);
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
                 messages,
@@ -561,6 +566,43 @@ public class PartnerSearchEmitterTest {
         assertTrue("Exception not passed to RxJava default error handler", mDefaultErrorHandler.hasPassedThrough());
     }
 
+    @Test
+    public void testSyncsHundredsOfPartnersOfSimulatedMesh() throws Throwable {
+        final int partnerCount = 250;
+        SimulatedMesh mesh = new SimulatedMesh(new PathLossModel(2.0, 4, PathLossModel.DEFAULT_SENSITIVITY), 7L);
+        mesh.addScatteredDevices(partnerCount, 50, PartnerMessage.Mode.PING, 2);
+        mesh.addObserver(new SimulatedDevice(TEST_UUID, TEST_USERNAME, "device", PartnerMessage.Mode.CHECK, 0, 0),
+                mClient);
+
+        TestSubscriber<PartnerResult> subscriber = mEmitter.getPartnerFlowable().test();
+        mesh.advance(60000);
+
+        subscriber.assertNoErrors();
+        mEmitter.mWriteBuffer.flush();
+        assertEquals("Partners in range not synced", partnerCount, mRepository.getAll().size());
+        assertTrue("Readings not coalesced", mEmitter.mWriteBuffer.getFlushedCount()
+                < mEmitter.mWriteBuffer.getWriteCount());
+        subscriber.dispose();
+    }
+
+    @Test
+    public void testTriageSharesPartnerResults() throws Throwable {
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.PING);
+        final int size = messages.size();
+
+        TestSubscriber<PartnerResult> subscriber = mEmitter.getPartnerFlowable().test();
+        TestSubscriber<List<Partner>> triageSubscriber = mEmitter.getTriageFlowable(3).test();
+        mClient.mockMessageOnFound(messages);
+
+        subscriber.assertNoErrors();
+        triageSubscriber.assertNoErrors();
+        assertEquals("Partner results not shared", size + PUBSUB_STATUS_COUNT, subscriber.valueCount());
+        assertEquals("Partners written more than once", size, mEmitter.mWriteBuffer.getWriteCount());
+
+        triageSubscriber.dispose();
+        subscriber.dispose();
+    }
+
     @After
     public void tearDown() throws Exception {
         PartnerNearbyMessagesClient.destroy();
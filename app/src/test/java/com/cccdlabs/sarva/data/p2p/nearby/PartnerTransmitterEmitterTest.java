@@ -152,7 +152,7 @@ public class PartnerTransmitterEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnFound() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH);
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
                 messages,
@@ -188,7 +188,7 @@ public class PartnerTransmitterEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnDistanceChanged() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH);
         final List<Distance> distances = TestData.generateDistances();
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
@@ -225,7 +225,7 @@ public class PartnerTransmitterEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnBleSignalChanged() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH);
         final List<BleSignal> signals = TestData.generateBleSignals();
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
@@ -262,7 +262,7 @@ public class PartnerTransmitterEmitterTest {
 
     @Test
     public void testIsSubscribingWithOnLost() throws Throwable {
-        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH);
         final List<Partner> partners = TestUtils.seedAndConvertToPartners(
                 mRepository,
                 messages,
@@ -0,0 +1,141 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerEventCoalescerTest {
+
+    private static final long WINDOW_MS = 100L;
+    private static final PartnerMessage.Mode MODE = PartnerMessage.Mode.SEARCH;
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+
+    private TestScheduler scheduler;
+    private List<PartnerResult> results;
+    private PartnerEventCoalescer coalescer;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        results = new ArrayList<>();
+        coalescer = new PartnerEventCoalescer(WINDOW_MS, scheduler,
+                new PartnerEventCoalescer.OnResultListener() {
+                    @Override
+                    public void onResult(@NonNull PartnerResult result) {
+                        results.add(result);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        coalescer.dispose();
+    }
+
+    @Test
+    public void shouldEmitFoundAndLostImmediately() throws Exception {
+        coalescer.onFound(partner(UUID_1, true), MODE);
+        assertEquals("Found not emitted", 1, results.size());
+        assertTrue("Found partner not emitting", results.get(0).getPartner().isEmitting());
+
+        coalescer.onLost(partner(UUID_1, false), MODE);
+        assertEquals("Lost not emitted", 2, results.size());
+        assertFalse("Lost partner emitting", results.get(1).getPartner().isEmitting());
+    }
+
+    @Test
+    public void shouldMergeReadingsWithinWindow() throws Exception {
+        coalescer.onDistanceChanged(partner(UUID_1, true), MODE, 3.5, 1);
+        coalescer.onBleSignalChanged(partner(UUID_1, true), MODE, -60, -12);
+        coalescer.onDistanceChanged(partner(UUID_1, true), MODE, 2.5, 1);
+        coalescer.onBleSignalChanged(partner(UUID_2, true), MODE, -70, -10);
+        assertEquals("Readings emitted before window", 0, results.size());
+
+        scheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertEquals("Readings not coalesced per partner", 2, results.size());
+
+        Partner first = results.get(0).getPartner();
+        assertEquals(UUID_1, first.getUuid());
+        assertEquals(2.5, first.getDistance(), 0.0);
+        assertEquals(1, first.getAccuracy());
+        assertEquals(-60, first.getRssi());
+        assertEquals(-12, first.getTxPower());
+        assertTrue("Coalesced partner not emitting", first.isEmitting());
+        assertEquals("Mode of message not kept", MODE, results.get(0).getMode());
+        assertEquals(UUID_2, results.get(1).getPartner().getUuid());
+    }
+
+    @Test
+    public void shouldKeepLastReadingsAcrossWindows() throws Exception {
+        coalescer.onDistanceChanged(partner(UUID_1, true), MODE, 4.0, 2);
+        coalescer.onBleSignalChanged(partner(UUID_1, true), MODE, -65, -12);
+        scheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        coalescer.onBleSignalChanged(partner(UUID_1, true), MODE, -55, -12);
+        scheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertEquals(2, results.size());
+
+        Partner second = results.get(1).getPartner();
+        assertEquals(4.0, second.getDistance(), 0.0);
+        assertEquals(-55, second.getRssi());
+
+        scheduler.advanceTimeBy(WINDOW_MS * 5, TimeUnit.MILLISECONDS);
+        assertEquals("Unchanged partner emitted", 2, results.size());
+    }
+
+    @Test
+    public void shouldDropPendingReadingsWhenLost() throws Exception {
+        coalescer.onDistanceChanged(partner(UUID_1, true), MODE, 3.0, 1);
+        coalescer.onLost(partner(UUID_1, false), MODE);
+        scheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("Pending reading emitted after lost", 1, results.size());
+        assertFalse(results.get(0).getPartner().isEmitting());
+    }
+
+    @Test
+    public void shouldDropPendingReadingsWhenCleared() throws Exception {
+        coalescer.onBleSignalChanged(partner(UUID_1, true), MODE, -60, -12);
+        coalescer.clear();
+        scheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("Pending reading emitted after clear", 0, results.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionWithZeroWindow() throws Exception {
+        new PartnerEventCoalescer(0, scheduler, new PartnerEventCoalescer.OnResultListener() {
+            @Override
+            public void onResult(@NonNull PartnerResult result) {}
+        });
+    }
+
+    private static Partner partner(String uuid, boolean isEmitting) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setUsername("partner");
+        partner.setDeviceName("Google Pixel");
+        partner.setEmitting(isEmitting);
+        return partner;
+    }
+}
@@ -0,0 +1,64 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerHandleTableTest {
+
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+    private static final String UUID_3 = "44cf4c02-542c-4f0c-acfd-1bbcce1bc30a";
+
+    @Test
+    public void shouldAssignLowestFreeHandleFirst() throws Exception {
+        PartnerHandleTable table = new PartnerHandleTable(2);
+
+        assertEquals(-1, table.find(UUID_1));
+        assertEquals(0, table.assign(UUID_1));
+        assertEquals(1, table.assign(UUID_2));
+        assertEquals(0, table.find(UUID_1));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void shouldReassignLeastRecentlyUsed() throws Exception {
+        PartnerHandleTable table = new PartnerHandleTable(2);
+        int handle1 = table.assign(UUID_1);
+        int handle2 = table.assign(UUID_2);
+        table.touch(handle1);
+
+        assertEquals(handle2, table.assign(UUID_3));
+        assertEquals("Evicted partner still found", -1, table.find(UUID_2));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void shouldFreeRemovedHandles() throws Exception {
+        PartnerHandleTable table = new PartnerHandleTable(2);
+        int handle1 = table.assign(UUID_1);
+        table.assign(UUID_2);
+
+        assertTrue(table.remove(UUID_1));
+        assertFalse(table.remove(UUID_1));
+        assertEquals(handle1, table.assign(UUID_3));
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.assign(UUID_2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnassignedHandle() throws Exception {
+        PartnerHandleTable table = new PartnerHandleTable(2);
+        table.assign(UUID_1);
+        table.remove(UUID_1);
+
+        table.checkAssigned(0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerLatestReadingOperatorTest {
+
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+
+    private PublishProcessor<PartnerResult> processor;
+    private AtomicLong droppedReadings;
+    private TestSubscriber<PartnerResult> subscriber;
+
+    @Before
+    public void setUp() throws Exception {
+        processor = PublishProcessor.create();
+        droppedReadings = new AtomicLong();
+        subscriber = new TestSubscriber<>(0L);
+        processor.lift(new PartnerLatestReadingOperator(droppedReadings)).subscribe(subscriber);
+    }
+
+    @Test
+    public void shouldKeepLatestReadingPerPartner() throws Exception {
+        processor.onNext(reading(UUID_1, -70));
+        processor.onNext(reading(UUID_2, -80));
+        processor.onNext(reading(UUID_1, -65));
+        processor.onNext(reading(UUID_1, -60));
+        subscriber.assertNoValues();
+
+        subscriber.request(Long.MAX_VALUE);
+        List<PartnerResult> values = subscriber.values();
+        assertEquals("Stale readings not dropped", 2, values.size());
+        assertEquals(UUID_1, values.get(0).getUuid());
+        assertEquals(-60, values.get(0).getPartner().getRssi());
+        assertEquals(UUID_2, values.get(1).getUuid());
+        assertEquals(2L, droppedReadings.get());
+    }
+
+    @Test
+    public void shouldNeverDropFoundLostStatusOrError() throws Exception {
+        processor.onNext(found(UUID_1, true));
+        processor.onNext(new PartnerResult(new PartnerResult.Status(true, false)));
+        processor.onNext(found(UUID_1, false));
+        processor.onNext(found(UUID_1, true));
+        processor.onNext(new PartnerResult(new Exception("Test error")));
+
+        subscriber.request(Long.MAX_VALUE);
+        List<PartnerResult> values = subscriber.values();
+        assertEquals("Result dropped", 5, values.size());
+        assertTrue(values.get(0).getPartner().isEmitting());
+        assertNotNull(values.get(1).getStatus());
+        assertFalse(values.get(2).getPartner().isEmitting());
+        assertTrue(values.get(3).getPartner().isEmitting());
+        assertTrue(values.get(4).hasError());
+        assertEquals(0L, droppedReadings.get());
+    }
+
+    @Test
+    public void shouldNotReorderReadingsAroundLostPartner() throws Exception {
+        processor.onNext(reading(UUID_1, -70));
+        processor.onNext(found(UUID_1, false));
+        processor.onNext(reading(UUID_1, -60));
+
+        subscriber.request(Long.MAX_VALUE);
+        List<PartnerResult> values = subscriber.values();
+        assertEquals(3, values.size());
+        assertEquals(-70, values.get(0).getPartner().getRssi());
+        assertFalse(values.get(1).getPartner().isEmitting());
+        assertEquals(-60, values.get(2).getPartner().getRssi());
+        assertEquals(0L, droppedReadings.get());
+    }
+
+    @Test
+    public void shouldEmitOnlyAsRequested() throws Exception {
+        processor.onNext(reading(UUID_1, -70));
+        processor.onNext(reading(UUID_2, -80));
+
+        subscriber.request(1L);
+        subscriber.assertValueCount(1);
+
+        processor.onNext(reading(UUID_2, -75));
+        processor.onNext(reading(UUID_1, -68));
+        subscriber.request(1L);
+        subscriber.assertValueCount(2);
+        assertEquals(-75, subscriber.values().get(1).getPartner().getRssi());
+
+        subscriber.request(1L);
+        subscriber.assertValueCount(3);
+        assertEquals(-68, subscriber.values().get(2).getPartner().getRssi());
+        assertEquals(1L, droppedReadings.get());
+    }
+
+    @Test
+    public void shouldCompleteAfterQueueDrained() throws Exception {
+        processor.onNext(found(UUID_1, true));
+        processor.onComplete();
+        subscriber.assertNotComplete();
+
+        subscriber.request(1L);
+        subscriber.assertValueCount(1);
+        subscriber.assertComplete();
+    }
+
+    private static PartnerResult reading(String uuid, int rssi) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setRssi(rssi);
+        partner.setEmitting(true);
+        return new PartnerResult(partner, true);
+    }
+
+    private static PartnerResult found(String uuid, boolean isEmitting) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setEmitting(isEmitting);
+        return new PartnerResult(partner);
+    }
+}
@@ -0,0 +1,924 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.cccdlabs.sarva.data.p2p.base.MockBleSignal;
+import com.cccdlabs.sarva.data.p2p.base.MockDistance;
+import com.cccdlabs.sarva.data.p2p.base.MockMessagesClient;
+import com.cccdlabs.sarva.data.p2p.base.ReplayMessagesClient;
+import com.cccdlabs.sarva.data.p2p.distance.DeviceCalibrationTable;
+import com.cccdlabs.sarva.data.p2p.distance.PartnerDistanceEstimator;
+import com.cccdlabs.sarva.data.p2p.nearby.exception.PermissionException;
+import com.cccdlabs.sarva.data.p2p.nearby.record.NearbyEventLogWriter;
+import com.cccdlabs.sarva.data.p2p.nearby.record.NearbyEventReplayer;
+import com.cccdlabs.sarva.data.p2p.sim.PathLossModel;
+import com.cccdlabs.sarva.data.p2p.sim.SimulatedDevice;
+import com.cccdlabs.sarva.data.p2p.sim.SimulatedMesh;
+import com.cccdlabs.sarva.data.p2p.nearby.utils.NearbyUtils;
+import com.cccdlabs.sarva.data.p2p.utils.TestData;
+import com.cccdlabs.sarva.data.settings.GeneralSettingsManager;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+import com.google.android.gms.nearby.messages.BleSignal;
+import com.google.android.gms.nearby.messages.Distance;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+import com.google.android.gms.nearby.messages.PublishOptions;
+import com.google.android.gms.nearby.messages.SubscribeOptions;
+import com.google.android.gms.tasks.Task;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.functions.Consumer;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PartnerNearbyMessagesClientTest {
+
+    private static final String TEST_UUID = "9d29e5e4-3d33-4f90-9453-5b3e8af963ed";
+    private static final String TEST_USERNAME = "Johnny";
+    private static final int TEST_MESSAGE_COUNT = 5;
+    private static final long SILENCE_TIMEOUT_MS = 1000L;
+    private static final long COALESCE_WINDOW_MS = 100L;
+    private static final long TEARDOWN_DELAY_MS = 5000L;
+    private static final int MESH_PARTNER_COUNT = 250;
+    private static final int PUBSUB_STATUS_COUNT = 2; // # times onNext() called for publish and subscribe status
+
+    private CountingMessagesClient mMessagesClient;
+    private PartnerNearbyMessagesClient mClient;
+    private Context mContext;
+
+    /**
+     * Counts the Nearby calls made by the client.
+     */
+    private static class CountingMessagesClient extends MockMessagesClient {
+
+        int publishCount;
+        int unpublishCount;
+        int subscribeCount;
+        int unsubscribeCount;
+
+        CountingMessagesClient(Context context) {
+            super(context, true);
+        }
+
+        @Override
+        public Task<Void> publish(@NonNull Message message, @Nullable PublishOptions publishOptions) {
+            publishCount++;
+            return super.publish(message, publishOptions);
+        }
+
+        @Override
+        public Task<Void> unpublish(@NonNull Message message) {
+            unpublishCount++;
+            return super.unpublish(message);
+        }
+
+        @Override
+        public Task<Void> subscribe(@NonNull MessageListener messageListener, @Nullable SubscribeOptions subscribeOptions) {
+            subscribeCount++;
+            return super.subscribe(messageListener, subscribeOptions);
+        }
+
+        @Override
+        public Task<Void> unsubscribe(@NonNull MessageListener messageListener) {
+            unsubscribeCount++;
+            return super.unsubscribe(messageListener);
+        }
+    }
+
+    /**
+     * Counts the times the transport is closed.
+     */
+    private static class ClosingTransport extends NearbyPartnerTransport {
+
+        int closeCount;
+
+        ClosingTransport(MockMessagesClient messagesClient) {
+            super(messagesClient, null);
+        }
+
+        @Override
+        public void close() {
+            closeCount++;
+            super.close();
+        }
+    }
+
+    /**
+     * Reports partners found and lost only, as over a network.
+     */
+    private static class FoundLostTransport extends NearbyPartnerTransport {
+
+        FoundLostTransport(MockMessagesClient messagesClient) {
+            super(messagesClient, null);
+        }
+
+        @Override
+        public boolean reportsSignal() {
+            return false;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = ApplicationProvider.getApplicationContext();
+        GeneralSettingsManager settings = new GeneralSettingsManager(mContext);
+        settings.setUuid(TEST_UUID);
+        settings.setUsername(TEST_USERNAME);
+
+        mMessagesClient = new CountingMessagesClient(mContext);
+        mClient = MockPartnerNearbyMessagesClient.get(
+                mContext,
+                mMessagesClient,
+                true,
+                true,
+                PartnerMessage.Mode.CHECK
+        );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PartnerNearbyMessagesClient.destroy();
+        RxJavaPlugins.reset();
+        mMessagesClient.close();
+    }
+
+    @Test
+    public void shouldReturnSameFlowableForSameModes() throws Exception {
+        assertSame(
+                "Flowable of same modes not reused",
+                mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH, PartnerMessage.Mode.PING),
+                mClient.getPartnerFlowable(PartnerMessage.Mode.PING, PartnerMessage.Mode.SEARCH)
+        );
+        assertNotSame(
+                "Flowable of different modes reused",
+                mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH),
+                mClient.getPartnerFlowable(PartnerMessage.Mode.PING)
+        );
+    }
+
+    @Test
+    public void shouldRouteResultsByMode() throws Exception {
+        TestSubscriber<PartnerResult> all = new TestSubscriber<>();
+        TestSubscriber<PartnerResult> check = new TestSubscriber<>();
+        TestSubscriber<PartnerResult> search = new TestSubscriber<>();
+        mClient.getPartnerFlowable().subscribe(all);
+        mClient.getPartnerFlowable(PartnerMessage.Mode.CHECK).subscribe(check);
+        mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH).subscribe(search);
+
+        mMessagesClient.mockMessageOnFound(TestData.generateMessages(PartnerMessage.Mode.CHECK));
+        mMessagesClient.mockMessageOnFound(TestData.generateMessages(PartnerMessage.Mode.SEARCH));
+        mMessagesClient.mockMessageOnFound(TestData.generateMessages(PartnerMessage.Mode.PING));
+
+        assertEquals("All modes Flowable missed results", TEST_MESSAGE_COUNT * 3, countPartners(all, null));
+        assertEquals("CHECK Flowable results", TEST_MESSAGE_COUNT, countPartners(check, PartnerMessage.Mode.CHECK));
+        assertEquals("SEARCH Flowable results", TEST_MESSAGE_COUNT, countPartners(search, PartnerMessage.Mode.SEARCH));
+        assertEquals("CHECK Flowable received other modes", TEST_MESSAGE_COUNT, countPartners(check, null));
+        assertEquals("SEARCH Flowable received other modes", TEST_MESSAGE_COUNT, countPartners(search, null));
+
+        all.dispose();
+        check.dispose();
+        search.dispose();
+    }
+
+    @Test
+    public void shouldNotRoutePartnersToPublishOnlyClient() throws Exception {
+        TestSubscriber<PartnerResult> subscribing = mClient.getPartnerFlowable().test();
+        mMessagesClient.mockMessageOnFound(TestData.generateMessages(PartnerMessage.Mode.CHECK));
+
+        PartnerNearbyMessagesClient publishOnly = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasPublish(true)
+                .hasSubscribe(false)
+                .setPublishMode(PartnerMessage.Mode.CHECK)
+                .setMessagesClient(mMessagesClient)
+                .build();
+        TestSubscriber<PartnerResult> publishing = publishOnly.getPartnerFlowable().test();
+        mMessagesClient.mockMessageOnFound(TestData.generateMessages(PartnerMessage.Mode.PING));
+
+        assertEquals(TEST_MESSAGE_COUNT * 2, countPartners(subscribing, null));
+        assertEquals("Publish only client received partners", 0, countPartners(publishing, null));
+        assertTrue("Publish only client missed status", publishing.valueCount() > 0);
+
+        subscribing.dispose();
+        publishing.dispose();
+    }
+
+    @Test
+    public void shouldRouteErrorToAllModes() throws Exception {
+        TestSubscriber<PartnerResult> check = new TestSubscriber<>();
+        TestSubscriber<PartnerResult> search = new TestSubscriber<>();
+        mClient.getPartnerFlowable(PartnerMessage.Mode.CHECK).subscribe(check);
+        mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH).subscribe(search);
+
+        mMessagesClient.mockStatusCallbackOnPermissionChanged(false);
+
+        check.assertError(PermissionException.class);
+        search.assertError(PermissionException.class);
+    }
+
+    @Test
+    public void shouldStartOnFirstSubscriber() throws Exception {
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+
+        TestSubscriber<PartnerResult> subscriber = mClient.getPartnerFlowable().test();
+
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+        assertEquals("Publish count", 1, mMessagesClient.publishCount);
+        assertEquals("Subscribe count", 1, mMessagesClient.subscribeCount);
+        subscriber.assertValueCount(PUBSUB_STATUS_COUNT);
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldAttachSubscriberWithoutRestart() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        TestSubscriber<PartnerResult> second = mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH).test();
+
+        assertEquals("Publish count", 1, mMessagesClient.publishCount);
+        assertEquals("Unpublish count", 0, mMessagesClient.unpublishCount);
+        assertEquals("Subscribe count", 1, mMessagesClient.subscribeCount);
+        assertEquals("Unsubscribe count", 0, mMessagesClient.unsubscribeCount);
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+
+        // the later subscriber receives the current status once
+        first.assertValueCount(PUBSUB_STATUS_COUNT);
+        second.assertValueCount(1);
+        PartnerResult.Status status = second.values().get(0).getStatus();
+        assertTrue("Status not publishing", status.isPublishing);
+        assertTrue("Status not subscribing", status.isSubscribing);
+
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    public void shouldRestartPublishOnPublishModeChange() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        PartnerNearbyMessagesClient searchClient = MockPartnerNearbyMessagesClient.get(
+                mContext,
+                mMessagesClient,
+                true,
+                true,
+                PartnerMessage.Mode.SEARCH
+        );
+        TestSubscriber<PartnerResult> second = searchClient.getPartnerFlowable().test();
+
+        assertEquals("Publish count", 2, mMessagesClient.publishCount);
+        assertEquals("Unpublish count", 1, mMessagesClient.unpublishCount);
+        assertEquals("Subscribe restarted", 1, mMessagesClient.subscribeCount);
+        assertEquals(PubSubStateMachine.State.ACTIVE, searchClient.getPublishState());
+        assertEquals(
+                "Message of new publish mode not published",
+                PartnerMessage.Mode.SEARCH,
+                NearbyUtils.toPartnerMessage(mMessagesClient.capturePublishMessage()).getMode()
+        );
+
+        // a third subscriber of the same mode is free
+        TestSubscriber<PartnerResult> third = searchClient.getPartnerFlowable(PartnerMessage.Mode.CHECK).test();
+        assertEquals("Publish count", 2, mMessagesClient.publishCount);
+
+        first.dispose();
+        second.dispose();
+        third.dispose();
+    }
+
+    @Test
+    public void shouldRestartOnTransportChange() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        CountingMessagesClient otherMessagesClient = new CountingMessagesClient(mContext);
+        ClosingTransport otherTransport = new ClosingTransport(otherMessagesClient);
+        PartnerNearbyMessagesClient otherClient = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasPublish(true)
+                .hasSubscribe(true)
+                .setPublishMode(PartnerMessage.Mode.CHECK)
+                .setTransport(otherTransport)
+                .build();
+        TestSubscriber<PartnerResult> second = otherClient.getPartnerFlowable().test();
+
+        assertEquals("Unpublish count", 1, mMessagesClient.unpublishCount);
+        assertEquals("Unsubscribe count", 1, mMessagesClient.unsubscribeCount);
+        assertEquals("Publish count of new transport", 1, otherMessagesClient.publishCount);
+        assertEquals("Subscribe count of new transport", 1, otherMessagesClient.subscribeCount);
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+
+        // partners over the new transport reach subscribers of both clients
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH).subList(0, 1);
+        otherMessagesClient.mockMessageOnFound(messages);
+        assertEquals(1, countPartners(first, null));
+        assertEquals(1, countPartners(second, null));
+
+        // stopped and closed over the transport in use, whichever client stops last
+        second.cancel();
+        first.cancel();
+        assertEquals("Unpublish count", 1, mMessagesClient.unpublishCount);
+        assertEquals("Unpublish count of new transport", 1, otherMessagesClient.unpublishCount);
+        assertEquals("Unsubscribe count of new transport", 1, otherMessagesClient.unsubscribeCount);
+        assertFalse("Message client is publishing", otherMessagesClient.isPublishing());
+        assertEquals("Transport not closed", 1, otherTransport.closeCount);
+        otherMessagesClient.close();
+    }
+
+    @Test
+    public void shouldPublishModeOfClientRegisteredWhileStarting() throws Exception {
+        mMessagesClient.setDeferred(true);
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        assertEquals(PubSubStateMachine.State.STARTING, mClient.getPublishState());
+
+        PartnerNearbyMessagesClient searchClient = MockPartnerNearbyMessagesClient.get(
+                mContext,
+                mMessagesClient,
+                true,
+                true,
+                PartnerMessage.Mode.SEARCH
+        );
+        TestSubscriber<PartnerResult> second = searchClient.getPartnerFlowable().test();
+        mMessagesClient.completeDeferred();
+
+        assertEquals(PubSubStateMachine.State.ACTIVE, searchClient.getPublishState());
+        assertEquals("Publish count", 2, mMessagesClient.publishCount);
+        assertEquals(
+                "Message of new publish mode not published",
+                PartnerMessage.Mode.SEARCH,
+                NearbyUtils.toPartnerMessage(mMessagesClient.capturePublishMessage()).getMode()
+        );
+
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    public void shouldStartForClientRegisteredWhileStopping() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        mMessagesClient.setDeferred(true);
+        first.cancel();
+        assertTrue("Client not finished", mClient.hasFinished());
+        assertEquals(PubSubStateMachine.State.STOPPING, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.STOPPING, mClient.getSubscribeState());
+
+        // the stop callbacks of the finished client arrive after the next client registers
+        PartnerNearbyMessagesClient nextClient = MockPartnerNearbyMessagesClient.get(
+                mContext,
+                mMessagesClient,
+                true,
+                true,
+                PartnerMessage.Mode.CHECK
+        );
+        TestSubscriber<PartnerResult> second = nextClient.getPartnerFlowable().test();
+        mMessagesClient.completeDeferred();
+
+        assertEquals(PubSubStateMachine.State.ACTIVE, nextClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, nextClient.getSubscribeState());
+        assertTrue("Message client not publishing", mMessagesClient.isPublishing());
+        assertTrue("Message client not subscribing", mMessagesClient.isSubscribing());
+        second.assertValueCount(PUBSUB_STATUS_COUNT);
+
+        second.dispose();
+    }
+
+    @Test
+    public void shouldStopOnLastSubscriberCancel() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        TestSubscriber<PartnerResult> second = mClient.getPartnerFlowable(PartnerMessage.Mode.CHECK).test();
+
+        first.cancel();
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+        assertEquals("Unpublish count", 0, mMessagesClient.unpublishCount);
+
+        second.cancel();
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+        assertEquals("Unpublish count", 1, mMessagesClient.unpublishCount);
+        assertEquals("Unsubscribe count", 1, mMessagesClient.unsubscribeCount);
+        assertFalse("Message client is publishing", mMessagesClient.isPublishing());
+        assertFalse("Message client is subscribing", mMessagesClient.isSubscribing());
+    }
+
+    @Test
+    public void shouldKeepDiscoveryForSubscriberWithinTeardownDelay() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        PartnerNearbyMessagesClient leaving = buildLingeringClient(scheduler);
+        leaving.getPartnerFlowable(PartnerMessage.Mode.CHECK).test().cancel();
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+
+        // the subscriber of the next screen attaches within the delay
+        scheduler.advanceTimeBy(TEARDOWN_DELAY_MS - 1, TimeUnit.MILLISECONDS);
+        PartnerNearbyMessagesClient next = buildLingeringClient(scheduler);
+        TestSubscriber<PartnerResult> subscriber = next.getPartnerFlowable(PartnerMessage.Mode.CHECK).test();
+        scheduler.advanceTimeBy(TEARDOWN_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("Publish restarted", 1, mMessagesClient.publishCount);
+        assertEquals("Subscribe restarted", 1, mMessagesClient.subscribeCount);
+        assertEquals("Unpublish count", 0, mMessagesClient.unpublishCount);
+        assertEquals("Unsubscribe count", 0, mMessagesClient.unsubscribeCount);
+        PartnerResult.Status status = subscriber.values().get(0).getStatus();
+        assertTrue("Status not publishing", status.isPublishing);
+        assertTrue("Status not subscribing", status.isSubscribing);
+
+        // stopped once the delay passes without a subscriber
+        subscriber.cancel();
+        scheduler.advanceTimeBy(TEARDOWN_DELAY_MS - 1, TimeUnit.MILLISECONDS);
+        assertEquals("Unpublish count", 0, mMessagesClient.unpublishCount);
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+        assertEquals("Unpublish count", 1, mMessagesClient.unpublishCount);
+        assertEquals("Unsubscribe count", 1, mMessagesClient.unsubscribeCount);
+    }
+
+    @Test
+    public void shouldStopOnDestroyWithinTeardownDelay() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        buildLingeringClient(scheduler).getPartnerFlowable().test().cancel();
+        assertEquals("Unpublish count", 0, mMessagesClient.unpublishCount);
+
+        PartnerNearbyMessagesClient.destroy();
+        assertEquals("Unpublish count", 1, mMessagesClient.unpublishCount);
+        assertEquals("Unsubscribe count", 1, mMessagesClient.unsubscribeCount);
+        assertFalse("Message client is publishing", mMessagesClient.isPublishing());
+        assertFalse("Message client is subscribing", mMessagesClient.isSubscribing());
+    }
+
+    @Test
+    public void shouldIdleOnPublishExpiredAndStartForNextSubscriber() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        mMessagesClient.mockPublishExpired();
+
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+        assertFalse("Client is publishing", mClient.isPublishing());
+
+        TestSubscriber<PartnerResult> second = mClient.getPartnerFlowable(PartnerMessage.Mode.CHECK).test();
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals("Publish count", 2, mMessagesClient.publishCount);
+        assertEquals("Subscribe count", 1, mMessagesClient.subscribeCount);
+
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    public void shouldIdleOnSubscribeExpired() throws Exception {
+        TestSubscriber<PartnerResult> subscriber = mClient.getPartnerFlowable().test();
+        mMessagesClient.mockSubscribeExpired();
+
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+        assertFalse("Client is subscribing", mClient.isSubscribing());
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldIdleOnPublishFailure() throws Exception {
+        mMessagesClient.mockPublishFailure(new Exception("Test publish failure"));
+        TestSubscriber<PartnerResult> subscriber = mClient.getPartnerFlowable().test();
+
+        subscriber.assertError(Exception.class);
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+    }
+
+    @Test
+    public void shouldIdleOnSubscribeFailure() throws Exception {
+        mMessagesClient.mockSubscribeFailure(new Exception("Test subscribe failure"));
+        TestSubscriber<PartnerResult> subscriber = mClient.getPartnerFlowable().test();
+
+        subscriber.assertError(Exception.class);
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+    }
+
+    @Test
+    public void shouldIdleOnUnpublishFailure() throws Exception {
+        final List<Throwable> errors = new ArrayList<>();
+        RxJavaPlugins.setErrorHandler(new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                errors.add(throwable);
+            }
+        });
+        mMessagesClient.mockUnpublishFailure(new Exception("Test unpublish failure"));
+        TestSubscriber<PartnerResult> subscriber = mClient.getPartnerFlowable().test();
+        subscriber.cancel();
+
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getPublishState());
+        assertEquals(PubSubStateMachine.State.IDLE, mClient.getSubscribeState());
+        assertEquals("Unpublish failure not passed to RxJava error handler", 1, errors.size());
+    }
+
+    @Test
+    public void shouldIgnoreMessagesNotDecoded() throws Exception {
+        TestSubscriber<PartnerResult> subscriber = mClient.getPartnerFlowable().test();
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message(new byte[] { (byte) 0x82, 1, 2, 3 })); // binary form of a later version
+        messages.add(new Message("{uuid:".getBytes("UTF-8")));
+        mMessagesClient.mockMessageOnFound(messages);
+        List<BleSignal> signals = new ArrayList<>();
+        signals.add(new MockBleSignal(-60, -59));
+        signals.add(new MockBleSignal(-60, -59));
+        mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        mMessagesClient.mockMessageOnLost(messages);
+
+        subscriber.assertNoErrors();
+        assertEquals("Undecoded messages emitted", 0, countPartners(subscriber, null));
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldEmitLostForSilentPartners() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasPublish(true)
+                .hasSubscribe(true)
+                .setPublishMode(PartnerMessage.Mode.SEARCH)
+                .setMessagesClient(mMessagesClient)
+                .setSilenceTimeout(SILENCE_TIMEOUT_MS)
+                .setSilenceScheduler(scheduler)
+                .build();
+        TestSubscriber<PartnerResult> subscriber = client.getPartnerFlowable().test();
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        mMessagesClient.mockMessageOnFound(messages);
+        assertEquals(TEST_MESSAGE_COUNT, countPartners(subscriber, null));
+
+        scheduler.advanceTimeBy(SILENCE_TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+        int lost = 0;
+        for (PartnerResult result : subscriber.values()) {
+            if (result.getPartner() != null && ! result.getPartner().isEmitting()) {
+                lost++;
+            }
+        }
+        assertEquals("Silent partners not lost", TEST_MESSAGE_COUNT, lost);
+
+        // Nearby lost results of partners already lost are not passed on
+        mMessagesClient.mockMessageOnLost(messages);
+        assertEquals(TEST_MESSAGE_COUNT * 2, countPartners(subscriber, null));
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldNotTimeSilenceWithoutSignal() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasSubscribe(true)
+                .setTransport(new FoundLostTransport(mMessagesClient))
+                .setSilenceTimeout(SILENCE_TIMEOUT_MS)
+                .setSilenceScheduler(scheduler)
+                .build();
+        TestSubscriber<PartnerResult> subscriber = client.getPartnerFlowable().test();
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        mMessagesClient.mockMessageOnFound(messages);
+
+        // found once and heard from until the transport loses them
+        scheduler.advanceTimeBy(SILENCE_TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+        assertEquals("Partners found once lost as silent", TEST_MESSAGE_COUNT, countPartners(subscriber, null));
+
+        mMessagesClient.mockMessageOnLost(messages);
+        assertEquals("Transport lost results not passed on", TEST_MESSAGE_COUNT * 2, countPartners(subscriber, null));
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldRunPipelineOfLatestSubscribingClient() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        PartnerNearbyMessagesClient coalescingClient = buildCoalescingClient(scheduler);
+        TestSubscriber<PartnerResult> second = coalescingClient.getPartnerFlowable().test();
+        assertEquals("Subscribe not restarted for pipeline", 2, mMessagesClient.subscribeCount);
+        assertEquals("Unsubscribe count", 1, mMessagesClient.unsubscribeCount);
+
+        // the client first subscribed finishing leaves the pipeline running
+        first.cancel();
+        assertTrue("Client not finished", mClient.hasFinished());
+        assertEquals("Subscribe count", 2, mMessagesClient.subscribeCount);
+
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH).subList(0, 1);
+        mMessagesClient.mockMessageOnFound(messages);
+        List<BleSignal> signals = new ArrayList<>();
+        signals.add(new MockBleSignal(-60, -59));
+        mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        assertEquals("Readings not coalesced", 1, countPartners(second, null));
+
+        scheduler.advanceTimeBy(COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertEquals("Coalesced readings not flushed", 2, countPartners(second, null));
+
+        second.dispose();
+    }
+
+    @Test
+    public void shouldHandOverSubscriptionWhenPipelineClientFinishes() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        PartnerNearbyMessagesClient coalescingClient = buildCoalescingClient(scheduler);
+        TestSubscriber<PartnerResult> second = coalescingClient.getPartnerFlowable().test();
+
+        second.cancel();
+        assertTrue("Client not finished", coalescingClient.hasFinished());
+        assertEquals("Subscribe not restarted for pipeline", 3, mMessagesClient.subscribeCount);
+        assertEquals(PubSubStateMachine.State.ACTIVE, mClient.getSubscribeState());
+
+        // readings passed on as received by the pipeline of the client left
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH).subList(0, 1);
+        mMessagesClient.mockMessageOnFound(messages);
+        List<BleSignal> signals = new ArrayList<>();
+        signals.add(new MockBleSignal(-60, -59));
+        mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        assertEquals(2, countPartners(first, null));
+
+        first.dispose();
+    }
+
+    @Test
+    public void shouldEmitRawAndFilteredRssi() throws Exception {
+        PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasSubscribe(true)
+                .setMessagesClient(mMessagesClient)
+                .setRssiFilter(new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.MEDIAN)
+                        .setMedianWindow(3)
+                        .build())
+                .build();
+        TestSubscriber<PartnerResult> subscriber = client.getPartnerFlowable().test();
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH).subList(0, 1);
+        mMessagesClient.mockMessageOnFound(messages);
+
+        int[] readings = {-60, -90, -62};
+        for (int rssi : readings) {
+            List<BleSignal> signals = new ArrayList<>();
+            signals.add(new MockBleSignal(rssi, -59));
+            mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        }
+
+        List<PartnerResult> results = partnerResults(subscriber);
+        PartnerResult last = results.get(results.size() - 1);
+        assertEquals(-62, last.getPartner().getRssi());
+        assertEquals("Outlier not filtered", -62, last.getPartner().getFilteredRssi(), 0);
+        assertEquals(-62, client.getPresence(last.getUuid()).getFilteredRssi(), 0);
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldEstimateDistanceUntilMeasured() throws Exception {
+        PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasSubscribe(true)
+                .setMessagesClient(mMessagesClient)
+                .setDistanceEstimator(new PartnerDistanceEstimator(DeviceCalibrationTable.DEFAULT))
+                .build();
+        TestSubscriber<PartnerResult> subscriber = client.getPartnerFlowable().test();
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH).subList(0, 1);
+        String uuid = NearbyUtils.toPartnerMessage(messages.get(0)).getUuid();
+        mMessagesClient.mockMessageOnFound(messages);
+
+        List<BleSignal> signals = new ArrayList<>();
+        signals.add(new MockBleSignal(-79, -18));
+        mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        List<PartnerResult> results = partnerResults(subscriber);
+        PartnerResult last = results.get(results.size() - 1);
+        assertEquals("Distance not estimated", 10, last.getPartner().getDistance(), 0.0001);
+        assertEquals(Distance.Accuracy.LOW, last.getPartner().getAccuracy());
+        assertFalse(client.getPresence(uuid).isDistanceMeasured());
+
+        List<Distance> distances = new ArrayList<>();
+        distances.add(new MockDistance(2.5, Distance.Accuracy.LOW));
+        mMessagesClient.mockMessageOnDistanceChanged(messages, distances);
+        mMessagesClient.mockMessageOnBleSignalChanged(messages, signals);
+        assertTrue(client.getPresence(uuid).isDistanceMeasured());
+        assertEquals("Measured distance replaced", 2.5, client.getPresence(uuid).getDistance(), 0);
+
+        subscriber.dispose();
+    }
+
+    @Test
+    public void shouldReplayPresencesToLateSubscriber() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH);
+        mMessagesClient.mockMessageOnFound(messages);
+        mMessagesClient.mockMessageOnLost(messages.subList(0, 1));
+        assertEquals(TEST_MESSAGE_COUNT, mClient.getPresences().size());
+        String lostUuid = NearbyUtils.toPartnerMessage(messages.get(0)).getUuid();
+        assertFalse("Lost partner emitting", mClient.getPresence(lostUuid).isEmitting());
+
+        // a late subscriber receives every partner at once, not on the next callback
+        TestSubscriber<PartnerResult> late = mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH).test();
+        TestSubscriber<PartnerResult> otherMode = mClient.getPartnerFlowable(PartnerMessage.Mode.CHECK).test();
+        assertEquals(TEST_MESSAGE_COUNT, countPartners(late, null));
+        assertEquals(0, countPartners(otherMode, null));
+        for (PartnerResult result : partnerResults(late)) {
+            assertEquals(mClient.getPresence(result.getUuid()).isEmitting(), result.getPartner().isEmitting());
+            assertFalse("Replayed result is reading", result.isReading());
+        }
+
+        first.dispose();
+        late.dispose();
+        otherMode.dispose();
+        assertEquals("Presences kept after unsubscribing", 0, mClient.getPresences().size());
+    }
+
+    @Test
+    public void shouldReplayPresencesToSubscriberAfterTeardown() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<PartnerResult> first = buildLingeringClient(scheduler).getPartnerFlowable().test();
+        mMessagesClient.mockMessageOnFound(TestData.generateMessages(PartnerMessage.Mode.CHECK));
+        assertEquals(TEST_MESSAGE_COUNT, mClient.getPresences().size());
+
+        // every subscriber leaves and discovery stops after the delay
+        first.cancel();
+        scheduler.advanceTimeBy(TEARDOWN_DELAY_MS, TimeUnit.MILLISECONDS);
+        assertEquals("Unsubscribe count", 1, mMessagesClient.unsubscribeCount);
+        assertEquals("Presences not kept over teardown", TEST_MESSAGE_COUNT, mClient.getPresences().size());
+
+        // the subscriber coming back receives the partners found before
+        TestSubscriber<PartnerResult> next = buildLingeringClient(scheduler).getPartnerFlowable().test();
+        assertEquals(TEST_MESSAGE_COUNT, countPartners(next, null));
+        assertEquals("Subscribe restarted", 2, mMessagesClient.subscribeCount);
+
+        next.cancel();
+        PartnerNearbyMessagesClient.destroy();
+        assertEquals("Presences kept after destroy", 0, mClient.getPresences().size());
+    }
+
+    @Test
+    public void shouldHoldLiveResultsUntilReplayed() throws Exception {
+        TestSubscriber<PartnerResult> first = mClient.getPartnerFlowable().test();
+        final List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.SEARCH);
+        mMessagesClient.mockMessageOnFound(messages);
+
+        // a reading arrives while the partners found are replayed to the late subscriber
+        TestSubscriber<PartnerResult> late = new TestSubscriber<PartnerResult>() {
+            @Override
+            public void onNext(PartnerResult result) {
+                super.onNext(result);
+                if (result.getPartner() != null && valueCount() == 2) {
+                    List<BleSignal> signals = new ArrayList<>();
+                    signals.add(new MockBleSignal(-60, -18));
+                    mMessagesClient.mockMessageOnBleSignalChanged(messages.subList(1, 2), signals);
+                }
+            }
+        };
+        mClient.getPartnerFlowable(PartnerMessage.Mode.SEARCH).subscribe(late);
+
+        List<PartnerResult> results = partnerResults(late);
+        assertEquals(TEST_MESSAGE_COUNT + 1, results.size());
+        PartnerResult last = results.get(results.size() - 1);
+        assertTrue("Live reading passed on before replay ended", last.isReading());
+        assertEquals(-60, last.getPartner().getRssi());
+
+        first.dispose();
+        late.dispose();
+    }
+
+    @Test
+    public void shouldReplayRecordedSession() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        NearbyEventLogWriter recorder = new NearbyEventLogWriter(log);
+        PartnerNearbyMessagesClient client = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasSubscribe(true)
+                .setMessagesClient(mMessagesClient)
+                .setEventRecorder(recorder)
+                .build();
+        TestSubscriber<PartnerResult> recorded = client.getPartnerFlowable().test();
+        List<Message> messages = TestData.generateMessages(PartnerMessage.Mode.CHECK);
+        mMessagesClient.mockMessageOnFound(messages);
+        mMessagesClient.mockMessageOnLost(messages);
+        recorded.dispose();
+        recorder.close();
+        assertEquals(TEST_MESSAGE_COUNT * 2, recorder.getEventCount());
+        PartnerNearbyMessagesClient.destroy();
+
+        ReplayMessagesClient replayClient = new ReplayMessagesClient(mContext);
+        client = new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasSubscribe(true)
+                .setMessagesClient(replayClient)
+                .build();
+        TestSubscriber<PartnerResult> replayed = client.getPartnerFlowable().test();
+        NearbyEventReplayer replayer = replayClient.replay(log.toByteArray(), NearbyEventReplayer.MAX_SPEED);
+
+        assertEquals(TEST_MESSAGE_COUNT * 2, replayer.getEventCount());
+        assertEquals(countPartners(recorded, null), countPartners(replayed, null));
+        for (int i = 0; i < TEST_MESSAGE_COUNT * 2; i++) {
+            PartnerResult expected = partnerResults(recorded).get(i);
+            PartnerResult actual = partnerResults(replayed).get(i);
+            assertEquals(expected.getUuid(), actual.getUuid());
+            assertEquals(expected.getPartner().isEmitting(), actual.getPartner().isEmitting());
+        }
+
+        replayed.dispose();
+        replayClient.close();
+    }
+
+    @Test
+    public void shouldRouteHundredsOfPartnersOfSimulatedMesh() throws Exception {
+        SimulatedMesh mesh = new SimulatedMesh(new PathLossModel(2.0, 4, PathLossModel.DEFAULT_SENSITIVITY), 7L);
+        mesh.addScatteredDevices(MESH_PARTNER_COUNT / 2, 50, PartnerMessage.Mode.CHECK, 2);
+        mesh.addScatteredDevices(MESH_PARTNER_COUNT / 2, 50, PartnerMessage.Mode.SEARCH, 2);
+        mesh.addObserver(new SimulatedDevice(TEST_UUID, TEST_USERNAME, "device", PartnerMessage.Mode.CHECK, 0, 0),
+                mMessagesClient);
+
+        // several instances share the single Nearby subscription
+        PartnerNearbyMessagesClient other = MockPartnerNearbyMessagesClient.get(
+                mContext, mMessagesClient, true, true, PartnerMessage.Mode.CHECK);
+        TestSubscriber<PartnerResult> all = mClient.getPartnerFlowable().test();
+        TestSubscriber<PartnerResult> check = other.getPartnerFlowable(PartnerMessage.Mode.CHECK).test();
+        TestSubscriber<PartnerResult> search = other.getPartnerFlowable(PartnerMessage.Mode.SEARCH).test();
+
+        mesh.advance(60000);
+
+        all.assertNoErrors();
+        assertEquals("Partners in range not found", MESH_PARTNER_COUNT, countUuids(all, null));
+        assertEquals(MESH_PARTNER_COUNT / 2, countUuids(check, PartnerMessage.Mode.CHECK));
+        assertEquals(MESH_PARTNER_COUNT / 2, countUuids(search, PartnerMessage.Mode.SEARCH));
+        assertEquals("CHECK Flowable received other modes", countPartners(check, null),
+                countPartners(check, PartnerMessage.Mode.CHECK));
+        assertEquals("Results missed",
+                mesh.getFoundCount() + mesh.getLostCount() + mesh.getDistanceCount() + mesh.getBleSignalCount(),
+                countPartners(all, null));
+
+        all.dispose();
+        check.dispose();
+        search.dispose();
+    }
+
+    private static int countUuids(TestSubscriber<PartnerResult> subscriber, PartnerMessage.Mode mode) {
+        Set<String> uuids = new HashSet<>();
+        for (PartnerResult result : partnerResults(subscriber)) {
+            if (mode == null || result.getMode() == mode) {
+                uuids.add(result.getUuid());
+            }
+        }
+        return uuids.size();
+    }
+
+    private PartnerNearbyMessagesClient buildLingeringClient(TestScheduler scheduler) {
+        return new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasPublish(true)
+                .hasSubscribe(true)
+                .setPublishMode(PartnerMessage.Mode.CHECK)
+                .setMessagesClient(mMessagesClient)
+                .setTeardownDelay(TEARDOWN_DELAY_MS)
+                .setTeardownScheduler(scheduler)
+                .build();
+    }
+
+    private PartnerNearbyMessagesClient buildCoalescingClient(TestScheduler scheduler) {
+        return new PartnerNearbyMessagesClient.Builder(mContext)
+                .hasSubscribe(true)
+                .setMessagesClient(mMessagesClient)
+                .setCoalesceWindow(COALESCE_WINDOW_MS)
+                .setCoalesceScheduler(scheduler)
+                .build();
+    }
+
+    private static List<PartnerResult> partnerResults(TestSubscriber<PartnerResult> subscriber) {
+        List<PartnerResult> results = new ArrayList<>();
+        for (PartnerResult result : subscriber.values()) {
+            if (result.getPartner() != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private static int countPartners(TestSubscriber<PartnerResult> subscriber, PartnerMessage.Mode mode) {
+        int count = 0;
+        for (PartnerResult result : subscriber.values()) {
+            if (result.getPartner() != null && (mode == null || mode == result.getMode())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
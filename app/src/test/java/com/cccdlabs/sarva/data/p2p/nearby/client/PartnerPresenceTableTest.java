@@ -0,0 +1,124 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerPresenceTableTest {
+
+    private static final PartnerMessage.Mode MODE = PartnerMessage.Mode.SEARCH;
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+
+    private PartnerPresenceTable table;
+
+    @Before
+    public void setUp() throws Exception {
+        table = new PartnerPresenceTable();
+    }
+
+    @Test
+    public void shouldMergeReadingsOfPartner() throws Exception {
+        table.onFound(partner(UUID_1), MODE);
+        table.onDistanceChanged(partner(UUID_1), MODE, 2.5, 1);
+        table.onBleSignalChanged(partner(UUID_1), MODE, -70, -59);
+
+        PartnerPresenceTable.Presence presence = table.get(UUID_1);
+        assertTrue(presence.isEmitting());
+        assertEquals(2.5, presence.getDistance(), 0);
+        assertEquals(1, presence.getAccuracy());
+        assertEquals(-70, presence.getRssi());
+        assertEquals(-59, presence.getTxPower());
+        assertEquals(MODE, presence.getMode());
+        assertTrue(presence.getLastSeenMillis() > 0);
+        assertNull(table.get(UUID_2));
+    }
+
+    @Test
+    public void shouldKeepLostPartnerNotEmitting() throws Exception {
+        table.onBleSignalChanged(partner(UUID_1), MODE, -70, -59);
+        table.onLost(partner(UUID_1), MODE);
+
+        PartnerPresenceTable.Presence presence = table.get(UUID_1);
+        assertFalse("Lost partner emitting", presence.isEmitting());
+        assertEquals("Last reading not kept", -70, presence.getRssi());
+        assertEquals(1, table.size());
+
+        table.clear();
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void shouldConvertToFoundResult() throws Exception {
+        table.onDistanceChanged(partner(UUID_1), MODE, 4, 1);
+
+        PartnerResult result = table.get(UUID_1).toResult();
+        assertEquals(UUID_1, result.getUuid());
+        assertEquals("username", result.getPartner().getUsername());
+        assertEquals(4, result.getPartner().getDistance(), 0);
+        assertTrue(result.getPartner().isEmitting());
+        assertFalse("Presence result is reading", result.isReading());
+        assertEquals(MODE, result.getMode());
+    }
+
+    @Test
+    public void shouldViewTableWithoutCopying() throws Exception {
+        Collection<PartnerPresenceTable.Presence> presences = table.getPresences();
+        assertSame(presences, table.getPresences());
+
+        table.onFound(partner(UUID_1), MODE);
+        table.onFound(partner(UUID_2), MODE);
+        assertEquals("View not live", 2, presences.size());
+
+        // updates while iterating do not throw
+        Iterator<PartnerPresenceTable.Presence> iterator = presences.iterator();
+        PartnerPresenceTable.Presence before = table.get(UUID_1);
+        iterator.next();
+        table.onLost(partner(UUID_1), MODE);
+        iterator.next();
+        assertNotSame("Presence updated in place", before, table.get(UUID_1));
+        assertTrue("Earlier presence changed", before.isEmitting());
+    }
+
+    @Test
+    public void shouldExpirePartnersByAge() throws Exception {
+        table.onFound(partner(UUID_1), MODE);
+        table.onLost(partner(UUID_2), MODE);
+
+        assertEquals("Partners heard within age expired", 0, table.expire(60000L));
+        assertEquals(2, table.size());
+        assertEquals(2, table.expire(0));
+        assertNull(table.get(UUID_1));
+        assertEquals(0, table.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotModifyView() throws Exception {
+        table.onFound(partner(UUID_1), MODE);
+        table.getPresences().clear();
+    }
+
+    private static Partner partner(String uuid) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setUsername("username");
+        partner.setDeviceName("device");
+        return partner;
+    }
+}
@@ -0,0 +1,100 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerRssiFilterTest {
+
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+    private static final String UUID_3 = "44cf4c02-542c-4f0c-acfd-1bbcce1bc30a";
+
+    // alternating +-10 dBm around -70 dBm
+    private static final int[] NOISY_READINGS = {-60, -80, -60, -80, -60, -80, -60, -80, -60, -80};
+
+    @Test
+    public void shouldSmoothWithEma() throws Exception {
+        PartnerRssiFilter filter = new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.EMA)
+                .setSmoothingFactor(0.5)
+                .build();
+
+        assertEquals("First reading not passed through", -60, filter.filter(UUID_1, -60), 0);
+        assertEquals(-70, filter.filter(UUID_1, -80), 0);
+        assertEquals(-65, filter.filter(UUID_1, -60), 0);
+        assertEquals("Partners not filtered apart", -90, filter.filter(UUID_2, -90), 0);
+    }
+
+    @Test
+    public void shouldIgnoreOutliersWithMedian() throws Exception {
+        PartnerRssiFilter filter = new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.MEDIAN)
+                .setMedianWindow(3)
+                .build();
+
+        assertEquals(-60, filter.filter(UUID_1, -60), 0);
+        assertEquals("Median of two not the mean", -61, filter.filter(UUID_1, -62), 0);
+        assertEquals(-62, filter.filter(UUID_1, -95), 0);
+        assertEquals(-64, filter.filter(UUID_1, -64), 0);
+        assertEquals("Oldest reading not dropped", -66, filter.filter(UUID_1, -66), 0);
+    }
+
+    @Test
+    public void shouldReduceNoiseWithKalman() throws Exception {
+        PartnerRssiFilter filter = new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.KALMAN)
+                .build();
+
+        double filtered = 0;
+        double maxSwing = 0;
+        for (int i = 0; i < NOISY_READINGS.length; i++) {
+            double next = filter.filter(UUID_1, NOISY_READINGS[i]);
+            if (i > NOISY_READINGS.length / 2) {
+                maxSwing = Math.max(maxSwing, Math.abs(next - filtered));
+            }
+            filtered = next;
+        }
+        assertEquals(-70, filtered, 3);
+        assertTrue("Swing not reduced [" + maxSwing + "]", maxSwing < 5);
+    }
+
+    @Test
+    public void shouldReuseHandlesOfRemovedAndLeastRecentPartners() throws Exception {
+        PartnerRssiFilter filter = new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.EMA)
+                .setMaxPartners(2)
+                .build();
+
+        int handle1 = filter.getHandle(UUID_1);
+        int handle2 = filter.getHandle(UUID_2);
+        assertNotEquals(handle1, handle2);
+        assertEquals(handle1, filter.getHandle(UUID_1));
+        filter.filter(handle1, -60);
+        filter.filter(handle2, -70);
+        filter.filter(handle1, -60);
+
+        // all in use, the least recently filtered is reassigned
+        assertEquals(handle2, filter.getHandle(UUID_3));
+        assertEquals(2, filter.size());
+        assertEquals("Reassigned handle not reset", -90, filter.filter(UUID_3, -90), 0);
+
+        filter.remove(UUID_1);
+        assertEquals(handle1, filter.getHandle(UUID_2));
+        assertEquals("Removed partner not reset", -50, filter.filter(UUID_2, -50), 0);
+
+        filter.clear();
+        assertEquals(0, filter.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnassignedHandle() throws Exception {
+        new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.EMA).build().filter(0, -60);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectZeroMedianWindow() throws Exception {
+        new PartnerRssiFilter.Builder(PartnerRssiFilter.Type.MEDIAN).setMedianWindow(0).build();
+    }
+}
@@ -0,0 +1,159 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerSilenceDetectorTest {
+
+    private static final long TIMEOUT_MS = 800L;
+    private static final long TICK_MS = TIMEOUT_MS / 8;
+    private static final PartnerMessage.Mode MODE = PartnerMessage.Mode.SEARCH;
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+
+    private TestScheduler scheduler;
+    private List<PartnerResult> results;
+    private PartnerSilenceDetector detector;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        results = new ArrayList<>();
+        detector = new PartnerSilenceDetector(TIMEOUT_MS, scheduler,
+                new PartnerEventCoalescer.OnResultListener() {
+                    @Override
+                    public void onResult(@NonNull PartnerResult result) {
+                        results.add(result);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        detector.dispose();
+    }
+
+    @Test
+    public void shouldEmitLostAfterSilence() throws Exception {
+        detector.onHeard(partner(UUID_1), MODE);
+
+        advance(TIMEOUT_MS - TICK_MS);
+        assertEquals("Lost emitted before timeout", 0, results.size());
+
+        advance(2 * TICK_MS);
+        assertEquals("Lost not emitted after timeout", 1, results.size());
+
+        PartnerResult result = results.get(0);
+        assertEquals(UUID_1, result.getUuid());
+        assertEquals("username", result.getPartner().getUsername());
+        assertFalse("Lost partner emitting", result.getPartner().isEmitting());
+        assertFalse("Lost result is reading", result.isReading());
+        assertEquals(MODE, result.getMode());
+        assertEquals("Silent partner still tracked", 0, detector.size());
+    }
+
+    @Test
+    public void shouldNotEmitLostWhileHeard() throws Exception {
+        detector.onHeard(partner(UUID_1), MODE);
+        detector.onHeard(partner(UUID_2), MODE);
+
+        // UUID_1 keeps being heard over several timeouts, UUID_2 goes silent
+        for (int i = 0; i < 40; i++) {
+            advance(TIMEOUT_MS / 4);
+            detector.onHeard(partner(UUID_1), MODE);
+        }
+
+        assertEquals("Only silent partner lost", 1, results.size());
+        assertEquals(UUID_2, results.get(0).getUuid());
+        assertEquals(1, detector.size());
+    }
+
+    @Test
+    public void shouldNotEmitLostWhenRemoved() throws Exception {
+        detector.onHeard(partner(UUID_1), MODE);
+        assertTrue("Tracked partner not removed", detector.remove(UUID_1));
+        assertFalse("Removed partner removed again", detector.remove(UUID_1));
+
+        advance(TIMEOUT_MS * 2);
+        assertEquals("Lost emitted for removed partner", 0, results.size());
+    }
+
+    @Test
+    public void shouldTrackPartnerAgainAfterSilence() throws Exception {
+        detector.onHeard(partner(UUID_1), MODE);
+        advance(TIMEOUT_MS + TICK_MS);
+        assertEquals(1, results.size());
+
+        detector.onHeard(partner(UUID_1), MODE);
+        assertEquals(1, detector.size());
+        advance(TIMEOUT_MS + TICK_MS);
+        assertEquals("Lost not emitted again", 2, results.size());
+    }
+
+    @Test
+    public void shouldEmitLostForThousandsOfPartnersWithOneTask() throws Exception {
+        int count = 5000;
+        Set<String> uuids = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String uuid = UUID.randomUUID().toString();
+            uuids.add(uuid);
+            detector.onHeard(partner(uuid), MODE);
+
+            // spread the last heard times over a timeout
+            if (i % 1000 == 0) {
+                advance(TICK_MS);
+            }
+        }
+        assertEquals(count, detector.size());
+
+        advance(TIMEOUT_MS * 3);
+        assertEquals("Not all silent partners lost", count, results.size());
+        for (PartnerResult result : results) {
+            assertTrue("Partner lost twice or unknown", uuids.remove(result.getUuid()));
+        }
+        assertEquals(0, detector.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionWithZeroTimeout() throws Exception {
+        new PartnerSilenceDetector(0, scheduler, new PartnerEventCoalescer.OnResultListener() {
+            @Override
+            public void onResult(@NonNull PartnerResult result) {}
+        });
+    }
+
+    private void advance(long ms) {
+        scheduler.advanceTimeBy(ms, TimeUnit.MILLISECONDS);
+    }
+
+    private static Partner partner(String uuid) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setUsername("username");
+        partner.setEmitting(true);
+        return partner;
+    }
+}
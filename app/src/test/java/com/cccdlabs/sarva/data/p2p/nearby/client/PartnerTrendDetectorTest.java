@@ -0,0 +1,118 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerTrendDetectorTest {
+
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+    private static final long INTERVAL_MS = 500;
+
+    @Test
+    public void shouldDetectApproachFromNoisyRssi() throws Exception {
+        PartnerTrendDetector detector = new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.RSSI)
+                .build();
+        Random random = new Random(7);
+        PartnerResult.Trend trend = null;
+        for (int i = 0; i < 40; i++) {
+            // rising 2 dBm per second with +-1 dBm of noise
+            double rssi = -90 + i * INTERVAL_MS / 1000.0 * 2 + (random.nextDouble() * 2 - 1);
+            trend = detector.update(UUID_1, i * INTERVAL_MS, rssi);
+        }
+        assertEquals(PartnerResult.Trend.APPROACHING, trend);
+        assertEquals(2, detector.getSlope(UUID_1), 0.5);
+        assertTrue("Confidence too low [" + detector.getConfidence(UUID_1) + "]",
+                detector.getConfidence(UUID_1) > 0.7);
+    }
+
+    @Test
+    public void shouldDetectRecedeFromDistance() throws Exception {
+        PartnerTrendDetector detector = new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.DISTANCE)
+                .setWindow(4)
+                .build();
+        assertEquals(PartnerResult.Trend.UNKNOWN, detector.update(UUID_1, 0, 5));
+        assertEquals("Trend from two readings", PartnerResult.Trend.UNKNOWN, detector.update(UUID_1, 1000, 6));
+        assertEquals(PartnerResult.Trend.RECEDING, detector.update(UUID_1, 2000, 7));
+        assertEquals(-1, detector.getSlope(UUID_1), 0.0001);
+        assertEquals("Window not filling", 0.75, detector.getConfidence(UUID_1), 0.0001);
+        assertEquals("Partners not detected apart", PartnerResult.Trend.UNKNOWN, detector.getTrend(UUID_2));
+    }
+
+    @Test
+    public void shouldFollowChangeOfDirection() throws Exception {
+        PartnerTrendDetector detector = new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.RSSI)
+                .setWindow(4)
+                .build();
+        long time = 0;
+        for (int i = 0; i < 10; i++, time += 1000) {
+            detector.update(UUID_1, time, -80 + i);
+        }
+        assertEquals(PartnerResult.Trend.APPROACHING, detector.getTrend(UUID_1));
+
+        for (int i = 0; i < 4; i++, time += 1000) {
+            detector.update(UUID_1, time, -71 - i * 3);
+        }
+        assertEquals(PartnerResult.Trend.RECEDING, detector.getTrend(UUID_1));
+
+        for (int i = 0; i < 4; i++, time += 1000) {
+            detector.update(UUID_1, time, -75);
+        }
+        assertEquals(PartnerResult.Trend.STEADY, detector.getTrend(UUID_1));
+        assertEquals(1, detector.getConfidence(UUID_1), 0.0001);
+    }
+
+    @Test
+    public void shouldStayExactOverLongTrace() throws Exception {
+        PartnerTrendDetector detector = new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.RSSI)
+                .build();
+        long time = 1500000000000L;
+        for (int i = 0; i < 100000; i++, time += 250) {
+            detector.update(UUID_1, time, -70 + Math.sin(i) * 20);
+        }
+        for (int i = 0; i < PartnerTrendDetector.DEFAULT_WINDOW; i++, time += 250) {
+            detector.update(UUID_1, time, -70 + i * 0.25);
+        }
+        assertEquals(1, detector.getSlope(UUID_1), 1e-6);
+        assertEquals(1, detector.getConfidence(UUID_1), 1e-6);
+    }
+
+    @Test
+    public void shouldKeepTrendOnReadingWithoutSignal() throws Exception {
+        PartnerTrendDetector detector = new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.RSSI)
+                .build();
+        Partner partner = new Partner();
+        partner.setUuid(UUID_1);
+        for (int i = 0; i < 4; i++) {
+            partner.setRssi(-80 + i * 2);
+            partner.setFilteredRssi(-80 + i * 2);
+            detector.update(partner, i * 1000L);
+        }
+        assertEquals(PartnerResult.Trend.APPROACHING, detector.getTrend(UUID_1));
+
+        // a distance reading carries no RSSI
+        Partner distanceReading = new Partner();
+        distanceReading.setUuid(UUID_1);
+        distanceReading.setDistance(3);
+        assertEquals(PartnerResult.Trend.APPROACHING, detector.update(distanceReading, 5000));
+
+        detector.remove(UUID_1);
+        assertEquals(PartnerResult.Trend.UNKNOWN, detector.getTrend(UUID_1));
+        assertEquals(0, detector.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWindowTooSmall() throws Exception {
+        new PartnerTrendDetector.Builder(PartnerTrendDetector.Signal.RSSI).setWindow(2).build();
+    }
+}
@@ -0,0 +1,252 @@
+package com.cccdlabs.sarva.data.p2p.nearby.client;
+
+import com.cccdlabs.sarva.data.p2p.nearby.client.PubSubStateMachine.Action;
+import com.cccdlabs.sarva.data.p2p.nearby.client.PubSubStateMachine.Intent;
+import com.cccdlabs.sarva.data.p2p.nearby.client.PubSubStateMachine.State;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PubSubStateMachineTest {
+
+    private enum Event {
+        START,
+        STOP,
+        RESTART,
+        ON_STARTED,
+        ON_START_FAILED,
+        ON_STOPPED,
+        ON_STOP_FAILED,
+        ON_EXPIRED
+    }
+
+    /**
+     * Every reachable state and queued intent, against every event: from state, from intent,
+     * event, to state, to intent, action to perform.
+     */
+    private static final Object[][] TRANSITIONS = {
+            {State.IDLE, Intent.NONE, Event.START, State.STARTING, Intent.NONE, Action.START},
+            {State.IDLE, Intent.NONE, Event.STOP, State.IDLE, Intent.NONE, Action.NONE},
+            {State.IDLE, Intent.NONE, Event.RESTART, State.IDLE, Intent.NONE, Action.NONE},
+            {State.IDLE, Intent.NONE, Event.ON_STARTED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.IDLE, Intent.NONE, Event.ON_START_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.IDLE, Intent.NONE, Event.ON_STOPPED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.IDLE, Intent.NONE, Event.ON_STOP_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.IDLE, Intent.NONE, Event.ON_EXPIRED, State.IDLE, Intent.NONE, Action.NONE},
+
+            {State.STARTING, Intent.NONE, Event.START, State.STARTING, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.STOP, State.STARTING, Intent.STOP, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.RESTART, State.STARTING, Intent.RESTART, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.ON_STARTED, State.ACTIVE, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.ON_START_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.ON_STOPPED, State.STARTING, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.ON_STOP_FAILED, State.STARTING, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.NONE, Event.ON_EXPIRED, State.STARTING, Intent.NONE, Action.NONE},
+
+            {State.STARTING, Intent.STOP, Event.START, State.STARTING, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.STOP, Event.STOP, State.STARTING, Intent.STOP, Action.NONE},
+            {State.STARTING, Intent.STOP, Event.RESTART, State.STARTING, Intent.STOP, Action.NONE},
+            {State.STARTING, Intent.STOP, Event.ON_STARTED, State.STOPPING, Intent.NONE, Action.STOP},
+            {State.STARTING, Intent.STOP, Event.ON_START_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.STOP, Event.ON_STOPPED, State.STARTING, Intent.STOP, Action.NONE},
+            {State.STARTING, Intent.STOP, Event.ON_STOP_FAILED, State.STARTING, Intent.STOP, Action.NONE},
+            {State.STARTING, Intent.STOP, Event.ON_EXPIRED, State.STARTING, Intent.STOP, Action.NONE},
+
+            {State.STARTING, Intent.RESTART, Event.START, State.STARTING, Intent.RESTART, Action.NONE},
+            {State.STARTING, Intent.RESTART, Event.STOP, State.STARTING, Intent.STOP, Action.NONE},
+            {State.STARTING, Intent.RESTART, Event.RESTART, State.STARTING, Intent.RESTART, Action.NONE},
+            {State.STARTING, Intent.RESTART, Event.ON_STARTED, State.RESTARTING, Intent.NONE, Action.STOP},
+            {State.STARTING, Intent.RESTART, Event.ON_START_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.STARTING, Intent.RESTART, Event.ON_STOPPED, State.STARTING, Intent.RESTART, Action.NONE},
+            {State.STARTING, Intent.RESTART, Event.ON_STOP_FAILED, State.STARTING, Intent.RESTART, Action.NONE},
+            {State.STARTING, Intent.RESTART, Event.ON_EXPIRED, State.STARTING, Intent.RESTART, Action.NONE},
+
+            {State.ACTIVE, Intent.NONE, Event.START, State.ACTIVE, Intent.NONE, Action.NONE},
+            {State.ACTIVE, Intent.NONE, Event.STOP, State.STOPPING, Intent.NONE, Action.STOP},
+            {State.ACTIVE, Intent.NONE, Event.RESTART, State.RESTARTING, Intent.NONE, Action.STOP},
+            {State.ACTIVE, Intent.NONE, Event.ON_STARTED, State.ACTIVE, Intent.NONE, Action.NONE},
+            {State.ACTIVE, Intent.NONE, Event.ON_START_FAILED, State.ACTIVE, Intent.NONE, Action.NONE},
+            {State.ACTIVE, Intent.NONE, Event.ON_STOPPED, State.ACTIVE, Intent.NONE, Action.NONE},
+            {State.ACTIVE, Intent.NONE, Event.ON_STOP_FAILED, State.ACTIVE, Intent.NONE, Action.NONE},
+            {State.ACTIVE, Intent.NONE, Event.ON_EXPIRED, State.IDLE, Intent.NONE, Action.NONE},
+
+            {State.STOPPING, Intent.NONE, Event.START, State.STOPPING, Intent.START, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.STOP, State.STOPPING, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.RESTART, State.STOPPING, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.ON_STARTED, State.STOPPING, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.ON_START_FAILED, State.STOPPING, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.ON_STOPPED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.ON_STOP_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.NONE, Event.ON_EXPIRED, State.STOPPING, Intent.NONE, Action.NONE},
+
+            {State.STOPPING, Intent.START, Event.START, State.STOPPING, Intent.START, Action.NONE},
+            {State.STOPPING, Intent.START, Event.STOP, State.STOPPING, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.START, Event.RESTART, State.STOPPING, Intent.START, Action.NONE},
+            {State.STOPPING, Intent.START, Event.ON_STARTED, State.STOPPING, Intent.START, Action.NONE},
+            {State.STOPPING, Intent.START, Event.ON_START_FAILED, State.STOPPING, Intent.START, Action.NONE},
+            {State.STOPPING, Intent.START, Event.ON_STOPPED, State.STARTING, Intent.NONE, Action.START},
+            {State.STOPPING, Intent.START, Event.ON_STOP_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.STOPPING, Intent.START, Event.ON_EXPIRED, State.STOPPING, Intent.START, Action.NONE},
+
+            {State.RESTARTING, Intent.NONE, Event.START, State.RESTARTING, Intent.NONE, Action.NONE},
+            {State.RESTARTING, Intent.NONE, Event.STOP, State.STOPPING, Intent.NONE, Action.NONE},
+            {State.RESTARTING, Intent.NONE, Event.RESTART, State.RESTARTING, Intent.NONE, Action.NONE},
+            {State.RESTARTING, Intent.NONE, Event.ON_STARTED, State.RESTARTING, Intent.NONE, Action.NONE},
+            {State.RESTARTING, Intent.NONE, Event.ON_START_FAILED, State.RESTARTING, Intent.NONE, Action.NONE},
+            {State.RESTARTING, Intent.NONE, Event.ON_STOPPED, State.STARTING, Intent.NONE, Action.START},
+            {State.RESTARTING, Intent.NONE, Event.ON_STOP_FAILED, State.IDLE, Intent.NONE, Action.NONE},
+            {State.RESTARTING, Intent.NONE, Event.ON_EXPIRED, State.RESTARTING, Intent.NONE, Action.NONE},
+    };
+
+    @Test
+    public void shouldStartIdle() throws Exception {
+        PubSubStateMachine machine = new PubSubStateMachine();
+        assertEquals(State.IDLE, machine.getState());
+        assertEquals(Intent.NONE, machine.getPendingIntent());
+        assertFalse("isStarted() true", machine.isStarted());
+    }
+
+    @Test
+    public void shouldTransition() throws Exception {
+        for (Object[] transition : TRANSITIONS) {
+            State fromState = (State) transition[0];
+            Intent fromIntent = (Intent) transition[1];
+            Event event = (Event) transition[2];
+            String name = fromState + "[" + fromIntent + "] " + event;
+
+            PubSubStateMachine machine = machineIn(fromState, fromIntent);
+            assertEquals(name + " from state", fromState, machine.getState());
+            assertEquals(name + " from intent", fromIntent, machine.getPendingIntent());
+
+            Action action = apply(machine, event);
+            assertEquals(name + " state", transition[3], machine.getState());
+            assertEquals(name + " intent", transition[4], machine.getPendingIntent());
+            assertEquals(name + " action", transition[5], action);
+        }
+    }
+
+    @Test
+    public void shouldCoverAllEventsOfEachState() throws Exception {
+        int stateIntents = 0;
+        for (State state : State.values()) {
+            for (Intent intent : Intent.values()) {
+                int count = 0;
+                for (Object[] transition : TRANSITIONS) {
+                    if (transition[0] == state && transition[1] == intent) {
+                        count++;
+                    }
+                }
+
+                if (count > 0) {
+                    stateIntents++;
+                    assertEquals(state + "[" + intent + "] events", Event.values().length, count);
+                }
+            }
+        }
+
+        // IDLE, STARTING x 3 intents, ACTIVE, STOPPING x 2 intents and RESTARTING
+        assertEquals("Reachable states", 8, stateIntents);
+    }
+
+    @Test
+    public void shouldRestartOnceForStartsDuringRestart() throws Exception {
+        PubSubStateMachine machine = machineIn(State.ACTIVE, Intent.NONE);
+
+        assertEquals(Action.STOP, machine.restart());
+        assertEquals(Action.NONE, machine.start());
+        assertEquals(Action.NONE, machine.restart());
+        assertEquals(Action.START, machine.onStopped());
+        assertEquals(Action.NONE, machine.start());
+        assertEquals(Action.NONE, machine.onStarted());
+        assertEquals(State.ACTIVE, machine.getState());
+    }
+
+    @Test
+    public void shouldReset() throws Exception {
+        PubSubStateMachine machine = machineIn(State.STOPPING, Intent.START);
+        machine.reset();
+
+        assertEquals(State.IDLE, machine.getState());
+        assertEquals(Intent.NONE, machine.getPendingIntent());
+
+        // late result of the stop call before reset
+        assertEquals(Action.NONE, machine.onStopped());
+        assertEquals(State.IDLE, machine.getState());
+    }
+
+    @Test
+    public void shouldBeStartedWhenStartingOrActive() throws Exception {
+        assertTrue(machineIn(State.STARTING, Intent.NONE).isStarted());
+        assertTrue(machineIn(State.ACTIVE, Intent.NONE).isStarted());
+        assertFalse(machineIn(State.STOPPING, Intent.NONE).isStarted());
+        assertFalse(machineIn(State.RESTARTING, Intent.NONE).isStarted());
+    }
+
+    private static PubSubStateMachine machineIn(State state, Intent intent) {
+        PubSubStateMachine machine = new PubSubStateMachine();
+        switch (state) {
+            case STARTING:
+                machine.start();
+                break;
+            case ACTIVE:
+                machine.start();
+                machine.onStarted();
+                break;
+            case STOPPING:
+                machine.start();
+                machine.onStarted();
+                machine.stop();
+                break;
+            case RESTARTING:
+                machine.start();
+                machine.onStarted();
+                machine.restart();
+                break;
+            default:
+                break;
+        }
+
+        switch (intent) {
+            case START:
+                machine.start();
+                break;
+            case STOP:
+                machine.stop();
+                break;
+            case RESTART:
+                machine.restart();
+                break;
+            default:
+                break;
+        }
+
+        return machine;
+    }
+
+    private static Action apply(PubSubStateMachine machine, Event event) {
+        switch (event) {
+            case START:
+                return machine.start();
+            case STOP:
+                return machine.stop();
+            case RESTART:
+                return machine.restart();
+            case ON_STARTED:
+                return machine.onStarted();
+            case ON_START_FAILED:
+                return machine.onStartFailed();
+            case ON_STOPPED:
+                return machine.onStopped();
+            case ON_STOP_FAILED:
+                return machine.onStopFailed();
+            default:
+                return machine.onExpired();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.cccdlabs.sarva.data.p2p.nearby.record;
+
+import com.cccdlabs.sarva.data.p2p.base.MockBleSignal;
+import com.cccdlabs.sarva.data.p2p.base.MockDistance;
+import com.google.android.gms.nearby.messages.BleSignal;
+import com.google.android.gms.nearby.messages.Distance;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NearbyEventLogTest {
+
+    private static final byte[] CONTENT = { (byte) 0x81, 1, 2, 3, 4, 5 };
+
+    @Test
+    public void shouldReadEventsWritten() throws Exception {
+        List<NearbyEvent> events = new ArrayList<>();
+        events.add(event(NearbyEvent.Type.FOUND, 0L, 0, 0, 0, 0));
+        events.add(event(NearbyEvent.Type.DISTANCE_CHANGED, 1500L, 2.25, Distance.Accuracy.LOW, 0, 0));
+        events.add(event(NearbyEvent.Type.BLE_SIGNAL_CHANGED, 250000L, 0, 0, -87, -12));
+        events.add(event(NearbyEvent.Type.LOST, 90000000000L, 0, 0, 0, 0));
+
+        NearbyEventLogReader reader = new NearbyEventLogReader(new ByteArrayInputStream(write(events)));
+        for (NearbyEvent expected : events) {
+            NearbyEvent actual = reader.read();
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getTimeMicros(), actual.getTimeMicros());
+            assertArrayEquals(expected.getContent(), actual.getContent());
+            assertEquals(expected.getNamespace(), actual.getNamespace());
+            assertEquals(expected.getMessageType(), actual.getMessageType());
+            assertEquals(expected.getMeters(), actual.getMeters(), 0);
+            assertEquals(expected.getAccuracy(), actual.getAccuracy());
+            assertEquals(expected.getRssi(), actual.getRssi());
+            assertEquals(expected.getTxPower(), actual.getTxPower());
+        }
+        assertNull("Read past end of log", reader.read());
+    }
+
+    @Test
+    public void shouldRecordAndPassOnCallbacks() throws Exception {
+        MessageListener listener = mock(MessageListener.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NearbyEventLogWriter writer = new NearbyEventLogWriter(out);
+        RecordingMessageListener recorder = new RecordingMessageListener(listener, writer);
+
+        Message message = new Message(CONTENT);
+        Distance distance = new MockDistance(3.5, Distance.Accuracy.LOW);
+        BleSignal bleSignal = new MockBleSignal(-70, 4);
+        recorder.onFound(message);
+        recorder.onDistanceChanged(message, distance);
+        recorder.onBleSignalChanged(message, bleSignal);
+        recorder.onLost(message);
+        writer.close();
+
+        InOrder order = inOrder(listener);
+        order.verify(listener).onFound(message);
+        order.verify(listener).onDistanceChanged(message, distance);
+        order.verify(listener).onBleSignalChanged(message, bleSignal);
+        order.verify(listener).onLost(message);
+        assertNull(recorder.getError());
+
+        // replaying the recording makes the same callbacks
+        MessageListener replayed = mock(MessageListener.class);
+        NearbyEventReplayer replayer = new NearbyEventReplayer(NearbyEventReplayer.MAX_SPEED);
+        replayer.replay(new NearbyEventLogReader(new ByteArrayInputStream(out.toByteArray())), replayed);
+        assertEquals(4, replayer.getEventCount());
+
+        order = inOrder(replayed);
+        order.verify(replayed).onFound(eq(message));
+        order.verify(replayed).onDistanceChanged(eq(message), any(Distance.class));
+        order.verify(replayed).onBleSignalChanged(eq(message), any(BleSignal.class));
+        order.verify(replayed).onLost(eq(message));
+    }
+
+    @Test
+    public void shouldRecordOneTimelineAcrossListeners() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NearbyEventLogWriter writer = new NearbyEventLogWriter(out);
+        Message message = new Message(CONTENT);
+
+        // subscribing again records through a new listener to the same log
+        new RecordingMessageListener(mock(MessageListener.class), writer).onFound(message);
+        Thread.sleep(20);
+        new RecordingMessageListener(mock(MessageListener.class), writer).onLost(message);
+        writer.close();
+
+        NearbyEventLogReader reader = new NearbyEventLogReader(new ByteArrayInputStream(out.toByteArray()));
+        NearbyEvent found = reader.read();
+        NearbyEvent lost = reader.read();
+        assertTrue("Time of later listener not after earlier events",
+                lost.getTimeMicros() - found.getTimeMicros() >= TimeUnit.MILLISECONDS.toMicros(20));
+    }
+
+    @Test
+    public void shouldReplayAtRecordedTimingAccelerated() throws Exception {
+        List<NearbyEvent> events = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            // one event every 50 ms over 5 seconds
+            events.add(event(NearbyEvent.Type.FOUND, i * 50000L, 0, 0, 0, 0));
+        }
+
+        final List<Long> received = new ArrayList<>();
+        final long startNanos = System.nanoTime();
+        NearbyEventReplayer replayer = new NearbyEventReplayer(NearbyEventReplayer.MAX_SPEED);
+        replayer.replay(new NearbyEventLogReader(new ByteArrayInputStream(write(events))),
+                new MessageListener() {
+                    @Override
+                    public void onFound(Message message) {
+                        received.add(System.nanoTime() - startNanos);
+                    }
+                });
+
+        assertEquals(events.size(), received.size());
+        long last = received.get(received.size() - 1);
+        assertTrue("Replay ahead of recorded timing", last >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue("Replay not accelerated", replayer.getElapsedNanos() < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test(expected = EOFException.class)
+    public void shouldThrowEOFExceptionForTruncatedLog() throws Exception {
+        byte[] log = write(Arrays.asList(event(NearbyEvent.Type.FOUND, 100L, 0, 0, 0, 0)));
+        byte[] truncated = Arrays.copyOf(log, log.length - 2);
+        new NearbyEventLogReader(new ByteArrayInputStream(truncated)).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldThrowIOExceptionForUnknownLog() throws Exception {
+        new NearbyEventLogReader(new ByteArrayInputStream("{\"uuid\":1}".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionWithSpeedAboveMax() throws Exception {
+        new NearbyEventReplayer(NearbyEventReplayer.MAX_SPEED * 2);
+    }
+
+    private static NearbyEvent event(NearbyEvent.Type type, long timeMicros, double meters,
+            int accuracy, int rssi, int txPower) {
+        return new NearbyEvent(type, timeMicros, CONTENT, "namespace", "type", meters, accuracy,
+                rssi, txPower);
+    }
+
+    private static byte[] write(List<NearbyEvent> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NearbyEventLogWriter writer = new NearbyEventLogWriter(out);
+        for (NearbyEvent event : events) {
+            writer.write(event);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+}
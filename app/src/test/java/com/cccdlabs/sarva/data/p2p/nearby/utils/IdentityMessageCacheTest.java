@@ -0,0 +1,90 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.cccdlabs.sarva.data.settings.GeneralSettingsManager;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.google.android.gms.nearby.messages.Message;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class IdentityMessageCacheTest {
+
+    private static final String TEST_UUID_1 = "9d29e5e4-3d33-4f90-9453-5b3e8af963ed";
+    private static final String TEST_UUID_2 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String TEST_USERNAME = "Johnny";
+
+    private GeneralSettingsManager mSettings;
+    private IdentityMessageCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        mSettings = new GeneralSettingsManager(context);
+        mSettings.setUuid(TEST_UUID_1);
+        mSettings.setUsername(TEST_USERNAME);
+        mCache = new IdentityMessageCache(context);
+    }
+
+    @Test
+    public void shouldReturnSameMessageUntilSettingsChange() throws Exception {
+        Message message = mCache.get(PartnerMessage.Mode.CHECK);
+        assertSame("Message rebuilt on publish", message, mCache.get(PartnerMessage.Mode.CHECK));
+        assertEquals(1, mCache.getBuildCount());
+
+        // unrelated setting
+        mSettings.setVolume(3);
+        assertSame("Message rebuilt on volume change", message, mCache.get(PartnerMessage.Mode.CHECK));
+
+        mSettings.setUuid(TEST_UUID_2);
+        Message changed = mCache.get(PartnerMessage.Mode.CHECK);
+        assertNotSame("Message not rebuilt on UUID change", message, changed);
+        assertEquals(TEST_UUID_2, NearbyUtils.toPartnerMessage(changed).getUuid());
+        assertEquals(2, mCache.getBuildCount());
+
+        mSettings.setUsername("Changed");
+        assertEquals("Changed", NearbyUtils.toPartnerMessage(mCache.get(PartnerMessage.Mode.CHECK)).getUsername());
+        assertEquals(3, mCache.getBuildCount());
+    }
+
+    @Test
+    public void shouldBuildMessageForEachMode() throws Exception {
+        for (PartnerMessage.Mode mode : PartnerMessage.Mode.values()) {
+            PartnerMessage message = NearbyUtils.toPartnerMessage(mCache.get(mode));
+            assertEquals(mode, message.getMode());
+            assertEquals(TEST_UUID_1, message.getUuid());
+            assertEquals(TEST_USERNAME, message.getUsername());
+            assertEquals(NearbyUtils.getDeviceName(), message.getDeviceName());
+        }
+        assertEquals(1, mCache.getBuildCount());
+    }
+
+    @Test
+    public void shouldStopListeningWhenReleased() throws Exception {
+        Message message = mCache.get(PartnerMessage.Mode.PING);
+        mCache.release();
+        mSettings.setUuid(TEST_UUID_2);
+
+        // rebuilt on release, not changed by the listener afterwards
+        Message rebuilt = mCache.get(PartnerMessage.Mode.PING);
+        assertNotSame(message, rebuilt);
+        mSettings.setUuid(TEST_UUID_1);
+        assertSame(rebuilt, mCache.get(PartnerMessage.Mode.PING));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCache.release();
+    }
+}
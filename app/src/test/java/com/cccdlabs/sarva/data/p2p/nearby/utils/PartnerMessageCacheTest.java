@@ -0,0 +1,112 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerMessageCacheTest {
+
+    private static final int MAX_SIZE = 2;
+
+    private PartnerMessageCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new PartnerMessageCache(MAX_SIZE);
+    }
+
+    @Test
+    public void shouldReturnCachedMessageByContent() throws Exception {
+        PartnerMessage cached = cache.put(content("a"), message("bc317a3f-099f-42c1-bc13-d4aa9998c681"));
+
+        // equal content in a different array
+        PartnerMessage result = cache.get(content("a"));
+        assertSame("Cached message not returned", cached, result);
+        assertEquals("bc317a3f-099f-42c1-bc13-d4aa9998c681", result.getUuid());
+        assertNull("Message returned for uncached content", cache.get(content("b")));
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws Exception {
+        cache.put(content("a"), message("bc317a3f-099f-42c1-bc13-d4aa9998c681"));
+        cache.put(content("b"), message("0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11"));
+        cache.get(content("a"));
+        cache.put(content("c"), message("5d7c6a3e-8f0b-4d2a-b1c9-3e4f5a6b7c8d"));
+
+        assertEquals(MAX_SIZE, cache.size());
+        assertNotNull("Recently used message evicted", cache.get(content("a")));
+        assertNull("Least recently used message not evicted", cache.get(content("b")));
+        assertNotNull(cache.get(content("c")));
+    }
+
+    @Test
+    public void shouldNotChangeWhenContentArrayReused() throws Exception {
+        byte[] bytes = content("a");
+        cache.put(bytes, message("bc317a3f-099f-42c1-bc13-d4aa9998c681"));
+        bytes[0] = 'z';
+
+        assertNotNull(cache.get(content("a")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldThrowUnsupportedOperationExceptionOnSet() throws Exception {
+        PartnerMessage cached = cache.put(content("a"), message("bc317a3f-099f-42c1-bc13-d4aa9998c681"));
+        cached.setUsername("changed");
+    }
+
+    @Test
+    public void shouldReturnCopyOfTime() throws Exception {
+        PartnerMessage cached = cache.put(content("a"), message("bc317a3f-099f-42c1-bc13-d4aa9998c681"));
+        Date time = cached.getTime();
+        time.setTime(0L);
+
+        assertNotSame(time, cached.getTime());
+        assertEquals(1000L, cached.getTime().getTime());
+    }
+
+    @Test
+    public void shouldResetStatsOnClear() throws Exception {
+        cache.put(content("a"), message("bc317a3f-099f-42c1-bc13-d4aa9998c681"));
+        cache.get(content("a"));
+        cache.get(content("b"));
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.getHitCount());
+        assertEquals(0L, cache.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionWithZeroSize() throws Exception {
+        new PartnerMessageCache(0);
+    }
+
+    private static byte[] content(String value) {
+        return value.getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static PartnerMessage message(String uuid) {
+        PartnerMessage message = new PartnerMessage();
+        message.setUuid(uuid);
+        message.setUsername("partner");
+        message.setDeviceName("Google Pixel");
+        message.setMode(PartnerMessage.Mode.SEARCH);
+        message.setTime(new Date(1000L));
+        return message;
+    }
+}
@@ -0,0 +1,136 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import com.cccdlabs.sarva.data.Constants;
+import com.cccdlabs.sarva.data.utils.DateUtils;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerMessageCodecTest {
+
+    private static final String UUID = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+
+    @Test
+    public void shouldRoundTripAllModes() throws Exception {
+        for (PartnerMessage.Mode mode : PartnerMessage.Mode.values()) {
+            PartnerMessage message = message(mode);
+            byte[] bytes = PartnerMessageCodec.encode(message);
+
+            assertTrue("Not binary form", PartnerMessageCodec.isBinary(bytes));
+            assertEqualMessages(message, PartnerMessageCodec.decode(bytes));
+        }
+    }
+
+    @Test
+    public void shouldRoundTripNullFields() throws Exception {
+        PartnerMessage message = new PartnerMessage();
+        message.setUuid(UUID);
+
+        PartnerMessage result = PartnerMessageCodec.decode(PartnerMessageCodec.encode(message));
+        assertNotNull(result);
+        assertEquals(UUID, result.getUuid());
+        assertNull(result.getUsername());
+        assertNull(result.getDeviceName());
+        assertNull(result.getMode());
+        assertNull(result.getTime());
+    }
+
+    @Test
+    public void shouldRoundTripMultibyteStrings() throws Exception {
+        PartnerMessage message = message(PartnerMessage.Mode.SEARCH);
+        message.setUsername("Jürgen 山田");
+        message.setDeviceName("");
+
+        assertEqualMessages(message, PartnerMessageCodec.decode(PartnerMessageCodec.encode(message)));
+    }
+
+    @Test
+    public void shouldDecodeLegacyJson() throws Exception {
+        String json = "{\"uuid\":\"" + UUID + "\",\"username\":\"partner\","
+                + "\"deviceName\":\"Google Pixel\",\"mode\":\"search\","
+                + "\"time\":\"2019-06-01 12:30:45\"}";
+        byte[] bytes = json.getBytes(Charset.forName("UTF-8"));
+        assertFalse("Legacy JSON taken as binary form", PartnerMessageCodec.isBinary(bytes));
+
+        PartnerMessage result = PartnerMessageCodec.decode(bytes);
+        assertNotNull("Legacy JSON not decoded", result);
+        assertEquals(UUID, result.getUuid());
+        assertEquals("partner", result.getUsername());
+        assertEquals("Google Pixel", result.getDeviceName());
+        assertEquals(PartnerMessage.Mode.SEARCH, result.getMode());
+        assertEquals(DateUtils.sqlStringToDate("2019-06-01 12:30:45"), result.getTime());
+    }
+
+    @Test
+    public void shouldPublishLegacyJsonUnlessBinaryEnabled() throws Exception {
+        PartnerMessage message = message(PartnerMessage.Mode.CHECK);
+        byte[] content = NearbyUtils.encodeContent(message);
+
+        assertEquals(Constants.PUBLISH_BINARY_MESSAGES, PartnerMessageCodec.isBinary(content));
+        PartnerMessage result = PartnerMessageCodec.decode(content);
+        assertNotNull(result);
+        assertEquals(UUID, result.getUuid());
+        assertEquals(PartnerMessage.Mode.CHECK, result.getMode());
+    }
+
+    @Test
+    public void shouldBeSmallerThanLegacyJson() throws Exception {
+        PartnerMessage message = message(PartnerMessage.Mode.CHECK);
+        int binaryLength = PartnerMessageCodec.encode(message).length;
+        int jsonLength = NearbyUtils.partnerMessageToJson(message)
+                .getBytes(Charset.forName("UTF-8")).length;
+
+        assertTrue("Binary form of " + binaryLength + " bytes not less than half of JSON of "
+                + jsonLength + " bytes", binaryLength * 2 < jsonLength);
+    }
+
+    @Test
+    public void shouldReturnNullForMalformedContent() throws Exception {
+        byte[] bytes = PartnerMessageCodec.encode(message(PartnerMessage.Mode.PING));
+
+        assertNull("Truncated content decoded", PartnerMessageCodec.decode(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertNull("Header only decoded", PartnerMessageCodec.decode(new byte[]{PartnerMessageCodec.HEADER_V1}));
+        assertNull("Unknown version decoded", PartnerMessageCodec.decode(new byte[]{(byte) 0x82, 0, 0}));
+        assertNull("Empty content decoded", PartnerMessageCodec.decode(new byte[0]));
+        assertNull("Invalid JSON decoded", PartnerMessageCodec.decode("{uuid:".getBytes(Charset.forName("UTF-8"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionWithInvalidUuid() throws Exception {
+        PartnerMessage message = message(PartnerMessage.Mode.PING);
+        message.setUuid("not-a-uuid");
+        PartnerMessageCodec.encode(message);
+    }
+
+    private static PartnerMessage message(PartnerMessage.Mode mode) {
+        PartnerMessage message = new PartnerMessage();
+        message.setUuid(UUID);
+        message.setUsername("partner");
+        message.setDeviceName("Google Pixel 3A");
+        message.setMode(mode);
+        message.setTime(new Date(1559392245123L));
+        return message;
+    }
+
+    private static void assertEqualMessages(PartnerMessage expected, PartnerMessage result) {
+        assertNotNull("PartnerMessage null", result);
+        assertEquals(expected.getUuid(), result.getUuid());
+        assertEquals(expected.getUsername(), result.getUsername());
+        assertEquals(expected.getDeviceName(), result.getDeviceName());
+        assertEquals(expected.getMode(), result.getMode());
+        assertEquals(expected.getTime(), result.getTime());
+    }
+}
@@ -0,0 +1,67 @@
+package com.cccdlabs.sarva.data.p2p.nearby.utils;
+
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerMessageTypeAdapterTest {
+
+    private static final String UUID = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+
+    @Test
+    public void shouldRoundTripLegacyJson() throws Exception {
+        PartnerMessage message = new PartnerMessage();
+        message.setUuid(UUID);
+        message.setUsername("partner");
+        message.setDeviceName("Google Pixel 3A");
+        message.setMode(PartnerMessage.Mode.DEFAULT);
+        message.setTime(new Date(1559392245000L));
+
+        PartnerMessage result = NearbyUtils.partnerMessageFromJson(NearbyUtils.partnerMessageToJson(message));
+        assertNotNull("PartnerMessage null", result);
+        assertEquals(UUID, result.getUuid());
+        assertEquals("partner", result.getUsername());
+        assertEquals("Google Pixel 3A", result.getDeviceName());
+        assertEquals(PartnerMessage.Mode.DEFAULT, result.getMode());
+        assertEquals(message.getTime(), result.getTime());
+    }
+
+    @Test
+    public void shouldWriteNulls() throws Exception {
+        PartnerMessage message = new PartnerMessage();
+        message.setUuid(UUID);
+        String json = NearbyUtils.partnerMessageToJson(message);
+
+        assertTrue("Null username not written", json.contains("\"username\":null"));
+        assertTrue("Null time not written", json.contains("\"time\":null"));
+    }
+
+    @Test
+    public void shouldLeaveUnparsedValuesNull() throws Exception {
+        String json = "{\"uuid\":\"" + UUID + "\",\"mode\":\"unknown\","
+                + "\"time\":\"Sat Jun 01 12:30:45 UTC 2019\",\"extra\":[1,{\"a\":2}]}";
+        PartnerMessage result = NearbyUtils.partnerMessageFromJson(json);
+
+        assertNotNull("PartnerMessage null", result);
+        assertEquals(UUID, result.getUuid());
+        assertNull(result.getMode());
+        assertNull(result.getTime());
+    }
+
+    @Test
+    public void shouldReturnNullForMalformedJson() throws Exception {
+        assertNull(NearbyUtils.partnerMessageFromJson("{uuid:"));
+        assertNull(NearbyUtils.partnerMessageFromJson("[1,2]"));
+        assertNull(NearbyUtils.partnerMessageFromJson("\"text\""));
+    }
+}
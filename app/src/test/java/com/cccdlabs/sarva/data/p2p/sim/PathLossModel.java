@@ -0,0 +1,84 @@
+package com.cccdlabs.sarva.data.p2p.sim;
+
+import java.util.Random;
+
+/**
+ * Log-distance path loss model of BLE signal strength with log-normal shadowing:
+ * <pre>
+ *     RSSI(d) = txPower - 10 * n * log10(d / 1m) + N(0, sigma)
+ * </pre>
+ * where txPower is the RSSI measured at 1 meter, n the path loss exponent of the environment
+ * (2 in free space, 2.5 to 4 among people, trees and snow) and sigma the standard deviation in
+ * dB of the noise. Signals below the receiver sensitivity are not heard.
+ */
+public class PathLossModel {
+
+    /**
+     * Free space path loss exponent.
+     */
+    public static final double FREE_SPACE_EXPONENT = 2.0;
+
+    /**
+     * Typical sensitivity in dBm of a phone BLE receiver.
+     */
+    public static final int DEFAULT_SENSITIVITY = -100;
+
+    /**
+     * Distance in meters below which the signal is not attenuated further.
+     */
+    private static final double MIN_DISTANCE = 0.1;
+
+    private final double mExponent;
+    private final double mNoiseSigma;
+    private final int mSensitivity;
+
+    /**
+     * @param exponent      Path loss exponent n, greater than 0
+     * @param noiseSigma    Standard deviation in dB of the noise, 0 for none
+     * @param sensitivity   Weakest RSSI in dBm heard
+     */
+    public PathLossModel(double exponent, double noiseSigma, int sensitivity) {
+        if (exponent <= 0 || noiseSigma < 0) {
+            throw new IllegalArgumentException("Path loss exponent must be greater than 0 and noise not negative");
+        }
+
+        mExponent = exponent;
+        mNoiseSigma = noiseSigma;
+        mSensitivity = sensitivity;
+    }
+
+    /**
+     * Returns the RSSI without noise of a signal at a distance.
+     */
+    public double meanRssi(int txPower, double meters) {
+        return txPower - 10 * mExponent * Math.log10(Math.max(meters, MIN_DISTANCE));
+    }
+
+    /**
+     * Returns the RSSI of a signal at a distance, with noise drawn from the Random.
+     */
+    public int rssi(int txPower, double meters, Random random) {
+        return (int) Math.round(meanRssi(txPower, meters) + random.nextGaussian() * mNoiseSigma);
+    }
+
+    /**
+     * Returns the distance estimated from an RSSI by inverting the model, as a receiver would.
+     */
+    public double estimateDistance(int txPower, int rssi) {
+        return Math.pow(10, (txPower - rssi) / (10 * mExponent));
+    }
+
+    /**
+     * Returns true if a signal of the RSSI is heard.
+     */
+    public boolean isHeard(int rssi) {
+        return rssi >= mSensitivity;
+    }
+
+    /**
+     * Returns the distance beyond which a signal without noise is no longer heard.
+     */
+    public double range(int txPower) {
+        return estimateDistance(txPower, mSensitivity);
+    }
+}
@@ -0,0 +1,129 @@
+package com.cccdlabs.sarva.data.p2p.sim;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.p2p.nearby.utils.NearbyUtils;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.google.android.gms.nearby.messages.Message;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A virtual Nearby transceiver in a {@link SimulatedMesh}: the message it publishes, its position
+ * in meters on a plane and a motion path of waypoints it follows at a constant speed, looping
+ * back to the first once the last is reached. A device without waypoints stays put.
+ */
+public class SimulatedDevice {
+
+    /**
+     * Typical RSSI in dBm of a phone at 1 meter.
+     */
+    public static final int DEFAULT_TX_POWER = -59;
+
+    private final PartnerMessage mPartnerMessage;
+    private final Message mMessage;
+    private final List<double[]> mWaypoints = new ArrayList<>();
+    private double mX;
+    private double mY;
+    private double mSpeed;
+    private int mNextWaypoint;
+    private int mTxPower = DEFAULT_TX_POWER;
+
+    public SimulatedDevice(@NonNull String uuid, String username, String deviceName,
+            @NonNull PartnerMessage.Mode mode, double x, double y) {
+        mPartnerMessage = new PartnerMessage();
+        mPartnerMessage.setUuid(uuid);
+        mPartnerMessage.setUsername(username);
+        mPartnerMessage.setDeviceName(deviceName);
+        mPartnerMessage.setMode(mode);
+        mPartnerMessage.setTime(new Date());
+        mMessage = NearbyUtils.toNearbyMessage(mPartnerMessage);
+        mX = x;
+        mY = y;
+    }
+
+    /**
+     * Adds a waypoint to the motion path.
+     */
+    public SimulatedDevice addWaypoint(double x, double y) {
+        mWaypoints.add(new double[] { x, y });
+        return this;
+    }
+
+    /**
+     * Sets the speed in meters per second the motion path is followed at.
+     */
+    public SimulatedDevice setSpeed(double metersPerSecond) {
+        mSpeed = metersPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the RSSI in dBm of the device at 1 meter.
+     */
+    public SimulatedDevice setTxPower(int txPower) {
+        mTxPower = txPower;
+        return this;
+    }
+
+    /**
+     * Moves the device along its motion path for a duration.
+     */
+    void move(long durationMs) {
+        double remaining = mSpeed * durationMs / 1000d;
+        while (remaining > 0 && ! mWaypoints.isEmpty()) {
+            double[] waypoint = mWaypoints.get(mNextWaypoint);
+            double dx = waypoint[0] - mX;
+            double dy = waypoint[1] - mY;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            if (length <= remaining) {
+                mX = waypoint[0];
+                mY = waypoint[1];
+                remaining -= length;
+                mNextWaypoint = (mNextWaypoint + 1) % mWaypoints.size();
+                if (length == 0 && mWaypoints.size() == 1) {
+                    return;
+                }
+            } else {
+                mX += dx * remaining / length;
+                mY += dy * remaining / length;
+                remaining = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the distance in meters to another device.
+     */
+    public double distanceTo(@NonNull SimulatedDevice device) {
+        double dx = device.mX - mX;
+        double dy = device.mY - mY;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public String getUuid() {
+        return mPartnerMessage.getUuid();
+    }
+
+    public PartnerMessage getPartnerMessage() {
+        return mPartnerMessage;
+    }
+
+    public Message getMessage() {
+        return mMessage;
+    }
+
+    public double getX() {
+        return mX;
+    }
+
+    public double getY() {
+        return mY;
+    }
+
+    public int getTxPower() {
+        return mTxPower;
+    }
+}
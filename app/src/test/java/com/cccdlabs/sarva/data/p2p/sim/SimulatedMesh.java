@@ -0,0 +1,288 @@
+package com.cccdlabs.sarva.data.p2p.sim;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.p2p.base.MockBleSignal;
+import com.cccdlabs.sarva.data.p2p.base.MockDistance;
+import com.cccdlabs.sarva.data.p2p.base.MockMessagesClient;
+import com.cccdlabs.sarva.data.p2p.distance.PartnerDistanceEstimator;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.google.android.gms.nearby.messages.Distance;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * In-JVM simulation of a Nearby mesh of {@link SimulatedDevice}s. Each device advertises at an
+ * interval and every observer device within range under the {@link PathLossModel} hears it:
+ * the first time as <code>onFound()</code>, then with <code>onBleSignalChanged()</code> at
+ * every advertisement and <code>onDistanceChanged()</code> at a slower interval, and finally
+ * <code>onLost()</code> once not heard for the lost timeout, as Nearby does.
+ * <p>
+ * Time is virtual and advanced by {@link #advance(long)} on the calling thread, so minutes of a
+ * mesh of hundreds of devices run in well under a second and, with the same seed, identically.
+ * An observer is either a {@link MessageListener} or a {@link MockMessagesClient}, in which case
+ * callbacks go to whatever listener is subscribed to it at the time.
+ */
+public class SimulatedMesh {
+
+    public static final long DEFAULT_TICK_MS = 100;
+    public static final long DEFAULT_ADVERTISE_INTERVAL_MS = 1000;
+    public static final long DEFAULT_DISTANCE_INTERVAL_MS = 3000;
+    public static final long DEFAULT_LOST_TIMEOUT_MS = 5000;
+
+    /**
+     * What an observer knows of a device it hears.
+     */
+    private static class Link {
+        boolean found;
+        long lastHeardMs;
+        long nextDistanceMs;
+    }
+
+    private static class Observer {
+        final SimulatedDevice device;
+        final MockMessagesClient client;
+        final MessageListener listener;
+        final Map<SimulatedDevice, Link> links = new HashMap<>();
+
+        Observer(SimulatedDevice device, MockMessagesClient client, MessageListener listener) {
+            this.device = device;
+            this.client = client;
+            this.listener = listener;
+        }
+
+        MessageListener listener() {
+            return client == null ? listener : client.captureMessageListener();
+        }
+    }
+
+    private final PathLossModel mModel;
+    private final Random mRandom;
+    private final List<SimulatedDevice> mDevices = new ArrayList<>();
+    private final List<Long> mNextAdvertiseMs = new ArrayList<>();
+    private final List<Observer> mObservers = new ArrayList<>();
+    private long mTickMs = DEFAULT_TICK_MS;
+    private long mAdvertiseIntervalMs = DEFAULT_ADVERTISE_INTERVAL_MS;
+    private long mDistanceIntervalMs = DEFAULT_DISTANCE_INTERVAL_MS;
+    private long mLostTimeoutMs = DEFAULT_LOST_TIMEOUT_MS;
+    private long mNowMs;
+    private long mFoundCount;
+    private long mLostCount;
+    private long mDistanceCount;
+    private long mBleSignalCount;
+
+    /**
+     * @param model The path loss model signals are received under
+     * @param seed  Seed of the positions, timing jitter and signal noise
+     */
+    public SimulatedMesh(@NonNull PathLossModel model, long seed) {
+        mModel = model;
+        mRandom = new Random(seed);
+    }
+
+    public SimulatedMesh setTick(long tickMs) {
+        mTickMs = tickMs;
+        return this;
+    }
+
+    public SimulatedMesh setAdvertiseInterval(long advertiseIntervalMs) {
+        mAdvertiseIntervalMs = advertiseIntervalMs;
+        return this;
+    }
+
+    public SimulatedMesh setDistanceInterval(long distanceIntervalMs) {
+        mDistanceIntervalMs = distanceIntervalMs;
+        return this;
+    }
+
+    public SimulatedMesh setLostTimeout(long lostTimeoutMs) {
+        mLostTimeoutMs = lostTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Adds an advertising device, its first advertisement at a random point of the interval.
+     */
+    public SimulatedDevice addDevice(@NonNull SimulatedDevice device) {
+        mDevices.add(device);
+        mNextAdvertiseMs.add(mNowMs + (long) (mRandom.nextDouble() * mAdvertiseIntervalMs));
+        return device;
+    }
+
+    /**
+     * Adds devices at random positions within a radius of the origin, each wandering between
+     * random waypoints within the radius at up to the given speed.
+     */
+    public List<SimulatedDevice> addScatteredDevices(int count, double radius,
+            @NonNull PartnerMessage.Mode mode, double maxSpeed) {
+        List<SimulatedDevice> devices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] position = randomPosition(radius);
+            String uuid = new UUID(mRandom.nextLong(), mRandom.nextLong()).toString();
+            SimulatedDevice device = new SimulatedDevice(uuid, "user" + i, "device" + i, mode,
+                    position[0], position[1]);
+            for (int w = 0; w < 3; w++) {
+                double[] waypoint = randomPosition(radius);
+                device.addWaypoint(waypoint[0], waypoint[1]);
+            }
+            device.setSpeed(maxSpeed * mRandom.nextDouble());
+            devices.add(addDevice(device));
+        }
+        return devices;
+    }
+
+    /**
+     * Adds an observer at a device receiving callbacks with a listener.
+     */
+    public void addObserver(@NonNull SimulatedDevice device, @NonNull MessageListener listener) {
+        mObservers.add(new Observer(device, null, listener));
+    }
+
+    /**
+     * Adds an observer at a device receiving callbacks with the listener subscribed to a client.
+     */
+    public void addObserver(@NonNull SimulatedDevice device, @NonNull MockMessagesClient client) {
+        mObservers.add(new Observer(device, client, null));
+    }
+
+    /**
+     * Runs the simulation for a duration of virtual time.
+     */
+    public void advance(long durationMs) {
+        long endMs = mNowMs + durationMs;
+        while (mNowMs < endMs) {
+            long step = Math.min(mTickMs, endMs - mNowMs);
+            mNowMs += step;
+            for (SimulatedDevice device : mDevices) {
+                device.move(step);
+            }
+            for (Observer observer : mObservers) {
+                if ( ! mDevices.contains(observer.device)) {
+                    observer.device.move(step);
+                }
+            }
+
+            for (int i = 0; i < mDevices.size(); i++) {
+                long nextMs = mNextAdvertiseMs.get(i);
+                if (nextMs > mNowMs) {
+                    continue;
+                }
+
+                // jitter of +/- 10% as BLE advertising does
+                long jitter = (long) ((mRandom.nextDouble() - 0.5) * mAdvertiseIntervalMs / 5);
+                mNextAdvertiseMs.set(i, Math.max(mNowMs + 1, nextMs + mAdvertiseIntervalMs + jitter));
+                SimulatedDevice device = mDevices.get(i);
+                for (Observer observer : mObservers) {
+                    if (observer.device != device) {
+                        hear(observer, device);
+                    }
+                }
+            }
+
+            for (Observer observer : mObservers) {
+                loseSilent(observer);
+            }
+        }
+    }
+
+    private void hear(Observer observer, SimulatedDevice device) {
+        MessageListener listener = observer.listener();
+        if (listener == null) {
+            // not subscribed, devices are found again once subscribed
+            observer.links.clear();
+            return;
+        }
+
+        int rssi = mModel.rssi(device.getTxPower(), observer.device.distanceTo(device), mRandom);
+        if ( ! mModel.isHeard(rssi)) {
+            return;
+        }
+
+        Link link = observer.links.get(device);
+        if (link == null) {
+            link = new Link();
+            observer.links.put(device, link);
+        }
+        link.lastHeardMs = mNowMs;
+        if ( ! link.found) {
+            link.found = true;
+            link.nextDistanceMs = mNowMs;
+            mFoundCount++;
+            listener.onFound(device.getMessage());
+        }
+
+        mBleSignalCount++;
+        // advertised TX power is that at the antenna, above the RSSI at 1 meter
+        int advertisedTxPower = (int) Math.round(device.getTxPower() + PartnerDistanceEstimator.PATH_LOSS_AT_1M);
+        listener.onBleSignalChanged(device.getMessage(), new MockBleSignal(rssi, advertisedTxPower));
+        if (link.nextDistanceMs <= mNowMs) {
+            link.nextDistanceMs = mNowMs + mDistanceIntervalMs;
+            double meters = mModel.estimateDistance(device.getTxPower(), rssi);
+            mDistanceCount++;
+            listener.onDistanceChanged(device.getMessage(), new MockDistance(meters, Distance.Accuracy.LOW));
+        }
+    }
+
+    private void loseSilent(Observer observer) {
+        MessageListener listener = observer.listener();
+        for (Map.Entry<SimulatedDevice, Link> entry : observer.links.entrySet()) {
+            Link link = entry.getValue();
+            if (link.found && mNowMs - link.lastHeardMs > mLostTimeoutMs) {
+                link.found = false;
+                if (listener != null) {
+                    mLostCount++;
+                    listener.onLost(entry.getKey().getMessage());
+                }
+            }
+        }
+    }
+
+    private double[] randomPosition(double radius) {
+        double r = radius * Math.sqrt(mRandom.nextDouble());
+        double angle = 2 * Math.PI * mRandom.nextDouble();
+        return new double[] { r * Math.cos(angle), r * Math.sin(angle) };
+    }
+
+    /**
+     * Returns the number of devices an observer currently has found.
+     */
+    public int getFoundDeviceCount(@NonNull SimulatedDevice observerDevice) {
+        int count = 0;
+        for (Observer observer : mObservers) {
+            if (observer.device == observerDevice) {
+                for (Link link : observer.links.values()) {
+                    if (link.found) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getNowMs() {
+        return mNowMs;
+    }
+
+    public long getFoundCount() {
+        return mFoundCount;
+    }
+
+    public long getLostCount() {
+        return mLostCount;
+    }
+
+    public long getDistanceCount() {
+        return mDistanceCount;
+    }
+
+    public long getBleSignalCount() {
+        return mBleSignalCount;
+    }
+}
@@ -0,0 +1,137 @@
+package com.cccdlabs.sarva.data.p2p.sim;
+
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
+import com.google.android.gms.nearby.messages.BleSignal;
+import com.google.android.gms.nearby.messages.Distance;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SimulatedMeshTest {
+
+    private static final long SEED = 42L;
+    private static final String NEAR_UUID = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String FAR_UUID = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+    private static final String OBSERVER_UUID = "9d29e5e4-3d33-4f90-9453-5b3e8af963ed";
+
+    class CountingListener extends MessageListener {
+
+        final List<Message> found = new ArrayList<>();
+        final List<Message> lost = new ArrayList<>();
+        int distances;
+        int bleSignals;
+
+        @Override
+        public void onFound(Message message) {
+            found.add(message);
+        }
+
+        @Override
+        public void onLost(Message message) {
+            lost.add(message);
+        }
+
+        @Override
+        public void onDistanceChanged(Message message, Distance distance) {
+            distances++;
+        }
+
+        @Override
+        public void onBleSignalChanged(Message message, BleSignal bleSignal) {
+            bleSignals++;
+        }
+    }
+
+    @Test
+    public void shouldFollowPathLossModel() throws Exception {
+        PathLossModel model = new PathLossModel(PathLossModel.FREE_SPACE_EXPONENT, 0,
+                PathLossModel.DEFAULT_SENSITIVITY);
+        int txPower = SimulatedDevice.DEFAULT_TX_POWER;
+
+        assertEquals(txPower, model.meanRssi(txPower, 1), 1e-9);
+        assertEquals(txPower - 20, model.meanRssi(txPower, 10), 1e-9);
+        assertEquals(10, model.estimateDistance(txPower, txPower - 20), 1e-9);
+        assertTrue(model.isHeard((int) model.meanRssi(txPower, model.range(txPower) - 1)));
+        assertTrue( ! model.isHeard((int) model.meanRssi(txPower, model.range(txPower) * 2)));
+    }
+
+    @Test
+    public void shouldFindDevicesInRangeOnly() throws Exception {
+        SimulatedMesh mesh = new SimulatedMesh(noiselessModel(), SEED);
+        SimulatedDevice near = mesh.addDevice(device(NEAR_UUID, 5, 0));
+        mesh.addDevice(device(FAR_UUID, 500, 0));
+        CountingListener listener = new CountingListener();
+        mesh.addObserver(device(OBSERVER_UUID, 0, 0), listener);
+
+        mesh.advance(10000);
+
+        assertEquals("Only near device found", 1, listener.found.size());
+        assertEquals(near.getMessage(), listener.found.get(0));
+        assertTrue("BLE signal not at advertising rate", listener.bleSignals >= 9);
+        assertTrue("Distance not at slower rate", listener.distances >= 3 && listener.distances < listener.bleSignals);
+        assertEquals(0, listener.lost.size());
+    }
+
+    @Test
+    public void shouldLoseDeviceMovingOutOfRange() throws Exception {
+        SimulatedMesh mesh = new SimulatedMesh(noiselessModel(), SEED);
+        SimulatedDevice leaving = mesh.addDevice(device(NEAR_UUID, 5, 0)
+                .addWaypoint(1000, 0)
+                .setSpeed(20));
+        SimulatedDevice observer = device(OBSERVER_UUID, 0, 0);
+        CountingListener listener = new CountingListener();
+        mesh.addObserver(observer, listener);
+
+        mesh.advance(60000);
+
+        assertEquals(1, listener.found.size());
+        assertEquals("Device out of range not lost", 1, listener.lost.size());
+        assertEquals(leaving.getMessage(), listener.lost.get(0));
+        assertEquals(0, mesh.getFoundDeviceCount(observer));
+    }
+
+    @Test
+    public void shouldRunHundredsOfDevicesReproducibly() throws Exception {
+        long[] counts = null;
+        for (int run = 0; run < 2; run++) {
+            SimulatedMesh mesh = new SimulatedMesh(new PathLossModel(2.5, 6, PathLossModel.DEFAULT_SENSITIVITY), SEED);
+            mesh.addScatteredDevices(250, 150, PartnerMessage.Mode.SEARCH, 3);
+            CountingListener listener = new CountingListener();
+            mesh.addObserver(device(OBSERVER_UUID, 0, 0), listener);
+            mesh.advance(120000);
+
+            long[] runCounts = {
+                    mesh.getFoundCount(),
+                    mesh.getLostCount(),
+                    mesh.getDistanceCount(),
+                    mesh.getBleSignalCount()
+            };
+            assertEquals(listener.found.size(), runCounts[0]);
+            assertTrue("Scattered devices not found", runCounts[0] >= 100);
+            if (counts != null) {
+                for (int i = 0; i < counts.length; i++) {
+                    assertEquals("Same seed not reproduced", counts[i], runCounts[i]);
+                }
+            }
+            counts = runCounts;
+        }
+    }
+
+    private static PathLossModel noiselessModel() {
+        return new PathLossModel(PathLossModel.FREE_SPACE_EXPONENT, 0, PathLossModel.DEFAULT_SENSITIVITY);
+    }
+
+    private static SimulatedDevice device(String uuid, double x, double y) {
+        return new SimulatedDevice(uuid, "username", "device", PartnerMessage.Mode.SEARCH, x, y);
+    }
+}
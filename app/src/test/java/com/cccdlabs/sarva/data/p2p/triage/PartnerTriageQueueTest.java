@@ -0,0 +1,162 @@
+package com.cccdlabs.sarva.data.p2p.triage;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerTriageQueueTest {
+
+    private PartnerTriageQueue mQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        mQueue = new PartnerTriageQueue();
+    }
+
+    @Test
+    public void shouldOrderByDistanceThenConfidence() throws Exception {
+        mQueue.update(partner("a"), 12, 0.5);
+        mQueue.update(partner("b"), 3, 0.5);
+        mQueue.update(partner("c"), 7, 0.2);
+        mQueue.update(partner("d"), 7, 0.9);
+
+        assertEquals("b", mQueue.peek().getUuid());
+        assertEquals(uuids("b", "d", "c"), uuidsOf(mQueue.getTop(3)));
+        assertEquals("Fewer partners than K", 4, mQueue.getTop(10).size());
+    }
+
+    @Test
+    public void shouldRankConfidentFartherAboveDoubtfulNearer() throws Exception {
+        mQueue.update(partner("a"), 5, 0.1);
+        mQueue.update(partner("b"), 5.5, 0.9);
+        mQueue.update(partner("c"), 9, 0.9);
+
+        assertEquals("Doubtful nearer partner first", "b", mQueue.peek().getUuid());
+        assertEquals(uuids("b", "a", "c"), uuidsOf(mQueue.getTop(3)));
+
+        mQueue.update(partner("a"), 5, 0.9);
+        assertEquals("Confident nearer partner not first", "a", mQueue.peek().getUuid());
+    }
+
+    @Test
+    public void shouldMoveOnNewDistance() throws Exception {
+        mQueue.update(partner("a"), 12, 0);
+        mQueue.update(partner("b"), 3, 0);
+        mQueue.update(partner("c"), 7, 0);
+
+        mQueue.update(partner("a"), 1, 0);
+        assertEquals(uuids("a", "b", "c"), uuidsOf(mQueue.getTop(3)));
+        mQueue.update(partner("a"), 20, 0);
+        assertEquals(uuids("b", "c", "a"), uuidsOf(mQueue.getTop(3)));
+        assertEquals(3, mQueue.size());
+    }
+
+    @Test
+    public void shouldKeepOrderOverRandomUpdates() throws Exception {
+        Random random = new Random(11);
+        double[] distances = new double[50];
+        for (int i = 0; i < 2000; i++) {
+            int id = random.nextInt(distances.length);
+            if (random.nextInt(10) == 0) {
+                mQueue.remove(String.valueOf(id));
+                distances[id] = 0;
+            } else {
+                distances[id] = 0.5 + random.nextDouble() * 30;
+                mQueue.update(partner(String.valueOf(id)), distances[id], 0);
+            }
+        }
+
+        List<Double> expected = new ArrayList<>();
+        for (double distance : distances) {
+            if (distance > 0) {
+                expected.add(distance);
+            }
+        }
+        Collections.sort(expected);
+        assertEquals(expected.size(), mQueue.size());
+        List<Partner> top = mQueue.getTop(10);
+        for (int i = 0; i < top.size(); i++) {
+            int id = Integer.parseInt(top.get(i).getUuid());
+            assertEquals(expected.get(i), distances[id], 0);
+        }
+    }
+
+    @Test
+    public void shouldIgnoreLocatedPartners() throws Exception {
+        mQueue.update(partner("a"), 2, 0);
+        mQueue.update(partner("b"), 4, 0);
+
+        assertTrue(mQueue.markLocated("a"));
+        assertTrue(mQueue.isLocated("a"));
+        assertFalse("Located partner requeued", mQueue.update(partner("a"), 1, 0));
+        assertEquals(uuids("b"), uuidsOf(mQueue.getTop(5)));
+
+        mQueue.unmarkLocated("a");
+        assertTrue(mQueue.update(partner("a"), 1, 0));
+        assertEquals("a", mQueue.peek().getUuid());
+    }
+
+    @Test
+    public void shouldEmitTopFromResults() throws Exception {
+        Partner lost = partner("b");
+        lost.setEmitting(false);
+        Partner noDistance = partner("c");
+        noDistance.setDistance(0);
+        Flowable<PartnerResult> results = Flowable.just(
+                result(partner("a"), 5),
+                result(partner("b"), 2),
+                new PartnerResult(noDistance, true),
+                new PartnerResult(lost, false),
+                new PartnerResult(new Throwable("Unit test error")));
+
+        TestSubscriber<List<Partner>> subscriber = mQueue.getTopFlowable(results, 1).test();
+        subscriber.assertComplete();
+        subscriber.assertValueCount(3);
+        assertEquals(uuids("a"), uuidsOf(subscriber.values().get(0)));
+        assertEquals(uuids("b"), uuidsOf(subscriber.values().get(1)));
+        assertEquals("Lost partner not removed", uuids("a"), uuidsOf(subscriber.values().get(2)));
+    }
+
+    private static Partner partner(String uuid) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setEmitting(true);
+        return partner;
+    }
+
+    private static PartnerResult result(Partner partner, double distance) {
+        partner.setDistance(distance);
+        return new PartnerResult(partner, true);
+    }
+
+    private static List<String> uuids(String... uuids) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, uuids);
+        return list;
+    }
+
+    private static List<String> uuidsOf(List<Partner> partners) {
+        List<String> list = new ArrayList<>();
+        for (Partner partner : partners) {
+            list.add(partner.getUuid());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,251 @@
+package com.cccdlabs.sarva.data.p2p.udp;
+
+import android.net.wifi.WifiManager;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.data.p2p.transport.PartnerTransport;
+import com.google.android.gms.nearby.messages.Message;
+import com.google.android.gms.nearby.messages.MessageListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UdpMulticastPartnerTransportTest {
+
+    private static final int PORT = 47475;
+    private static final long BEACON_INTERVAL_MS = 50L;
+    private static final long WAIT_MS = 1000L;
+    private static final byte[] CONTENT_A = "partner-a".getBytes();
+    private static final byte[] CONTENT_B = "partner-b".getBytes();
+
+    @Mock
+    private WifiManager mWifiManager;
+
+    @Mock
+    private WifiManager.MulticastLock mMulticastLock;
+
+    private NetworkInterface mLoopback;
+    private UdpMulticastPartnerTransport mTransportA;
+    private UdpMulticastPartnerTransport mTransportB;
+
+    class QueueListener extends MessageListener {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onFound(Message message) {
+            events.add("found:" + new String(message.getContent()));
+        }
+
+        @Override
+        public void onLost(Message message) {
+            events.add("lost:" + new String(message.getContent()));
+        }
+
+        String next() throws InterruptedException {
+            return events.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    class ResultCallback implements PartnerTransport.Callback {
+
+        Exception error;
+        boolean success;
+
+        @Override
+        public void onSuccess() {
+            success = true;
+        }
+
+        @Override
+        public void onFailure(@NonNull Exception e) {
+            error = e;
+        }
+    }
+
+    private final PartnerTransport.ExpiryListener mExpiry = new PartnerTransport.ExpiryListener() {
+        @Override
+        public void onExpired() {
+            throw new AssertionError("UDP transport expired");
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        mLoopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        mTransportA = buildTransport();
+        mTransportB = buildTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mTransportA.close();
+        mTransportB.close();
+    }
+
+    @Test
+    public void shouldFindOthersButNotItself() throws Exception {
+        QueueListener listenerA = new QueueListener();
+        QueueListener listenerB = new QueueListener();
+        assertSuccess(subscribe(mTransportA, listenerA));
+        assertSuccess(subscribe(mTransportB, listenerB));
+        assertSuccess(publish(mTransportA, CONTENT_A));
+        assertSuccess(publish(mTransportB, CONTENT_B));
+
+        assertEquals("found:partner-a", listenerB.next());
+        assertEquals("found:partner-b", listenerA.next());
+
+        // several more beacons neither found again nor reported to their own device
+        Thread.sleep(BEACON_INTERVAL_MS * 3);
+        assertNull(listenerA.events.poll());
+        assertNull(listenerB.events.poll());
+    }
+
+    @Test
+    public void shouldLoseOnUnpublish() throws Exception {
+        QueueListener listener = new QueueListener();
+        assertSuccess(subscribe(mTransportB, listener));
+        assertSuccess(publish(mTransportA, CONTENT_A));
+        assertEquals("found:partner-a", listener.next());
+
+        ResultCallback callback = new ResultCallback();
+        mTransportA.unpublish(new Message(CONTENT_A), callback);
+        assertSuccess(callback);
+
+        long start = System.nanoTime();
+        assertEquals("lost:partner-a", listener.next());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Lost by timeout instead of bye", elapsedMs < mTransportB.getLostTimeoutMs());
+    }
+
+    @Test
+    public void shouldLoseAfterSilence() throws Exception {
+        QueueListener listener = new QueueListener();
+        assertSuccess(subscribe(mTransportB, listener));
+
+        // a single beacon, then silence
+        byte[] beacon = UdpMulticastPartnerTransport.toDatagram(UdpMulticastPartnerTransport.KIND_BEACON, CONTENT_A);
+        MulticastSocket socket = new MulticastSocket();
+        try {
+            socket.setNetworkInterface(mLoopback);
+            socket.send(new DatagramPacket(beacon, beacon.length,
+                    InetAddress.getByName(UdpMulticastPartnerTransport.DEFAULT_GROUP), PORT));
+        } finally {
+            socket.close();
+        }
+
+        assertEquals("found:partner-a", listener.next());
+        assertEquals("lost:partner-a", listener.next());
+    }
+
+    @Test
+    public void shouldIgnoreForeignDatagrams() throws Exception {
+        byte[] datagram = UdpMulticastPartnerTransport.toDatagram(UdpMulticastPartnerTransport.KIND_BYE, CONTENT_B);
+        assertEquals(UdpMulticastPartnerTransport.KIND_BYE,
+                UdpMulticastPartnerTransport.parseKind(datagram, datagram.length));
+        assertArrayEquals(CONTENT_B, Arrays.copyOfRange(datagram,
+                UdpMulticastPartnerTransport.HEADER_LENGTH, datagram.length));
+
+        byte[] foreign = datagram.clone();
+        foreign[0] = 'X';
+        assertEquals(0, UdpMulticastPartnerTransport.parseKind(foreign, foreign.length));
+
+        byte[] nextVersion = datagram.clone();
+        nextVersion[2] = UdpMulticastPartnerTransport.VERSION_1 + 1;
+        assertEquals(0, UdpMulticastPartnerTransport.parseKind(nextVersion, nextVersion.length));
+        assertEquals(0, UdpMulticastPartnerTransport.parseKind(datagram,
+                UdpMulticastPartnerTransport.HEADER_LENGTH));
+    }
+
+    @Test
+    public void shouldHoldMulticastLockWhileSubscribed() throws Exception {
+        when(mWifiManager.createMulticastLock(anyString())).thenReturn(mMulticastLock);
+        UdpMulticastPartnerTransport transport = new UdpMulticastPartnerTransport.Builder()
+                .setPort(PORT)
+                .setNetworkInterface(mLoopback)
+                .setWifiManager(mWifiManager)
+                .build();
+        verify(mMulticastLock).setReferenceCounted(false);
+
+        try {
+            assertSuccess(publish(transport, CONTENT_A));
+            verify(mMulticastLock, never()).acquire();
+
+            QueueListener listener = new QueueListener();
+            assertSuccess(subscribe(transport, listener));
+            verify(mMulticastLock).acquire();
+
+            when(mMulticastLock.isHeld()).thenReturn(true);
+            ResultCallback callback = new ResultCallback();
+            transport.unsubscribe(listener, callback);
+            assertSuccess(callback);
+            InOrder inOrder = inOrder(mMulticastLock);
+            inOrder.verify(mMulticastLock).acquire();
+            inOrder.verify(mMulticastLock).release();
+
+            assertSuccess(subscribe(transport, listener));
+        } finally {
+            transport.close();
+        }
+        verify(mMulticastLock, times(2)).release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonMulticastGroup() throws Exception {
+        new UdpMulticastPartnerTransport.Builder()
+                .setGroup(InetAddress.getLoopbackAddress())
+                .build();
+    }
+
+    private UdpMulticastPartnerTransport buildTransport() {
+        return new UdpMulticastPartnerTransport.Builder()
+                .setPort(PORT)
+                .setNetworkInterface(mLoopback)
+                .setBeaconInterval(BEACON_INTERVAL_MS)
+                .build();
+    }
+
+    private ResultCallback publish(PartnerTransport transport, byte[] content) {
+        ResultCallback callback = new ResultCallback();
+        transport.publish(new Message(content), mExpiry, callback);
+        return callback;
+    }
+
+    private ResultCallback subscribe(PartnerTransport transport, MessageListener listener) {
+        ResultCallback callback = new ResultCallback();
+        transport.subscribe(listener, mExpiry, callback);
+        return callback;
+    }
+
+    private static void assertSuccess(ResultCallback callback) {
+        assertNull(callback.error);
+        assertTrue(callback.success);
+    }
+}
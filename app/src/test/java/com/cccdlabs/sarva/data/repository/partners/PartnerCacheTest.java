@@ -0,0 +1,143 @@
+package com.cccdlabs.sarva.data.repository.partners;
+
+import androidx.annotation.NonNull;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerCacheTest {
+
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+    private static final String UUID_3 = "44cf4c02-542c-4f0c-acfd-1bbcce1bc30a";
+
+    private PartnerCache cache;
+    private TableLoader loader;
+
+    class TableLoader implements PartnerCache.Loader {
+
+        final Map<String, Partner> rows = new HashMap<>();
+        final List<String> loads = new ArrayList<>();
+
+        @Override
+        public Partner load(@NonNull String uuid) {
+            loads.add(uuid);
+            return rows.get(uuid);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new PartnerCache(2);
+        loader = new TableLoader();
+        loader.rows.put(UUID_1, partner(UUID_1));
+        loader.rows.put(UUID_2, partner(UUID_2));
+        loader.rows.put(UUID_3, partner(UUID_3));
+    }
+
+    @Test
+    public void shouldReadThroughAndCountHits() throws Exception {
+        Partner first = cache.get(UUID_1, loader);
+        Partner second = cache.get(UUID_1, loader);
+
+        assertEquals(1, loader.loads.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(UUID_1, second.getUuid());
+        assertEquals("username", second.getUsername());
+        assertTrue(second.isActive());
+        assertEquals(first.getCreatedAt(), second.getCreatedAt());
+
+        // callers may modify the partner returned
+        second.setActive(false);
+        second.getCreatedAt().setTime(0);
+        Partner third = cache.get(UUID_1, loader);
+        assertNotSame(second, third);
+        assertTrue("Cached partner modified", third.isActive());
+        assertFalse("Cached date modified", third.getCreatedAt().getTime() == 0);
+    }
+
+    @Test
+    public void shouldCacheMissingRows() throws Exception {
+        String stranger = "00000000-0000-4000-8000-000000000000";
+        assertNull(cache.get(stranger, loader));
+        assertNull(cache.get(stranger, loader));
+        assertEquals("Missing row loaded again", 1, loader.loads.size());
+
+        cache.put(partner(stranger));
+        assertEquals(stranger, cache.get(stranger, loader).getUuid());
+        assertEquals(1, loader.loads.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws Exception {
+        cache.get(UUID_1, loader);
+        cache.get(UUID_2, loader);
+        cache.get(UUID_1, loader);
+        cache.get(UUID_3, loader);
+        assertEquals(2, cache.size());
+
+        loader.loads.clear();
+        cache.get(UUID_1, loader);
+        cache.get(UUID_3, loader);
+        assertTrue("Recently used evicted", loader.loads.isEmpty());
+        cache.get(UUID_2, loader);
+        assertEquals("Least recently used not evicted", 1, loader.loads.size());
+    }
+
+    @Test
+    public void shouldNotCacheLoadRacingInvalidation() throws Exception {
+        PartnerCache.Loader racingLoader = new PartnerCache.Loader() {
+            @Override
+            public Partner load(@NonNull String uuid) {
+                Partner stale = loader.load(uuid);
+                cache.invalidate(uuid);
+                return stale;
+            }
+        };
+        cache.get(UUID_1, racingLoader);
+        assertEquals(0, cache.size());
+
+        cache.get(UUID_1, loader);
+        cache.invalidate(UUID_1);
+        cache.get(UUID_2, loader);
+        cache.clear();
+        cache.get(UUID_1, loader);
+        cache.get(UUID_2, loader);
+        assertEquals(5, loader.loads.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectZeroMaxSize() throws Exception {
+        new PartnerCache(0);
+    }
+
+    private static Partner partner(String uuid) {
+        Partner partner = new Partner();
+        partner.setId(1);
+        partner.setUuid(uuid);
+        partner.setUsername("username");
+        partner.setActive(true);
+        partner.setCreatedAt(new Date());
+        partner.setUpdatedAt(new Date());
+        return partner;
+    }
+}
@@ -19,11 +19,13 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -229,6 +231,28 @@ public class PartnerRepositoryTest {
         assertModelsEqual(model, model2);
     }
 
+    @Test
+    public void shouldSyncAllInOneTransaction() throws Exception {
+        mRepository.insert(model1);
+        Partner existing = mRepository.getByUuid(model1.getUuid());
+        model1.setUsername("Partner One Renamed");
+
+        List<Partner> models = new ArrayList<>();
+        models.add(model1);
+        models.add(model2);
+        models.add(model3);
+        List<Partner> synced = mRepository.syncAll(models);
+
+        assertEquals("List<Partner> after syncAll() count incorrect", 3, synced.size());
+        assertEquals("Existing row id changed", existing.getId(), synced.get(0).getId());
+        assertEquals(3, mRepository.getAll().size());
+        for (Partner model : synced) {
+            assertTrue("Id not set after syncAll()", model.getId() > 0);
+            assertModelsEqual(model, mRepository.getById(model.getId()));
+        }
+        assertEquals("Partner One Renamed", mRepository.getByUuid(model1.getUuid()).getUsername());
+    }
+
     @Test
     public void shouldSetAllInactive() throws Exception {
         model1.setActive(true);
@@ -258,6 +282,76 @@ public class PartnerRepositoryTest {
         }
     }
 
+    @Test
+    public void shouldSyncOnlyChangedPartners() throws Exception {
+        Date lastSeen = new Date(System.currentTimeMillis() / 1000 * 1000
+                - PartnerRepository.LAST_SEEN_INTERVAL_MS * 2);
+        model1.setCreatedAt(lastSeen);
+        model1.setUpdatedAt(lastSeen);
+        mRepository.insert(model1);
+        Date recent = new Date(System.currentTimeMillis() / 1000 * 1000);
+        model2.setActive(false);
+        model2.setCreatedAt(recent);
+        model2.setUpdatedAt(recent);
+        mRepository.insert(model2);
+
+        // readings alone changed
+        model1.setRssi(-70);
+        model2.setRssi(-70);
+        List<Partner> models = new ArrayList<>();
+        models.add(model1);
+        models.add(model2);
+        mRepository.syncAll(models);
+
+        Partner seen = mRepository.getById(model1.getId());
+        assertTrue("Last seen not refreshed", seen.getUpdatedAt().after(lastSeen));
+        assertEquals(seen.getUpdatedAt(), model1.getUpdatedAt());
+        assertEquals("Unchanged partner written", recent,
+                mRepository.getById(model2.getId()).getUpdatedAt());
+        assertEquals(recent, model2.getUpdatedAt());
+
+        // persisted field changed
+        model2.setUsername("Partner Two Renamed");
+        mRepository.sync(model2);
+        assertEquals("Partner Two Renamed", mRepository.getById(model2.getId()).getUsername());
+    }
+
+    @Test
+    public void shouldInvalidateCacheOnWrites() throws Exception {
+        String uuid = model1.getUuid();
+        assertFalse("Missing partner active", mRepository.isActive(uuid));
+        assertFalse(mRepository.isActive(uuid));
+        assertEquals(1, mRepository.getCacheMissCount());
+        assertEquals(1, mRepository.getCacheHitCount());
+
+        // INSERT replaces the cached missing row
+        model1.setActive(false);
+        mRepository.insert(model1);
+        assertTrue("Inserted partner not found", mRepository.isActive(uuid));
+
+        mRepository.setActive(uuid);
+        assertTrue("Cached after setActive()", mRepository.getByUuid(uuid).isActive());
+        mRepository.setAllInactive();
+        assertFalse("Cached after setAllInactive()", mRepository.getByUuid(uuid).isActive());
+
+        Partner model = mRepository.getByUuid(uuid);
+        model.setUsername("Partner One Renamed");
+        mRepository.update(model);
+        assertEquals("Cached after update()", "Partner One Renamed",
+                mRepository.getByUuid(uuid).getUsername());
+
+        mRepository.delete(model.getId());
+        assertNull("Cached after delete()", mRepository.getByUuid(uuid));
+
+        // rows written by syncAll() are cached
+        List<Partner> models = new ArrayList<>();
+        models.add(model2);
+        mRepository.syncAll(models);
+        long misses = mRepository.getCacheMissCount();
+        assertTrue(mRepository.isActive(model2.getUuid()));
+        assertEquals("Synced partner not cached", misses, mRepository.getCacheMissCount());
+    }
+
     @After
     public void tearDown() throws Exception {
         mDb.close();
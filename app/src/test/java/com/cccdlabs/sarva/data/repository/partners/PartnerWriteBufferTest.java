@@ -0,0 +1,183 @@
+package com.cccdlabs.sarva.data.repository.partners;
+
+import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.repository.exception.RepositoryInsertException;
+import com.cccdlabs.sarva.domain.repository.partners.PartnerRepo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.functions.Consumer;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PartnerWriteBufferTest {
+
+    private static final long FLUSH_INTERVAL_MS = 1000L;
+    private static final int MAX_PENDING = 4;
+    private static final String UUID_1 = "bc317a3f-099f-42c1-bc13-d4aa9998c681";
+    private static final String UUID_2 = "0e3b8c2f-5e2a-4f5c-9a57-1d3f8e2a7b11";
+
+    @Mock
+    private PartnerRepo repository;
+
+    private TestScheduler scheduler;
+    private PartnerWriteBuffer buffer;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new TestScheduler();
+        buffer = new PartnerWriteBuffer(repository, FLUSH_INTERVAL_MS, MAX_PENDING, scheduler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        buffer.dispose();
+        RxJavaPlugins.reset();
+    }
+
+    @Test
+    public void shouldCoalesceWritesByUuidUntilInterval() throws Exception {
+        Partner latest = partner(UUID_1, -60);
+        buffer.write(partner(UUID_1, -80));
+        buffer.write(partner(UUID_2, -70));
+        buffer.write(latest);
+
+        scheduler.advanceTimeBy(FLUSH_INTERVAL_MS - 1, TimeUnit.MILLISECONDS);
+        verify(repository, never()).syncAll(anyList());
+        assertEquals(2, buffer.getPendingCount());
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        List<Partner> batch = captureBatch(1);
+        assertEquals("Writes not coalesced by UUID", 2, batch.size());
+        assertEquals("Latest write not flushed", -60, batch.get(0).getRssi());
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(3, buffer.getWriteCount());
+        assertEquals(2, buffer.getFlushedCount());
+        assertEquals(1, buffer.getFlushCount());
+        assertEquals(2, buffer.getLastBatchSize());
+        assertTrue(buffer.getMaxFlushNanos() >= buffer.getLastFlushNanos());
+    }
+
+    @Test
+    public void shouldNotPassWrittenPartnerToSync() throws Exception {
+        Partner partner = partner(UUID_1, -70);
+        partner.setActive(true);
+        when(repository.syncAll(anyList())).thenAnswer(new Answer<List<Partner>>() {
+            @Override
+            public List<Partner> answer(InvocationOnMock invocation) throws Throwable {
+                List<Partner> models = invocation.getArgument(0);
+                for (Partner model : models) {
+                    model.setActive(false);
+                    model.setId(7);
+                }
+                return models;
+            }
+        });
+
+        buffer.write(partner);
+        partner.setRssi(-50);
+        buffer.flush();
+
+        List<Partner> batch = captureBatch(1);
+        assertNotSame(partner, batch.get(0));
+        assertEquals("Write not a snapshot", -70, batch.get(0).getRssi());
+        assertTrue("Written partner changed by sync", partner.isActive());
+        assertEquals(0, partner.getId());
+    }
+
+    @Test
+    public void shouldFlushAtOnceOnMaxPending() throws Exception {
+        for (int i = 0; i < MAX_PENDING; i++) {
+            buffer.write(partner("00000000-0000-4000-8000-00000000000" + i, -70));
+        }
+
+        scheduler.triggerActions();
+        assertEquals(MAX_PENDING, captureBatch(1).size());
+        assertEquals(MAX_PENDING, buffer.getMaxBatchSize());
+
+        // the replaced interval flush does not run again
+        scheduler.advanceTimeBy(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        verify(repository, times(1)).syncAll(anyList());
+    }
+
+    @Test
+    public void shouldFlushOnRequestAndSynchronously() throws Exception {
+        buffer.write(partner(UUID_1, -70));
+        buffer.requestFlush();
+        scheduler.triggerActions();
+        captureBatch(1);
+
+        buffer.write(partner(UUID_2, -70));
+        assertEquals(1, buffer.flush());
+        assertEquals(0, buffer.flush());
+        captureBatch(2);
+
+        // requesting with nothing pending schedules nothing
+        buffer.requestFlush();
+        scheduler.advanceTimeBy(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        verify(repository, times(2)).syncAll(anyList());
+    }
+
+    @Test
+    public void shouldPassScheduledFlushErrorToErrorHandler() throws Exception {
+        final List<Throwable> errors = new ArrayList<>();
+        RxJavaPlugins.setErrorHandler(new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                errors.add(throwable);
+            }
+        });
+        when(repository.syncAll(anyList())).thenThrow(new RepositoryInsertException("Unit test error"));
+
+        buffer.write(partner(UUID_1, -70));
+        scheduler.advanceTimeBy(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, errors.size());
+        assertTrue("Error not of RepositoryInsertException",
+                errors.get(0).getCause() instanceof RepositoryInsertException);
+        assertEquals("Failed batch still pending", 0, buffer.getPendingCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectZeroInterval() throws Exception {
+        new PartnerWriteBuffer(repository, 0, MAX_PENDING, scheduler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Partner> captureBatch(int flushes) throws Exception {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(flushes)).syncAll(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Partner partner(String uuid, int rssi) {
+        Partner partner = new Partner();
+        partner.setUuid(uuid);
+        partner.setUsername("username");
+        partner.setEmitting(true);
+        partner.setRssi(rssi);
+        return partner;
+    }
+}
@@ -1,6 +1,7 @@
 package com.cccdlabs.sarva.domain.model;
 
 import com.cccdlabs.sarva.domain.model.partners.Partner;
+import com.cccdlabs.sarva.domain.model.partners.PartnerMessage;
 import com.cccdlabs.sarva.domain.model.partners.PartnerResult;
 
 import org.junit.Test;
@@ -33,6 +34,30 @@ public class PartnerResultTest {
         assertEquals("getPublishStatus() not PartnerResult.INVALID", INVALID, partnerResult.getPublishStatus());
     }
 
+    @Test
+    public void shouldStorePartnerReading() throws Exception {
+        Partner partner = new Partner();
+        partner.setUuid("bc317a3f-099f-42c1-bc13-d4aa9998c681");
+
+        assertFalse("isReading() true", new PartnerResult(partner).isReading());
+        assertTrue("isReading() false", new PartnerResult(partner, true).isReading());
+        assertFalse("isReading() true", new PartnerResult(new Exception("Test error")).isReading());
+    }
+
+    @Test
+    public void shouldStorePartnerMode() throws Exception {
+        Partner partner = new Partner();
+        partner.setUuid("bc317a3f-099f-42c1-bc13-d4aa9998c681");
+
+        assertNull("getMode() not null", new PartnerResult(partner, true).getMode());
+        assertEquals(
+                "getMode() not PartnerMessage.Mode.SEARCH",
+                PartnerMessage.Mode.SEARCH,
+                new PartnerResult(partner, false, PartnerMessage.Mode.SEARCH).getMode()
+        );
+        assertNull("getMode() not null", new PartnerResult(true).getMode());
+    }
+
     @Test
     public void shouldStorePublishStatusTrue() throws Exception {
         PartnerResult partnerResult = new PartnerResult(true);
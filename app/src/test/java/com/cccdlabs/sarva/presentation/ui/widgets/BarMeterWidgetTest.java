@@ -0,0 +1,46 @@
+package com.cccdlabs.sarva.presentation.ui.widgets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BarMeterWidgetTest {
+
+    private static final int TOTAL_BARS = 10;
+    private static final float HYSTERESIS = 0.3f;
+
+    @Test
+    public void shouldMapSignalToBars() throws Exception {
+        assertEquals(0, BarMeterWidget.toActiveBars(0f, TOTAL_BARS, 5, HYSTERESIS));
+        assertEquals(TOTAL_BARS, BarMeterWidget.toActiveBars(1f, TOTAL_BARS, 5, HYSTERESIS));
+        assertEquals("Full scale not reached from below",
+                TOTAL_BARS, BarMeterWidget.toActiveBars(1f, TOTAL_BARS, TOTAL_BARS - 1, HYSTERESIS));
+        assertEquals(TOTAL_BARS, BarMeterWidget.toActiveBars(2f, TOTAL_BARS, 0, HYSTERESIS));
+        assertEquals(0, BarMeterWidget.toActiveBars(-1f, TOTAL_BARS, 3, HYSTERESIS));
+        assertEquals(7, BarMeterWidget.toActiveBars(0.75f, TOTAL_BARS, 2, HYSTERESIS));
+        assertEquals("NaN changed bars", 4, BarMeterWidget.toActiveBars(Float.NaN, TOTAL_BARS, 4, HYSTERESIS));
+    }
+
+    @Test
+    public void shouldNotFlickerAtBoundary() throws Exception {
+        // hovering around the boundary of bars 5 and 6
+        float[] levels = {0.49f, 0.51f, 0.48f, 0.52f, 0.50f, 0.47f};
+        int bars = 4;
+        bars = BarMeterWidget.toActiveBars(0.45f, TOTAL_BARS, bars, HYSTERESIS);
+        assertEquals(4, bars);
+        for (float level : levels) {
+            bars = BarMeterWidget.toActiveBars(level, TOTAL_BARS, bars, HYSTERESIS);
+            assertEquals("Flickered at [" + level + "]", 4, bars);
+        }
+
+        bars = BarMeterWidget.toActiveBars(0.54f, TOTAL_BARS, 4, HYSTERESIS);
+        assertEquals("Boundary passed by the hysteresis", 5, bars);
+        bars = BarMeterWidget.toActiveBars(0.48f, TOTAL_BARS, bars, HYSTERESIS);
+        assertEquals(5, bars);
+        bars = BarMeterWidget.toActiveBars(0.46f, TOTAL_BARS, bars, HYSTERESIS);
+        assertEquals(4, bars);
+    }
+}
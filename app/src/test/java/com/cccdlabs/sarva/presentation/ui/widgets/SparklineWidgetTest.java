@@ -0,0 +1,60 @@
+package com.cccdlabs.sarva.presentation.ui.widgets;
+
+import android.os.Parcelable;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class SparklineWidgetTest {
+
+    private SparklineWidget mWidget;
+
+    @Before
+    public void setUp() throws Exception {
+        mWidget = new SparklineWidget(ApplicationProvider.getApplicationContext());
+    }
+
+    @Test
+    public void shouldKeepLastSamplesOldestFirst() throws Exception {
+        int numSamples = mWidget.getNumSamples();
+        assertEquals(SparklineWidget.DEFAULT_NUM_SAMPLES, numSamples);
+        for (int i = 0; i < numSamples + 10; i++) {
+            mWidget.addSample(-100 + i);
+        }
+
+        assertEquals(numSamples, mWidget.getSampleCount());
+        assertEquals("Oldest samples not dropped", -90, mWidget.getSample(0), 0);
+        assertEquals(-100 + numSamples + 9, mWidget.getSample(numSamples - 1), 0);
+
+        mWidget.clear();
+        assertEquals(0, mWidget.getSampleCount());
+    }
+
+    @Test
+    public void shouldRestoreSamples() throws Exception {
+        mWidget.addSample(-70);
+        mWidget.addSample(Float.NaN);
+        mWidget.addSample(-65);
+        Parcelable state = mWidget.onSaveInstanceState();
+
+        SparklineWidget restored = new SparklineWidget(ApplicationProvider.getApplicationContext());
+        restored.onRestoreInstanceState(state);
+        assertEquals(3, restored.getSampleCount());
+        assertEquals(-70, restored.getSample(0), 0);
+        assertEquals("Gap not restored", Float.NaN, restored.getSample(1), 0);
+        assertEquals(-65, restored.getSample(2), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectSampleOutOfRange() throws Exception {
+        mWidget.addSample(-70);
+        mWidget.getSample(1);
+    }
+}